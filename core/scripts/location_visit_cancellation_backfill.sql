@@ -0,0 +1,21 @@
+\set ON_ERROR_STOP on
+
+-- Copy the cancelled admissions and discharges that were recorded in location_visit_audit
+-- before the location_visit_cancellation table existed.
+-- Run once against an existing star database, after core has created the table and before it processes messages.
+
+INSERT INTO location_visit_cancellation
+(location_visit_cancellation_id, hospital_visit_id, location_id, cancelled_datetime, admission_cancelled, discharge_cancelled)
+SELECT
+nextval('hibernate_sequence')
+,hospital_visit_id
+,location_id
+,admission_datetime
+,bool_or(NOT inferred_admission)
+,bool_or(NOT inferred_discharge)
+FROM location_visit_audit
+WHERE admission_datetime = discharge_datetime
+GROUP BY hospital_visit_id, location_id, admission_datetime
+HAVING bool_or(NOT inferred_admission) OR bool_or(NOT inferred_discharge)
+ON CONFLICT DO NOTHING
+;
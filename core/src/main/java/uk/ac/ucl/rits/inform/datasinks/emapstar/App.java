@@ -1,30 +1,44 @@
 package uk.ac.ucl.rits.inform.datasinks.emapstar;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.AmqpHeaders;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 import org.springframework.messaging.handler.annotation.Header;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.MessageMrns;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.MrnOrderedExecutor;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageIgnoredException;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.metrics.MessageMetrics;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.metrics.MessageOutcome;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLogging;
-import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLoggingRepository;
 import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
 import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
 import uk.ac.ucl.rits.inform.interchange.adt.AdtMessage;
+import uk.ac.ucl.rits.inform.interchange.messaging.InterchangeMessageConverter;
+import uk.ac.ucl.rits.inform.interchange.messaging.InterchangeMessageConverter.WireFormat;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Entry point class for the HL7 pipeline.
@@ -41,16 +55,79 @@ public class App {
     private InformDbOperations dbOps;
 
     @Autowired
-    private IdsEffectLoggingRepository idsEffectLoggingRepository;
+    private IdsEffectLoggingWriter idsEffectLoggingWriter;
+
+    @Autowired
+    private MessageMetrics messageMetrics;
+
+    @Value("${core.parallel.workers:1}")
+    private int parallelWorkers;
+
+    @Value("${core.batch.size:1}")
+    private int batchSize;
+
+    @Autowired
+    private BatchedMessageProcessor batchedMessageProcessor;
+
+    @Autowired
+    private MessageConverter messageConverter;
+
+    private MrnOrderedExecutor mrnOrderedExecutor;
 
     /**
      * Added this to get Instant objects (de)serialising properly.
+     * Reads messages in JSON or the compact wire format, depending on their content type.
      * @return our message converter
      */
     @Bean
     public static MessageConverter jsonReaderMessageConverter() {
-        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
-        return new Jackson2JsonMessageConverter(mapper);
+        return new InterchangeMessageConverter(WireFormat.JSON);
+    }
+
+    /**
+     * Container factory for processing one message at a time, only started if messages are not being batched.
+     * @param configurer        applies the spring.rabbitmq.listener.simple properties
+     * @param connectionFactory rabbitmq connection factory
+     * @param autoStartup       whether listeners should be started at all
+     * @param batchSize         number of messages to process in a single transaction
+     * @return container factory used by {@link #receiveMessage}
+     */
+    @Bean
+    public static SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${spring.rabbitmq.listener.simple.auto-startup:true}") boolean autoStartup,
+            @Value("${core.batch.size:1}") int batchSize) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAutoStartup(autoStartup && batchSize <= 1);
+        return factory;
+    }
+
+    /**
+     * Container factory for receiving messages in batches, only started if core.batch.size is more than 1.
+     * @param configurer        applies the spring.rabbitmq.listener.simple properties
+     * @param connectionFactory rabbitmq connection factory
+     * @param autoStartup       whether listeners should be started at all
+     * @param batchSize         number of messages to process in a single transaction
+     * @param batchTimeoutMillis maximum time to wait for a batch to fill up before processing it
+     * @return container factory used by {@link #receiveMessageBatch}
+     */
+    @Bean
+    public static SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${spring.rabbitmq.listener.simple.auto-startup:true}") boolean autoStartup,
+            @Value("${core.batch.size:1}") int batchSize,
+            @Value("${core.batch.timeout-millis:1000}") long batchTimeoutMillis) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAutoStartup(autoStartup && batchSize > 1);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(Math.max(batchSize, 1));
+        factory.setPrefetchCount(Math.max(batchSize, 1));
+        factory.setReceiveTimeout(batchTimeoutMillis);
+        return factory;
     }
 
     /**
@@ -61,18 +138,160 @@ public class App {
     }
 
 
+    /**
+     * Start the workers for processing messages in parallel, if configured to do so.
+     * @throws IllegalStateException if both parallel workers and batching have been configured
+     */
+    @PostConstruct
+    public void startParallelWorkers() {
+        if (parallelWorkers > 1 && batchSize > 1) {
+            throw new IllegalStateException("core.parallel.workers and core.batch.size cannot both be more than 1");
+        }
+        if (parallelWorkers > 1) {
+            logger.info("Processing messages using {} workers, ordered by MRN", parallelWorkers);
+            mrnOrderedExecutor = new MrnOrderedExecutor(parallelWorkers);
+        }
+    }
+
+    /**
+     * Wait for messages being processed in parallel to finish.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @PreDestroy
+    public void stopParallelWorkers() throws InterruptedException {
+        if (mrnOrderedExecutor != null) {
+            mrnOrderedExecutor.close();
+        }
+    }
+
     /**
      * The listener for processing messages and writing to Emap-Star. The ordering
      * of queue names in the `queues` parameter actually matters - we want HL7
      * messages to be processed in preference to caboodle messages.
+     * <p>
+     * If parallel workers have been configured, messages are handed to a worker and acknowledged once processed there.
+     * Messages for the same MRN(s) are processed in the order they were received. Unexpected errors in a worker
+     * are logged and the message is rejected, as they can't be thrown from the listener.
      * @param msg     the message
      * @param channel the rabbitmq channel
      * @param tag     the message tag
-     * @throws IOException if rabbitmq channel has a problem
+     * @throws IOException          if rabbitmq channel has a problem
+     * @throws InterruptedException if interrupted while waiting for a worker
      */
     @Profile("default")
     @RabbitListener(queues = {"hl7Queue", "databaseExtracts", "extensionProjects"})
     public void receiveMessage(EmapOperationMessage msg, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long tag)
+            throws IOException, InterruptedException {
+        if (mrnOrderedExecutor == null) {
+            processAndAcknowledge(msg, channel, tag);
+            return;
+        }
+        mrnOrderedExecutor.execute(MessageMrns.of(msg), () -> {
+            AtomicBoolean acknowledged = new AtomicBoolean();
+            try {
+                processAndAcknowledge(msg, channel, tag, acknowledged);
+            } catch (Throwable th) {
+                logger.error("Unexpected error when processing {} in parallel worker", msg.getSourceMessageId(), th);
+                if (!acknowledged.get()) {
+                    rejectAfterWorkerError(msg, channel, tag);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reject a message that failed in a parallel worker before it was acked or nacked, so that it isn't left unacknowledged
+     * until the channel is closed.
+     * @param msg     the message
+     * @param channel the rabbitmq channel
+     * @param tag     the message tag
+     */
+    private void rejectAfterWorkerError(EmapOperationMessage msg, Channel channel, long tag) {
+        logger.info("Sending NACK no requeue for {} after worker error", msg.getSourceMessageId());
+        try {
+            synchronized (channel) {
+                channel.basicNack(tag, false, false);
+            }
+        } catch (IOException | RuntimeException e) {
+            // if the channel has failed then rabbitmq will redeliver the message once it is closed
+            logger.error("Could not NACK {}", msg.getSourceMessageId(), e);
+        }
+    }
+
+    /**
+     * The listener for processing messages in batches, used instead of {@link #receiveMessage} if core.batch.size
+     * is more than 1. All messages in the batch are processed in one transaction, then acknowledged together.
+     * <p>
+     * If any message fails unexpectedly, the whole batch is rolled back and each message is processed again on its own.
+     * @param messages the raw messages, in the order they were received
+     * @param channel  the rabbitmq channel
+     * @throws IOException if rabbitmq channel has a problem
+     */
+    @Profile("default")
+    @RabbitListener(queues = {"hl7Queue", "databaseExtracts", "extensionProjects"},
+            containerFactory = "batchListenerContainerFactory")
+    public void receiveMessageBatch(List<Message> messages, Channel channel) throws IOException {
+        // raw messages are received so that each delivery tag is available
+        List<EmapOperationMessage> batch = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            batch.add((EmapOperationMessage) messageConverter.fromMessage(message));
+        }
+        logger.info("Processing batch of {} interchange messages", batch.size());
+
+        List<Boolean> processed;
+        try {
+            processed = batchedMessageProcessor.processBatch(batch);
+        } catch (RuntimeException e) {
+            logger.error("Batch rolled back, processing each message on its own", e);
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    processAndAcknowledge(batch.get(i), channel, messages.get(i).getMessageProperties().getDeliveryTag());
+                } catch (RuntimeException th) {
+                    logger.error("Unexpected error when processing {}", batch.get(i).getSourceMessageId(), th);
+                }
+            }
+            return;
+        }
+
+        synchronized (channel) {
+            long lastAckTag = -1;
+            for (int i = 0; i < batch.size(); i++) {
+                long tag = messages.get(i).getMessageProperties().getDeliveryTag();
+                if (processed.get(i)) {
+                    lastAckTag = tag;
+                } else {
+                    logger.info("Sending NACK no requeue for {}", batch.get(i).getSourceMessageId());
+                    channel.basicNack(tag, false, false);
+                }
+            }
+            if (lastAckTag >= 0) {
+                logger.info("Sending ACK for all remaining messages up to tag {}", lastAckTag);
+                channel.basicAck(lastAckTag, true);
+            }
+        }
+    }
+
+    /**
+     * Process a message, acknowledging it if successful and logging the outcome in the IdsEffectLogging table.
+     * The logging row is written in the background by the {@link IdsEffectLoggingWriter}.
+     * @param msg     the message
+     * @param channel the rabbitmq channel
+     * @param tag     the message tag
+     * @throws IOException if rabbitmq channel has a problem
+     */
+    private void processAndAcknowledge(EmapOperationMessage msg, Channel channel, long tag) throws IOException {
+        processAndAcknowledge(msg, channel, tag, new AtomicBoolean());
+    }
+
+    /**
+     * Process a message, acknowledging it if successful and logging the outcome in the IdsEffectLogging table.
+     * @param msg          the message
+     * @param channel      the rabbitmq channel
+     * @param tag          the message tag
+     * @param acknowledged set once the message has been acked or nacked
+     * @throws IOException if rabbitmq channel has a problem
+     */
+    private void processAndAcknowledge(EmapOperationMessage msg, Channel channel, long tag, AtomicBoolean acknowledged)
             throws IOException {
         IdsEffectLogging idsEffectLogging = new IdsEffectLogging();
         Instant startTime = Instant.now();
@@ -82,6 +301,8 @@ public class App {
             idsEffectLogging.setMessageDatetime(((AdtMessage) msg).getRecordedDateTime());
         }
         idsEffectLogging.setSourceId(msg.getSourceMessageId());
+        boolean success = false;
+        MessageOutcome outcome = MessageOutcome.ERROR;
         try {
             logger.info("Starting processing of interchange message {}", msg.getSourceMessageId());
             logger.trace("{}", msg);
@@ -90,8 +311,14 @@ public class App {
             Duration processMessageDuration = Duration.between(startTime, doneProcessMessageTime);
             idsEffectLogging.setProcessMessageDuration(processMessageDuration.toNanos());
             idsEffectLogging.setError(false);
+            success = true;
+            outcome = MessageOutcome.ACK;
             logger.info("Sending ACK for {}", msg.getSourceMessageId());
-            channel.basicAck(tag, false);
+            // channels should not be used by multiple threads at once
+            synchronized (channel) {
+                channel.basicAck(tag, false);
+            }
+            acknowledged.set(true);
         } catch (EmapOperationMessageProcessingException e) {
             // All errors that allow the message to be skipped should be logged
             // using the return code from processMessage.
@@ -99,19 +326,32 @@ public class App {
             idsEffectLogging.setError(!(e instanceof MessageIgnoredException));
             idsEffectLogging.setMessage(e.getMessage());
             idsEffectLogging.setStackTrace(e);
+            if (e instanceof MessageIgnoredException) {
+                outcome = MessageOutcome.IGNORED;
+            }
             logger.info("Sending NACK no requeue then NOT throwing for {}", msg.getSourceMessageId());
-            channel.basicNack(tag, false, false);
+            synchronized (channel) {
+                channel.basicNack(tag, false, false);
+            }
+            acknowledged.set(true);
         } catch (Throwable th) {
             // For anything else, at least log it before exiting.
             idsEffectLogging.setError(true);
             idsEffectLogging.setMessage(th.getMessage());
             idsEffectLogging.setStackTrace(th);
-            logger.info("Sending NACK no requeue then throwing for {}", msg.getSourceMessageId());
-            channel.basicNack(tag, false, false);
+            if (!acknowledged.get()) {
+                logger.info("Sending NACK no requeue then throwing for {}", msg.getSourceMessageId());
+                synchronized (channel) {
+                    channel.basicNack(tag, false, false);
+                }
+                acknowledged.set(true);
+            }
             throw th;
         } finally {
-            idsEffectLogging.setProcessingEndTime(Instant.now());
-            idsEffectLoggingRepository.save(idsEffectLogging);
+            Instant endTime = Instant.now();
+            idsEffectLogging.setProcessingEndTime(endTime);
+            idsEffectLoggingWriter.write(idsEffectLogging, success);
+            messageMetrics.recordMessage(msg, outcome, Duration.between(startTime, endTime));
         }
     }
 
@@ -0,0 +1,208 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.informdb.AuditCore;
+import uk.ac.ucl.rits.inform.informdb.TemporalCore;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Audits and deletes all rows of a table with the given ids using one statement per table, rather than one per row.
+ * <p>
+ * Audit rows are created by an {@code INSERT ... SELECT} from the live table, with every column copied and the valid until and stored
+ * until set, so they are the same as those from {@link TemporalCore#createAuditEntity}. The columns are found from the hibernate mapping of
+ * the entity and its audit entity. Ids are sent in chunks so that the number of statements depends on the number of tables and not rows.
+ * <p>
+ * Deleted entities that have been loaded in the current session are evicted from it, callers must not use them afterwards.
+ * Callers are responsible for deleting dependent rows first.
+ */
+@Component
+public class AuditedBulkDelete {
+    private static final Logger logger = LoggerFactory.getLogger(AuditedBulkDelete.class);
+    /**
+     * Maximum number of ids in a single statement, well below the bind parameter limit of postgres.
+     */
+    private static final int MAX_IDS_PER_STATEMENT = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Map<Class<?>, String> auditInsertStatements = new ConcurrentHashMap<>();
+
+    /**
+     * Find the ids of all rows that belong to any of the parent rows.
+     * @param entityType      entity to find the ids of
+     * @param parentAttribute attribute of the entity that references the parent entity
+     * @param parentIds       ids of the parent rows
+     * @return ids of the rows
+     */
+    public List<Long> findIds(Class<? extends TemporalCore<?, ?>> entityType, String parentAttribute, Collection<Long> parentIds) {
+        String query = String.format("select e.id from %s e where e.%s.id in :parentIds", entityType.getSimpleName(), parentAttribute);
+        List<Long> ids = new ArrayList<>();
+        for (List<Long> chunk : chunks(parentIds)) {
+            ids.addAll(entityManager.createQuery(query, Long.class).setParameter("parentIds", chunk).getResultList());
+        }
+        return ids;
+    }
+
+    /**
+     * Copy rows into the audit table and delete them.
+     * @param entityType  entity of the rows to delete
+     * @param auditType   audit entity of the rows to delete
+     * @param ids         ids of the rows to delete
+     * @param validUntil  the event time that invalidated the rows
+     * @param storedUntil the time that star started processing the message that invalidated the rows
+     * @param <T>         entity type
+     * @param <A>         audit entity type
+     */
+    public <T extends TemporalCore<T, A>, A extends AuditCore<A>> void auditAndDelete(
+            Class<T> entityType, Class<A> auditType, Collection<Long> ids, Instant validUntil, Instant storedUntil) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        // native statements must see any changes that haven't been flushed yet
+        entityManager.flush();
+        String insertStatement = auditInsertStatements.computeIfAbsent(entityType, type -> buildAuditInsert(entityType, auditType));
+        int audited = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            audited += entityManager.createNativeQuery(insertStatement)
+                    .setParameter("validUntil", validUntil)
+                    .setParameter("storedUntil", storedUntil)
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        logger.debug("Audited {} {} rows", audited, entityType.getSimpleName());
+        delete(entityType, ids);
+    }
+
+    /**
+     * Delete rows without auditing them.
+     * @param entityType entity of the rows to delete
+     * @param ids        ids of the rows to delete
+     */
+    public void delete(Class<? extends TemporalCore<?, ?>> entityType, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        entityManager.flush();
+        AbstractEntityPersister persister = getPersister(entityType);
+        String deleteStatement = String.format(
+                "DELETE FROM %s WHERE %s IN (:ids)", persister.getTableName(), persister.getIdentifierColumnNames()[0]);
+        int deleted = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            deleted += entityManager.createNativeQuery(deleteStatement).setParameter("ids", chunk).executeUpdate();
+        }
+        logger.debug("Deleted {} {} rows", deleted, entityType.getSimpleName());
+        evict(persister, ids);
+    }
+
+    /**
+     * Build the statement that copies rows from the live table to the audit table, each audit row getting a new id from the sequence.
+     * Every mapped column of the entity is copied to the column of the audit entity's property with the same name.
+     * @param entityType entity type
+     * @param auditType  audit entity type
+     * @return native SQL statement with the parameters validUntil, storedUntil and ids
+     */
+    private String buildAuditInsert(Class<?> entityType, Class<?> auditType) {
+        AbstractEntityPersister entity = getPersister(entityType);
+        AbstractEntityPersister audit = getPersister(auditType);
+        List<String> auditColumns = new ArrayList<>();
+        List<String> selectValues = new ArrayList<>();
+
+        auditColumns.add(audit.getIdentifierColumnNames()[0]);
+        selectValues.add(nextIdFromSequence());
+        auditColumns.add(audit.getPropertyColumnNames("validUntil")[0]);
+        selectValues.add(":validUntil");
+        auditColumns.add(audit.getPropertyColumnNames("storedUntil")[0]);
+        selectValues.add(":storedUntil");
+        addColumns(auditColumns, selectValues,
+                audit.getPropertyColumnNames(entity.getIdentifierPropertyName()), entity.getIdentifierColumnNames());
+
+        String[] propertyNames = entity.getPropertyNames();
+        Type[] propertyTypes = entity.getPropertyTypes();
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (propertyTypes[i].isCollectionType() || entity.getPropertyColumnNames(i).length == 0) {
+                // the other side of a join, not stored in this table or the audit table
+                continue;
+            }
+            addColumns(auditColumns, selectValues, audit.getPropertyColumnNames(propertyNames[i]), entity.getPropertyColumnNames(i));
+        }
+        return String.format("INSERT INTO %s (%s) SELECT %s FROM %s WHERE %s IN (:ids)",
+                audit.getTableName(), String.join(", ", auditColumns), String.join(", ", selectValues),
+                entity.getTableName(), entity.getIdentifierColumnNames()[0]);
+    }
+
+    private static void addColumns(List<String> auditColumns, List<String> selectValues, String[] auditPropertyColumns, String[] entityColumns) {
+        if (auditPropertyColumns.length != entityColumns.length) {
+            throw new IllegalStateException(String.format(
+                    "Audit columns %s don't match %s", List.of(auditPropertyColumns), List.of(entityColumns)));
+        }
+        auditColumns.addAll(List.of(auditPropertyColumns));
+        selectValues.addAll(List.of(entityColumns));
+    }
+
+    /**
+     * All audit tables take their ids from the same sequence as {@link uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator}.
+     * Taking single values with nextval is safe when hibernate allocates ids in blocks, as hibernate only uses ids from the blocks
+     * that it has taken itself.
+     * @return SQL expression for the next value of the sequence
+     */
+    private String nextIdFromSequence() {
+        SessionFactoryImplementor sessionFactory = getSessionFactory();
+        Object defaultSchema = sessionFactory.getProperties().get(AvailableSettings.DEFAULT_SCHEMA);
+        String sequenceName = SequenceStyleGenerator.DEF_SEQUENCE_NAME;
+        if (defaultSchema != null && !defaultSchema.toString().isBlank()) {
+            sequenceName = String.format("%s.%s", defaultSchema, sequenceName);
+        }
+        return sessionFactory.getJdbcServices().getDialect().getSelectSequenceNextValString(sequenceName);
+    }
+
+    /**
+     * Evict deleted entities from the session, so that they aren't returned from it or flushed again.
+     * @param persister persister of the deleted entities
+     * @param ids       ids of the deleted entities
+     */
+    private void evict(AbstractEntityPersister persister, Collection<Long> ids) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        for (Long id : ids) {
+            EntityKey key = session.generateEntityKey(id, persister);
+            Object entity = session.getPersistenceContext().getEntity(key);
+            if (entity != null) {
+                session.evict(entity);
+            }
+        }
+    }
+
+    private SessionFactoryImplementor getSessionFactory() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+    }
+
+    private AbstractEntityPersister getPersister(Class<?> entityType) {
+        return (AbstractEntityPersister) getSessionFactory().getMetamodel().entityPersister(entityType);
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> allIds = List.copyOf(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int start = 0; start < allIds.size(); start += MAX_IDS_PER_STATEMENT) {
+            chunks.add(allIds.subList(start, Math.min(start + MAX_IDS_PER_STATEMENT, allIds.size())));
+        }
+        return chunks;
+    }
+}
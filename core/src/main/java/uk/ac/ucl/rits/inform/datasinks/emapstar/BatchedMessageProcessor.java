@@ -0,0 +1,99 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageIgnoredException;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.metrics.MessageMetrics;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.metrics.MessageOutcome;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLogging;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLoggingRepository;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.adt.AdtMessage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Processes multiple messages in a single database transaction, so that the cost of committing is shared.
+ * <p>
+ * As with processing a single message, changes made before an {@link EmapOperationMessageProcessingException}
+ * is thrown are kept and the rest of the batch continues.
+ * Any other exception rolls back the whole batch, so that the caller can process each message on its own.
+ */
+@Component
+public class BatchedMessageProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(BatchedMessageProcessor.class);
+
+    private final InformDbOperations dbOps;
+    private final IdsEffectLoggingRepository idsEffectLoggingRepository;
+    private final MessageMetrics messageMetrics;
+
+    /**
+     * @param dbOps                      operations on the star database
+     * @param idsEffectLoggingRepository logging of the effect of each message
+     * @param messageMetrics             metrics for processing each message
+     */
+    public BatchedMessageProcessor(
+            InformDbOperations dbOps, IdsEffectLoggingRepository idsEffectLoggingRepository, MessageMetrics messageMetrics) {
+        this.dbOps = dbOps;
+        this.idsEffectLoggingRepository = idsEffectLoggingRepository;
+        this.messageMetrics = messageMetrics;
+    }
+
+    /**
+     * Process all messages within a single transaction, logging the effect of each message.
+     * @param messages messages to process, in order
+     * @return for each message, whether it was processed successfully and should be acknowledged
+     * @throws RuntimeException if any message failed unexpectedly or the batch could not be committed,
+     *                          in which case none of the batch has been written
+     */
+    @Transactional
+    public List<Boolean> processBatch(List<? extends EmapOperationMessage> messages) {
+        List<Boolean> processed = new ArrayList<>(messages.size());
+        for (EmapOperationMessage msg : messages) {
+            processed.add(processInBatch(msg));
+        }
+        return processed;
+    }
+
+    private boolean processInBatch(EmapOperationMessage msg) {
+        IdsEffectLogging idsEffectLogging = new IdsEffectLogging();
+        Instant startTime = Instant.now();
+        idsEffectLogging.setProcessingStartTime(startTime);
+        idsEffectLogging.setMessageType(msg.getMessageType());
+        if (msg instanceof AdtMessage) {
+            idsEffectLogging.setMessageDatetime(((AdtMessage) msg).getRecordedDateTime());
+        }
+        idsEffectLogging.setSourceId(msg.getSourceMessageId());
+        boolean processed = false;
+        MessageOutcome outcome = MessageOutcome.ERROR;
+        try {
+            logger.info("Starting processing of interchange message {} in batch", msg.getSourceMessageId());
+            logger.trace("{}", msg);
+            msg.processMessage(dbOps);
+            Duration processMessageDuration = Duration.between(startTime, Instant.now());
+            idsEffectLogging.setProcessMessageDuration(processMessageDuration.toNanos());
+            idsEffectLogging.setError(false);
+            processed = true;
+            outcome = MessageOutcome.ACK;
+        } catch (EmapOperationMessageProcessingException e) {
+            // MessageIgnoredException is not an error, all others are
+            idsEffectLogging.setError(!(e instanceof MessageIgnoredException));
+            idsEffectLogging.setMessage(e.getMessage());
+            idsEffectLogging.setStackTrace(e);
+            if (e instanceof MessageIgnoredException) {
+                outcome = MessageOutcome.IGNORED;
+            }
+        }
+        Instant endTime = Instant.now();
+        idsEffectLogging.setProcessingEndTime(endTime);
+        idsEffectLoggingRepository.save(idsEffectLogging);
+        messageMetrics.recordMessage(msg, outcome, Duration.between(startTime, endTime));
+        return processed;
+    }
+}
@@ -0,0 +1,172 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLogging;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLoggingRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes IdsEffectLogging rows in batches on a background thread, so that processing a message doesn't wait for its
+ * logging row to be inserted.
+ * <p>
+ * Rows wait in a bounded queue. If the writer falls behind and the queue is full, adding a row blocks until there is
+ * space. Only a sample of rows for successfully processed messages can be written, rows for errors and skipped messages
+ * are always written.
+ * <p>
+ * If a batch can't be saved it is kept and retried with an increasing delay, so rows queue up (and then block
+ * processing) while the database is unavailable rather than being dropped. Rows are only held in memory until they are saved,
+ * so rows still queued are lost if the process is killed, or if the database is still failing when the writer is stopped.
+ */
+@Component
+public class IdsEffectLoggingWriter {
+    private static final Logger logger = LoggerFactory.getLogger(IdsEffectLoggingWriter.class);
+    private static final long POLL_MILLIS = 100;
+    private static final long INITIAL_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 60_000;
+
+    private final IdsEffectLoggingRepository idsEffectLoggingRepository;
+    private final BlockingQueue<IdsEffectLogging> queue;
+    private final int batchSize;
+    private final double successSampleRate;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    /**
+     * Counts of rows added to the queue and rows that have since been saved.
+     */
+    private long queuedCount;
+    private long writtenCount;
+
+    /**
+     * @param idsEffectLoggingRepository repository to write rows to
+     * @param queueSize                  maximum number of rows waiting to be written
+     * @param batchSize                  maximum number of rows written in a single transaction
+     * @param successSampleRate          fraction of rows for successfully processed messages that are written
+     * @throws IllegalArgumentException if any of the sizes are less than 1, or the rate is not between 0 and 1
+     */
+    public IdsEffectLoggingWriter(
+            IdsEffectLoggingRepository idsEffectLoggingRepository,
+            @Value("${core.effect-logging.queue-size:10000}") int queueSize,
+            @Value("${core.effect-logging.batch-size:100}") int batchSize,
+            @Value("${core.effect-logging.success-sample-rate:1.0}") double successSampleRate) {
+        if (queueSize < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("core.effect-logging queue and batch sizes must be at least 1");
+        }
+        if (successSampleRate < 0 || successSampleRate > 1) {
+            throw new IllegalArgumentException("core.effect-logging.success-sample-rate must be between 0 and 1");
+        }
+        this.idsEffectLoggingRepository = idsEffectLoggingRepository;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.successSampleRate = successSampleRate;
+        writerThread = new Thread(this::writeUntilStopped, "effect-logging-writer");
+    }
+
+    /**
+     * Start writing rows in the background.
+     */
+    @PostConstruct
+    void start() {
+        writerThread.start();
+    }
+
+    /**
+     * Stop the writer once all queued rows have been written, or a batch has failed to be saved after stopping.
+     * @throws InterruptedException if interrupted while waiting for the remaining rows to be written
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writerThread.join();
+    }
+
+    /**
+     * Queue a row to be written, blocking if the queue is full.
+     * <p>
+     * If interrupted while waiting for space in the queue, the row is written immediately instead.
+     * @param idsEffectLogging row to write
+     * @param success          whether the message was processed successfully, in which case the row may not be written
+     */
+    public void write(IdsEffectLogging idsEffectLogging, boolean success) {
+        if (success && successSampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= successSampleRate) {
+            return;
+        }
+        synchronized (this) {
+            queuedCount++;
+        }
+        try {
+            queue.put(idsEffectLogging);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            idsEffectLoggingRepository.save(idsEffectLogging);
+            rowsWritten(1);
+        }
+    }
+
+    /**
+     * Block until all rows that have been queued so far have been written.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitWritten() throws InterruptedException {
+        long target = queuedCount;
+        while (writtenCount < target) {
+            wait();
+        }
+    }
+
+    private synchronized void rowsWritten(int count) {
+        writtenCount += count;
+        notifyAll();
+    }
+
+    private void writeUntilStopped() {
+        List<IdsEffectLogging> batch = new ArrayList<>(batchSize);
+        long retryMillis = INITIAL_RETRY_MILLIS;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    IdsEffectLogging first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                idsEffectLoggingRepository.saveAll(batch);
+                rowsWritten(batch.size());
+                batch.clear();
+                retryMillis = INITIAL_RETRY_MILLIS;
+            } catch (InterruptedException e) {
+                logger.warn("IdsEffectLogging writer interrupted, continuing until stopped");
+            } catch (RuntimeException e) {
+                if (!running) {
+                    logger.error("Could not write {} IdsEffectLogging rows while stopping, {} queued rows are lost",
+                            batch.size(), batch.size() + queue.size(), e);
+                    return;
+                }
+                logger.error("Could not write {} IdsEffectLogging rows, retrying in {} ms", batch.size(), retryMillis, e);
+                sleepBeforeRetry(retryMillis);
+                retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+
+    private void sleepBeforeRetry(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            logger.warn("IdsEffectLogging writer interrupted, continuing until stopped");
+        }
+    }
+}
@@ -40,6 +40,7 @@ import uk.ac.ucl.rits.inform.interchange.form.FormQuestionMetadataMsg;
 import uk.ac.ucl.rits.inform.interchange.lab.LabMetadataMsg;
 import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetMetadata;
 
 import javax.annotation.PostConstruct;
@@ -205,6 +206,17 @@ public class InformDbOperations implements EmapOperationMessageProcessor {
         flowsheetProcessor.processMessage(msg, storedFrom);
     }
 
+    /**
+     * @param msg the flowsheet batch message to process
+     * @throws EmapOperationMessageProcessingException if message cannot be processed
+     */
+    @Override
+    @Transactional
+    public void processMessage(FlowsheetBatch msg) throws EmapOperationMessageProcessingException {
+        Instant storedFrom = Instant.now();
+        flowsheetProcessor.processMessage(msg, storedFrom);
+    }
+
     /**
      * @param msg the PatientInfection message to process
      * @throws EmapOperationMessageProcessingException if message cannot be processed
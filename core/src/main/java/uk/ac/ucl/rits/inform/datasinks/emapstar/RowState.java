@@ -13,7 +13,7 @@ import uk.ac.ucl.rits.inform.interchange.lab.LabResultStatus;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -21,6 +21,9 @@ import java.util.function.Consumer;
  * Track the state of a hibernate entity.
  * All values for the entity should be updated from the assign*IfDifferent method of this class to track the state and
  * automatically update the validFrom and storedFrom fields.
+ * <p>
+ * An existing entity is only copied for its audit row when it is first changed, so that entities which are created
+ * or aren't changed by a message are never copied.
  * @param <T> Hibernate Entity type that has validFrom and storedFrom fields.
  * @param <A> The AuditEntity Type
  */
@@ -28,7 +31,10 @@ public class RowState<T extends TemporalCore<T, A>, A extends AuditCore> {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private T entity;
-    private final T originalEntity;
+    /**
+     * Copy of the entity before its first change, null until it has been changed.
+     */
+    private T originalEntity;
     private final boolean entityCreated;
     private final Instant newValidFrom;
     private final Instant newStoredFrom;
@@ -45,7 +51,6 @@ public class RowState<T extends TemporalCore<T, A>, A extends AuditCore> {
         this.newValidFrom = newValidFrom;
         this.newStoredFrom = newStoredFrom;
         this.entityCreated = entityCreated;
-        this.originalEntity = entity.copy();
     }
 
     /**
@@ -116,20 +121,6 @@ public class RowState<T extends TemporalCore<T, A>, A extends AuditCore> {
         assignIfDifferent(dateTime, currentValue, setter);
     }
 
-    /**
-     * Assign new byte array value if different.
-     * Adds in arrays equal check before assigning if different.
-     * @param newValue     new value
-     * @param currentValue current value
-     * @param setter       setter to use if value should be updated
-     */
-    public void assignInterchangeValue(InterchangeValue<byte[]> newValue, byte[] currentValue, Consumer<byte[]> setter) {
-        if (newValue.isUnknown() || Arrays.equals(newValue.get(), currentValue)) {
-            return;
-        }
-        assignIfDifferent(newValue.get(), currentValue, setter);
-    }
-
     /**
      * If new value is different assign from InterchangeValue to a setter taking the same type.
      * @param newValue     new value
@@ -156,6 +147,9 @@ public class RowState<T extends TemporalCore<T, A>, A extends AuditCore> {
         if (Objects.equals(newValue, currentValue)) {
             return false;
         }
+        if (!entityCreated && originalEntity == null) {
+            originalEntity = entity.copy();
+        }
         entityUpdated = true;
         setter.accept(newValue);
         return true;
@@ -198,6 +192,26 @@ public class RowState<T extends TemporalCore<T, A>, A extends AuditCore> {
         }
     }
 
+    /**
+     * Add entity to be saved if it is created, along with an auditlog if the entity has been updated, setting stored from and valid from
+     * if either conditions are true.
+     * <p>
+     * Allows the caller to save many entities of the same type together, rather than one at a time.
+     * @param entitiesToSave entities that the caller will save
+     * @param auditsToSave   auditlogs that the caller will save
+     */
+    public void addEntityOrAuditLogIfRequired(Collection<T> entitiesToSave, Collection<A> auditsToSave) {
+        if (!entityCreated && !entityUpdated) {
+            return;
+        }
+        entity.setStoredFrom(newStoredFrom);
+        entity.setValidFrom(newValidFrom);
+        entitiesToSave.add(entity);
+        if (!entityCreated) {
+            auditsToSave.add(originalEntity.createAuditEntity(newValidFrom, newStoredFrom));
+        }
+    }
+
     /**
      * Convenience method to allow assignment of fields which should always be added to if currently null in database.
      * If a value exists, then should only update the value if the message is newer.
@@ -0,0 +1,313 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.rits.inform.informdb.annotation.TimePartitioned;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.EntityType;
+import java.sql.DatabaseMetaData;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range partitions the tables of entities marked with {@link TimePartitioned} by month, only on postgres 11 or later.
+ * <p>
+ * Hibernate creates each table as a normal table, which is converted to a partitioned table on startup:
+ * <ul>
+ * <li>The existing table is renamed with a _legacy suffix and becomes the partition for all rows before the first month
+ * boundary after its latest row (or the current month if that is later), so that no rows are moved.
+ * <li>Its indexes are recreated on the partitioned table with their original names, so that hibernate finds them,
+ * along with an index on the id as the primary key can't be kept.
+ * <li>Rows with no value in the partition column, or after the last monthly partition, go to a _default partition.
+ * </ul>
+ * Monthly partitions are created from the end of the legacy partition, or the current month if that is later,
+ * up to the months ahead of the current month on startup and then every day.
+ * Indexes on the partitioned table are created on each new partition by postgres.
+ */
+@Component
+@ConditionalOnProperty(name = "core.partitioning.enabled", havingValue = "true")
+public class TablePartitioning {
+    private static final Logger logger = LoggerFactory.getLogger(TablePartitioning.class);
+    private static final int MINIMUM_POSTGRES_VERSION = 11;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final int monthsAhead;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "table-partitioning");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param jdbcTemplate         to run DDL statements
+     * @param transactionManager   to convert each table in a single transaction
+     * @param entityManagerFactory to find the tables and columns of partitioned entities
+     * @param monthsAhead          number of monthly partitions to create after the current month
+     * @throws IllegalArgumentException if months ahead is less than 1
+     */
+    public TablePartitioning(
+            JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory,
+            @Value("${core.partitioning.months-ahead:3}") int monthsAhead) {
+        if (monthsAhead < 1) {
+            throw new IllegalArgumentException("core.partitioning.months-ahead must be at least 1");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManagerFactory = entityManagerFactory;
+        this.monthsAhead = monthsAhead;
+    }
+
+    /**
+     * Convert tables and create partitions before any messages are processed, then keep creating partitions every day.
+     */
+    @PostConstruct
+    void start() {
+        if (!isSupportedDatabase()) {
+            logger.warn("Table partitioning needs postgres {} or later, tables will not be partitioned", MINIMUM_POSTGRES_VERSION);
+            return;
+        }
+        List<PartitionedTable> tables = findPartitionedTables();
+        for (PartitionedTable table : tables) {
+            try {
+                convertIfRequired(table);
+            } catch (DataAccessException e) {
+                logger.error("Could not convert {} to a partitioned table, it will not be partitioned", table.name, e);
+            }
+        }
+        createMonthlyPartitions(tables);
+        scheduler.scheduleAtFixedRate(() -> createMonthlyPartitions(tables), 1, 1, TimeUnit.DAYS);
+    }
+
+    /**
+     * Stop creating partitions.
+     */
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private boolean isSupportedDatabase() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            return "PostgreSQL".equals(metaData.getDatabaseProductName()) && metaData.getDatabaseMajorVersion() >= MINIMUM_POSTGRES_VERSION;
+        }));
+    }
+
+    /**
+     * @return table and partition column of each entity marked as {@link TimePartitioned}
+     */
+    private List<PartitionedTable> findPartitionedTables() {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        List<PartitionedTable> tables = new ArrayList<>();
+        for (EntityType<?> entity : sessionFactory.getMetamodel().getEntities()) {
+            TimePartitioned timePartitioned = entity.getJavaType().getAnnotation(TimePartitioned.class);
+            if (timePartitioned == null) {
+                continue;
+            }
+            AbstractEntityPersister persister = (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(entity.getJavaType());
+            tables.add(new PartitionedTable(
+                    persister.getTableName(),
+                    persister.getPropertyColumnNames(timePartitioned.value())[0],
+                    persister.getIdentifierColumnNames()[0]));
+        }
+        return tables;
+    }
+
+    /**
+     * Convert a table to a partitioned table if it isn't one already, keeping the existing table as its first partition.
+     * @param table table to convert
+     */
+    private void convertIfRequired(PartitionedTable table) {
+        if (isPartitioned(table)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute(String.format("LOCK TABLE %s IN ACCESS EXCLUSIVE MODE", table.name));
+            Timestamp latest = jdbcTemplate.queryForObject(String.format("SELECT max(%s) FROM %s", table.column, table.name), Timestamp.class);
+            LocalDate cutover = legacyUpperBound(latest == null ? null : latest.toInstant(), startOfMonth(0));
+            logger.info("Converting {} to a partitioned table, existing rows before {} are kept in {}", table.name, cutover, table.legacyName());
+            // indexes backing a primary key or unique constraint can't be created on a partitioned table without the partition column
+            List<Map<String, Object>> indexes = jdbcTemplate.queryForList(
+                    "SELECT i.relname AS name, pg_get_indexdef(i.oid) AS definition FROM pg_index x JOIN pg_class i ON i.oid = x.indexrelid"
+                            + " WHERE x.indrelid = to_regclass(?) AND NOT x.indisunique", table.name);
+            List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList(
+                    "SELECT conname AS name, pg_get_constraintdef(oid) AS definition FROM pg_constraint"
+                            + " WHERE conrelid = to_regclass(?) AND contype = 'f'", table.name);
+
+            jdbcTemplate.execute(String.format("ALTER TABLE %s RENAME TO %s", table.name, unqualified(table.legacyName())));
+            for (Map<String, Object> index : indexes) {
+                String indexName = (String) index.get("name");
+                jdbcTemplate.execute(String.format("ALTER INDEX %s RENAME TO %s_legacy", table.qualify(indexName), indexName));
+            }
+
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS) PARTITION BY RANGE (%s)", table.name, table.legacyName(), table.column));
+            for (Map<String, Object> foreignKey : foreignKeys) {
+                jdbcTemplate.execute(String.format(
+                        "ALTER TABLE %s ADD CONSTRAINT %s %s", table.name, foreignKey.get("name"), foreignKey.get("definition")));
+            }
+            jdbcTemplate.execute(attachLegacyPartitionSql(table, cutover));
+            jdbcTemplate.execute(String.format("CREATE TABLE %s_default PARTITION OF %s DEFAULT", table.name, table.name));
+
+            // definitions were taken before renaming, so they create the index on the partitioned table with the original name
+            for (Map<String, Object> index : indexes) {
+                jdbcTemplate.execute((String) index.get("definition"));
+            }
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX %s_%s ON %s (%s)", unqualified(table.name), table.idColumn, table.name, table.idColumn));
+        });
+    }
+
+    private boolean isPartitioned(PartitionedTable table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?))", Boolean.class, table.name));
+    }
+
+    /**
+     * @param table partitioned table
+     * @return exclusive upper bound of the legacy partition, or null if the table has no legacy partition
+     */
+    private LocalDate findLegacyUpperBound(PartitionedTable table) {
+        // postgres parses the bound back from the partition expression, so it doesn't depend on the session time zone
+        Timestamp bound = jdbcTemplate.queryForObject(
+                "SELECT CAST(substring(pg_get_expr(relpartbound, oid) FROM 'TO \\(''([^'']+)''\\)') AS timestamptz)"
+                        + " FROM pg_class WHERE oid = to_regclass(?) AND relispartition", Timestamp.class, table.legacyName());
+        return bound == null ? null : bound.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * Create the monthly partitions after the legacy partition up to the months ahead of the current month that don't exist yet.
+     * A partition can't be created if the default partition already has rows for its month, these are logged and skipped.
+     * @param tables tables to create partitions for
+     */
+    private void createMonthlyPartitions(List<PartitionedTable> tables) {
+        for (PartitionedTable table : tables) {
+            if (!isPartitioned(table)) {
+                continue;
+            }
+            LocalDate legacyUpperBound;
+            try {
+                legacyUpperBound = findLegacyUpperBound(table);
+            } catch (DataAccessException e) {
+                logger.error("Could not find the end of the legacy partition of {}, no partitions will be created", table.name, e);
+                continue;
+            }
+            for (LocalDate start : monthsToCreate(legacyUpperBound, startOfMonth(0), monthsAhead)) {
+                try {
+                    jdbcTemplate.execute(monthlyPartitionSql(table, start));
+                } catch (DataAccessException e) {
+                    logger.error("Could not create partition {}, its rows will stay in the default partition", table.partitionName(start), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param latest       latest value of the partition column in the existing table, null if it has no rows
+     * @param currentMonth start of the current month
+     * @return exclusive upper bound for the legacy partition, the first month boundary after the latest value
+     * or the current month if that is later
+     */
+    static LocalDate legacyUpperBound(Instant latest, LocalDate currentMonth) {
+        if (latest == null) {
+            return currentMonth;
+        }
+        LocalDate afterLatest = latest.atZone(ZoneOffset.UTC).toLocalDate().withDayOfMonth(1).plusMonths(1);
+        return afterLatest.isAfter(currentMonth) ? afterLatest : currentMonth;
+    }
+
+    /**
+     * @param legacyUpperBound exclusive upper bound of the legacy partition, null if there isn't one
+     * @param currentMonth     start of the current month
+     * @param monthsAhead      number of months after the current month to create partitions for
+     * @return start of each month that should have a partition, which doesn't overlap the legacy partition
+     */
+    static List<LocalDate> monthsToCreate(LocalDate legacyUpperBound, LocalDate currentMonth, int monthsAhead) {
+        LocalDate start = legacyUpperBound != null && legacyUpperBound.isAfter(currentMonth) ? legacyUpperBound : currentMonth;
+        LocalDate end = currentMonth.plusMonths(monthsAhead);
+        List<LocalDate> months = new ArrayList<>();
+        for (LocalDate month = start; !month.isAfter(end); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        return months;
+    }
+
+    static String attachLegacyPartitionSql(PartitionedTable table, LocalDate upperBound) {
+        return String.format("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM (MINVALUE) TO ('%s')",
+                table.name, table.legacyName(), partitionBound(upperBound));
+    }
+
+    static String monthlyPartitionSql(PartitionedTable table, LocalDate start) {
+        return String.format("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                table.partitionName(start), table.name, partitionBound(start), partitionBound(start.plusMonths(1)));
+    }
+
+    private static LocalDate startOfMonth(int monthsFromNow) {
+        return LocalDate.now(ZoneOffset.UTC).withDayOfMonth(1).plusMonths(monthsFromNow);
+    }
+
+    private static String partitionBound(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+    }
+
+    private static String unqualified(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Table of an entity, which may be qualified with the default schema, and the columns that it is partitioned by and identified by.
+     */
+    static final class PartitionedTable {
+        private final String name;
+        private final String column;
+        private final String idColumn;
+
+        PartitionedTable(String name, String column, String idColumn) {
+            this.name = name;
+            this.column = column;
+            this.idColumn = idColumn;
+        }
+
+        String legacyName() {
+            return name + "_legacy";
+        }
+
+        String partitionName(LocalDate start) {
+            return name + start.format(PARTITION_SUFFIX);
+        }
+
+        /**
+         * @param relation name of a relation in the same schema as the table
+         * @return relation name qualified in the same way as the table
+         */
+        String qualify(String relation) {
+            int lastDot = name.lastIndexOf('.');
+            return lastDot < 0 ? relation : name.substring(0, lastDot + 1) + relation;
+        }
+    }
+}
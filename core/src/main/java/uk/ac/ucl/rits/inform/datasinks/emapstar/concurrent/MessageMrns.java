@@ -0,0 +1,74 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent;
+
+import uk.ac.ucl.rits.inform.interchange.AdvanceDecisionMessage;
+import uk.ac.ucl.rits.inform.interchange.ConsultRequest;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.PatientConditionMessage;
+import uk.ac.ucl.rits.inform.interchange.ResearchOptOut;
+import uk.ac.ucl.rits.inform.interchange.adt.AdtMessage;
+import uk.ac.ucl.rits.inform.interchange.adt.PreviousIdentifiers;
+import uk.ac.ucl.rits.inform.interchange.adt.SwapLocations;
+import uk.ac.ucl.rits.inform.interchange.form.FormMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Determines which patients, identified by MRN, an interchange message affects.
+ */
+public final class MessageMrns {
+
+    private MessageMrns() {}
+
+    /**
+     * Get all MRNs that processing a message could modify.
+     * <p>
+     * Most messages affect a single MRN, but merges, moving visit information, changes of identifiers and swapping
+     * locations also affect a second MRN. Messages that don't relate to a patient (e.g. metadata) have no MRNs.
+     * @param msg interchange message
+     * @return unique, non-blank MRNs for the message, empty if the message doesn't relate to a patient
+     */
+    public static List<String> of(EmapOperationMessage msg) {
+        List<String> mrns = new ArrayList<>(2);
+        addIfPresent(mrns, getPrimaryMrn(msg));
+        if (msg instanceof PreviousIdentifiers) {
+            addIfPresent(mrns, ((PreviousIdentifiers) msg).getPreviousMrn());
+        }
+        if (msg instanceof SwapLocations) {
+            addIfPresent(mrns, ((SwapLocations) msg).getOtherMrn());
+        }
+        return mrns;
+    }
+
+    private static String getPrimaryMrn(EmapOperationMessage msg) {
+        if (msg instanceof AdtMessage) {
+            return ((AdtMessage) msg).getMrn();
+        } else if (msg instanceof Flowsheet) {
+            return ((Flowsheet) msg).getMrn();
+        } else if (msg instanceof FlowsheetBatch) {
+            return ((FlowsheetBatch) msg).getMrn();
+        } else if (msg instanceof LabOrderMsg) {
+            return ((LabOrderMsg) msg).getMrn();
+        } else if (msg instanceof PatientConditionMessage) {
+            return ((PatientConditionMessage) msg).getMrn();
+        } else if (msg instanceof ConsultRequest) {
+            return ((ConsultRequest) msg).getMrn();
+        } else if (msg instanceof AdvanceDecisionMessage) {
+            return ((AdvanceDecisionMessage) msg).getMrn();
+        } else if (msg instanceof ResearchOptOut) {
+            return ((ResearchOptOut) msg).getMrn();
+        } else if (msg instanceof FormMsg) {
+            return ((FormMsg) msg).getMrn();
+        }
+        return null;
+    }
+
+    private static void addIfPresent(List<String> mrns, String mrn) {
+        if (mrn != null && !mrn.isBlank() && !mrns.contains(mrn)) {
+            mrns.add(mrn);
+        }
+    }
+}
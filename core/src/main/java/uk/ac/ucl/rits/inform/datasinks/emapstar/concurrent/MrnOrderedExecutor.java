@@ -0,0 +1,105 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a pool of workers, while making sure that tasks sharing an MRN run one at a time, in the order in which
+ * they were submitted.
+ * <p>
+ * Tasks must all be submitted from a single thread. Before a task is handed to a worker, the submitting thread
+ * acquires an {@link MrnLock} on all of the task's MRNs, which the worker releases once the task has finished. So a task
+ * is only started once every earlier task for any of its MRNs is complete, while tasks for other patients run in
+ * parallel. Tasks with no MRNs can affect any patient, so they are run on the submitting thread once all workers are idle.
+ * <p>
+ * Because the submitting thread is the only one to acquire locks, it can hold locks for several tasks at once without
+ * risk of deadlock.
+ */
+public class MrnOrderedExecutor implements AutoCloseable {
+    private final MrnLock mrnLock = new MrnLock();
+    private final ExecutorService workers;
+    private final Semaphore idleWorkers;
+    private final int workerCount;
+
+    /**
+     * @param workerCount number of tasks that can run at once
+     * @throws IllegalArgumentException if workerCount is less than 1
+     */
+    public MrnOrderedExecutor(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be at least 1");
+        }
+        this.workerCount = workerCount;
+        idleWorkers = new Semaphore(workerCount);
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(
+                workerCount, runnable -> new Thread(runnable, "mrn-worker-" + threadNumber.incrementAndGet()));
+    }
+
+    /**
+     * Run a task once all earlier tasks sharing any of its MRNs have completed, blocking until it can be started.
+     * @param mrns MRNs that the task affects, if empty then the task is run on the calling thread once all workers are idle
+     * @param task the task to run, should handle its own exceptions
+     * @throws InterruptedException if interrupted while waiting for earlier tasks
+     */
+    public void execute(Collection<String> mrns, Runnable task) throws InterruptedException {
+        if (mrns.isEmpty()) {
+            idleWorkers.acquire(workerCount);
+            try {
+                task.run();
+            } finally {
+                idleWorkers.release(workerCount);
+            }
+            return;
+        }
+
+        List<String> lockedMrns = new ArrayList<>(mrns);
+        mrnLock.acquire(lockedMrns);
+        try {
+            idleWorkers.acquire();
+        } catch (InterruptedException e) {
+            mrnLock.release(lockedMrns);
+            throw e;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    mrnLock.release(lockedMrns);
+                    idleWorkers.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mrnLock.release(lockedMrns);
+            idleWorkers.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Block until all submitted tasks have completed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitIdle() throws InterruptedException {
+        idleWorkers.acquire(workerCount);
+        idleWorkers.release(workerCount);
+    }
+
+    /**
+     * Stop accepting new tasks and wait for running tasks to complete.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
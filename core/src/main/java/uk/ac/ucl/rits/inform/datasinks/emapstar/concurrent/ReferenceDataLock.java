@@ -0,0 +1,86 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Stops messages for different MRNs that are processed in parallel from creating the same reference data
+ * (e.g. locations, observation types or lab test definitions) twice, as these tables have no unique constraints.
+ * <p>
+ * Reference data is nearly always found, so the lock is only taken when it needs to be created. The lock is then held
+ * until the current transaction completes, so that other workers see the new row when they look for it again.
+ * A worker that waits too long for the lock fails its message, rather than risk deadlocking with a database lock
+ * held by the worker creating reference data.
+ */
+@Component
+public class ReferenceDataLock {
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Find reference data, creating it while holding the lock if it still doesn't exist.
+     * @param find   finds the existing reference data
+     * @param create creates the reference data, called at most once
+     * @param <T>    type of reference data, or its row state
+     * @return existing or created reference data
+     * @throws IllegalStateException if the lock couldn't be acquired in time
+     */
+    public <T> T findOrCreate(Supplier<Optional<T>> find, Supplier<T> create) {
+        return findOrCreate(find, find, create);
+    }
+
+    /**
+     * Find reference data, creating it while holding the lock if it still doesn't exist.
+     * @param find         finds the existing reference data, may use a cache
+     * @param findUncached finds the existing reference data once the lock is held, must not use a cache of missing values
+     * @param create       creates the reference data, called at most once
+     * @param <T>          type of reference data, or its row state
+     * @return existing or created reference data
+     * @throws IllegalStateException if the lock couldn't be acquired in time
+     */
+    public <T> T findOrCreate(Supplier<Optional<T>> find, Supplier<Optional<T>> findUncached, Supplier<T> create) {
+        Optional<T> existing = find.get();
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        if (lock.isHeldByCurrentThread()) {
+            // no other worker can have created it since the lock was acquired, but a cached result may be older than that
+            return find == findUncached ? create.get() : findUncached.get().orElseGet(create);
+        }
+        acquire();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                return findUncached.get().orElseGet(create);
+            } finally {
+                lock.unlock();
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+        // another worker may have created it while waiting for the lock
+        return findUncached.get().orElseGet(create);
+    }
+
+    private void acquire() {
+        try {
+            if (!lock.tryLock(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(String.format(
+                        "Waited more than %d seconds for another worker to finish creating reference data", TIMEOUT_SECONDS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to create reference data", e);
+        }
+    }
+}
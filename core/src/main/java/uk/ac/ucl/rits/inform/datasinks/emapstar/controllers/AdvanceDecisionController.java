@@ -6,6 +6,7 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.decisions.AdvanceDecisionAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.decisions.AdvanceDecisionRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.decisions.AdvanceDecisionTypeRepository;
@@ -145,12 +146,15 @@ public class AdvanceDecisionController {
 class AdvanceDecisionCache {
     private static final Logger logger = LoggerFactory.getLogger(AdvanceDecisionCache.class);
     private final AdvanceDecisionTypeRepository advanceDecisionTypeRepo;
+    private final ReferenceDataLock referenceDataLock;
 
     /**
      * @param advanceDecisionTypeRepo Repository with search functionality for advanced decisions types.
+     * @param referenceDataLock       Stops advance decision types being created twice by parallel workers.
      */
-    AdvanceDecisionCache(AdvanceDecisionTypeRepository advanceDecisionTypeRepo) {
+    AdvanceDecisionCache(AdvanceDecisionTypeRepository advanceDecisionTypeRepo, ReferenceDataLock referenceDataLock) {
         this.advanceDecisionTypeRepo = advanceDecisionTypeRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
 
@@ -163,9 +167,9 @@ class AdvanceDecisionCache {
      */
     @Cacheable(value = "advanceDecisionType", key = "#msg.advanceCareCode")
     public AdvanceDecisionType getOrCreateAdvancedDecisionType(AdvanceDecisionMessage msg, Instant storedFrom) {
-        return advanceDecisionTypeRepo
-                .findByCareCode(msg.getAdvanceCareCode())
-                .orElseGet(() -> createAndSaveNewType(msg, storedFrom));
+        return referenceDataLock.findOrCreate(
+                () -> advanceDecisionTypeRepo.findByCareCode(msg.getAdvanceCareCode()),
+                () -> createAndSaveNewType(msg, storedFrom));
     }
 
     /**
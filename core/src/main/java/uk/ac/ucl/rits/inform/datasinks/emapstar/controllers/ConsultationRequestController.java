@@ -6,7 +6,9 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.AuditedBulkDelete;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.ConsultationRequestAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.ConsultationRequestRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.ConsultationTypeAuditRepository;
@@ -21,6 +23,7 @@ import uk.ac.ucl.rits.inform.interchange.ConsultRequest;
 
 import javax.annotation.Resource;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -40,6 +43,7 @@ public class ConsultationRequestController {
     private final ConsultationTypeAuditRepository consultationTypeAuditRepo;
     private final ConsultationRequestAuditRepository consultationRequestAuditRepo;
     private final QuestionController questionController;
+    private final AuditedBulkDelete auditedBulkDelete;
 
     /**
      * Setting repositories holding information on consultation requests.
@@ -48,16 +52,18 @@ public class ConsultationRequestController {
      * @param consultationTypeAuditRepo    Audit for Consultation requests
      * @param consultationRequestAuditRepo Consultation request audit type repo
      * @param questionController           Question controller for questions in relation to consultation requests
+     * @param auditedBulkDelete            Audits and deletes consultation requests for many visits together
      */
     public ConsultationRequestController(
             ConsultationRequestRepository consultationRequestRepo, ConsultationRequestAuditRepository consultationRequestAuditRepo,
             ConsultationTypeRepository consultationTypeRepo, ConsultationTypeAuditRepository consultationTypeAuditRepo,
-            QuestionController questionController) {
+            QuestionController questionController, AuditedBulkDelete auditedBulkDelete) {
         this.consultationRequestRepo = consultationRequestRepo;
         this.consultationTypeRepo = consultationTypeRepo;
         this.consultationTypeAuditRepo = consultationTypeAuditRepo;
         this.consultationRequestAuditRepo = consultationRequestAuditRepo;
         this.questionController = questionController;
+        this.auditedBulkDelete = auditedBulkDelete;
     }
 
     /**
@@ -205,17 +211,14 @@ public class ConsultationRequestController {
 
     /**
      * Deletes consult requests that are older than the current message.
-     * @param visit             Hospital Visit Entity
-     * @param invalidationTime  Lab Battery
-     * @param deletionTime      Lab Sample entity
+     * @param visitIds          Hospital Visit ids
+     * @param invalidationTime  Time of the delete information message
+     * @param deletionTime      time that emap-core started processing the message.
      */
-    public void deleteConsultRequestsForVisit(HospitalVisit visit, Instant invalidationTime, Instant deletionTime) {
-        List<ConsultationRequest> consultationRequests = consultationRequestRepo.findAllByHospitalVisitId(visit);
-        for (var cr : consultationRequests) {
-            ConsultationRequestAudit auditEntity = cr.createAuditEntity(invalidationTime, deletionTime);
-            consultationRequestAuditRepo.save(auditEntity);
-            consultationRequestRepo.delete(cr);
-        }
+    public void deleteConsultRequestsForVisits(Collection<Long> visitIds, Instant invalidationTime, Instant deletionTime) {
+        List<Long> consultationRequestIds = auditedBulkDelete.findIds(ConsultationRequest.class, "hospitalVisitId", visitIds);
+        auditedBulkDelete.auditAndDelete(
+                ConsultationRequest.class, ConsultationRequestAudit.class, consultationRequestIds, invalidationTime, deletionTime);
     }
 }
 
@@ -225,12 +228,15 @@ public class ConsultationRequestController {
 @Component
 class ConsultCache {
     private final ConsultationTypeRepository consultationTypeRepo;
+    private final ReferenceDataLock referenceDataLock;
 
     /**
      * @param consultationTypeRepo Consultation request type repo
+     * @param referenceDataLock    Stops consultation types being created twice by parallel workers
      */
-    ConsultCache(ConsultationTypeRepository consultationTypeRepo) {
+    ConsultCache(ConsultationTypeRepository consultationTypeRepo, ReferenceDataLock referenceDataLock) {
         this.consultationTypeRepo = consultationTypeRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
 
@@ -245,9 +251,9 @@ class ConsultCache {
      */
     @Cacheable(value = "consultationType", key = "#code")
     public ConsultationType getOrCreateMinimalType(String code, Instant messageDatetime, Instant storedFrom) {
-        return consultationTypeRepo
-                .findByCode(code)
-                .orElseGet(() -> {
+        return referenceDataLock.findOrCreate(
+                () -> consultationTypeRepo.findByCode(code),
+                () -> {
                     ConsultationType type = new ConsultationType(code, messageDatetime, storedFrom);
                     return consultationTypeRepo.save(type);
                 });
@@ -5,6 +5,9 @@ import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 /**
  * @author Jeremy Stein
@@ -13,6 +16,8 @@ import java.time.Instant;
  * This was written with performing unfiltered, cascading deletes in mind
  * eg. delete an entire person's record.
  * It could be adapted to be more selective (but still be cascading).
+ * <p>
+ * Each table is audited and deleted for all the visits together, rather than one row at a time.
  */
 @Component
 public class DeletionController {
@@ -47,13 +52,17 @@ public class DeletionController {
      * @param deletionTime     time that emap-core started processing the message.
      */
     public void deleteVisitsAndDependentEntities(Iterable<HospitalVisit> visits, Instant invalidationTime, Instant deletionTime) {
-        for (HospitalVisit visit : visits) {
-            pendingAdtController.deletePlannedMovements(visit, invalidationTime, deletionTime);
-            labController.deleteLabOrdersForVisit(visit, invalidationTime, deletionTime);
-            consultationRequestController.deleteConsultRequestsForVisit(visit, invalidationTime, deletionTime);
-            formController.deleteFormsForVisit(visit, invalidationTime, deletionTime);
-            hospitalVisitController.deleteVisit(visit, invalidationTime, deletionTime);
+        List<Long> visitIds = StreamSupport.stream(visits.spliterator(), false)
+                .map(HospitalVisit::getHospitalVisitId)
+                .collect(Collectors.toList());
+        if (visitIds.isEmpty()) {
+            return;
         }
+        pendingAdtController.deletePlannedMovements(visitIds, invalidationTime, deletionTime);
+        labController.deleteLabOrdersForVisits(visitIds, invalidationTime, deletionTime);
+        consultationRequestController.deleteConsultRequestsForVisits(visitIds, invalidationTime, deletionTime);
+        formController.deleteFormsForVisits(visitIds, invalidationTime, deletionTime);
+        hospitalVisitController.deleteVisits(visitIds, invalidationTime, deletionTime);
     }
 
     /**
@@ -2,10 +2,11 @@ package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
 
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.AuditedBulkDelete;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms.FormAnswerAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms.FormAnswerRepository;
-import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms.FormAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms.FormDefinitionAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms.FormDefinitionRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms.FormQuestionAuditRepository;
@@ -15,6 +16,7 @@ import uk.ac.ucl.rits.inform.informdb.TemporalFrom;
 import uk.ac.ucl.rits.inform.informdb.forms.Form;
 import uk.ac.ucl.rits.inform.informdb.forms.FormAnswer;
 import uk.ac.ucl.rits.inform.informdb.forms.FormAnswerAudit;
+import uk.ac.ucl.rits.inform.informdb.forms.FormAudit;
 import uk.ac.ucl.rits.inform.informdb.forms.FormDefinition;
 import uk.ac.ucl.rits.inform.informdb.forms.FormDefinitionAudit;
 import uk.ac.ucl.rits.inform.informdb.forms.FormQuestion;
@@ -27,6 +29,7 @@ import uk.ac.ucl.rits.inform.interchange.form.FormMsg;
 import uk.ac.ucl.rits.inform.interchange.form.FormQuestionMetadataMsg;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -43,38 +46,38 @@ import java.util.stream.Collectors;
 @Transactional
 public class FormController {
     private final FormRepository formRepository;
-    private final FormAuditRepository formAuditRepository;
     private final FormAnswerRepository formAnswerRepository;
     private final FormAnswerAuditRepository formAnswerAuditRepository;
     private final FormDefinitionController formDefinitionController;
+    private final AuditedBulkDelete auditedBulkDelete;
 
     /**
      * @param formRepository            to store the instance of a form
-     * @param formAuditRepository       to store deletions of forms
      * @param formAnswerRepository      to store the answers from a form
      * @param formAnswerAuditRepository to audit changes to form answers
      * @param formDefinitionController  to process form and question definitions
+     * @param auditedBulkDelete         to audit and delete forms and their answers together
      */
     public FormController(
-            FormRepository formRepository,
-            FormAuditRepository formAuditRepository, FormAnswerRepository formAnswerRepository,
-            FormAnswerAuditRepository formAnswerAuditRepository, FormDefinitionController formDefinitionController) {
+            FormRepository formRepository, FormAnswerRepository formAnswerRepository,
+            FormAnswerAuditRepository formAnswerAuditRepository, FormDefinitionController formDefinitionController,
+            AuditedBulkDelete auditedBulkDelete) {
         this.formRepository = formRepository;
-        this.formAuditRepository = formAuditRepository;
         this.formAnswerRepository = formAnswerRepository;
         this.formAnswerAuditRepository = formAnswerAuditRepository;
         this.formDefinitionController = formDefinitionController;
+        this.auditedBulkDelete = auditedBulkDelete;
     }
 
     /**
-     * Delete all form data for a given hospital visit.
-     * @param visit            hospital visit to query on
+     * Delete all form data for the given hospital visits.
+     * @param visitIds         ids of the hospital visits to query on
      * @param invalidationTime Time of the delete information message
      * @param deletionTime     time that emap-core started processing the message.
      */
-    public void deleteFormsForVisit(HospitalVisit visit, Instant invalidationTime, Instant deletionTime) {
-        List<Form> allFormsForVisit = formRepository.findAllByHospitalVisitId(visit);
-        deleteForms(allFormsForVisit, invalidationTime, deletionTime);
+    public void deleteFormsForVisits(Collection<Long> visitIds, Instant invalidationTime, Instant deletionTime) {
+        List<Long> formIds = auditedBulkDelete.findIds(Form.class, "hospitalVisitId", visitIds);
+        deleteForms(formIds, invalidationTime, deletionTime);
     }
 
     /**
@@ -84,21 +87,15 @@ public class FormController {
      * @param deletionTime     time that emap-core started processing the message.
      */
     public void deleteFormsForMrn(Mrn mrn, Instant invalidationTime, Instant deletionTime) {
-        List<Form> allFormsForMrn = formRepository.findAllByMrnIdAndValidFromBefore(mrn, invalidationTime);
-        deleteForms(allFormsForMrn, invalidationTime, deletionTime);
+        List<Long> formIds = formRepository.findIdsByMrnIdAndValidFromBefore(mrn, invalidationTime);
+        deleteForms(formIds, invalidationTime, deletionTime);
     }
 
 
-    private void deleteForms(Iterable<Form> allFormsForVisit, Instant invalidationTime, Instant deletionTime) {
-        for (Form form : allFormsForVisit) {
-            List<FormAnswer> formAnswers = form.getFormAnswers();
-            for (FormAnswer ans : formAnswers) {
-                formAnswerAuditRepository.save(ans.createAuditEntity(invalidationTime, deletionTime));
-            }
-            formAnswerRepository.deleteAll(formAnswers);
-            formAuditRepository.save(form.createAuditEntity(invalidationTime, deletionTime));
-        }
-        formRepository.deleteAll(allFormsForVisit);
+    private void deleteForms(Collection<Long> formIds, Instant invalidationTime, Instant deletionTime) {
+        List<Long> formAnswerIds = auditedBulkDelete.findIds(FormAnswer.class, "formId", formIds);
+        auditedBulkDelete.auditAndDelete(FormAnswer.class, FormAnswerAudit.class, formAnswerIds, invalidationTime, deletionTime);
+        auditedBulkDelete.auditAndDelete(Form.class, FormAudit.class, formIds, invalidationTime, deletionTime);
     }
 
     /**
@@ -224,6 +221,7 @@ class FormDefinitionController {
     private final FormDefinitionAuditRepository formDefinitionAuditRepository;
     private final FormQuestionRepository formQuestionRepository;
     private final FormQuestionAuditRepository formQuestionAuditRepository;
+    private final ReferenceDataLock referenceDataLock;
 
     /**
      * Component to handle form and question definitions.
@@ -231,13 +229,16 @@ class FormDefinitionController {
      * @param formDefinitionAuditRepository to audit the changes to the form definition
      * @param formQuestionRepository        to store the questions in a form
      * @param formQuestionAuditRepository   to audit the changes to the form questions
+     * @param referenceDataLock             to stop parallel workers creating the same definition twice
      */
     FormDefinitionController(FormDefinitionRepository formDefinitionRepository, FormDefinitionAuditRepository formDefinitionAuditRepository,
-                             FormQuestionRepository formQuestionRepository, FormQuestionAuditRepository formQuestionAuditRepository) {
+                             FormQuestionRepository formQuestionRepository, FormQuestionAuditRepository formQuestionAuditRepository,
+                             ReferenceDataLock referenceDataLock) {
         this.formDefinitionRepository = formDefinitionRepository;
         this.formDefinitionAuditRepository = formDefinitionAuditRepository;
         this.formQuestionRepository = formQuestionRepository;
         this.formQuestionAuditRepository = formQuestionAuditRepository;
+        this.referenceDataLock = referenceDataLock;
     }
 
     void createOrUpdateFormMetadata(FormQuestionMetadataMsg formQuestionMetadataMsg, Instant validFrom, Instant storedFrom) {
@@ -259,9 +260,10 @@ class FormDefinitionController {
     }
 
     RowState<FormQuestion, FormQuestionAudit> getOrCreateFormQuestion(String formQuestionId, Instant storedFrom, Instant validFrom) {
-        return formQuestionRepository.findByInternalId(formQuestionId)
-                .map(fq -> new RowState<>(fq, validFrom, storedFrom, false))
-                .orElseGet(() -> {
+        return referenceDataLock.findOrCreate(
+                () -> formQuestionRepository.findByInternalId(formQuestionId)
+                        .map(fq -> new RowState<>(fq, validFrom, storedFrom, false)),
+                () -> {
                     FormQuestion newFq = formQuestionRepository.save(new FormQuestion(new TemporalFrom(validFrom, storedFrom), formQuestionId));
                     return new RowState<>(newFq, validFrom, storedFrom, true);
                 });
@@ -283,9 +285,10 @@ class FormDefinitionController {
 
 
     RowState<FormDefinition, FormDefinitionAudit> getOrCreateFormDefinition(String formSourceId, Instant storedFrom, Instant validFrom) {
-        return formDefinitionRepository.findByInternalId(formSourceId)
-                .map(fd -> new RowState<>(fd, validFrom, storedFrom, false))
-                .orElseGet(() -> {
+        return referenceDataLock.findOrCreate(
+                () -> formDefinitionRepository.findByInternalId(formSourceId)
+                        .map(fd -> new RowState<>(fd, validFrom, storedFrom, false)),
+                () -> {
                     FormDefinition newFd = formDefinitionRepository.save(new FormDefinition(new TemporalFrom(validFrom, storedFrom), formSourceId));
                     return new RowState<>(newFd, validFrom, storedFrom, true);
                 });
@@ -2,12 +2,16 @@ package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.AuditedBulkDelete;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.IncompatibleDatabaseStateException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageCancelledException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
@@ -22,6 +26,9 @@ import uk.ac.ucl.rits.inform.informdb.labs.LabBattery;
 import uk.ac.ucl.rits.inform.informdb.labs.LabBatteryAudit;
 import uk.ac.ucl.rits.inform.informdb.labs.LabBatteryElement;
 import uk.ac.ucl.rits.inform.informdb.labs.LabOrder;
+import uk.ac.ucl.rits.inform.informdb.labs.LabOrderAudit;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResult;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResultAudit;
 import uk.ac.ucl.rits.inform.informdb.labs.LabTestDefinition;
 import uk.ac.ucl.rits.inform.informdb.labs.LabTestDefinitionAudit;
 import uk.ac.ucl.rits.inform.interchange.lab.LabMetadataMsg;
@@ -30,9 +37,14 @@ import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
 
 import javax.annotation.Resource;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Main class that interacts with labs tables, either directly or through sub controllers.
@@ -48,15 +60,23 @@ public class LabController {
 
     private final LabOrderController labOrderController;
     private final LabResultController labResultController;
+    private final ReferenceDataLock referenceDataLock;
+    private final AuditedBulkDelete auditedBulkDelete;
 
 
     /**
      * @param labOrderController  controller for LabOrder tables
      * @param labResultController controller for LabResult tables
+     * @param referenceDataLock   stops test definitions being created twice by parallel workers
+     * @param auditedBulkDelete   audits and deletes lab orders and results for many visits together
      */
-    public LabController(LabOrderController labOrderController, LabResultController labResultController) {
+    public LabController(
+            LabOrderController labOrderController, LabResultController labResultController, ReferenceDataLock referenceDataLock,
+            AuditedBulkDelete auditedBulkDelete) {
         this.labOrderController = labOrderController;
         this.labResultController = labResultController;
+        this.referenceDataLock = referenceDataLock;
+        this.auditedBulkDelete = auditedBulkDelete;
     }
 
     /**
@@ -76,7 +96,7 @@ public class LabController {
         }
         Instant validFrom = msg.getStatusChangeTime();
 
-        LabBattery battery = labOrderController.getOrCreateLabBattery(
+        LabBattery battery = cache.getOrCreateLabBattery(
                 msg.getTestBatteryLocalCode(), msg.getTestBatteryCodingSystem(), validFrom, storedFrom);
         if (msg.getEpicCareOrderNumber().isDelete()) {
             labOrderController.processLabSampleAndDeleteLabOrder(mrn, battery, visit, msg, validFrom, storedFrom);
@@ -84,13 +104,15 @@ public class LabController {
         }
 
         LabOrder labOrder = labOrderController.processSampleAndOrderInformation(mrn, visit, battery, msg, validFrom, storedFrom);
+        cache.cacheExistingLabTestDefinitions(msg.getTestBatteryCodingSystem(), msg.getLabResultMsgs());
+        Map<Long, LabResult> existingResults = labResultController.getResultsByTestDefinitionId(labOrder);
         for (LabResultMsg result : msg.getLabResultMsgs()) {
             logger.trace("** Starting to process lab result {} from {}", result.getTestItemLocalCode(), msg.getTestBatteryCodingSystem());
 
             LabTestDefinition testDefinition = updateOrCreateTestDefinitionWithLabDepartment(
                     msg.getTestBatteryCodingSystem(), msg.getLabDepartment(), result.getTestItemLocalCode(), validFrom, storedFrom);
             cache.createLabBatteryElementIfNotExists(testDefinition, battery, storedFrom, validFrom);
-            labResultController.processResult(testDefinition, labOrder, result, validFrom, storedFrom);
+            labResultController.processResult(testDefinition, labOrder, result, existingResults, validFrom, storedFrom);
         }
     }
 
@@ -121,15 +143,23 @@ public class LabController {
 
     private RowState<LabTestDefinition, LabTestDefinitionAudit> getOrCreateLabTestDefinition(
             String labProvider, String testLabCode, Instant validFrom, Instant storedFrom) {
+        return referenceDataLock.findOrCreate(
+                () -> findExistingLabTestDefinition(labProvider, testLabCode)
+                        .map(testDefinition -> new RowState<>(testDefinition, validFrom, storedFrom, false)),
+                () -> {
+                    // doesn't exist in database or cache, so create a new one
+                    LabTestDefinition testDefinition = new LabTestDefinition(labProvider, testLabCode);
+                    logger.trace("Creating new Lab Test Definition {}", testDefinition);
+                    return new RowState<>(testDefinition, validFrom, storedFrom, true);
+                });
+    }
+
+    private Optional<LabTestDefinition> findExistingLabTestDefinition(String labProvider, String testLabCode) {
         try {
-            LabTestDefinition testDefinition = cache.findExistingLabTestDefinition(labProvider, testLabCode);
-            return new RowState<>(testDefinition, validFrom, storedFrom, false);
+            return Optional.of(cache.findExistingLabTestDefinition(labProvider, testLabCode));
         } catch (NoSuchElementException e) {
-            // doesn't exist in database or cache, so create a new one
             // shouldn't cache the row state, just the entity so having to do this using exception handling
-            LabTestDefinition testDefinition = new LabTestDefinition(labProvider, testLabCode);
-            logger.trace("Creating new Lab Test Definition {}", testDefinition);
-            return new RowState<>(testDefinition, validFrom, storedFrom, true);
+            return Optional.empty();
         }
     }
 
@@ -196,16 +226,16 @@ public class LabController {
 
     /**
      * Deletes lab orders that are older than the current message, along with tables which require orders.
-     * @param visit             Hospital Visit Entity
-     * @param invalidationTime  Lab Battery
-     * @param deletionTime      Lab Sample entity
+     * @param visitIds          Hospital Visit ids
+     * @param invalidationTime  Time of the delete information message
+     * @param deletionTime      time that emap-core started processing the message.
      */
-    public void deleteLabOrdersForVisit(HospitalVisit visit, Instant invalidationTime, Instant deletionTime) {
-        List<LabOrder> labOrders = labOrderController.getLabOrdersForVisit(visit);
-        for (var lo : labOrders) {
-            labResultController.deleteLabResultsForLabOrder(lo, invalidationTime, deletionTime);
-            labOrderController.deleteLabOrder(lo, invalidationTime, deletionTime);
-        }
+    public void deleteLabOrdersForVisits(Collection<Long> visitIds, Instant invalidationTime, Instant deletionTime) {
+        List<Long> labOrderIds = auditedBulkDelete.findIds(LabOrder.class, "hospitalVisitId", visitIds);
+        List<Long> labResultIds = auditedBulkDelete.findIds(LabResult.class, "labOrderId", labOrderIds);
+        // results must be deleted before the orders they reference
+        auditedBulkDelete.auditAndDelete(LabResult.class, LabResultAudit.class, labResultIds, invalidationTime, deletionTime);
+        auditedBulkDelete.auditAndDelete(LabOrder.class, LabOrderAudit.class, labOrderIds, invalidationTime, deletionTime);
     }
 }
 
@@ -215,11 +245,14 @@ public class LabController {
 @Component
 class LabCache {
     private static final Logger logger = LoggerFactory.getLogger(LabCache.class);
+    private static final String LAB_TEST_DEFINITION_CACHE = "labTestDefinition";
+    private final CacheManager cacheManager;
     private final LabTestDefinitionRepository labTestDefinitionRepo;
     private final LabTestDefinitionAuditRepository labTestDefinitionAuditRepo;
     private final LabBatteryElementRepository labBatteryElementRepo;
     private final LabBatteryRepository labBatteryRepository;
     private final LabBatteryAuditRepository labBatteryAuditRepository;
+    private final ReferenceDataLock referenceDataLock;
 
 
     /**
@@ -228,12 +261,18 @@ class LabCache {
      * @param labBatteryElementRepo      repository for LabBatteryElement
      * @param labBatteryRepository       repository for LabBattery
      * @param labBatteryAuditRepository  repository for LabBatteryAudit
+     * @param cacheManager               cache manager, to add test definitions to the cache in bulk
+     * @param referenceDataLock          stops batteries and battery elements being created twice by parallel workers
      */
     LabCache(LabTestDefinitionRepository labTestDefinitionRepo,
              LabTestDefinitionAuditRepository labTestDefinitionAuditRepo,
              LabBatteryElementRepository labBatteryElementRepo,
              LabBatteryRepository labBatteryRepository,
-             LabBatteryAuditRepository labBatteryAuditRepository) {
+             LabBatteryAuditRepository labBatteryAuditRepository,
+             CacheManager cacheManager,
+             ReferenceDataLock referenceDataLock) {
+        this.cacheManager = cacheManager;
+        this.referenceDataLock = referenceDataLock;
         this.labTestDefinitionRepo = labTestDefinitionRepo;
         this.labTestDefinitionAuditRepo = labTestDefinitionAuditRepo;
         this.labBatteryElementRepo = labBatteryElementRepo;
@@ -248,18 +287,45 @@ class LabCache {
      * @return LabTestDefinition entity
      * @throws NoSuchElementException if the test definition doesn't exist
      */
-    @Cacheable(value = "labTestDefinition", key = "{ #labProvider , #testLabCode }")
+    @Cacheable(value = LAB_TEST_DEFINITION_CACHE, key = "{ #labProvider , #testLabCode }")
     public LabTestDefinition findExistingLabTestDefinition(String labProvider, String testLabCode) {
         logger.trace("** Querying Lab test definition '{}' from labProvider '{}'", testLabCode, labProvider);
         return labTestDefinitionRepo.findByLabProviderAndTestLabCode(labProvider, testLabCode).orElseThrow();
     }
 
+    /**
+     * Add the existing test definitions for all results which aren't already cached, using a single query.
+     * <p>
+     * Results are then processed using the cache, instead of querying for each test definition in turn.
+     * @param labProvider battery coding system
+     * @param results     lab results from a lab order
+     */
+    public void cacheExistingLabTestDefinitions(String labProvider, Collection<LabResultMsg> results) {
+        Cache cache = cacheManager.getCache(LAB_TEST_DEFINITION_CACHE);
+        if (cache == null) {
+            return;
+        }
+        List<String> uncachedCodes = results.stream()
+                .map(LabResultMsg::getTestItemLocalCode)
+                .filter(Objects::nonNull)
+                .distinct()
+                .filter(code -> cache.get(Arrays.asList(labProvider, code)) == null)
+                .collect(Collectors.toList());
+        if (uncachedCodes.isEmpty()) {
+            return;
+        }
+        logger.trace("** Querying {} Lab test definitions from labProvider '{}'", uncachedCodes.size(), labProvider);
+        for (LabTestDefinition testDefinition : labTestDefinitionRepo.findAllByLabProviderAndTestLabCodeIn(labProvider, uncachedCodes)) {
+            cache.putIfAbsent(Arrays.asList(testDefinition.getLabProvider(), testDefinition.getTestLabCode()), testDefinition);
+        }
+    }
+
     /**
      * Save entity if require and update cache with the LabTestDefinition entity.
      * @param definitionState to save and then cache
      * @return testDefinition for the cache.
      */
-    @CachePut(value = "labTestDefinition", key = "{ #definitionState.entity.labProvider , #definitionState.entity.testLabCode }")
+    @CachePut(value = LAB_TEST_DEFINITION_CACHE, key = "{ #definitionState.entity.labProvider , #definitionState.entity.testLabCode }")
     public LabTestDefinition updateLabTestDefinitionCache(RowState<LabTestDefinition, LabTestDefinitionAudit> definitionState) {
         LabTestDefinition testDefinition = definitionState.getEntity();
         logger.trace("** Overwriting cache value for Lab test definition '{}' from labProvider '{}'",
@@ -268,6 +334,25 @@ class LabCache {
         return testDefinition;
     }
 
+    /**
+     * @param batteryCode  battery code
+     * @param codingSystem coding system that battery is defined by
+     * @param validFrom    most recent change to results
+     * @param storedFrom   time that star started processing the message
+     * @return lab battery
+     */
+    @Transactional
+    @Cacheable(value = "labBattery", key = "{ #batteryCode, #codingSystem }")
+    public LabBattery getOrCreateLabBattery(String batteryCode, String codingSystem, Instant validFrom, Instant storedFrom) {
+        return referenceDataLock.findOrCreate(
+                () -> labBatteryRepository.findByBatteryCodeAndLabProvider(batteryCode, codingSystem),
+                () -> {
+                    LabBattery labBattery = new LabBattery(batteryCode, codingSystem, validFrom, storedFrom);
+                    logger.trace("Creating new lab battery {}", labBattery);
+                    return labBatteryRepository.save(labBattery);
+                });
+    }
+
     /**
      * @param testDefinition test definition entity
      * @param battery        lab battery entity
@@ -278,9 +363,9 @@ class LabCache {
     @Cacheable(value = "labBatteryElement", key = "{ #testDefinition.labTestDefinitionId , #battery.labBatteryId }")
     public LabBatteryElement createLabBatteryElementIfNotExists(
             LabTestDefinition testDefinition, LabBattery battery, Instant validFrom, Instant storedFrom) {
-        return labBatteryElementRepo
-                .findByLabBatteryIdAndLabTestDefinitionId(battery, testDefinition)
-                .orElseGet(() -> {
+        return referenceDataLock.findOrCreate(
+                () -> labBatteryElementRepo.findByLabBatteryIdAndLabTestDefinitionId(battery, testDefinition),
+                () -> {
                     LabBatteryElement batteryElement = new LabBatteryElement(testDefinition, battery, validFrom, storedFrom);
                     logger.trace("Creating new Lab Test Battery Element {}", batteryElement);
                     return labBatteryElementRepo.save(batteryElement);
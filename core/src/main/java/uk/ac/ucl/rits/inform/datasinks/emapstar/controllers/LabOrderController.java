@@ -25,7 +25,6 @@ import uk.ac.ucl.rits.inform.informdb.labs.LabSampleAudit;
 import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
 
 import java.time.Instant;
-import java.util.List;
 import java.util.Optional;
 
 /**
@@ -66,24 +65,6 @@ public class LabOrderController {
         this.questionController = questionController;
     }
 
-    /**
-     * @param batteryCode  battery code
-     * @param codingSystem coding system that battery is defined by
-     * @param validFrom    most recent change to results
-     * @param storedFrom   time that star started processing the message
-     * @return lab battery
-     */
-    @Transactional
-    @Cacheable(value = "labBattery", key = "{ #batteryCode, #codingSystem }")
-    public LabBattery getOrCreateLabBattery(String batteryCode, String codingSystem, Instant validFrom, Instant storedFrom) {
-        return labBatteryRepo.findByBatteryCodeAndLabProvider(batteryCode, codingSystem)
-                .orElseGet(() -> {
-                    LabBattery labBattery = new LabBattery(batteryCode, codingSystem, validFrom, storedFrom);
-                    logger.trace("Creating new lab battery {}", labBattery);
-                    return labBatteryRepo.save(labBattery);
-                });
-    }
-
     /**
      * For Lab metadata, should know if an entity is created or already exists.
      * <p>
@@ -282,25 +263,4 @@ public class LabOrderController {
         logger.debug("Deleting LabOrder {}", labOrder);
         labOrderRepo.delete(labOrder);
     }
-
-    /**
-     * Returns all lab orders associated with a specific hospital visit.
-     * @param visit                 Hospital Visit Entity
-     * @return List of Lab Orders
-     */
-    public List<LabOrder> getLabOrdersForVisit(HospitalVisit visit) {
-        return labOrderRepo.findAllByHospitalVisitId(visit);
-    }
-
-    /**
-     * Deletes a single lab order.
-     * @param labOrder          Lab Order
-     * @param invalidationTime  Lab Battery
-     * @param deletionTime      Lab Sample entity
-     */
-    public void deleteLabOrder(LabOrder labOrder, Instant invalidationTime, Instant deletionTime) {
-        LabOrderAudit labOrderAudit = labOrder.createAuditEntity(invalidationTime, deletionTime);
-        labOrderAuditRepo.save(labOrderAudit);
-        labOrderRepo.delete(labOrder);
-    }
 }
@@ -0,0 +1,134 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultBlobRepository;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResultBlob;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
+import uk.ac.ucl.rits.inform.interchange.blob.FileSystemBlobStore;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * Stores binary lab result values in the LabResultBlob table, once for each distinct content.
+ * <p>
+ * Values can either be inline in the message, or a reference to a value that the hl7 reader has written to the shared blob store.
+ * <p>
+ * Values that are already stored are skipped, so that their content isn't read or sent to the database again.
+ * Another worker can still store the same value between this check and the insert, so the insert ignores a unique violation
+ * on the content hash and leaves the existing row as it is. The insert is made in a savepoint, so that the violation doesn't
+ * abort the transaction for the message on postgres.
+ */
+@Component
+class LabResultBlobs {
+    private static final Logger logger = LoggerFactory.getLogger(LabResultBlobs.class);
+    private static final String UNIQUE_VIOLATION = "23505";
+    private final LabResultBlobRepository labResultBlobRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final FileSystemBlobStore blobStore;
+    private final String insertSql;
+
+    /**
+     * @param labResultBlobRepo repository for LabResultBlob
+     * @param jdbcTemplate      to insert values in the current transaction
+     * @param entityManagerFactory to find the table and columns of LabResultBlob, including the default schema
+     * @param blobStorePath     directory shared with the hl7 reader's blob store, empty if the reader doesn't use one
+     */
+    LabResultBlobs(LabResultBlobRepository labResultBlobRepo, JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                   @Value("${core.blob-store.path:}") String blobStorePath) {
+        this.labResultBlobRepo = labResultBlobRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobStore = blobStorePath.isEmpty() ? null : new FileSystemBlobStore(Path.of(blobStorePath));
+        this.insertSql = buildInsert(entityManagerFactory);
+    }
+
+    /**
+     * The statement runs outside hibernate, so the table name is taken from the hibernate mapping to be qualified with the schema.
+     * @param entityManagerFactory entity manager factory
+     * @return SQL statement with the parameters content hash, content length and content
+     */
+    private static String buildInsert(EntityManagerFactory entityManagerFactory) {
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(LabResultBlob.class);
+        return String.format("INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)", persister.getTableName(),
+                persister.getIdentifierColumnNames()[0],
+                persister.getPropertyColumnNames("contentLength")[0],
+                persister.getPropertyColumnNames("content")[0]);
+    }
+
+    /**
+     * Make sure the binary value of a result is stored.
+     * @param resultMsg lab result message
+     * @return reference to the stored value, a delete if the value has been removed or unknown if the message has no binary value
+     * @throws RequiredDataMissingException if the referenced value can't be read from the blob store
+     */
+    InterchangeValue<BlobReference> storeValue(LabResultMsg resultMsg) throws RequiredDataMissingException {
+        InterchangeValue<BlobReference> reference = resultMsg.getByteValueReference();
+        if (reference.isSave()) {
+            if (!labResultBlobRepo.existsById(reference.get().getSha256())) {
+                insertIfAbsent(reference.get(), readFromBlobStore(reference.get()));
+            }
+            return reference;
+        }
+        InterchangeValue<byte[]> bytes = resultMsg.getByteValue();
+        if (!bytes.isSave()) {
+            return bytes.isDelete() ? InterchangeValue.delete() : InterchangeValue.unknown();
+        }
+        BlobReference inlineReference = BlobReference.of(bytes.get());
+        if (!labResultBlobRepo.existsById(inlineReference.getSha256())) {
+            insertIfAbsent(inlineReference, bytes.get());
+        }
+        return new InterchangeValue<>(inlineReference);
+    }
+
+    private byte[] readFromBlobStore(BlobReference reference) throws RequiredDataMissingException {
+        if (blobStore == null) {
+            throw new RequiredDataMissingException(
+                    String.format("Lab result references blob %s but core.blob-store.path is not set", reference.getSha256()));
+        }
+        try {
+            return blobStore.get(reference);
+        } catch (IOException e) {
+            throw new RequiredDataMissingException(String.format("Could not read blob %s: %s", reference.getSha256(), e.getMessage()));
+        }
+    }
+
+    private void insertIfAbsent(BlobReference reference, byte[] content) {
+        boolean created = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                insert.setString(1, reference.getSha256());
+                insert.setLong(2, reference.getLength());
+                insert.setBytes(3, content);
+                insert.executeUpdate();
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+                return false;
+            }
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+            return true;
+        }));
+        logger.trace(created ? "Created new Lab Result Blob {}" : "Lab Result Blob {} already exists", reference);
+    }
+}
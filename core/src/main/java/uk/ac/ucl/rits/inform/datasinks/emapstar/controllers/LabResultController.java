@@ -20,11 +20,16 @@ import uk.ac.ucl.rits.inform.informdb.labs.LabResultAudit;
 import uk.ac.ucl.rits.inform.informdb.labs.LabSensitivity;
 import uk.ac.ucl.rits.inform.informdb.labs.LabSensitivityAudit;
 import uk.ac.ucl.rits.inform.informdb.labs.LabTestDefinition;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
 import uk.ac.ucl.rits.inform.interchange.lab.LabIsolateMsg;
 import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
 
 import java.time.Instant;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Controller for LabResult specific information.
@@ -40,11 +45,13 @@ class LabResultController {
     private final LabIsolateAuditRepository labIsolateAuditRepo;
     private final LabSensitivityRepository labSensitivityRepo;
     private final LabSensitivityAuditRepository labSensitivityAuditRepo;
+    private final LabResultBlobs labResultBlobs;
 
     LabResultController(
             LabResultRepository labResultRepo, LabResultAuditRepository labResultAuditRepo,
             LabIsolateRepository labIsolateRepo, LabIsolateAuditRepository labIsolateAuditRepo,
-            LabSensitivityRepository labResultSensitivityRepo, LabSensitivityAuditRepository labSensitivityAuditRepo
+            LabSensitivityRepository labResultSensitivityRepo, LabSensitivityAuditRepository labSensitivityAuditRepo,
+            LabResultBlobs labResultBlobs
     ) {
         this.labResultRepo = labResultRepo;
         this.labResultAuditRepo = labResultAuditRepo;
@@ -52,12 +59,38 @@ class LabResultController {
         this.labIsolateAuditRepo = labIsolateAuditRepo;
         this.labSensitivityRepo = labResultSensitivityRepo;
         this.labSensitivityAuditRepo = labSensitivityAuditRepo;
+        this.labResultBlobs = labResultBlobs;
     }
 
+    /**
+     * Get all existing results for a lab order in a single query, so that each result in a message doesn't need its own query.
+     * @param labOrder lab order
+     * @return existing lab results for the order, by lab test definition id
+     */
+    Map<Long, LabResult> getResultsByTestDefinitionId(LabOrder labOrder) {
+        Map<Long, LabResult> results = new HashMap<>();
+        for (LabResult result : labResultRepo.findAllByLabOrderId(labOrder)) {
+            results.putIfAbsent(result.getLabTestDefinitionId().getLabTestDefinitionId(), result);
+        }
+        return results;
+    }
+
+    /**
+     * Update or create a lab result and its isolates.
+     * @param testDefinition  test definition for the result
+     * @param labOrder        lab order
+     * @param resultMsg       lab result msg
+     * @param existingResults results for the lab order from {@link #getResultsByTestDefinitionId}, new results are added to this
+     * @param validFrom       most recent change to results
+     * @param storedFrom      time that star encountered the message
+     * @throws RequiredDataMissingException If mime type not recognised
+     */
     @Transactional
-    public void processResult(LabTestDefinition testDefinition, LabOrder labOrder, LabResultMsg resultMsg, Instant validFrom, Instant storedFrom)
-            throws RequiredDataMissingException {
-        RowState<LabResult, LabResultAudit> labResultState = updateOrCreateLabResult(labOrder, testDefinition, resultMsg, validFrom, storedFrom);
+    public void processResult(
+            LabTestDefinition testDefinition, LabOrder labOrder, LabResultMsg resultMsg, Map<Long, LabResult> existingResults,
+            Instant validFrom, Instant storedFrom) throws RequiredDataMissingException {
+        RowState<LabResult, LabResultAudit> labResultState = updateOrCreateLabResult(
+                labOrder, testDefinition, resultMsg, existingResults, validFrom, storedFrom);
         // If lab isolate, update or create them
         LabIsolateMsg isolateMsg = resultMsg.getLabIsolate();
         if (isolateMsg != null && !validFrom.isBefore(labResultState.getEntity().getResultLastModifiedDatetime())) {
@@ -75,20 +108,20 @@ class LabResultController {
      * valueAsText stores the isolate name^text (can also be no growth like NG2^No growth after 2 days)
      * units stores the CFU for an isolate, culturing method for no growth
      * comment stores the clinical notes for the isolate
-     * @param labOrder       lab order
-     * @param testDefinition test definition
-     * @param result         lab result msg
-     * @param validFrom      most recent change to results
-     * @param storedFrom     time that star encountered the message
+     * @param labOrder        lab order
+     * @param testDefinition  test definition
+     * @param result          lab result msg
+     * @param existingResults results for the lab order by lab test definition id, a created result is added to this
+     * @param validFrom       most recent change to results
+     * @param storedFrom      time that star encountered the message
      * @return lab result wrapped in row state
      * @throws RequiredDataMissingException If mime type not recognised
      */
     private RowState<LabResult, LabResultAudit> updateOrCreateLabResult(
-            LabOrder labOrder, LabTestDefinition testDefinition, LabResultMsg result, Instant validFrom, Instant storedFrom)
-            throws RequiredDataMissingException {
-        RowState<LabResult, LabResultAudit> resultState;
-        resultState = labResultRepo
-                .findByLabOrderIdAndLabTestDefinitionId(labOrder, testDefinition)
+            LabOrder labOrder, LabTestDefinition testDefinition, LabResultMsg result, Map<Long, LabResult> existingResults,
+            Instant validFrom, Instant storedFrom) throws RequiredDataMissingException {
+        RowState<LabResult, LabResultAudit> resultState = Optional
+                .ofNullable(existingResults.get(testDefinition.getLabTestDefinitionId()))
                 .map(r -> new RowState<>(r, result.getResultTime(), storedFrom, false))
                 .orElseGet(() -> createLabResult(labOrder, testDefinition, result.getResultTime(), validFrom, storedFrom));
 
@@ -100,6 +133,7 @@ class LabResultController {
         updateLabResult(resultState, result);
 
         resultState.saveEntityOrAuditLogIfRequired(labResultRepo, labResultAuditRepo);
+        existingResults.putIfAbsent(testDefinition.getLabTestDefinitionId(), resultState.getEntity());
         return resultState;
     }
 
@@ -128,7 +162,7 @@ class LabResultController {
                 resultState.assignInterchangeValue(resultMsg.getStringValue(), labResult.getValueAsText(), labResult::setValueAsText);
                 break;
             case PDF:
-                resultState.assignInterchangeValue(resultMsg.getByteValue(), labResult.getValueAsBytes(), labResult::setValueAsBytes);
+                assignBinaryValue(resultState, labResultBlobs.storeValue(resultMsg));
                 break;
             case LAB_ISOLATE:
                 break;
@@ -142,6 +176,34 @@ class LabResultController {
     }
 
 
+    /**
+     * Binary values are compared by their hash, and the value itself is kept in the LabResultBlob table.
+     * <p>
+     * Results stored before the blob table hold the value inline, this is hashed to compare with the new value and is removed
+     * if the value changes.
+     * @param resultState  lab result row state
+     * @param newReference reference to the stored value from the message
+     */
+    private void assignBinaryValue(RowState<LabResult, LabResultAudit> resultState, InterchangeValue<BlobReference> newReference) {
+        if (newReference.isUnknown()) {
+            return;
+        }
+        LabResult labResult = resultState.getEntity();
+        BlobReference reference = newReference.isSave() ? newReference.get() : null;
+        String currentHash = labResult.getValueAsBytesHash();
+        if (currentHash == null && labResult.getValueAsBytes() != null) {
+            currentHash = BlobReference.of(labResult.getValueAsBytes()).getSha256();
+        }
+        String newHash = reference == null ? null : reference.getSha256();
+        if (Objects.equals(newHash, currentHash)) {
+            return;
+        }
+        resultState.assignIfDifferent(newHash, labResult.getValueAsBytesHash(), labResult::setValueAsBytesHash);
+        resultState.assignIfDifferent(
+                reference == null ? null : reference.getLength(), labResult.getValueAsBytesLength(), labResult::setValueAsBytesLength);
+        resultState.assignIfDifferent(null, labResult.getValueAsBytes(), labResult::setValueAsBytes);
+    }
+
     /**
      * Update or creat isolate, if isolate is changed then also update it's lab result's modified time.
      * @param labResultState result state
@@ -212,13 +274,4 @@ class LabResultController {
         return new RowState<>(sensitivity, validFrom, storedFrom, true);
     }
 
-    public void deleteLabResultsForLabOrder(LabOrder labOrder, Instant invalidationTime, Instant deletionTime) {
-        List<LabResult> labResults = labResultRepo.findAllByLabOrderId(labOrder);
-        for (var lr : labResults) {
-            LabResultAudit resultAudit = lr.createAuditEntity(invalidationTime, deletionTime);
-            labResultAuditRepo.save(resultAudit);
-            labResultRepo.delete(lr);
-        }
-    }
-
 }
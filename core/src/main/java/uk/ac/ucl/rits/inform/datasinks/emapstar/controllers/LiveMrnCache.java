@@ -0,0 +1,99 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Cache of MRN identifiers (mrn, nhsNumber) to the id of the MRN row that they resolve to and its live MRN id.
+ * <p>
+ * Entries found within a transaction are only visible to that transaction until it commits, and evicting the entries
+ * for an MRN row takes effect immediately and again once the transaction completes, see {@link TransactionalCache}.
+ */
+@Component
+public class LiveMrnCache {
+    private final TransactionalCache<Pair<String, String>, CachedMrn> cache;
+
+    /**
+     * @param maximumSize maximum number of identifiers to cache, 0 disables the cache
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public LiveMrnCache(@Value("${core.mrn-cache.size:100000}") long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("core.mrn-cache.size must not be negative");
+        }
+        cache = new TransactionalCache<>(maximumSize);
+    }
+
+    /**
+     * @param mrnString MRN
+     * @param nhsNumber NHS number
+     * @return cached MRN row id and live MRN id, if known
+     */
+    public Optional<CachedMrn> get(String mrnString, String nhsNumber) {
+        return cache.get(Pair.of(mrnString, nhsNumber));
+    }
+
+    /**
+     * @return value to pass to {@link #put} for an entry read from the database after this call
+     */
+    public long currentGeneration() {
+        return cache.currentGeneration();
+    }
+
+    /**
+     * Add an entry, visible to the rest of the current transaction and to everything else once it commits.
+     * @param mrnString      MRN
+     * @param nhsNumber      NHS number
+     * @param cachedMrn      MRN row id and live MRN id that the identifiers resolve to
+     * @param readGeneration {@link #currentGeneration()} from before the entry was read from the database
+     */
+    public void put(String mrnString, String nhsNumber, CachedMrn cachedMrn, long readGeneration) {
+        cache.put(Pair.of(mrnString, nhsNumber), cachedMrn, readGeneration);
+    }
+
+    /**
+     * Evict all entries for MRN rows, or for MRN rows that have one of these as their live MRN.
+     * @param mrnIds ids of MRN rows whose identifiers or live MRN have changed
+     */
+    public void evict(Collection<Long> mrnIds) {
+        if (mrnIds.isEmpty()) {
+            return;
+        }
+        Set<Long> evictedMrnIds = new HashSet<>(mrnIds);
+        cache.evictValues(cachedMrn -> cachedMrn.isFor(evictedMrnIds));
+    }
+
+    /**
+     * MRN row that identifiers resolve to, and its live MRN.
+     */
+    public static final class CachedMrn {
+        private final long mrnId;
+        private final long liveMrnId;
+
+        /**
+         * @param mrnId     id of the MRN row matching the identifiers
+         * @param liveMrnId id of the live MRN for that row
+         */
+        public CachedMrn(long mrnId, long liveMrnId) {
+            this.mrnId = mrnId;
+            this.liveMrnId = liveMrnId;
+        }
+
+        /**
+         * @return id of the live MRN
+         */
+        public long getLiveMrnId() {
+            return liveMrnId;
+        }
+
+        private boolean isFor(Collection<Long> mrnIds) {
+            return mrnIds.contains(mrnId) || mrnIds.contains(liveMrnId);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.IncompatibleDatabaseStateException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.locations.BedFacilityRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.locations.BedRepository;
@@ -48,6 +49,7 @@ public class LocationController {
     private static final Logger logger = LoggerFactory.getLogger(LocationController.class);
 
     private final LocationRepository locationRepo;
+    private final ReferenceDataLock referenceDataLock;
     @Resource
     private DepartmentController departmentController;
     @Resource
@@ -58,10 +60,12 @@ public class LocationController {
 
     /**
      * Interaction with hospital locations.
-     * @param locationRepo repository for Location
+     * @param locationRepo      repository for Location
+     * @param referenceDataLock stops locations being created twice by parallel workers
      */
-    public LocationController(LocationRepository locationRepo) {
+    public LocationController(LocationRepository locationRepo, ReferenceDataLock referenceDataLock) {
         this.locationRepo = locationRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
     /**
@@ -72,8 +76,9 @@ public class LocationController {
     @Cacheable(value = "location", key = "{#locationString}")
     public Location getOrCreateLocation(String locationString) {
         logger.trace("** Querying for location {}", locationString);
-        return locationRepo.findByLocationStringEquals(locationString)
-                .orElseGet(() -> {
+        return referenceDataLock.findOrCreate(
+                () -> locationRepo.findByLocationStringEquals(locationString),
+                () -> {
                     Location location = new Location(locationString);
                     return locationRepo.save(location);
                 });
@@ -0,0 +1,139 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
+
+import uk.ac.ucl.rits.inform.informdb.movement.LocationVisit;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Immutable timeline of the location visits for a single hospital visit, in descending order of admission time.
+ * <p>
+ * Only the id and admission time of each location visit are held, so the timeline can be kept between transactions and
+ * the entities are loaded by id when they are needed. Finding the location visit at or before a time is a binary search,
+ * the location visit after it is the one before it in the timeline and the previous location visit is the one after it.
+ */
+final class LocationVisitTimeline {
+    private static final Comparator<Stay> DESCENDING_ADMISSION = Comparator
+            .comparing((Stay stay) -> stay.admissionDatetime).reversed()
+            .thenComparing(stay -> stay.locationVisitId);
+
+    private final long hospitalVisitId;
+    private final Stay[] stays;
+
+    private LocationVisitTimeline(long hospitalVisitId, Stay[] stays) {
+        this.hospitalVisitId = hospitalVisitId;
+        this.stays = stays;
+    }
+
+    /**
+     * @param hospitalVisitId id of the hospital visit
+     * @param locationVisits  all location visits for the hospital visit, in any order
+     * @return timeline of the location visits
+     */
+    static LocationVisitTimeline of(long hospitalVisitId, Collection<LocationVisit> locationVisits) {
+        Stay[] stays = locationVisits.stream()
+                .map(visit -> new Stay(visit.getLocationVisitId(), visit.getAdmissionDatetime()))
+                .sorted(DESCENDING_ADMISSION)
+                .toArray(Stay[]::new);
+        return new LocationVisitTimeline(hospitalVisitId, stays);
+    }
+
+    /**
+     * @return id of the hospital visit
+     */
+    long getHospitalVisitId() {
+        return hospitalVisitId;
+    }
+
+    /**
+     * @return number of location visits
+     */
+    int size() {
+        return stays.length;
+    }
+
+    /**
+     * @param index index in descending order of admission time
+     * @return true if there is a location visit at the index
+     */
+    boolean inRange(int index) {
+        return index >= 0 && index < stays.length;
+    }
+
+    /**
+     * @param index index in descending order of admission time
+     * @return id of the location visit
+     */
+    long getLocationVisitId(int index) {
+        return stays[index].locationVisitId;
+    }
+
+    /**
+     * @param index index in descending order of admission time
+     * @return admission time of the location visit
+     */
+    Instant getAdmissionDatetime(int index) {
+        return stays[index].admissionDatetime;
+    }
+
+    /**
+     * Find the location visit that contains a time, or the latest location visit before it.
+     * All location visits with a lower index were admitted after the time.
+     * @param time time to search for
+     * @return index of the first location visit admitted at or before the time, or the size of the timeline if there is none
+     */
+    int indexOfAdmissionAtOrBefore(Instant time) {
+        int low = 0;
+        int high = stays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (stays[mid].admissionDatetime.isAfter(time)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param locationVisit location visit that has been saved
+     * @return timeline with the location visit added, or moved to its current admission time
+     */
+    LocationVisitTimeline withSaved(LocationVisit locationVisit) {
+        Stay saved = new Stay(locationVisit.getLocationVisitId(), locationVisit.getAdmissionDatetime());
+        Stay[] others = Arrays.stream(stays)
+                .filter(stay -> stay.locationVisitId != saved.locationVisitId)
+                .toArray(Stay[]::new);
+        Stay[] updated = Arrays.copyOf(others, others.length + 1);
+        updated[others.length] = saved;
+        Arrays.sort(updated, DESCENDING_ADMISSION);
+        return new LocationVisitTimeline(hospitalVisitId, updated);
+    }
+
+    /**
+     * @param locationVisit location visit that has been deleted
+     * @return timeline without the location visit
+     */
+    LocationVisitTimeline withDeleted(LocationVisit locationVisit) {
+        Stay[] updated = Arrays.stream(stays)
+                .filter(stay -> stay.locationVisitId != locationVisit.getLocationVisitId())
+                .toArray(Stay[]::new);
+        return new LocationVisitTimeline(hospitalVisitId, updated);
+    }
+
+    /**
+     * Location visit id and admission time.
+     */
+    private static final class Stay {
+        private final long locationVisitId;
+        private final Instant admissionDatetime;
+
+        private Stay(long locationVisitId, Instant admissionDatetime) {
+            this.locationVisitId = locationVisitId;
+            this.admissionDatetime = admissionDatetime;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Cache of hospital visit id to the timeline of its location visits, so that active visits don't reload every location visit for each message.
+ * <p>
+ * Timelines read or written within a transaction are only visible to that transaction until it commits, see {@link TransactionalCache}.
+ * Writing to a hospital visit's location visits evicts its shared timeline immediately, and the timeline written by the transaction
+ * replaces it once the transaction commits. Messages for a hospital visit are processed in order, so the last committed write is the
+ * current state.
+ */
+@Component
+public class LocationVisitTimelineCache {
+    private final TransactionalCache<Long, LocationVisitTimeline> cache;
+
+    /**
+     * @param maximumSize maximum number of hospital visits to cache, 0 disables the cache
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public LocationVisitTimelineCache(@Value("${core.location-timeline-cache.size:10000}") long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("core.location-timeline-cache.size must not be negative");
+        }
+        cache = new TransactionalCache<>(maximumSize);
+    }
+
+    /**
+     * @param hospitalVisitId id of the hospital visit
+     * @return cached timeline of location visits, if known
+     */
+    Optional<LocationVisitTimeline> get(long hospitalVisitId) {
+        return cache.get(hospitalVisitId);
+    }
+
+    /**
+     * @return value to pass to {@link #put} for a timeline read from the database after this call
+     */
+    long currentGeneration() {
+        return cache.currentGeneration();
+    }
+
+    /**
+     * Add a timeline read from the database, visible to the rest of the current transaction and to everything else once it commits.
+     * @param hospitalVisitId id of the hospital visit
+     * @param timeline        timeline of its location visits
+     * @param readGeneration  {@link #currentGeneration()} from before the timeline was read from the database
+     */
+    void put(long hospitalVisitId, LocationVisitTimeline timeline, long readGeneration) {
+        cache.put(hospitalVisitId, timeline, readGeneration);
+    }
+
+    /**
+     * Replace the timeline after its location visits have been written.
+     * @param hospitalVisitId id of the hospital visit
+     * @param timeline        timeline including the changes that have been written
+     */
+    void written(long hospitalVisitId, LocationVisitTimeline timeline) {
+        cache.written(hospitalVisitId, timeline);
+    }
+
+    /**
+     * Evict the timelines for hospital visits whose location visits have been changed without updating their timeline.
+     * @param hospitalVisitIds ids of the hospital visits
+     */
+    void evict(Collection<Long> hospitalVisitIds) {
+        cache.evictKeys(hospitalVisitIds);
+    }
+}
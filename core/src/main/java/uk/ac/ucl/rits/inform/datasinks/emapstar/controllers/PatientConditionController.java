@@ -6,6 +6,7 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.ConditionVisitLinkRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.conditions.PatientConditionRepository;
@@ -51,6 +52,7 @@ public class PatientConditionController {
     private final ConditionVisitLinkRepository conditionVisitLinkRepository;
     private final AllergenReactionRepository allergenReactionRepo;
     private final AllergenReactionAuditRepository allergenReactionAuditRepo;
+    private final ReferenceDataLock referenceDataLock;
 
     @Resource
     private PatientConditionCache cache;
@@ -72,15 +74,18 @@ public class PatientConditionController {
      * @param conditionVisitLinkRepository autowired ConditionVisitLinkRepository
      * @param allergenReactionRepo autowired allergenReactionRepo
      * @param allergenReactionAuditRepo autowired allergenReactionAuditRepo
+     * @param referenceDataLock stops condition types being created twice by parallel workers
      */
     public PatientConditionController(PatientConditionRepository patientConditionRepo, PatientConditionAuditRepository
             patientConditionAuditRepo, ConditionVisitLinkRepository conditionVisitLinkRepository,
-            AllergenReactionRepository allergenReactionRepo, AllergenReactionAuditRepository allergenReactionAuditRepo) {
+            AllergenReactionRepository allergenReactionRepo, AllergenReactionAuditRepository allergenReactionAuditRepo,
+            ReferenceDataLock referenceDataLock) {
         this.patientConditionRepo = patientConditionRepo;
         this.patientConditionAuditRepo = patientConditionAuditRepo;
         this.conditionVisitLinkRepository = conditionVisitLinkRepository;
         this.allergenReactionRepo = allergenReactionRepo;
         this.allergenReactionAuditRepo = allergenReactionAuditRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
     /**
@@ -357,9 +362,13 @@ public class PatientConditionController {
      */
     private RowState<ConditionType, ConditionTypeAudit> getOrCreateConditionType(
             PatientConditionType type, String conditionCode, Instant updatedDateTime, Instant storedFrom) {
-        return cache.getConditionType(type, conditionCode)
-                .map(typeEntity -> new RowState<>(typeEntity, updatedDateTime, storedFrom, false))
-                .orElseGet(() -> {
+        // missing condition types are cached, so look again in the database once the lock is held
+        return referenceDataLock.findOrCreate(
+                () -> cache.getConditionType(type, conditionCode)
+                        .map(typeEntity -> new RowState<>(typeEntity, updatedDateTime, storedFrom, false)),
+                () -> cache.findConditionTypeUncached(type, conditionCode)
+                        .map(typeEntity -> new RowState<>(typeEntity, updatedDateTime, storedFrom, false)),
+                () -> {
                     ConditionType typeEntity = cache.createNewType(type, conditionCode, updatedDateTime, storedFrom);
                     return new RowState<>(typeEntity, updatedDateTime, storedFrom, true);
                 });
@@ -503,6 +512,17 @@ class PatientConditionCache {
         return conditionTypeRepo.findByDataTypeAndInternalCode(type.toString(), conditionCode);
     }
 
+    /**
+     * Get existing condition type from the database, without using or updating the cache.
+     * @param type          Condition Type
+     * @param conditionCode EPIC code for the condition within the type
+     * @return Optional ConditionType
+     */
+    public Optional<ConditionType> findConditionTypeUncached(
+            PatientConditionController.PatientConditionType type, String conditionCode) {
+        return conditionTypeRepo.findByDataTypeAndInternalCode(type.toString(), conditionCode);
+    }
+
     /**
      * Create and save a new condition type clear the cache for this key.
      * @param type            Condition Type
@@ -13,11 +13,13 @@ import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageCancelledExcep
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageIgnoredException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitAuditRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitCancellationRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitRepository;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 import uk.ac.ucl.rits.inform.informdb.movement.Location;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisit;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitAudit;
+import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitCancellation;
 import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
 import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
 import uk.ac.ucl.rits.inform.interchange.adt.AdtCancellation;
@@ -39,6 +41,11 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Controls interaction with patient Locations.
@@ -50,19 +57,26 @@ public class PatientLocationController {
 
     private final LocationVisitRepository locationVisitRepo;
     private final LocationVisitAuditRepository locationVisitAuditRepo;
+    private final LocationVisitCancellationRepository locationVisitCancellationRepo;
     private final LocationController locationController;
+    private final LocationVisitTimelineCache timelineCache;
 
     /**
      * Constructor implicitly autowiring beans.
-     * @param locationVisitRepo      location visit repo
-     * @param locationVisitAuditRepo audit location repo
-     * @param locationController     to get or create cached location from location string
+     * @param locationVisitRepo             location visit repo
+     * @param locationVisitAuditRepo        audit location repo
+     * @param locationVisitCancellationRepo cancelled admissions and discharges
+     * @param locationController            to get or create cached location from location string
+     * @param timelineCache                 cache of the location visit timelines for hospital visits
      */
-    public PatientLocationController(LocationVisitRepository locationVisitRepo,
-                                     LocationVisitAuditRepository locationVisitAuditRepo, LocationController locationController) {
+    public PatientLocationController(LocationVisitRepository locationVisitRepo, LocationVisitAuditRepository locationVisitAuditRepo,
+                                     LocationVisitCancellationRepository locationVisitCancellationRepo,
+                                     LocationController locationController, LocationVisitTimelineCache timelineCache) {
         this.locationVisitRepo = locationVisitRepo;
         this.locationVisitAuditRepo = locationVisitAuditRepo;
+        this.locationVisitCancellationRepo = locationVisitCancellationRepo;
         this.locationController = locationController;
+        this.timelineCache = timelineCache;
     }
 
     /**
@@ -128,8 +142,8 @@ public class PatientLocationController {
         visitStateB.assignInterchangeValue(
                 InterchangeValue.buildFromHl7(locationB), visitStateB.getEntity().getLocationId(), visitStateB.getEntity()::setLocationId);
         // save newly created or audit
-        visitStateA.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
-        visitStateB.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+        saveLocationVisit(visitStateA);
+        saveLocationVisit(visitStateB);
     }
 
     /**
@@ -142,7 +156,7 @@ public class PatientLocationController {
      */
     private void processMoveMessage(HospitalVisit visit, AdtMessage msg, Instant storedFrom, Location currentLocationId, Instant validFrom)
             throws MessageCancelledException {
-        if (locationVisitAuditRepo.messageLocationIsCancelled(visit, currentLocationId, validFrom, false)) {
+        if (locationVisitCancellationRepo.messageLocationIsCancelled(visit, currentLocationId, validFrom, false)) {
             throw new MessageCancelledException("Admission or Transfer was cancelled");
         }
         if (msg.getFullLocationString().equals(msg.getPreviousLocationString())) {
@@ -150,14 +164,14 @@ public class PatientLocationController {
             return;
         }
 
-        List<LocationVisit> visitLocations = locationVisitRepo.findAllByHospitalVisitIdOrderByAdmissionDatetimeDesc(visit);
-        Pair<Long, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
-                visitLocations, currentLocationId, validFrom, storedFrom);
-        Long indexCurrentOrPrevious = indexAndNextLocation.getLeft();
+        LocationVisitTimeline timeline = getTimeline(visit, validFrom);
+        Pair<Integer, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
+                timeline, currentLocationId, validFrom, storedFrom);
+        int indexCurrentOrPrevious = indexAndNextLocation.getLeft();
         RowState<LocationVisit, LocationVisitAudit> nextLocation = indexAndNextLocation.getRight();
 
         RowState<LocationVisit, LocationVisitAudit> currentLocation = getOrCreateCurrentLocation(
-                visit, storedFrom, currentLocationId, validFrom, visitLocations, indexCurrentOrPrevious, false);
+                visit, storedFrom, currentLocationId, validFrom, timeline, indexCurrentOrPrevious, false);
         updateCurrentVisitIfRequired(nextLocation, validFrom, currentLocation);
         // If the current location is not created, then it was found - so increment counter for previous location
         if (!currentLocation.isEntityCreated()) {
@@ -168,45 +182,108 @@ public class PatientLocationController {
         }
 
         try {
-            updateOrCreatePreviousMoveLocations(visit, msg, storedFrom, validFrom, visitLocations, indexCurrentOrPrevious);
-            currentLocation.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+            updateOrCreatePreviousMoveLocations(visit, msg, storedFrom, validFrom, timeline, indexCurrentOrPrevious);
+            saveLocationVisit(currentLocation);
         } catch (MessageIgnoredException e) {
             logger.debug(e.getMessage());
         }
     }
 
+    /**
+     * Get the timeline of location visits for a hospital visit, from the cache or the database.
+     * <p>
+     * Processing a message only uses the location visits next to the admission time, so these are loaded together
+     * before any of them are changed. If any of them no longer exist, the cached timeline is out of date
+     * (e.g. the rows were deleted outside of this controller), so it is reloaded from the database once.
+     * @param visit         hospital visit
+     * @param admissionTime admission time of the message location
+     * @return location visits in descending order of admission time
+     */
+    private LocationVisitTimeline getTimeline(HospitalVisit visit, Instant admissionTime) {
+        Optional<LocationVisitTimeline> cached = timelineCache.get(visit.getHospitalVisitId());
+        if (cached.isEmpty()) {
+            return loadTimeline(visit);
+        }
+        if (locationVisitsAroundExist(cached.get(), admissionTime)) {
+            return cached.get();
+        }
+        logger.warn("Cached location visit timeline for hospital visit {} is out of date, reloading it", visit.getHospitalVisitId());
+        timelineCache.evict(Set.of(visit.getHospitalVisitId()));
+        return loadTimeline(visit);
+    }
+
+    private LocationVisitTimeline loadTimeline(HospitalVisit visit) {
+        long readGeneration = timelineCache.currentGeneration();
+        LocationVisitTimeline timeline = LocationVisitTimeline.of(
+                visit.getHospitalVisitId(), locationVisitRepo.findAllByHospitalVisitIdOrderByAdmissionDatetimeDesc(visit));
+        timelineCache.put(visit.getHospitalVisitId(), timeline, readGeneration);
+        return timeline;
+    }
+
+    /**
+     * Load the location visits that processing a message can use: the two admitted after the admission time,
+     * the one at or before it and the one before that.
+     * @param timeline      cached timeline
+     * @param admissionTime admission time of the message location
+     * @return true if all of these location visits still exist
+     */
+    private boolean locationVisitsAroundExist(LocationVisitTimeline timeline, Instant admissionTime) {
+        int indexAtOrBefore = timeline.indexOfAdmissionAtOrBefore(admissionTime);
+        List<Long> locationVisitIds = IntStream.rangeClosed(indexAtOrBefore - 2, indexAtOrBefore + 1)
+                .filter(timeline::inRange)
+                .mapToObj(timeline::getLocationVisitId)
+                .collect(Collectors.toList());
+        long found = StreamSupport.stream(locationVisitRepo.findAllById(locationVisitIds).spliterator(), false).count();
+        return found == locationVisitIds.size();
+    }
+
+    /**
+     * @param timeline location visits in descending order of admission time
+     * @param index    index of the location visit in the timeline
+     * @return location visit entity
+     * @throws IllegalStateException if the location visit has been deleted by something other than this controller
+     * since the timeline was checked
+     */
+    private LocationVisit getLocationVisit(LocationVisitTimeline timeline, int index) {
+        long locationVisitId = timeline.getLocationVisitId(index);
+        return locationVisitRepo.findById(locationVisitId).orElseThrow(() -> {
+            timelineCache.evict(Set.of(timeline.getHospitalVisitId()));
+            return new IllegalStateException(String.format("LocationVisit %d in the timeline no longer exists", locationVisitId));
+        });
+    }
+
     /**
      * Get the index of the current or previous location (if exists) and the next location (if exists).
-     * @param visitLocations  visit locations in descending order of admission time
+     * <p>
+     * Only the nearest location visit admitted after the admission time (the earliest of those admitted after it)
+     * can be the current visit, because it has to be the first location visit after the preceding location's admission.
+     * @param timeline        visit locations in descending order of admission time
      * @param currentLocation current location
      * @param admissionTime   admission time for the current location
      * @param storedFrom      when the message has been read by emap core
-     * @return Pair of nullable values: <index of the current or previous visit, next location visit>
+     * @return Pair of <index of the current or previous visit, nullable next location visit>.
+     * The index is the size of the timeline if there is no current or previous visit.
      */
-    private Pair<Long, RowState<LocationVisit, LocationVisitAudit>> getIndexOfCurrentAndNextLocationVisit(
-            List<LocationVisit> visitLocations, Location currentLocation, Instant admissionTime, Instant storedFrom) {
-
-        RowState<LocationVisit, LocationVisitAudit> nextLocation = null;
-        Long indexCurrentOrPrevious = null;
-        for (LocationVisit location : visitLocations) {
-            indexCurrentOrPrevious = incrementNullable(indexCurrentOrPrevious);
-            if (!admissionTime.isBefore(location.getAdmissionDatetime())) {
-                logger.trace("Reached a visit which is before the current admission time");
-                break;
-            }
-            if (isCurrentVisit(location, currentLocation, indexCurrentOrPrevious, visitLocations, admissionTime)) {
-                // Early exit because we think we are on the current visit
-                break;
-            }
-            nextLocation = new RowState<>(location, admissionTime, storedFrom, false);
-            // if we get to the end and we haven't skipped over the current, increment it again because there is no current or past visit
-            if (indexCurrentOrPrevious == visitLocations.size() - 1) {
-                indexCurrentOrPrevious = incrementNullable(indexCurrentOrPrevious);
-            }
+    private Pair<Integer, RowState<LocationVisit, LocationVisitAudit>> getIndexOfCurrentAndNextLocationVisit(
+            LocationVisitTimeline timeline, Location currentLocation, Instant admissionTime, Instant storedFrom) {
+        int indexAtOrBefore = timeline.indexOfAdmissionAtOrBefore(admissionTime);
+        int indexOfFirstAfter = indexAtOrBefore - 1;
+        if (!timeline.inRange(indexOfFirstAfter)) {
+            logger.trace("No locations after the current admission time");
+            return new ImmutablePair<>(indexAtOrBefore, null);
         }
-        logger.trace("Next location: {}", nextLocation);
 
-        return new ImmutablePair<>(indexCurrentOrPrevious, nextLocation);
+        LocationVisit firstAfter = getLocationVisit(timeline, indexOfFirstAfter);
+        if (isCurrentVisit(firstAfter, currentLocation, indexOfFirstAfter, timeline, admissionTime)) {
+            int indexOfNext = indexOfFirstAfter - 1;
+            RowState<LocationVisit, LocationVisitAudit> nextLocation = timeline.inRange(indexOfNext)
+                    ? new RowState<>(getLocationVisit(timeline, indexOfNext), admissionTime, storedFrom, false) : null;
+            logger.trace("Next location: {}", nextLocation);
+            return new ImmutablePair<>(indexOfFirstAfter, nextLocation);
+        }
+        RowState<LocationVisit, LocationVisitAudit> nextLocation = new RowState<>(firstAfter, admissionTime, storedFrom, false);
+        logger.trace("Next location: {}", nextLocation);
+        return new ImmutablePair<>(indexAtOrBefore, nextLocation);
     }
 
     /**
@@ -214,18 +291,18 @@ public class PatientLocationController {
      * @param location          potential current location visit
      * @param currentLocationId location Id from hl7 message
      * @param currentIndex      index of potential current location visit
-     * @param visitLocations    list of all location visits, in descending order of admission time
+     * @param timeline          all location visits, in descending order of admission time
      * @param admissionTime     admission time for the current location
      * @return true if the message appears to be current.
      */
     private boolean isCurrentVisit(
-            LocationVisit location, Location currentLocationId, Long currentIndex, List<LocationVisit> visitLocations, Instant admissionTime) {
+            LocationVisit location, Location currentLocationId, int currentIndex, LocationVisitTimeline timeline, Instant admissionTime) {
         boolean isCurrentVisit = false;
         // same location, inferred admission
         if (location.getLocationId().equals(currentLocationId) && location.getInferredAdmission()) {
-            Long precedingLocationIndex = currentIndex + 1;
-            if (indexInRange(visitLocations, precedingLocationIndex)) {
-                Instant precedingVisitAdmission = visitLocations.get(precedingLocationIndex.intValue()).getAdmissionDatetime();
+            int precedingLocationIndex = currentIndex + 1;
+            if (timeline.inRange(precedingLocationIndex)) {
+                Instant precedingVisitAdmission = timeline.getAdmissionDatetime(precedingLocationIndex);
                 logger.debug("Current message is after the preceding location's admission time, will use it as the current visit");
                 if (admissionTime.isAfter(precedingVisitAdmission)) {
                     isCurrentVisit = true;
@@ -244,19 +321,19 @@ public class PatientLocationController {
      * @param storedFrom          time that emap star encountered the message
      * @param currentLocationId   current location
      * @param validFrom           event time of the message
-     * @param visitLocations      visit locations in descending order of admission time
+     * @param timeline            visit locations in descending order of admission time
      * @param indexOfCurrent      index of potential current location
      * @param forDischargeMessage if true, only matches on location
      * @return current location visit
      */
     private RowState<LocationVisit, LocationVisitAudit> getOrCreateCurrentLocation(
             HospitalVisit visit, Instant storedFrom, Location currentLocationId, Instant validFrom,
-            List<LocationVisit> visitLocations, Long indexOfCurrent, boolean forDischargeMessage) {
+            LocationVisitTimeline timeline, int indexOfCurrent, boolean forDischargeMessage) {
 
         RowState<LocationVisit, LocationVisitAudit> currentLocation;
-        if (indexInRange(visitLocations, indexOfCurrent)) {
-            LocationVisit location = visitLocations.get(indexOfCurrent.intValue());
-            if (locationLooksLikeCurrentLocation(location, currentLocationId, visitLocations, forDischargeMessage)) {
+        if (timeline.inRange(indexOfCurrent)) {
+            LocationVisit location = getLocationVisit(timeline, indexOfCurrent);
+            if (locationLooksLikeCurrentLocation(location, currentLocationId, timeline, forDischargeMessage)) {
                 logger.debug("Current location found");
                 currentLocation = new RowState<>(location, validFrom, storedFrom, false);
             } else {
@@ -277,23 +354,23 @@ public class PatientLocationController {
      * </ul>
      * @param currentOrPrevious   existing location
      * @param currentLocationId   location Id from hl7 message
-     * @param visitLocations      all visit locations
+     * @param timeline            all visit locations
      * @param forDischargeMessage if true, only needs to match on location
      * @return true if the location is current
      */
     private boolean locationLooksLikeCurrentLocation(
-            LocationVisit currentOrPrevious, Location currentLocationId, Collection<LocationVisit> visitLocations, boolean forDischargeMessage) {
+            LocationVisit currentOrPrevious, Location currentLocationId, LocationVisitTimeline timeline, boolean forDischargeMessage) {
         return currentOrPrevious.getLocationId().equals(currentLocationId)
-                && (forDischargeMessage || currentOrPrevious.getInferredAdmission() || isDuplicateAdmit(visitLocations, currentOrPrevious));
+                && (forDischargeMessage || currentOrPrevious.getInferredAdmission() || isDuplicateAdmit(timeline, currentOrPrevious));
     }
 
     /**
-     * @param visitLocations    all visit locations
+     * @param timeline          all visit locations
      * @param currentOrPrevious existing location
      * @return true if only one visit exists and it hasn't been discharged
      */
-    private boolean isDuplicateAdmit(Collection<LocationVisit> visitLocations, LocationVisit currentOrPrevious) {
-        return visitLocations.size() == 1 && currentOrPrevious.getDischargeDatetime() == null;
+    private boolean isDuplicateAdmit(LocationVisitTimeline timeline, LocationVisit currentOrPrevious) {
+        return timeline.size() == 1 && currentOrPrevious.getDischargeDatetime() == null;
     }
 
     /**
@@ -324,19 +401,19 @@ public class PatientLocationController {
      * @param msg                    hl7 message
      * @param storedFrom             time that emap star started processing the message
      * @param validFrom              event time from the hl7 message
-     * @param visitLocations         in descending order of admission time
+     * @param timeline               visit locations in descending order of admission time
      * @param indexOfPreviousMessage index of previous message
      * @throws MessageIgnoredException if the current admission to a location matches the previous location and admission time
      */
     private void updateOrCreatePreviousMoveLocations(
             HospitalVisit visit, AdtMessage msg, Instant storedFrom, Instant validFrom,
-            List<LocationVisit> visitLocations, Long indexOfPreviousMessage) throws MessageIgnoredException {
+            LocationVisitTimeline timeline, int indexOfPreviousMessage) throws MessageIgnoredException {
 
         Optional<Location> previousLocationId = getPreviousLocationId(msg);
         RowState<LocationVisit, LocationVisitAudit> previousHl7Location = null;
 
-        if (indexInRange(visitLocations, indexOfPreviousMessage)) {
-            LocationVisit existingLocation = visitLocations.get(indexOfPreviousMessage.intValue());
+        if (timeline.inRange(indexOfPreviousMessage)) {
+            LocationVisit existingLocation = getLocationVisit(timeline, indexOfPreviousMessage);
             if (previousLocationId.isPresent()) {
                 if (previousLocationId.get().equals(existingLocation.getLocationId())) {
                     logger.debug("Previous location matches hl7 value: inferring discharge time");
@@ -353,7 +430,7 @@ public class PatientLocationController {
                         RowState<LocationVisit, LocationVisitAudit> existingPrevious = new RowState<>(existingLocation, validFrom, storedFrom, false);
                         Instant inferredDischargeTime = validFrom.minus(1, ChronoUnit.SECONDS);
                         setInferredDischargeAndTime(true, inferredDischargeTime, existingPrevious);
-                        existingPrevious.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+                        saveLocationVisit(existingPrevious);
                     }
                 }
             } else {
@@ -364,7 +441,7 @@ public class PatientLocationController {
                     logger.debug("No previous hl7 location, but found existing previous location. Inferring existing location discharge.");
                     RowState<LocationVisit, LocationVisitAudit> existingPrevious = new RowState<>(existingLocation, validFrom, storedFrom, false);
                     setInferredDischargeAndTime(true, validFrom, existingPrevious);
-                    existingPrevious.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+                    saveLocationVisit(existingPrevious);
                 }
             }
         } else if (previousLocationId.isPresent()) {
@@ -377,7 +454,7 @@ public class PatientLocationController {
 
         // Always save previous hl7 location if it exists
         if (previousHl7Location != null) {
-            previousHl7Location.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+            saveLocationVisit(previousHl7Location);
         }
     }
 
@@ -390,26 +467,6 @@ public class PatientLocationController {
         return existingLocation.getDischargeDatetime() == null || existingLocation.getInferredDischarge();
     }
 
-    /**
-     * Increment a possibly null Long.
-     * If null, set to zero.
-     * @param input input counter
-     * @return incremented counter
-     */
-    private Long incrementNullable(@Nullable Long input) {
-        return input == null ? 0 : input + 1;
-    }
-
-    /**
-     * Is the index in the range of the collection.
-     * @param collection collection of any objects
-     * @param index      index, may be null collection is empty
-     * @return true if index is in range of the collection.
-     */
-    private boolean indexInRange(Collection<?> collection, @Nullable Long index) {
-        return index != null && (index < collection.size());
-    }
-
     /**
      * Process discharging of a patient from current location.
      * If message previous location doesnt exist in star, create it with an inferred admission and discharge time.
@@ -424,7 +481,7 @@ public class PatientLocationController {
     private void processDischargeMessage(
             HospitalVisit visit, DischargePatient msg, Instant storedFrom, Location currentLocationId)
             throws MessageCancelledException, RequiredDataMissingException {
-        if (locationVisitAuditRepo.messageLocationIsCancelled(visit, currentLocationId, msg.getDischargeDateTime(), true)) {
+        if (locationVisitCancellationRepo.messageLocationIsCancelled(visit, currentLocationId, msg.getDischargeDateTime(), true)) {
             throw new MessageCancelledException("Discharge has previously been cancelled");
         }
         Instant dischargeTime = msg.getDischargeDateTime();
@@ -433,14 +490,14 @@ public class PatientLocationController {
             throw new RequiredDataMissingException("No discharge time found for discharge message");
         }
 
-        List<LocationVisit> visitLocations = locationVisitRepo.findAllByHospitalVisitIdOrderByAdmissionDatetimeDesc(visit);
+        LocationVisitTimeline timeline = getTimeline(visit, dischargeTime);
 
-        Pair<Long, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
-                visitLocations, currentLocationId, dischargeTime, storedFrom);
-        Long indexCurrentOrPrevious = indexAndNextLocation.getLeft();
+        Pair<Integer, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
+                timeline, currentLocationId, dischargeTime, storedFrom);
+        int indexCurrentOrPrevious = indexAndNextLocation.getLeft();
 
         RowState<LocationVisit, LocationVisitAudit> currentLocation = getOrCreateCurrentLocation(
-                visit, storedFrom, currentLocationId, dischargeTime, visitLocations, indexCurrentOrPrevious, true);
+                visit, storedFrom, currentLocationId, dischargeTime, timeline, indexCurrentOrPrevious, true);
         setInferredDischargeAndTime(false, dischargeTime, currentLocation);
 
         List<RowState<LocationVisit, LocationVisitAudit>> savingVisits = new ArrayList<>();
@@ -453,17 +510,17 @@ public class PatientLocationController {
             indexCurrentOrPrevious += 1;
         }
 
-        if (previousMessagesShouldBeUpdated(visitLocations, indexCurrentOrPrevious, currentLocation.isEntityCreated(), msg)) {
+        if (previousMessagesShouldBeUpdated(timeline, indexCurrentOrPrevious, currentLocation.isEntityCreated(), msg)) {
             LocationVisit existingPreviousLocation = null;
-            if (indexInRange(visitLocations, indexCurrentOrPrevious)) {
-                existingPreviousLocation = visitLocations.get(indexCurrentOrPrevious.intValue());
+            if (timeline.inRange(indexCurrentOrPrevious)) {
+                existingPreviousLocation = getLocationVisit(timeline, indexCurrentOrPrevious);
             }
             List<RowState<LocationVisit, LocationVisitAudit>> previousLocations = inferPreviousLocationData(
                     visit, existingPreviousLocation, msg, dischargeTime, storedFrom);
             savingVisits.addAll(previousLocations);
         }
 
-        savingVisits.forEach(rowState -> rowState.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo));
+        savingVisits.forEach(this::saveLocationVisit);
     }
 
     /**
@@ -510,16 +567,16 @@ public class PatientLocationController {
      * Previous message should be updated if the current location was created (there may be previous messages that are discharged) and either:
      * - there are previous messages
      * - the hl7 message has a previous location string
-     * @param visitLocations   visit locations in descending admission time order
+     * @param timeline         visit locations in descending admission time order
      * @param indexOfPrevious  index of the previous location
      * @param isCurrentCreated was the current location created
      * @param msg              DischargePatietn message
      * @return true if previous locations should be updated
      */
     private boolean previousMessagesShouldBeUpdated(
-            List<LocationVisit> visitLocations, Long indexOfPrevious, boolean isCurrentCreated, DischargePatient msg) {
+            LocationVisitTimeline timeline, int indexOfPrevious, boolean isCurrentCreated, DischargePatient msg) {
 
-        return isCurrentCreated && (indexInRange(visitLocations, indexOfPrevious) || msg.getPreviousLocationString().isSave());
+        return isCurrentCreated && (timeline.inRange(indexOfPrevious) || msg.getPreviousLocationString().isSave());
     }
 
     /**
@@ -641,6 +698,23 @@ public class PatientLocationController {
                 locationId.getLocationString(), cancellationTime, !cancelled.getInferredAdmission(), !cancelled.getInferredDischarge());
         locationVisitAuditRepo.save(cancelled);
         logger.debug("LocationVisitAudit saved: {}", cancelled);
+        recordCancellation(visit, locationId, cancellationTime, cancelled);
+    }
+
+    /**
+     * Keep the cancelled admission and discharge from the audit row in the cancellation table, which is checked for each move and discharge.
+     * @param visit            hospital visit
+     * @param locationId       location
+     * @param cancellationTime time of the cancelled admission or discharge
+     * @param cancelled        audit row recording the cancellation
+     */
+    private void recordCancellation(HospitalVisit visit, Location locationId, Instant cancellationTime, LocationVisitAudit cancelled) {
+        LocationVisitCancellation cancellation = locationVisitCancellationRepo
+                .findByHospitalVisitIdAndLocationIdAndCancelledDatetime(visit.getHospitalVisitId(), locationId, cancellationTime)
+                .orElseGet(() -> new LocationVisitCancellation(visit.getHospitalVisitId(), locationId, cancellationTime));
+        cancellation.setAdmissionCancelled(!cancelled.getInferredAdmission());
+        cancellation.setDischargeCancelled(!cancelled.getInferredDischarge());
+        locationVisitCancellationRepo.save(cancellation);
     }
 
     private LocationVisitAudit buildCancelledAudit(HospitalVisit visit, Location locationId, Instant cancellationTime, Instant storedFrom) {
@@ -659,39 +733,39 @@ public class PatientLocationController {
 
     private void processCancelTransfer(
             HospitalVisit visit, Instant storedFrom, CancelTransferPatient cancelTransferPatient) throws RequiredDataMissingException {
-        List<LocationVisit> visitLocations = locationVisitRepo.findAllByHospitalVisitIdOrderByAdmissionDatetimeDesc(visit);
         Instant cancellationTime = getCancellationTime(cancelTransferPatient);
+        LocationVisitTimeline timeline = getTimeline(visit, cancellationTime);
         Location cancelledLocationId = locationController.getOrCreateLocation(cancelTransferPatient.getCancelledLocation());
 
-        Pair<Long, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
-                visitLocations, cancelledLocationId, cancellationTime, storedFrom);
-        Long indexCurrentOrPrevious = indexAndNextLocation.getLeft();
+        Pair<Integer, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
+                timeline, cancelledLocationId, cancellationTime, storedFrom);
+        int indexCurrentOrPrevious = indexAndNextLocation.getLeft();
 
-        if (!indexInRange(visitLocations, indexCurrentOrPrevious)) {
+        if (!timeline.inRange(indexCurrentOrPrevious)) {
             recordLocationAsDeleted(visit, cancelledLocationId, false, true, cancellationTime, storedFrom);
             logger.debug("CancelTransfer message: visit to cancel was not found");
             return;
         }
-        LocationVisit retiringLocation = visitLocations.get(indexCurrentOrPrevious.intValue());
+        LocationVisit retiringLocation = getLocationVisit(timeline, indexCurrentOrPrevious);
         if (retiringLocation.getLocationId() != cancelledLocationId) {
             recordLocationAsDeleted(visit, cancelledLocationId, false, true, cancellationTime, storedFrom);
             logger.debug("CancelTransfer message: visit to cancel was not found, marking as cancelled in audit log");
             return;
         }
-        updatePreviousAndMergeWithNextVisitIfRequired(visitLocations, indexAndNextLocation, cancellationTime, retiringLocation, storedFrom);
+        updatePreviousAndMergeWithNextVisitIfRequired(timeline, indexAndNextLocation, cancellationTime, retiringLocation, storedFrom);
         deleteLocationVisit(cancellationTime, storedFrom, retiringLocation);
     }
 
     private void updatePreviousAndMergeWithNextVisitIfRequired(
-            List<LocationVisit> visitLocations, Pair<Long, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation,
+            LocationVisitTimeline timeline, Pair<Integer, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation,
             Instant cancellationTime, LocationVisit retiringLocation, Instant storedFrom) {
-        Long previousIndex = indexAndNextLocation.getLeft() + 1;
+        int previousIndex = indexAndNextLocation.getLeft() + 1;
 
-        if (!indexInRange(visitLocations, previousIndex)) {
+        if (!timeline.inRange(previousIndex)) {
             return;
         }
         Instant previousDischargeTime = retiringLocation.getDischargeDatetime();
-        LocationVisit previousLocation = visitLocations.get(previousIndex.intValue());
+        LocationVisit previousLocation = getLocationVisit(timeline, previousIndex);
         RowState<LocationVisit, LocationVisitAudit> nextLocationState = indexAndNextLocation.getRight();
         if (nextLocationState != null) {
             LocationVisit nextLocation = nextLocationState.getEntity();
@@ -702,17 +776,17 @@ public class PatientLocationController {
             }
         }
         RowState<LocationVisit, LocationVisitAudit> previousLocationState = new RowState<>(
-                visitLocations.get(previousIndex.intValue()), cancellationTime, storedFrom, false);
+                previousLocation, cancellationTime, storedFrom, false);
         setInferredDischargeAndTime(true, previousDischargeTime, previousLocationState);
-        previousLocationState.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+        saveLocationVisit(previousLocationState);
 
     }
 
     private void rollbackDischargeToPreviousValue(
             HospitalVisit visit, Instant storedFrom, Location locationId, Instant validFrom, Instant cancellationTime, LocationVisit incorrectVisit) {
-        List<LocationVisit> visitLocations = locationVisitRepo.findAllByHospitalVisitIdOrderByAdmissionDatetimeDesc(visit);
-        Pair<Long, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
-                visitLocations, locationId, validFrom, storedFrom);
+        LocationVisitTimeline timeline = getTimeline(visit, validFrom);
+        Pair<Integer, RowState<LocationVisit, LocationVisitAudit>> indexAndNextLocation = getIndexOfCurrentAndNextLocationVisit(
+                timeline, locationId, validFrom, storedFrom);
         RowState<LocationVisit, LocationVisitAudit> nextLocation = indexAndNextLocation.getRight();
         if (nextLocation != null) {
             logger.debug("CancelDischarge, but locations after discharge for visit - not doing anything");
@@ -819,6 +893,34 @@ public class PatientLocationController {
         locationVisitAuditRepo.save(new LocationVisitAudit(locationVisit, validFrom, storedFrom));
         logger.debug("Deleting LocationVisit: {}", locationVisit);
         locationVisitRepo.delete(locationVisit);
+        updateTimeline(locationVisit, timeline -> timeline.withDeleted(locationVisit));
+    }
+
+    /**
+     * Save a location visit or its audit log if required, keeping the cached timeline for its hospital visit up to date.
+     * @param locationState location visit wrapped in row state
+     */
+    private void saveLocationVisit(RowState<LocationVisit, LocationVisitAudit> locationState) {
+        locationState.saveEntityOrAuditLogIfRequired(locationVisitRepo, locationVisitAuditRepo);
+        if (locationState.isEntityCreated() || locationState.isEntityUpdated()) {
+            LocationVisit saved = locationState.getEntity();
+            updateTimeline(saved, timeline -> timeline.withSaved(saved));
+        }
+    }
+
+    /**
+     * Apply a write to the cached timeline of the location visit's hospital visit, or evict it if it isn't cached in this transaction.
+     * @param locationVisit location visit that has been written
+     * @param update        change to the timeline
+     */
+    private void updateTimeline(LocationVisit locationVisit, UnaryOperator<LocationVisitTimeline> update) {
+        long hospitalVisitId = locationVisit.getHospitalVisitId().getHospitalVisitId();
+        Optional<LocationVisitTimeline> timeline = timelineCache.get(hospitalVisitId);
+        if (timeline.isPresent()) {
+            timelineCache.written(hospitalVisitId, update.apply(timeline.get()));
+        } else {
+            timelineCache.evict(Set.of(hospitalVisitId));
+        }
     }
 
     /**
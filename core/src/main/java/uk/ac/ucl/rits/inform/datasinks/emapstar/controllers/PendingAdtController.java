@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.AuditedBulkDelete;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.PlannedMovementAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.PlannedMovementRepository;
@@ -14,6 +15,7 @@ import uk.ac.ucl.rits.inform.interchange.adt.CancelPendingTransfer;
 import uk.ac.ucl.rits.inform.interchange.adt.PendingTransfer;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +32,7 @@ public class PendingAdtController {
     private LocationController locationController;
     private final PlannedMovementRepository plannedMovementRepo;
     private final PlannedMovementAuditRepository plannedMovementAuditRepo;
+    private final AuditedBulkDelete auditedBulkDelete;
 
     /**
      * Using a FindMovement interface so that we can reuse the same get or create method, using a different repository method.
@@ -41,13 +44,16 @@ public class PendingAdtController {
      * @param locationController       To get the location entity for the planned move
      * @param plannedMovementRepo      To update the Planned Movement entity
      * @param plannedMovementAuditRepo To update the Audit log for Planned Movement
+     * @param auditedBulkDelete        To audit and delete planned movements for many visits together
      */
     public PendingAdtController(LocationController locationController,
                                 PlannedMovementRepository plannedMovementRepo,
-                                PlannedMovementAuditRepository plannedMovementAuditRepo) {
+                                PlannedMovementAuditRepository plannedMovementAuditRepo,
+                                AuditedBulkDelete auditedBulkDelete) {
         this.locationController = locationController;
         this.plannedMovementRepo = plannedMovementRepo;
         this.plannedMovementAuditRepo = plannedMovementAuditRepo;
+        this.auditedBulkDelete = auditedBulkDelete;
         allFromRequest = plannedMovementRepo::findMatchingMovementsFromRequest;
         allFromCancel = plannedMovementRepo::findMatchingMovementsFromCancel;
     }
@@ -139,25 +145,14 @@ public class PendingAdtController {
     }
 
     /**
-     * Delete planned movements from a delete patient information message.
-     * @param visit            Hospital visit that should have their planned movements deleted
+     * Audit and delete planned movements from a delete patient information message.
+     * @param visitIds         Ids of hospital visits that should have their planned movements deleted
      * @param invalidationTime Time of the delete information message
      * @param deletionTime     time that emap-core started processing the message.
      */
-    public void deletePlannedMovements(HospitalVisit visit, Instant invalidationTime, Instant deletionTime) {
-        plannedMovementRepo.findAllByHospitalVisitId(visit)
-                .forEach(plannedMovement -> deletePlannedMovement(plannedMovement, invalidationTime, deletionTime));
-    }
-
-    /**
-     * Audit and delete a planned movement.
-     * @param plannedMovement Planned movement to delete
-     * @param deletionTime    Hospital time that the planned movement was deleted at
-     * @param storedUntil     Time that emap-core started processing the message.
-     */
-    private void deletePlannedMovement(PlannedMovement plannedMovement, Instant deletionTime, Instant storedUntil) {
-        plannedMovementAuditRepo.save(plannedMovement.createAuditEntity(deletionTime, storedUntil));
-        plannedMovementRepo.delete(plannedMovement);
+    public void deletePlannedMovements(Collection<Long> visitIds, Instant invalidationTime, Instant deletionTime) {
+        List<Long> plannedMovementIds = auditedBulkDelete.findIds(PlannedMovement.class, "hospitalVisitId", visitIds);
+        auditedBulkDelete.auditAndDelete(PlannedMovement.class, PlannedMovementAudit.class, plannedMovementIds, invalidationTime, deletionTime);
     }
 }
 
@@ -26,7 +26,10 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -42,6 +45,7 @@ public class PersonController {
     private final MrnToLiveAuditRepository mrnToLiveAuditRepo;
     private final CoreDemographicRepository coreDemographicRepo;
     private final CoreDemographicAuditRepository coreDemographicAuditRepo;
+    private final LiveMrnCache liveMrnCache;
 
     /**
      * Constructor implicitly autowiring beans.
@@ -50,14 +54,17 @@ public class PersonController {
      * @param mrnToLiveAuditRepo       auditMrnToLiveRepo
      * @param coreDemographicRepo      coreDemographicRepo
      * @param coreDemographicAuditRepo auditCoreDemographicRepo
+     * @param liveMrnCache             cache of MRN identifiers to live MRN
      */
     public PersonController(MrnRepository mrnRepo, MrnToLiveRepository mrnToLiveRepo, MrnToLiveAuditRepository mrnToLiveAuditRepo,
-                            CoreDemographicRepository coreDemographicRepo, CoreDemographicAuditRepository coreDemographicAuditRepo) {
+                            CoreDemographicRepository coreDemographicRepo, CoreDemographicAuditRepository coreDemographicAuditRepo,
+                            LiveMrnCache liveMrnCache) {
         this.mrnRepo = mrnRepo;
         this.mrnToLiveRepo = mrnToLiveRepo;
         this.mrnToLiveAuditRepo = mrnToLiveAuditRepo;
         this.coreDemographicRepo = coreDemographicRepo;
         this.coreDemographicAuditRepo = coreDemographicAuditRepo;
+        this.liveMrnCache = liveMrnCache;
     }
 
     /**
@@ -112,9 +119,12 @@ public class PersonController {
 
     private void mergeMrns(Collection<Mrn> originalMrns, Mrn survivingMrn, Instant validFrom, Instant storedFrom) {
         // change all live mrns from original mrn to surviving mrn
+        Set<Long> changedMrnIds = new HashSet<>();
         originalMrns.stream()
                 .flatMap(mrn -> mrnToLiveRepo.getAllByLiveMrnIdEquals(mrn).stream())
-                .forEach(mrnToLive -> updateMrnToLiveIfMessageIsNotBefore(survivingMrn, validFrom, storedFrom, mrnToLive));
+                .filter(mrnToLive -> updateMrnToLiveIfMessageIsNotBefore(survivingMrn, validFrom, storedFrom, mrnToLive))
+                .forEach(mrnToLive -> changedMrnIds.add(mrnToLive.getMrnId().getMrnId()));
+        liveMrnCache.evict(changedMrnIds);
 
         Collection<Mrn> originalAndSurvivingMrns = new ArrayList<>(originalMrns.size() + 1);
         originalAndSurvivingMrns.add(survivingMrn);
@@ -138,16 +148,19 @@ public class PersonController {
      * @param messageDateTime date time of the message
      * @param storedFrom      when the message has been read by emap core
      * @param mrnToLive       mrn to live entity
+     * @return true if the live MRN was updated
      */
-    private void updateMrnToLiveIfMessageIsNotBefore(final Mrn survivingMrn, final Instant messageDateTime, final Instant storedFrom,
-                                                     MrnToLive mrnToLive) {
+    private boolean updateMrnToLiveIfMessageIsNotBefore(final Mrn survivingMrn, final Instant messageDateTime, final Instant storedFrom,
+                                                        MrnToLive mrnToLive) {
         if (liveMrnIdIsDifferentAndMessageIsNotBefore(survivingMrn, messageDateTime, mrnToLive)) {
             logger.debug("Merging previous MRN {} into surviving MRN {}", mrnToLive.getMrnId(), survivingMrn);
             // log current state to audit table and then update current row
             MrnToLiveAudit audit = new MrnToLiveAudit(mrnToLive, messageDateTime, storedFrom);
             mrnToLiveAuditRepo.save(audit);
             mrnToLive.setLiveMrnId(survivingMrn);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -174,35 +187,100 @@ public class PersonController {
     public Mrn getOrCreateMrn(final String mrnString, final String nhsNumber, final String sourceSystem, final Instant messageDateTime,
                               final Instant storedFrom) throws RequiredDataMissingException {
         logger.debug("Getting or creating MRN: mrn {}, nhsNumber {}", mrnString, nhsNumber);
+        Optional<Mrn> cachedLiveMrn = getCachedLiveMrn(mrnString, nhsNumber);
+        if (cachedLiveMrn.isPresent()) {
+            return cachedLiveMrn.get();
+        }
+        long readGeneration = liveMrnCache.currentGeneration();
         return mrnRepo
                 .findByMrnOrNhsNumber(mrnString, nhsNumber)
-                .map(mrn -> updateIdentifiersAndGetMrn(sourceSystem, mrnString, nhsNumber, mrn))
+                .map(mrn -> updateIdentifiersAndGetMrn(sourceSystem, mrnString, nhsNumber, mrn, readGeneration))
                 // otherwise create new mrn and mrn_to_live row
-                .orElseGet(() -> createNewLiveMrn(mrnString, nhsNumber, sourceSystem, messageDateTime, storedFrom));
+                .orElseGet(() -> createNewCachedLiveMrn(mrnString, nhsNumber, sourceSystem, messageDateTime, storedFrom, readGeneration));
+    }
+
+    /**
+     * Get the live MRN from the cache, only used when the MRN is known.
+     * <p>
+     * Identifiers are only cached when the MRN row already matches them exactly, so updating the identifiers would have no effect.
+     * MRN rows are never deleted, so the live MRN is returned as a reference without querying the database,
+     * it is only loaded if something other than its id is used.
+     * @param mrnString MRN string
+     * @param nhsNumber NHS number
+     * @return the live MRN entity, if cached
+     */
+    private Optional<Mrn> getCachedLiveMrn(final String mrnString, final String nhsNumber) {
+        if (mrnString == null) {
+            return Optional.empty();
+        }
+        return liveMrnCache.get(mrnString, nhsNumber).map(cachedMrn -> mrnRepo.getReferenceById(cachedMrn.getLiveMrnId()));
+    }
+
+    /**
+     * Cache the live MRN if the MRN row matches the identifiers exactly.
+     * @param mrnString      MRN string
+     * @param nhsNumber      NHS number
+     * @param mrn            MRN entity found from the identifiers
+     * @param liveMrn        live MRN entity for the MRN
+     * @param readGeneration generation of the cache from before the MRN was read
+     */
+    private void cacheLiveMrn(final String mrnString, final String nhsNumber, Mrn mrn, Mrn liveMrn, long readGeneration) {
+        boolean identifiersMatch = mrnString != null && mrnString.equals(mrn.getMrn())
+                && (nhsNumber == null || nhsNumber.equals(mrn.getNhsNumber()));
+        if (identifiersMatch && mrn.getMrnId() != null && liveMrn.getMrnId() != null) {
+            liveMrnCache.put(mrnString, nhsNumber, new LiveMrnCache.CachedMrn(mrn.getMrnId(), liveMrn.getMrnId()), readGeneration);
+        }
     }
 
     /**
      * Update identifiers (nhs number if different, MRN if missing), then return current live MRN.
-     * @param sourceSystem source system
-     * @param mrnString    MRN string
-     * @param nhsNumber    NHS number
-     * @param mrn          MRN entity
+     * @param sourceSystem   source system
+     * @param mrnString      MRN string
+     * @param nhsNumber      NHS number
+     * @param mrn            MRN entity
+     * @param readGeneration generation of the cache from before the MRN was read
      * @return the live MRN entity
      */
-    private Mrn updateIdentifiersAndGetMrn(final String sourceSystem, final String mrnString, final String nhsNumber, Mrn mrn) {
+    private Mrn updateIdentifiersAndGetMrn(final String sourceSystem, final String mrnString, final String nhsNumber, Mrn mrn,
+                                           long readGeneration) {
+        boolean identifiersUpdated = false;
         if (DataSources.isTrusted(sourceSystem)) {
             if (nhsNumber != null && !nhsNumber.equals(mrn.getNhsNumber())) {
                 logger.debug("Updating NHS number to {} for MRN {}", nhsNumber, mrn);
                 mrn.setNhsNumber(nhsNumber);
+                identifiersUpdated = true;
             }
             // Only update the MRN if we have an orphan NHS number with no MRN
             if (mrnString != null && mrn.getMrn() == null && mrn.getNhsNumber() != null) {
                 logger.debug("Updating mrn to {} for MRN {}", mrnString, mrn);
                 mrn.setMrn(mrnString);
+                identifiersUpdated = true;
             }
         }
+        if (identifiersUpdated) {
+            liveMrnCache.evict(List.of(mrn.getMrnId()));
+        }
 
-        return mrnToLiveRepo.getByMrnIdEquals(mrn).getLiveMrnId();
+        Mrn liveMrn = mrnToLiveRepo.getByMrnIdEquals(mrn).getLiveMrnId();
+        cacheLiveMrn(mrnString, nhsNumber, mrn, liveMrn, readGeneration);
+        return liveMrn;
+    }
+
+    /**
+     * Create new Mrn and MrnToLive, caching the new MRN.
+     * @param mrnString       MRN
+     * @param nhsNumber       NHS number
+     * @param sourceSystem    source system
+     * @param messageDateTime date time of the message
+     * @param storedFrom      when the message has been read by emap core
+     * @param readGeneration  generation of the cache from before the MRN was found not to exist
+     * @return new MRN
+     */
+    private Mrn createNewCachedLiveMrn(final String mrnString, final String nhsNumber, final String sourceSystem,
+                                       final Instant messageDateTime, final Instant storedFrom, long readGeneration) {
+        Mrn mrn = createNewLiveMrn(mrnString, nhsNumber, sourceSystem, messageDateTime, storedFrom);
+        cacheLiveMrn(mrnString, nhsNumber, mrn, mrn, readGeneration);
+        return mrn;
     }
 
 
@@ -223,12 +301,18 @@ public class PersonController {
             throw new RequiredDataMissingException("No MRN found");
         }
         logger.debug("Getting or creating MRN: mrn {} only", mrnString);
+        // cached identifiers always match the MRN string, so resolve to the same MRN row as finding by MRN only
+        Optional<Mrn> cachedLiveMrn = getCachedLiveMrn(mrnString, nhsNumber);
+        if (cachedLiveMrn.isPresent()) {
+            return cachedLiveMrn.get();
+        }
+        long readGeneration = liveMrnCache.currentGeneration();
         return mrnRepo
                 .findByMrnEquals(mrnString)
                 // mrn exists, update NHS number if message source is trusted, then get the live mrn
-                .map(mrn -> updateIdentifiersAndGetMrn(sourceSystem, mrnString, nhsNumber, mrn))
+                .map(mrn -> updateIdentifiersAndGetMrn(sourceSystem, mrnString, nhsNumber, mrn, readGeneration))
                 // otherwise create new mrn and mrn_to_live row
-                .orElseGet(() -> createNewLiveMrn(mrnString, nhsNumber, sourceSystem, messageDateTime, storedFrom));
+                .orElseGet(() -> createNewCachedLiveMrn(mrnString, nhsNumber, sourceSystem, messageDateTime, storedFrom, readGeneration));
     }
 
     /**
@@ -387,6 +471,7 @@ public class PersonController {
         );
         // simple case, the surviving MRN doesn't exist so just update previous MRN with the new details
         if (survivingMrns.isEmpty()) {
+            liveMrnCache.evict(previousMrns.stream().map(Mrn::getMrnId).collect(Collectors.toSet()));
             if (msg.getMrn() != null) {
                 previousMrns.forEach(mrn -> mrn.setMrn(msg.getMrn()));
             }
@@ -6,6 +6,7 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.stereotype.Component;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.QuestionRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.RequestAnswerAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.RequestAnswerRepository;
@@ -15,6 +16,9 @@ import uk.ac.ucl.rits.inform.informdb.questions.RequestAnswerAudit;
 
 import javax.annotation.Resource;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 enum ParentTableType {
@@ -55,6 +59,10 @@ public class QuestionController {
 
     /**
      * Processing a set of questions and related answers (independent of data type they relate to).
+     * <p>
+     * All existing answers for the parent entity are loaded with one query and any changes are saved together.
+     * The saves are only sent as JDBC batches when core.jdbc.batch-size and core.id.increment-size are both raised above 1,
+     * by default there is still one insert or update per changed answer.
      * @param questionsAndAnswers Map in form {question, answer}
      * @param parentTable         Data type that triggered the creation of question-answer pair.
      * @param parentId            Identifier for parent entity that triggered the creation of a question, e.g. lab
@@ -64,38 +72,67 @@ public class QuestionController {
      */
     void processQuestions(Map<String, String> questionsAndAnswers, String parentTable, long parentId, Instant validFrom,
                           Instant storedFrom) {
+        if (questionsAndAnswers.isEmpty()) {
+            return;
+        }
+        Map<Long, RequestAnswer> existingAnswers = getAnswersByQuestionId(parentTable, parentId);
+        List<RequestAnswer> answersToSave = new ArrayList<>();
+        List<RequestAnswerAudit> auditsToSave = new ArrayList<>();
         for (Map.Entry<String, String> questionAndAnswer : questionsAndAnswers.entrySet()) {
             Question question = cache.getOrCreateQuestion(questionAndAnswer.getKey(), validFrom, storedFrom);
 
-            RowState<RequestAnswer, RequestAnswerAudit> answerState = getOrCreateRequestAnswer(question,
+            RowState<RequestAnswer, RequestAnswerAudit> answerState = getOrCreateRequestAnswer(existingAnswers, question,
                     questionAndAnswer.getValue(), parentTable, parentId, validFrom, storedFrom);
 
             if (requestAnswerShouldBeUpdated(validFrom, answerState)) {
                 updateRequestAnswer(questionAndAnswer.getValue(), answerState);
             }
-            answerState.saveEntityOrAuditLogIfRequired(requestAnswerRepo, requestAnswerAuditRepo);
+            answerState.addEntityOrAuditLogIfRequired(answersToSave, auditsToSave);
+        }
+        if (!answersToSave.isEmpty()) {
+            requestAnswerRepo.saveAll(answersToSave);
+        }
+        if (!auditsToSave.isEmpty()) {
+            requestAnswerAuditRepo.saveAll(auditsToSave);
+        }
+        logger.debug("Saved {} answers and {} audit logs for {} {}", answersToSave.size(), auditsToSave.size(), parentTable, parentId);
+    }
+
+    /**
+     * Get all existing answers for an entity.
+     * @param parentTable Data type that triggered the creation of question-answer pairs.
+     * @param parentId    Parent entity that triggered the creation of questions and answers for it.
+     * @return answers for the entity by the id of their question
+     */
+    private Map<Long, RequestAnswer> getAnswersByQuestionId(String parentTable, long parentId) {
+        Map<Long, RequestAnswer> answersByQuestionId = new HashMap<>();
+        for (RequestAnswer answer : requestAnswerRepo.findAllByParentTableAndParentId(parentTable, parentId)) {
+            answersByQuestionId.put(answer.getQuestionId().getQuestionId(), answer);
         }
+        return answersByQuestionId;
     }
 
     /**
      * Check whether answer for entity triggering question already exists in the question repository or whether it would
      * need to change.
-     * @param question    Question as such.
-     * @param answer      Answer to the questions.
-     * @param parentTable Data type that triggered the creation of question-answer pair.
-     * @param parentId    Parent entity that triggered the creation of question and answer for it.
-     * @param validFrom   Time when question got changed most recently.
-     * @param storedFrom  Time when star started question processing.
+     * @param existingAnswers Existing answers for the entity, by the id of their question.
+     * @param question        Question as such.
+     * @param answer          Answer to the questions.
+     * @param parentTable     Data type that triggered the creation of question-answer pair.
+     * @param parentId        Parent entity that triggered the creation of question and answer for it.
+     * @param validFrom       Time when question got changed most recently.
+     * @param storedFrom      Time when star started question processing.
      * @return an answer to a question linked to a specific entity.
      */
-    public RowState<RequestAnswer, RequestAnswerAudit> getOrCreateRequestAnswer(Question question,
-                                                                                String answer, String parentTable,
-                                                                                long parentId, Instant validFrom,
-                                                                                Instant storedFrom) {
-        return requestAnswerRepo
-                .findByQuestionIdAndParentId(question, parentId)
-                .map(r -> new RowState<>(r, validFrom, storedFrom, false))
-                .orElseGet(() -> createRequestAnswer(question, answer, parentTable, parentId, validFrom, storedFrom));
+    private RowState<RequestAnswer, RequestAnswerAudit> getOrCreateRequestAnswer(Map<Long, RequestAnswer> existingAnswers,
+                                                                                 Question question, String answer,
+                                                                                 String parentTable, long parentId,
+                                                                                 Instant validFrom, Instant storedFrom) {
+        RequestAnswer existing = existingAnswers.get(question.getQuestionId());
+        if (existing != null) {
+            return new RowState<>(existing, validFrom, storedFrom, false);
+        }
+        return createRequestAnswer(question, answer, parentTable, parentId, validFrom, storedFrom);
     }
 
     /**
@@ -147,9 +184,11 @@ public class QuestionController {
 class QuestionCache {
     private static final Logger logger = LoggerFactory.getLogger(QuestionCache.class);
     private final QuestionRepository questionRepo;
+    private final ReferenceDataLock referenceDataLock;
 
-    QuestionCache(QuestionRepository questionRepo) {
+    QuestionCache(QuestionRepository questionRepo, ReferenceDataLock referenceDataLock) {
         this.questionRepo = questionRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
     /**
@@ -162,9 +201,9 @@ class QuestionCache {
      */
     @Cacheable(value = "question", key = "{#question}")
     public Question getOrCreateQuestion(String question, Instant validFrom, Instant storedFrom) {
-        return questionRepo
-                .findByQuestion(question)
-                .orElseGet(() -> createQuestion(question, validFrom, storedFrom));
+        return referenceDataLock.findOrCreate(
+                () -> questionRepo.findByQuestion(question),
+                () -> createQuestion(question, validFrom, storedFrom));
     }
 
     /**
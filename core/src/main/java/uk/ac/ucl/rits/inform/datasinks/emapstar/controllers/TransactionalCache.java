@@ -0,0 +1,223 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Cache shared by all transactions, where entries read or written within a transaction are only visible to that transaction until it
+ * commits, so a rollback leaves the cache unchanged.
+ * <p>
+ * Evictions take effect immediately and again once the transaction completes, so another transaction can't add back an entry that was
+ * read before the change was committed. An entry that was only read is never added to the shared cache if there has been an eviction
+ * since it was read, an entry that was written replaces the shared entry once the transaction commits.
+ * @param <K> key type
+ * @param <V> value type
+ */
+class TransactionalCache<K, V> {
+    private final Cache<K, V> cache;
+    private final boolean enabled;
+    /**
+     * Incremented by every eviction, entries that were only read are added if there has been no eviction since they were read.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param maximumSize maximum number of entries, 0 disables the cache
+     */
+    TransactionalCache(long maximumSize) {
+        enabled = maximumSize > 0;
+        cache = Caffeine.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * @param key key of the entry
+     * @return cached value, if known
+     */
+    Optional<V> get(K key) {
+        TransactionEntries transactionEntries = getTransactionEntries();
+        if (transactionEntries != null && transactionEntries.pending.containsKey(key)) {
+            return Optional.of(transactionEntries.pending.get(key));
+        }
+        return Optional.ofNullable(cache.getIfPresent(key));
+    }
+
+    /**
+     * @return value to pass to {@link #put} for a value read from the database after this call
+     */
+    long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Add a value read from the database, visible to the rest of the current transaction and to everything else once it commits.
+     * @param key            key of the entry
+     * @param value          value read from the database
+     * @param readGeneration {@link #currentGeneration()} from before the value was read from the database
+     */
+    void put(K key, V value, long readGeneration) {
+        if (!enabled) {
+            return;
+        }
+        TransactionEntries transactionEntries = getOrBindTransactionEntries();
+        if (transactionEntries == null) {
+            putIfNotEvictedSince(key, value, readGeneration);
+        } else {
+            transactionEntries.pending.put(key, value);
+            transactionEntries.readGenerations.put(key, readGeneration);
+        }
+    }
+
+    /**
+     * Replace the value after it has been written to the database.
+     * @param key   key of the entry
+     * @param value value including the changes that have been written
+     */
+    void written(K key, V value) {
+        if (!enabled) {
+            return;
+        }
+        evictKeysNow(Set.of(key));
+        TransactionEntries transactionEntries = getOrBindTransactionEntries();
+        if (transactionEntries == null) {
+            cache.put(key, value);
+        } else {
+            transactionEntries.pending.put(key, value);
+            transactionEntries.readGenerations.remove(key);
+        }
+    }
+
+    /**
+     * Evict the entries for keys whose values have been changed.
+     * @param keys keys of the entries
+     */
+    void evictKeys(Collection<K> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        evictKeysNow(keys);
+        TransactionEntries transactionEntries = getOrBindTransactionEntries();
+        if (transactionEntries != null) {
+            transactionEntries.removePending(keys::contains);
+            transactionEntries.evictedKeys.addAll(keys);
+        }
+    }
+
+    /**
+     * Evict all entries with values that have been changed.
+     * @param stale matches the values that have been changed, must not depend on state that the caller changes later
+     */
+    void evictValues(Predicate<V> stale) {
+        if (!enabled) {
+            return;
+        }
+        evictValuesNow(stale, key -> true);
+        TransactionEntries transactionEntries = getOrBindTransactionEntries();
+        if (transactionEntries != null) {
+            transactionEntries.removePending(key -> stale.test(transactionEntries.pending.get(key)));
+            transactionEntries.evictedValues.add(stale);
+        }
+    }
+
+    private void evictKeysNow(Collection<K> keys) {
+        generation.incrementAndGet();
+        cache.invalidateAll(keys);
+    }
+
+    private void evictValuesNow(Predicate<V> stale, Predicate<K> evictable) {
+        generation.incrementAndGet();
+        cache.asMap().entrySet().removeIf(entry -> evictable.test(entry.getKey()) && stale.test(entry.getValue()));
+    }
+
+    private void putIfNotEvictedSince(K key, V value, long readGeneration) {
+        cache.asMap().compute(key, (k, existing) -> generation.get() == readGeneration ? value : existing);
+        // an eviction may have started between the check and the put
+        if (generation.get() != readGeneration) {
+            cache.asMap().remove(key, value);
+        }
+    }
+
+    private TransactionEntries getTransactionEntries() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        TransactionEntries transactionEntries = (TransactionEntries) TransactionSynchronizationManager.getResource(this);
+        return transactionEntries;
+    }
+
+    private TransactionEntries getOrBindTransactionEntries() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        TransactionEntries transactionEntries = getTransactionEntries();
+        if (transactionEntries == null) {
+            transactionEntries = new TransactionEntries();
+            TransactionSynchronizationManager.bindResource(this, transactionEntries);
+            TransactionSynchronizationManager.registerSynchronization(transactionEntries);
+        }
+        return transactionEntries;
+    }
+
+    /**
+     * Entries read, written and evicted by a single transaction.
+     * Entries that were written have no read generation, as they replace the shared entry however it has changed since.
+     */
+    private class TransactionEntries implements TransactionSynchronization {
+        private final Map<K, V> pending = new HashMap<>();
+        private final Map<K, Long> readGenerations = new HashMap<>();
+        private final Set<K> evictedKeys = new HashSet<>();
+        private final List<Predicate<V>> evictedValues = new ArrayList<>();
+
+        private void removePending(Predicate<K> stale) {
+            pending.keySet().removeIf(stale);
+            readGenerations.keySet().retainAll(pending.keySet());
+        }
+
+        @Override
+        public void afterCommit() {
+            pending.forEach((key, value) -> {
+                Long readGeneration = readGenerations.get(key);
+                if (readGeneration == null) {
+                    cache.put(key, value);
+                } else {
+                    putIfNotEvictedSince(key, value, readGeneration);
+                }
+            });
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(TransactionalCache.this);
+            boolean committed = status == STATUS_COMMITTED;
+            Set<K> staleKeys = new HashSet<>(evictedKeys);
+            if (committed) {
+                // entries added after this transaction's evictions already include its changes
+                staleKeys.removeAll(pending.keySet());
+            } else {
+                pending.keySet().stream().filter(key -> !readGenerations.containsKey(key)).forEach(staleKeys::add);
+            }
+            // other transactions may have cached the state from before this transaction's changes were visible
+            if (!staleKeys.isEmpty()) {
+                evictKeysNow(staleKeys);
+            }
+            if (!evictedValues.isEmpty()) {
+                evictValuesNow(
+                        value -> evictedValues.stream().anyMatch(evicted -> evicted.test(value)),
+                        key -> !committed || !pending.containsKey(key));
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.AuditedBulkDelete;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.DataSources;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.IncompatibleDatabaseStateException;
@@ -13,6 +14,7 @@ import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.HospitalVisitRepository;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisitAudit;
 import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
+import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservation;
 import uk.ac.ucl.rits.inform.interchange.adt.AdmissionDateTime;
 import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
 import uk.ac.ucl.rits.inform.interchange.adt.AdtCancellation;
@@ -26,6 +28,7 @@ import uk.ac.ucl.rits.inform.interchange.adt.RegisterPatient;
 import uk.ac.ucl.rits.inform.interchange.adt.UpdatePatientInfo;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -37,14 +40,18 @@ public class VisitController {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final HospitalVisitRepository hospitalVisitRepo;
     private final HospitalVisitAuditRepository hospitalVisitAuditRepo;
+    private final AuditedBulkDelete auditedBulkDelete;
 
     /**
      * @param hospitalVisitRepo      repository for HospitalVisit
      * @param hospitalVisitAuditRepo repository for HospitalVisitAudit
+     * @param auditedBulkDelete      audits and deletes many visits together
      */
-    public VisitController(HospitalVisitRepository hospitalVisitRepo, HospitalVisitAuditRepository hospitalVisitAuditRepo) {
+    public VisitController(
+            HospitalVisitRepository hospitalVisitRepo, HospitalVisitAuditRepository hospitalVisitAuditRepo, AuditedBulkDelete auditedBulkDelete) {
         this.hospitalVisitRepo = hospitalVisitRepo;
         this.hospitalVisitAuditRepo = hospitalVisitAuditRepo;
+        this.auditedBulkDelete = auditedBulkDelete;
     }
 
     /**
@@ -319,14 +326,16 @@ public class VisitController {
     }
 
     /**
-     * Deletes visit and updates corresponding audit table.
-     * @param visit             List of hospital visits
+     * Deletes visits and updates corresponding audit table.
+     * <p>
+     * Visit observations are removed with the visit without being audited, as they were when visits were deleted by hibernate.
+     * @param visitIds          ids of the hospital visits
      * @param invalidationTime  Time of the delete information message
      * @param deletionTime      time that emap-core started processing the message.
      */
-    public void deleteVisit(HospitalVisit visit, Instant invalidationTime, Instant deletionTime) {
-        hospitalVisitAuditRepo.save(visit.createAuditEntity(invalidationTime, deletionTime));
-        hospitalVisitRepo.delete(visit);
+    public void deleteVisits(Collection<Long> visitIds, Instant invalidationTime, Instant deletionTime) {
+        auditedBulkDelete.delete(VisitObservation.class, auditedBulkDelete.findIds(VisitObservation.class, "hospitalVisitId", visitIds));
+        auditedBulkDelete.auditAndDelete(HospitalVisit.class, HospitalVisitAudit.class, visitIds, invalidationTime, deletionTime);
     }
 
 }
@@ -1,5 +1,6 @@
 package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.annotation.CacheEvict;
@@ -7,6 +8,7 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.RowState;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.visit_observations.VisitObservationAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.visit_observations.VisitObservationRepository;
@@ -22,6 +24,14 @@ import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetMetadata;
 
 import javax.annotation.Resource;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Interactions with observation visits.
@@ -38,20 +48,24 @@ public class VisitObservationController {
     private final VisitObservationAuditRepository visitObservationAuditRepo;
     private final VisitObservationTypeRepository visitObservationTypeRepo;
     private final VisitObservationTypeAuditRepository visitObservationTypeAuditRepo;
+    private final ReferenceDataLock referenceDataLock;
 
     /**
      * @param visitObservationRepo          autowired
      * @param visitObservationAuditRepo     autowired
      * @param visitObservationTypeRepo      autowired
      * @param visitObservationTypeAuditRepo autowired
+     * @param referenceDataLock             stops observation types being created twice by parallel workers
      */
     public VisitObservationController(
             VisitObservationRepository visitObservationRepo, VisitObservationAuditRepository visitObservationAuditRepo,
-            VisitObservationTypeRepository visitObservationTypeRepo, VisitObservationTypeAuditRepository visitObservationTypeAuditRepo) {
+            VisitObservationTypeRepository visitObservationTypeRepo, VisitObservationTypeAuditRepository visitObservationTypeAuditRepo,
+            ReferenceDataLock referenceDataLock) {
         this.visitObservationRepo = visitObservationRepo;
         this.visitObservationAuditRepo = visitObservationAuditRepo;
         this.visitObservationTypeRepo = visitObservationTypeRepo;
         this.visitObservationTypeAuditRepo = visitObservationTypeAuditRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
     /**
@@ -106,19 +120,89 @@ public class VisitObservationController {
      */
     @Transactional
     public void processFlowsheet(Flowsheet msg, HospitalVisit visit, Instant storedFrom) throws RequiredDataMissingException {
+        checkValueTypeSet(msg);
+        VisitObservationType observationType = getOrCreateObservationType(msg, storedFrom);
+        RowState<VisitObservation, VisitObservationAudit> flowsheetState = getOrCreateFlowsheet(msg, visit, observationType, storedFrom);
+        updateFlowsheetIfNewer(msg, flowsheetState, observationType, storedFrom);
+    }
+
+    /**
+     * Create, update or delete all flowsheets for a visit, in order, with the same outcome as processing each of them
+     * with {@link #processFlowsheet}.
+     * <p>
+     * Existing visit observations for all flowsheets are fetched in a single query, rather than one query per flowsheet.
+     * @param msgs       flowsheets for the visit
+     * @param visit      hospital visit
+     * @param storedFrom time that emap-core started processing the message
+     * @throws RequiredDataMissingException if isNumericType is not set for any of the flowsheets
+     */
+    @Transactional
+    public void processFlowsheets(List<Flowsheet> msgs, HospitalVisit visit, Instant storedFrom) throws RequiredDataMissingException {
+        for (Flowsheet msg : msgs) {
+            checkValueTypeSet(msg);
+        }
+        List<VisitObservationType> observationTypes = new ArrayList<>(msgs.size());
+        for (Flowsheet msg : msgs) {
+            observationTypes.add(getOrCreateObservationType(msg, storedFrom));
+        }
+        Set<Instant> observationTimes = msgs.stream()
+                .map(Flowsheet::getObservationTime)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Pair<Long, Instant>, VisitObservation> observations = new HashMap<>();
+        if (!observationTimes.isEmpty()) {
+            for (VisitObservation obs : visitObservationRepo.findAllByHospitalVisitIdAndVisitObservationTypeIdInAndObservationDatetimeIn(
+                    visit, new HashSet<>(observationTypes), observationTimes)) {
+                observations.putIfAbsent(observationKey(obs.getVisitObservationTypeId(), obs.getObservationDatetime()), obs);
+            }
+        }
+
+        for (int i = 0; i < msgs.size(); i++) {
+            Flowsheet msg = msgs.get(i);
+            VisitObservationType observationType = observationTypes.get(i);
+            Pair<Long, Instant> key = observationKey(observationType, msg.getObservationTime());
+            VisitObservation existing = observations.get(key);
+            RowState<VisitObservation, VisitObservationAudit> flowsheetState = existing == null
+                    ? createMinimalFlowsheetState(msg, visit, observationType, storedFrom)
+                    : new RowState<>(existing, msg.getLastUpdatedInstant(), storedFrom, false);
+            updateFlowsheetIfNewer(msg, flowsheetState, observationType, storedFrom);
+            // a null observation time never matches an existing row, so each of these creates a new observation
+            if (msg.getObservationTime() != null) {
+                observations.putIfAbsent(key, flowsheetState.getEntity());
+            }
+        }
+    }
+
+    private static Pair<Long, Instant> observationKey(VisitObservationType observationType, Instant observationTime) {
+        return Pair.of(observationType.getVisitObservationTypeId(), observationTime);
+    }
+
+    private void checkValueTypeSet(Flowsheet msg) throws RequiredDataMissingException {
         if (msg.getValueType() == null) {
             throw new RequiredDataMissingException("Flowsheet DataType not set");
         }
+    }
 
-        var validFrom = msg.getLastUpdatedInstant();
-        VisitObservationType observationType = cache.getOrCreatePersistedObservationType(msg.getInterfaceId(),
-                msg.getFlowsheetId(), msg.getSourceObservationType(), validFrom, storedFrom);
+    private VisitObservationType getOrCreateObservationType(Flowsheet msg, Instant storedFrom) {
+        return cache.getOrCreatePersistedObservationType(msg.getInterfaceId(),
+                msg.getFlowsheetId(), msg.getSourceObservationType(), msg.getLastUpdatedInstant(), storedFrom);
+    }
 
-        RowState<VisitObservation, VisitObservationAudit> flowsheetState = getOrCreateFlowsheet(msg, visit, observationType, storedFrom);
+    /**
+     * Update and save the visit observation and its type if the message is newer than the observation.
+     * @param msg             flowsheet
+     * @param flowsheetState  observation entity wrapped in RowState
+     * @param observationType visit observation type
+     * @param storedFrom      time that emap-core started processing the message
+     * @throws RequiredDataMissingException if data type is not recognised for flowsheets
+     */
+    private void updateFlowsheetIfNewer(
+            Flowsheet msg, RowState<VisitObservation, VisitObservationAudit> flowsheetState, VisitObservationType observationType,
+            Instant storedFrom) throws RequiredDataMissingException {
         if (flowsheetState.messageShouldBeUpdated(msg.getLastUpdatedInstant())) {
             updateVisitObservation(msg, flowsheetState);
             flowsheetState.saveEntityOrAuditLogIfRequired(visitObservationRepo, visitObservationAuditRepo);
-            updateDataFlagsAndSaveObservationType(msg, observationType, validFrom, storedFrom);
+            updateDataFlagsAndSaveObservationType(msg, observationType, msg.getLastUpdatedInstant(), storedFrom);
         }
     }
 
@@ -228,10 +312,11 @@ public class VisitObservationController {
      */
     private RowState<VisitObservationType, VisitObservationTypeAudit> getOrCreateObservationTypeState(
             String interfaceId, String idInApplication, String observationType, Instant validFrom, Instant storedFrom) {
-        return visitObservationTypeRepo
-                .find(interfaceId, idInApplication, observationType)
-                .map(vot -> new RowState<>(vot, validFrom, storedFrom, false))
-                .orElseGet(() -> createNewTypeInState(idInApplication, interfaceId, observationType, validFrom, storedFrom));
+        return referenceDataLock.findOrCreate(
+                () -> visitObservationTypeRepo
+                        .find(interfaceId, idInApplication, observationType)
+                        .map(vot -> new RowState<>(vot, validFrom, storedFrom, false)),
+                () -> createNewTypeInState(idInApplication, interfaceId, observationType, validFrom, storedFrom));
     }
 
     /**
@@ -336,9 +421,11 @@ public class VisitObservationController {
 class VisitObservationCache {
 
     private final VisitObservationTypeRepository visitObservationTypeRepo;
+    private final ReferenceDataLock referenceDataLock;
 
-    VisitObservationCache(VisitObservationTypeRepository visitObservationTypeRepo) {
+    VisitObservationCache(VisitObservationTypeRepository visitObservationTypeRepo, ReferenceDataLock referenceDataLock) {
         this.visitObservationTypeRepo = visitObservationTypeRepo;
+        this.referenceDataLock = referenceDataLock;
     }
 
     /**
@@ -353,9 +440,9 @@ class VisitObservationCache {
     @Cacheable(value = "visitObservationType", key = "{ #interfaceId, #idInApplication, #observationType }")
     public VisitObservationType getOrCreatePersistedObservationType(
             String interfaceId, String idInApplication, String observationType, Instant validFrom, Instant storedFrom) {
-        return visitObservationTypeRepo
-                .find(interfaceId, idInApplication, observationType)
-                .orElseGet(() -> {
+        return referenceDataLock.findOrCreate(
+                () -> visitObservationTypeRepo.find(interfaceId, idInApplication, observationType),
+                () -> {
                     VisitObservationType type = new VisitObservationType(idInApplication, interfaceId, observationType, validFrom, storedFrom);
                     return visitObservationTypeRepo.save(type);
                 });
@@ -11,9 +11,11 @@ import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
 import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetMetadata;
 
 import java.time.Instant;
+import java.util.List;
 
 /**
  * Handle processing of Flowsheet messages.
@@ -54,6 +56,29 @@ public class FlowsheetProcessor {
         visitObservationController.processFlowsheet(msg, visit, storedFrom);
     }
 
+    /**
+     * Process all flowsheets in a batch, looking up the patient and visit once.
+     * <p>
+     * A new patient or visit is created with the observation time of the first flowsheet, as it would have been if the
+     * flowsheets were processed individually.
+     * @param msg        batch of flowsheets for a single patient and visit
+     * @param storedFrom Time the message started to be processed by star
+     * @throws EmapOperationMessageProcessingException if message can't be processed.
+     */
+    @Transactional
+    public void processMessage(final FlowsheetBatch msg, final Instant storedFrom) throws EmapOperationMessageProcessingException {
+        List<Flowsheet> flowsheets = msg.getFlowsheets();
+        if (flowsheets.isEmpty()) {
+            logger.debug("No flowsheets in batch {}", msg.getSourceMessageId());
+            return;
+        }
+        Instant observationTime = flowsheets.get(0).getObservationTime();
+        Mrn mrn = personController.getOrCreateMrn(msg.getMrn(), null, msg.getSourceSystem(), observationTime, storedFrom);
+        HospitalVisit visit = visitController.getOrCreateMinimalHospitalVisit(
+                msg.getVisitNumber(), mrn, msg.getSourceSystem(), observationTime, storedFrom);
+        visitObservationController.processFlowsheets(flowsheets, visit, storedFrom);
+    }
+
     /**
      * Process flowsheet metadata.
      * @param msg        message
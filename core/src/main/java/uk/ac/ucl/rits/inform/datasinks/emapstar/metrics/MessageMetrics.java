@@ -0,0 +1,53 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how long each interchange message took to process, tagged by message type, source system and outcome.
+ * <p>
+ * The count of each timer gives the number of messages with each outcome.
+ */
+@Component
+public class MessageMetrics {
+    /**
+     * Name of the timer for processing a single message.
+     */
+    public static final String MESSAGE_TIMER = "emap.core.message";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<List<String>, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry registry to record metrics in
+     */
+    public MessageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param msg      the message that was processed
+     * @param outcome  outcome of processing
+     * @param duration time taken to process the message
+     */
+    public void recordMessage(EmapOperationMessage msg, MessageOutcome outcome, Duration duration) {
+        String sourceSystem = Objects.toString(msg.getSourceSystem(), "unknown");
+        List<String> tags = List.of(msg.getMessageType(), sourceSystem, outcome.tagValue());
+        timers.computeIfAbsent(tags, key -> Timer.builder(MESSAGE_TIMER)
+                        .description("Time to process an interchange message")
+                        .tag("messageType", msg.getMessageType())
+                        .tag("sourceSystem", sourceSystem)
+                        .tag("outcome", outcome.tagValue())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(duration);
+    }
+}
@@ -0,0 +1,26 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.metrics;
+
+/**
+ * Outcome of processing an interchange message, used to tag metrics.
+ */
+public enum MessageOutcome {
+    /**
+     * Processed successfully and acknowledged.
+     */
+    ACK,
+    /**
+     * Skipped using a MessageIgnoredException.
+     */
+    IGNORED,
+    /**
+     * Failed to be processed.
+     */
+    ERROR;
+
+    /**
+     * @return value to use as a metrics tag
+     */
+    public String tagValue() {
+        return name().toLowerCase();
+    }
+}
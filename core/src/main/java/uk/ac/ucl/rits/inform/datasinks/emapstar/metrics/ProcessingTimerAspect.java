@@ -0,0 +1,86 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every public method of the data processors and every call to a repository.
+ * <p>
+ * Processor timers are tagged by processor class and method, repository timers by repository interface and method.
+ * Both are also tagged with the exception thrown, if any.
+ * Timers are cached by name and tags, as repositories are called many times for each message.
+ */
+@Aspect
+@Component
+public class ProcessingTimerAspect {
+    /**
+     * Name of the timer for data processor methods.
+     */
+    public static final String PROCESSOR_TIMER = "emap.core.processor";
+    /**
+     * Name of the timer for repository calls.
+     */
+    public static final String REPOSITORY_TIMER = "emap.core.repository";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<List<String>, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry registry to record metrics in
+     */
+    public ProcessingTimerAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param joinPoint processor method being called
+     * @return result of the processor method
+     * @throws Throwable anything thrown by the processor method
+     */
+    @Around("execution(public * uk.ac.ucl.rits.inform.datasinks.emapstar.dataprocessors.*.*(..))")
+    public Object timeProcessor(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(joinPoint, PROCESSOR_TIMER, "processor", joinPoint.getSignature().getDeclaringType().getSimpleName());
+    }
+
+    /**
+     * @param joinPoint repository method being called
+     * @return result of the repository method
+     * @throws Throwable anything thrown by the repository method
+     */
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        // inherited methods such as save are declared by the spring interfaces, so use the repository that was called
+        Class<?>[] repositoryInterfaces = AopProxyUtils.proxiedUserInterfaces(joinPoint.getThis());
+        return time(joinPoint, REPOSITORY_TIMER, "repository", repositoryInterfaces[0].getSimpleName());
+    }
+
+    private Object time(ProceedingJoinPoint joinPoint, String timerName, String classTag, String className) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable th) {
+            exception = th.getClass().getSimpleName();
+            throw th;
+        } finally {
+            sample.stop(getTimer(timerName, classTag, className, joinPoint.getSignature().getName(), exception));
+        }
+    }
+
+    private Timer getTimer(String timerName, String classTag, String className, String method, String exception) {
+        return timers.computeIfAbsent(List.of(timerName, className, method, exception), key -> Timer.builder(timerName)
+                .tag(classTag, className)
+                .tag("method", method)
+                .tag("exception", exception)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the metrics recorded while processing messages, exposed through the actuator metrics endpoint.
+ */
+
+package uk.ac.ucl.rits.inform.datasinks.emapstar.metrics;
@@ -1,5 +1,7 @@
 package uk.ac.ucl.rits.inform.datasinks.emapstar.repos;
 
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -23,7 +25,7 @@ import java.time.Instant;
         indexes = {@Index(columnList = "sourceId", unique = false)})
 public class IdsEffectLogging {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private Long id;
     private String sourceId;
     private Instant messageDatetime;
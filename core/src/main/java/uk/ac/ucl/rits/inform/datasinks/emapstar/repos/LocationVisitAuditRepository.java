@@ -1,15 +1,15 @@
 package uk.ac.ucl.rits.inform.datasinks.emapstar.repos;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
-import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 import uk.ac.ucl.rits.inform.informdb.movement.Location;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitAudit;
 
 import java.time.Instant;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 /**
  * Audit hospital visit repository.
@@ -23,29 +23,6 @@ public interface LocationVisitAuditRepository extends CrudRepository<LocationVis
      */
     Optional<LocationVisitAudit> findByLocationIdLocationString(String location);
 
-    /**
-     * Is a message location cancelled.
-     * @param hospitalVisit      hospital visit
-     * @param location           location
-     * @param messageTime        time of message
-     * @param dischargeCancelled true if message is a discharge message
-     * @return true if message has been cancelled.
-     */
-    default Boolean messageLocationIsCancelled(HospitalVisit hospitalVisit, Location location, Instant messageTime, boolean dischargeCancelled) {
-        if (dischargeCancelled) {
-            return existsByHospitalVisitIdAndLocationIdAndAdmissionDatetimeAndDischargeDatetimeAndInferredDischargeIsFalse(
-                    hospitalVisit.getHospitalVisitId(), location, messageTime, messageTime);
-        }
-        return existsByHospitalVisitIdAndLocationIdAndAdmissionDatetimeAndDischargeDatetimeAndInferredAdmissionIsFalse(
-                hospitalVisit.getHospitalVisitId(), location, messageTime, messageTime);
-    }
-
-    Boolean existsByHospitalVisitIdAndLocationIdAndAdmissionDatetimeAndDischargeDatetimeAndInferredAdmissionIsFalse(
-            Long hospitalVisit, Location location, Instant admission, Instant discharge);
-
-    Boolean existsByHospitalVisitIdAndLocationIdAndAdmissionDatetimeAndDischargeDatetimeAndInferredDischargeIsFalse(
-            Long hospitalVisit, Location location, Instant admission, Instant discharge);
-
     Optional<LocationVisitAudit> findByHospitalVisitIdAndLocationIdAndAdmissionDatetimeAndDischargeDatetime(
             Long hospitalVisitId, Location location, Instant admissionTime, Instant dischargeTime);
 
@@ -56,31 +33,21 @@ public interface LocationVisitAuditRepository extends CrudRepository<LocationVis
      * @return potential LocationVisitAudit entity
      */
     default Optional<LocationVisitAudit> findPreviousLocationVisitAuditForDischarge(Long locationVisitId, Instant cancellationTime) {
-        List<LocationVisitAudit> audits = findAllByLocationVisitIdOrderByStoredUntilDesc(locationVisitId);
-
-        Set<Instant> cancelledDischarges = new HashSet<>();
-        cancelledDischarges.add(cancellationTime);
-        for (LocationVisitAudit audit : audits) {
-            if (audit.getDischargeDatetime() == null || audit.getAdmissionDatetime() == null) {
-                continue;
-            }
-            if (audit.getDischargeDatetime().equals(audit.getAdmissionDatetime()) && !audit.getInferredAdmission()) {
-                cancelledDischarges.add(audit.getDischargeDatetime());
-            }
-        }
-
-        LocationVisitAudit previousDischarge = null;
-        for (LocationVisitAudit audit : audits) {
-            if (cancelledDischarges.contains(audit.getDischargeDatetime())) {
-                // skip cancelled discharges
-                continue;
-            }
-            previousDischarge = audit;
-            break;
-        }
-        return Optional.ofNullable(previousDischarge);
+        return findAllWithDischargeNotCancelled(locationVisitId, cancellationTime, PageRequest.of(0, 1)).stream().findFirst();
     }
 
-    List<LocationVisitAudit> findAllByLocationVisitIdOrderByStoredUntilDesc(Long locationVisitId);
-
+    /**
+     * Audit rows for a location visit, skipping discharges that have been cancelled.
+     * A discharge is cancelled if it is the cancellation time, or an audit row of the location visit has a non-inferred admission at the same time.
+     * @param locationVisitId  ID for location visit
+     * @param cancellationTime time of the cancelled discharge
+     * @param pageable         page of results
+     * @return audit rows, most recently stored first
+     */
+    @Query("select a from LocationVisitAudit a where a.locationVisitId = :locationVisitId "
+            + "and (a.dischargeDatetime is null or a.dischargeDatetime <> :cancellationTime) "
+            + "and not exists (select c from LocationVisitAudit c where c.locationVisitId = :locationVisitId "
+            + "    and c.admissionDatetime = a.dischargeDatetime and c.dischargeDatetime = a.dischargeDatetime and c.inferredAdmission = false) "
+            + "order by a.storedUntil desc")
+    List<LocationVisitAudit> findAllWithDischargeNotCancelled(Long locationVisitId, Instant cancellationTime, Pageable pageable);
 }
@@ -0,0 +1,46 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.repos;
+
+import org.springframework.data.repository.CrudRepository;
+import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
+import uk.ac.ucl.rits.inform.informdb.movement.Location;
+import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitCancellation;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Cancelled admissions and discharges, by hospital visit, location and time.
+ */
+public interface LocationVisitCancellationRepository extends CrudRepository<LocationVisitCancellation, Long> {
+    /**
+     * Is a message location cancelled.
+     * @param hospitalVisit      hospital visit
+     * @param location           location
+     * @param messageTime        time of message
+     * @param dischargeCancelled true if message is a discharge message
+     * @return true if message has been cancelled.
+     */
+    default boolean messageLocationIsCancelled(HospitalVisit hospitalVisit, Location location, Instant messageTime, boolean dischargeCancelled) {
+        if (dischargeCancelled) {
+            return existsByHospitalVisitIdAndLocationIdAndCancelledDatetimeAndDischargeCancelledIsTrue(
+                    hospitalVisit.getHospitalVisitId(), location, messageTime);
+        }
+        return existsByHospitalVisitIdAndLocationIdAndCancelledDatetimeAndAdmissionCancelledIsTrue(
+                hospitalVisit.getHospitalVisitId(), location, messageTime);
+    }
+
+    boolean existsByHospitalVisitIdAndLocationIdAndCancelledDatetimeAndAdmissionCancelledIsTrue(
+            Long hospitalVisitId, Location location, Instant cancelledDatetime);
+
+    boolean existsByHospitalVisitIdAndLocationIdAndCancelledDatetimeAndDischargeCancelledIsTrue(
+            Long hospitalVisitId, Location location, Instant cancelledDatetime);
+
+    /**
+     * @param hospitalVisitId   id of the hospital visit
+     * @param location          location
+     * @param cancelledDatetime time of the cancelled admission or discharge
+     * @return cancellation wrapped in optional
+     */
+    Optional<LocationVisitCancellation> findByHospitalVisitIdAndLocationIdAndCancelledDatetime(
+            Long hospitalVisitId, Location location, Instant cancelledDatetime);
+}
@@ -1,6 +1,6 @@
 package uk.ac.ucl.rits.inform.datasinks.emapstar.repos;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
 import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
 
@@ -9,8 +9,10 @@ import java.util.Optional;
 
 /**
  * Repository for interaction with MRN table.
+ * <p>
+ * Extends {@link JpaRepository} so that cached live MRNs can be used by reference without querying the table.
  */
-public interface MrnRepository extends CrudRepository<Mrn, Long> {
+public interface MrnRepository extends JpaRepository<Mrn, Long> {
     /**
      * Helper method to find MRNs (by mrn string and nhs number depending on what exists).
      * If both MRN and NHS number are given, get by MRN and then add in NHS number if it doesn't exist.
@@ -4,6 +4,7 @@ import org.springframework.data.repository.CrudRepository;
 import uk.ac.ucl.rits.inform.informdb.questions.Question;
 import uk.ac.ucl.rits.inform.informdb.questions.RequestAnswer;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -18,4 +19,12 @@ public interface RequestAnswerRepository extends CrudRepository<RequestAnswer, L
      * @return possible patient condition
      */
     Optional<RequestAnswer> findByQuestionIdAndParentId(Question question, long parentId);
+
+    /**
+     * Get all answers to questions for a specific entity.
+     * @param parentTable Data type of the entity that triggered the creation of the question-answer pairs.
+     * @param parentId    Entity that triggered the creation of the question-answer pairs.
+     * @return answers for the entity
+     */
+    List<RequestAnswer> findAllByParentTableAndParentId(String parentTable, long parentId);
 }
@@ -1,5 +1,6 @@
 package uk.ac.ucl.rits.inform.datasinks.emapstar.repos.forms;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import uk.ac.ucl.rits.inform.informdb.forms.Form;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
@@ -14,7 +15,13 @@ public interface FormRepository extends CrudRepository<Form, Long> {
 
     List<Form> findAllByHospitalVisitId(HospitalVisit hospitalVisit);
 
-    List<Form> findAllByMrnIdAndValidFromBefore(Mrn mrn, Instant deletionTime);
+    /**
+     * @param mrn       mrn that the forms are directly attached to
+     * @param validFrom time that the forms must be valid from before
+     * @return ids of the forms
+     */
+    @Query("select f.formId from Form f where f.mrnId = :mrn and f.validFrom < :validFrom")
+    List<Long> findIdsByMrnIdAndValidFromBefore(Mrn mrn, Instant validFrom);
 
     /**
      * For testing only.
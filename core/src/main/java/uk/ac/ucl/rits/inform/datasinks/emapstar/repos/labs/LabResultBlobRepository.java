@@ -0,0 +1,10 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs;
+
+import org.springframework.data.repository.CrudRepository;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResultBlob;
+
+/**
+ * Lab result blob repository, by content hash.
+ */
+public interface LabResultBlobRepository extends CrudRepository<LabResultBlob, String> {
+}
@@ -3,6 +3,8 @@ package uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs;
 import org.springframework.data.repository.CrudRepository;
 import uk.ac.ucl.rits.inform.informdb.labs.LabTestDefinition;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -12,6 +14,13 @@ import java.util.Optional;
 public interface LabTestDefinitionRepository extends CrudRepository<LabTestDefinition, Long> {
     Optional<LabTestDefinition> findByLabProviderAndTestLabCode(String labProvider, String labTestCode);
 
+    /**
+     * @param labProvider  lab provider
+     * @param labTestCodes test codes
+     * @return all test definitions from the lab provider with one of the test codes
+     */
+    List<LabTestDefinition> findAllByLabProviderAndTestLabCodeIn(String labProvider, Collection<String> labTestCodes);
+
     /**
      * For testing.
      * @param testCode individual test code
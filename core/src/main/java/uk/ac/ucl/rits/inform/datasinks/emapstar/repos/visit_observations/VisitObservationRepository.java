@@ -6,6 +6,7 @@ import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservation;
 import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservationType;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,6 +27,16 @@ public interface VisitObservationRepository extends CrudRepository<VisitObservat
     Optional<VisitObservation> findByHospitalVisitIdAndVisitObservationTypeIdAndObservationDatetime(
             HospitalVisit visit, VisitObservationType type, Instant observationTime);
 
+    /**
+     * Visit observations for a visit that could match any of the types and observation times, to be matched up by the caller.
+     * @param visit            hospital visit
+     * @param types            visit observation types
+     * @param observationTimes initial times of the observations
+     * @return visit observations with any of the types and any of the observation times
+     */
+    List<VisitObservation> findAllByHospitalVisitIdAndVisitObservationTypeIdInAndObservationDatetimeIn(
+            HospitalVisit visit, Collection<VisitObservationType> types, Collection<Instant> observationTimes);
+
     /**
      * Retrieve all visit observations referring to one specific observation type.
      * @param vot Visit observation type of relevance
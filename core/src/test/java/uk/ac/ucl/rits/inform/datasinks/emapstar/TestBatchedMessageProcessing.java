@@ -0,0 +1,120 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageIgnoredException;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLoggingRepository;
+import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessor;
+import uk.ac.ucl.rits.inform.interchange.ResearchOptOut;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Processing multiple messages in a single transaction.
+ */
+class TestBatchedMessageProcessing extends MessageProcessingBase {
+    @Autowired
+    private BatchedMessageProcessor batchedMessageProcessor;
+    @Autowired
+    private IdsEffectLoggingRepository idsEffectLoggingRepository;
+
+    private List<ResearchOptOut> optOutMessages;
+
+    private static final String FAILING_MRN = "99999999";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        optOutMessages = messageFactory.getResearchOptOuts("all_opt_out.yaml");
+    }
+
+    /**
+     * Given no patients exist in the database
+     * When a batch of messages is processed
+     * Then all messages are processed successfully and the effect of each one is logged
+     */
+    @Test
+    void testAllMessagesInBatchProcessed() {
+        List<Boolean> processed = batchedMessageProcessor.processBatch(optOutMessages);
+
+        assertEquals(optOutMessages.size(), processed.size());
+        assertTrue(processed.stream().allMatch(success -> success));
+        assertEquals(optOutMessages.size(), getAllMrns().size());
+
+        assertEquals(optOutMessages.size(), idsEffectLoggingRepository.count());
+    }
+
+    /**
+     * Given no patients exist in the database
+     * When a batch is processed where one message is skipped after writing to the database
+     * Then the skipped message is not acknowledged, but the batch is committed including the changes it made
+     */
+    @Test
+    void testSkippedMessageKeepsChangesAndBatchCommitted() {
+        List<ResearchOptOut> batch = new ArrayList<>(optOutMessages);
+        batch.add(1, buildFailingOptOut(new MessageIgnoredException("skipped after writing to the database")));
+        List<Boolean> processed = batchedMessageProcessor.processBatch(batch);
+
+        assertFalse(processed.get(1));
+        assertEquals(batch.size() - 1, processed.stream().filter(success -> success).count());
+        List<String> mrns = getAllMrns().stream().map(Mrn::getMrn).collect(Collectors.toList());
+        assertEquals(batch.size(), mrns.size());
+        assertTrue(mrns.contains(FAILING_MRN));
+        assertEquals(batch.size(), idsEffectLoggingRepository.count());
+    }
+
+    /**
+     * Given no patients exist in the database
+     * When a batch is processed where one message fails with an unexpected exception
+     * Then the whole batch is rolled back
+     */
+    @Test
+    void testUnexpectedExceptionRollsBackBatch() {
+        List<ResearchOptOut> batch = new ArrayList<>(optOutMessages);
+        batch.add(1, buildFailingOptOut(new IllegalStateException("failed after writing to the database")));
+
+        assertThrows(IllegalStateException.class, () -> batchedMessageProcessor.processBatch(batch));
+
+        assertTrue(getAllMrns().isEmpty());
+        assertEquals(0, idsEffectLoggingRepository.count());
+    }
+
+    private ResearchOptOut buildFailingOptOut(Exception exception) {
+        ResearchOptOut failing = new FailingOptOut(exception);
+        failing.setMrn(FAILING_MRN);
+        failing.setLastUpdated(past);
+        failing.setActive(true);
+        failing.setSourceMessageId("failing");
+        return failing;
+    }
+
+    /**
+     * Writes to the database as normal, then throws an exception.
+     */
+    private static class FailingOptOut extends ResearchOptOut {
+        private final Exception exception;
+
+        FailingOptOut(Exception exception) {
+            this.exception = exception;
+        }
+
+        @Override
+        public void processMessage(EmapOperationMessageProcessor processor) throws EmapOperationMessageProcessingException {
+            super.processMessage(processor);
+            if (exception instanceof EmapOperationMessageProcessingException) {
+                throw (EmapOperationMessageProcessingException) exception;
+            }
+            throw (RuntimeException) exception;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLogging;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.IdsEffectLoggingRepository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Writing IdsEffectLogging rows in the background.
+ */
+class TestIdsEffectLoggingWriter extends MessageProcessingBase {
+    @Autowired
+    private IdsEffectLoggingRepository idsEffectLoggingRepository;
+
+    private IdsEffectLoggingWriter writer;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    private IdsEffectLogging buildRow(String sourceId) {
+        IdsEffectLogging row = new IdsEffectLogging();
+        row.setSourceId(sourceId);
+        row.setMessageType("test");
+        return row;
+    }
+
+    /**
+     * Given a writer with a batch size smaller than the number of rows
+     * When rows are written
+     * Then all rows are saved to the database
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    void testAllRowsWrittenInBatches() throws InterruptedException {
+        writer = new IdsEffectLoggingWriter(idsEffectLoggingRepository, 10, 2, 1.0);
+        writer.start();
+        for (int i = 0; i < 5; i++) {
+            writer.write(buildRow(Integer.toString(i)), true);
+        }
+        writer.awaitWritten();
+
+        assertEquals(5, idsEffectLoggingRepository.count());
+    }
+
+    /**
+     * Given a writer that doesn't sample any successful messages
+     * When rows for successful and unsuccessful messages are written
+     * Then only the unsuccessful rows are saved
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    void testErrorsAlwaysWrittenWhenSamplingSuccesses() throws InterruptedException {
+        writer = new IdsEffectLoggingWriter(idsEffectLoggingRepository, 10, 10, 0.0);
+        writer.start();
+        writer.write(buildRow("success"), true);
+        writer.write(buildRow("error"), false);
+        writer.write(buildRow("success"), true);
+        writer.awaitWritten();
+
+        assertEquals(1, idsEffectLoggingRepository.count());
+    }
+
+    /**
+     * Given a writer whose queue is full
+     * When another row is written
+     * Then the caller blocks until the writer has made space, and no rows are lost
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testFullQueueBlocksUntilSpace() throws Exception {
+        writer = new IdsEffectLoggingWriter(idsEffectLoggingRepository, 1, 1, 1.0);
+        writer.write(buildRow("queued"), true);
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> writer.write(buildRow("blocked"), true));
+        assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+        assertFalse(blocked.isDone());
+
+        writer.start();
+        blocked.get(10, TimeUnit.SECONDS);
+        writer.awaitWritten();
+        assertEquals(2, idsEffectLoggingRepository.count());
+    }
+
+    /**
+     * Given a repository that fails to save the first batch
+     * When rows are written
+     * Then the batch is retried and every row is saved
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    void testFailedBatchRetried() throws InterruptedException {
+        AtomicInteger saveAllCalls = new AtomicInteger();
+        IdsEffectLoggingRepository failingOnce = (IdsEffectLoggingRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{IdsEffectLoggingRepository.class}, (proxy, method, args) -> {
+                    if ("saveAll".equals(method.getName()) && saveAllCalls.getAndIncrement() == 0) {
+                        throw new IllegalStateException("database unavailable");
+                    }
+                    try {
+                        return method.invoke(idsEffectLoggingRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        writer = new IdsEffectLoggingWriter(failingOnce, 10, 10, 1.0);
+        writer.write(buildRow("error"), false);
+        writer.write(buildRow("success"), true);
+        writer.start();
+        writer.awaitWritten();
+
+        assertEquals(2, idsEffectLoggingRepository.count());
+        assertEquals(2, saveAllCalls.get());
+    }
+
+    /**
+     * Given invalid configuration
+     * When a writer is created
+     * Then an exception is thrown
+     */
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new IdsEffectLoggingWriter(idsEffectLoggingRepository, 0, 1, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> new IdsEffectLoggingWriter(idsEffectLoggingRepository, 1, 1, 1.5));
+    }
+}
@@ -0,0 +1,117 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessor;
+import uk.ac.ucl.rits.inform.interchange.messaging.InterchangeMessageConverter;
+import uk.ac.ucl.rits.inform.interchange.messaging.InterchangeMessageConverter.WireFormat;
+import uk.ac.ucl.rits.inform.interchange.test.helpers.InterchangeMessageFactory;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reading and writing interchange messages in the JSON and compact wire formats.
+ */
+class TestInterchangeMessageConverter {
+    private final InterchangeMessageConverter jsonConverter = new InterchangeMessageConverter(WireFormat.JSON);
+    private final InterchangeMessageConverter compactConverter = new InterchangeMessageConverter(WireFormat.COMPACT);
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    static List<EmapOperationMessage> messages() throws IOException {
+        InterchangeMessageFactory messageFactory = new InterchangeMessageFactory();
+        List<EmapOperationMessage> messages = new ArrayList<>();
+        messages.add(messageFactory.getAdtMessage("generic/A01.yaml"));
+        messages.add(messageFactory.getAdtMessage("generic/A40.yaml"));
+        messages.add(messageFactory.getConsult("notes.yaml"));
+        messages.add(messageFactory.getAdvanceDecision("new_with_questions.yaml"));
+        messages.add(messageFactory.getLocationMetadata("acun_census_bed.yaml"));
+        messages.addAll(messageFactory.getLabOrders("winpath/ORU_R01.yaml"));
+        messages.addAll(messageFactory.getLabOrders("winpath/isolate_inc_1.yaml"));
+        messages.addAll(messageFactory.getFlowsheets("hl7.yaml"));
+        messages.add(new FlowsheetBatch("batch", messageFactory.getFlowsheets("hl7.yaml")));
+        messages.addAll(messageFactory.getPatientInfections("hl7/minimal_mumps.yaml"));
+        messages.addAll(messageFactory.getFormMsgs("forms1.yaml"));
+        return messages;
+    }
+
+    private void assertSameContent(EmapOperationMessage expected, Object actual) throws IOException {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(mapper.writeValueAsString(expected), mapper.writeValueAsString(actual));
+    }
+
+    /**
+     * Given an interchange message
+     * When it is written in the compact format and read back
+     * Then it has the compact content type, no class names, and the same content as the original.
+     * @param msg interchange message
+     * @throws IOException shouldn't happen
+     */
+    @ParameterizedTest
+    @MethodSource("messages")
+    void testCompactRoundTrip(EmapOperationMessage msg) throws IOException {
+        Message message = compactConverter.toMessage(msg, new MessageProperties());
+
+        assertEquals(InterchangeMessageConverter.COMPACT_CONTENT_TYPE, message.getMessageProperties().getContentType());
+        try (InputStream body = new InflaterInputStream(new ByteArrayInputStream(message.getBody()))) {
+            assertFalse(new String(body.readAllBytes(), StandardCharsets.UTF_8).contains("uk.ac.ucl"));
+        }
+        assertSameContent(msg, jsonConverter.fromMessage(message));
+    }
+
+    /**
+     * Given an interchange message
+     * When it is written as JSON
+     * Then it can still be read by a converter that writes the compact format, and is larger than the compact format.
+     * @param msg interchange message
+     * @throws IOException shouldn't happen
+     */
+    @ParameterizedTest
+    @MethodSource("messages")
+    void testJsonStillReadable(EmapOperationMessage msg) throws IOException {
+        Message jsonMessage = jsonConverter.toMessage(msg, new MessageProperties());
+
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, jsonMessage.getMessageProperties().getContentType());
+        assertSameContent(msg, compactConverter.fromMessage(jsonMessage));
+        assertTrue(compactConverter.toMessage(msg, new MessageProperties()).getBody().length < jsonMessage.getBody().length);
+    }
+
+    /**
+     * Given a message class that has no registered type id
+     * When it is written in the compact format
+     * Then it is read back using its class name.
+     * @throws IOException shouldn't happen
+     */
+    @Test
+    void testUnregisteredClassUsesClassName() throws IOException {
+        UnregisteredMessage msg = new UnregisteredMessage();
+        msg.setSourceSystem("test");
+        msg.setSourceMessageId("1");
+
+        assertSameContent(msg, compactConverter.fromMessage(compactConverter.toMessage(msg, new MessageProperties())));
+    }
+
+    /**
+     * Message type that isn't in the registered type ids.
+     */
+    public static class UnregisteredMessage extends EmapOperationMessage {
+        @Override
+        public void processMessage(EmapOperationMessageProcessor processor) {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.metrics.MessageMetrics;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.metrics.ProcessingTimerAspect;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Timers recorded while processing messages.
+ */
+class TestProcessingMetrics extends MessageProcessingBase {
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private BatchedMessageProcessor batchedMessageProcessor;
+
+    /**
+     * Given no existing patients
+     * When flowsheets are processed
+     * Then timers are recorded for the data processor and each repository it used
+     * @throws IOException                             shouldn't happen
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testProcessorAndRepositoryTimers() throws IOException, EmapOperationMessageProcessingException {
+        processMessages(messageFactory.getFlowsheets("hl7.yaml", "0000040"));
+
+        Timer processorTimer = meterRegistry.find(ProcessingTimerAspect.PROCESSOR_TIMER).tag("processor", "FlowsheetProcessor").timer();
+        assertNotNull(processorTimer);
+        assertTrue(processorTimer.count() > 0);
+
+        Timer repositoryTimer = meterRegistry.find(ProcessingTimerAspect.REPOSITORY_TIMER).tag("repository", "VisitObservationRepository").timer();
+        assertNotNull(repositoryTimer);
+        assertTrue(repositoryTimer.count() > 0);
+    }
+
+    /**
+     * Given no existing patients
+     * When flowsheets are processed as a batch
+     * Then a message timer with an ack outcome is recorded for each message
+     * @throws IOException shouldn't happen
+     */
+    @Test
+    void testMessageTimerPerMessage() throws IOException {
+        List<Flowsheet> messages = messageFactory.getFlowsheets("hl7.yaml", "0000040");
+        batchedMessageProcessor.processBatch(messages);
+
+        Timer messageTimer = meterRegistry.find(MessageMetrics.MESSAGE_TIMER)
+                .tags("messageType", messages.get(0).getMessageType(), "outcome", "ack")
+                .timer();
+        assertNotNull(messageTimer);
+        assertEquals(messages.size(), messageTimer.count());
+    }
+}
@@ -110,6 +110,29 @@ class TestQuestionProcessing extends MessageProcessingBase {
         assertEquals(newClinicalAnswer, requestAnswer.getAnswer());
     }
 
+    /**
+     * Given that there is one lab sample with 3 questions added to database
+     * When a newer lab sample message with an updated answer, an unchanged answer and a new question is processed
+     * Then the updated answer is audited, the new answer is added and the unchanged answer is left alone
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testLabQuestionsUpdatedAndAddedTogether() throws Exception {
+        processSingleMessage(labOrderMsg);
+        labOrderMsg.setStatusChangeTime(labMessageDatetime.plusSeconds(60));
+        labOrderMsg.getQuestions().put("Clinical Details:", "very sleepy");
+        labOrderMsg.getQuestions().put("Is this a new question?", "yes");
+        processSingleMessage(labOrderMsg);
+
+        LabSample sample = labSampleRepo.findByExternalLabNumber(labOrderMsg.getLabSpecimenNumber()).orElseThrow();
+        assertEquals(4, questionRepo.count());
+        assertEquals(4, requestAnswerRepo.count());
+        assertEquals(1, requestAnswerAuditRepo.count());
+        Question newQuestion = questionRepo.findByQuestion("Is this a new question?").orElseThrow();
+        RequestAnswer newAnswer = requestAnswerRepo.findByQuestionIdAndParentId(newQuestion, sample.getLabSampleId()).orElseThrow();
+        assertEquals("yes", newAnswer.getAnswer());
+    }
+
     @Test
     void testLabQuestionAnswerNotUpdatedIfOlder() throws Exception {
         // process original message
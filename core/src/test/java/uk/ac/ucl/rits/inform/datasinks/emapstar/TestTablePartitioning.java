@@ -0,0 +1,108 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.TablePartitioning.PartitionedTable;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bounds and DDL for converting tables to partitioned tables, without needing postgres.
+ */
+class TestTablePartitioning {
+    private static final LocalDate CURRENT_MONTH = LocalDate.parse("2026-10-01");
+    private final PartitionedTable table = new PartitionedTable("star.visit_observation", "valid_from", "visit_observation_id");
+
+    /**
+     * Given an existing table with no rows
+     * When the legacy partition bound is found
+     * Then it is the start of the current month
+     */
+    @Test
+    void testLegacyBoundOfEmptyTable() {
+        assertEquals(CURRENT_MONTH, TablePartitioning.legacyUpperBound(null, CURRENT_MONTH));
+    }
+
+    /**
+     * Given an existing table which already has rows in the current month
+     * When the legacy partition bound is found
+     * Then it is the start of the next month, so that every existing row fits in the legacy partition
+     */
+    @Test
+    void testLegacyBoundIncludesCurrentMonthRows() {
+        LocalDate bound = TablePartitioning.legacyUpperBound(Instant.parse("2026-10-17T09:30:00Z"), CURRENT_MONTH);
+        assertEquals(LocalDate.parse("2026-11-01"), bound);
+    }
+
+    /**
+     * Given an existing table whose latest row is exactly on a month boundary
+     * When the legacy partition bound is found
+     * Then the bound is after that row, as the upper bound is exclusive
+     */
+    @Test
+    void testLegacyBoundOnMonthBoundary() {
+        LocalDate bound = TablePartitioning.legacyUpperBound(Instant.parse("2026-12-01T00:00:00Z"), CURRENT_MONTH);
+        assertEquals(LocalDate.parse("2027-01-01"), bound);
+    }
+
+    /**
+     * Given an existing table whose latest row is before the current month
+     * When the legacy partition bound is found
+     * Then it is the start of the current month
+     */
+    @Test
+    void testLegacyBoundOfOldRows() {
+        assertEquals(CURRENT_MONTH, TablePartitioning.legacyUpperBound(Instant.parse("2026-03-04T10:00:00Z"), CURRENT_MONTH));
+    }
+
+    /**
+     * Given a legacy partition that ends after the current month
+     * When the monthly partitions are found
+     * Then they start from the end of the legacy partition, up to the months ahead of the current month
+     */
+    @Test
+    void testMonthsStartFromLegacyBound() {
+        List<LocalDate> months = TablePartitioning.monthsToCreate(LocalDate.parse("2026-11-01"), CURRENT_MONTH, 3);
+        assertEquals(List.of(LocalDate.parse("2026-11-01"), LocalDate.parse("2026-12-01"), LocalDate.parse("2027-01-01")), months);
+    }
+
+    /**
+     * Given a legacy partition that ended before the current month
+     * When the monthly partitions are found
+     * Then they start from the current month
+     */
+    @Test
+    void testMonthsStartFromCurrentMonth() {
+        List<LocalDate> months = TablePartitioning.monthsToCreate(LocalDate.parse("2026-08-01"), CURRENT_MONTH, 1);
+        assertEquals(List.of(CURRENT_MONTH, LocalDate.parse("2026-11-01")), months);
+    }
+
+    /**
+     * Given a legacy partition
+     * When the statement to attach it is built
+     * Then it holds everything before the bound
+     */
+    @Test
+    void testAttachLegacyPartitionSql() {
+        assertEquals(
+                "ALTER TABLE star.visit_observation ATTACH PARTITION star.visit_observation_legacy"
+                        + " FOR VALUES FROM (MINVALUE) TO ('2026-11-01T00:00:00Z')",
+                TablePartitioning.attachLegacyPartitionSql(table, LocalDate.parse("2026-11-01")));
+    }
+
+    /**
+     * Given a month
+     * When the statement to create its partition is built
+     * Then the partition is named after the month and covers the whole month
+     */
+    @Test
+    void testMonthlyPartitionSql() {
+        assertEquals(
+                "CREATE TABLE IF NOT EXISTS star.visit_observation_p202612 PARTITION OF star.visit_observation"
+                        + " FOR VALUES FROM ('2026-12-01T00:00:00Z') TO ('2027-01-01T00:00:00Z')",
+                TablePartitioning.monthlyPartitionSql(table, LocalDate.parse("2026-12-01")));
+    }
+}
@@ -16,6 +16,7 @@ import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabOrderAuditReposito
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabOrderRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultAuditRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultRepository;
+import uk.ac.ucl.rits.inform.informdb.labs.LabOrderAudit;
 import uk.ac.ucl.rits.inform.informdb.labs.LabResultAudit;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisit;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitAudit;
@@ -133,6 +134,47 @@ class TestAdtDeletePersonInfo extends MessageProcessingBase {
         }
     }
 
+    /**
+     * Given a lab order with results and a planned movement for encounter `123412341234`
+     * When a "delete patient information" message is received for the patient in the encounter
+     * Then the audit rows should be copies of the deleted rows, valid until the message time
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testDeletedRowsAuditedWithMessageTime() throws Exception {
+        // -- Arrange
+        for (var loMsg : messageFactory.getLabOrders("winpath/ORU_R01.yaml", "0000040")) {
+            dbOps.processMessage(loMsg);
+        }
+        PendingTransfer pendingTransfer = messageFactory.getAdtMessage("pending/A15.yaml");
+        dbOps.processMessage(pendingTransfer);
+
+        // -- Act
+        DeletePersonInformation msg = messageFactory.getAdtMessage("generic/A29.yaml");
+        Instant deletionTime = Instant.parse("2030-01-01T00:00:00Z");
+        msg.setEventOccurredDateTime(deletionTime);
+        dbOps.processMessage(msg);
+
+        // -- Assert
+        var movementAudits = plannedMovementAuditRepo.findAllByHospitalVisitId(DEFAULT_HOSPITAL_VISIT_ID);
+        assertFalse(movementAudits.isEmpty());
+        for (var audit : movementAudits) {
+            assertEquals(deletionTime, audit.getValidUntil());
+            assertNotNull(audit.getStoredUntil());
+            assertNotNull(audit.getPlannedMovementId());
+        }
+
+        var labOrderAudits = labOrderAuditRepository.findAllByHospitalVisitIdIn(List.of(DEFAULT_HOSPITAL_VISIT_ID));
+        List<LabResultAudit> labResultAudits = labResultAuditRepo.findAllByLabOrderIdIn(
+                labOrderAudits.stream().map(LabOrderAudit::getLabOrderId).toList());
+        assertFalse(labResultAudits.isEmpty());
+        for (var audit : labResultAudits) {
+            assertEquals(deletionTime, audit.getValidUntil());
+            assertNotNull(audit.getLabTestDefinitionId());
+        }
+    }
+
     /**
      * @throws Exception shouldn't happen
      */
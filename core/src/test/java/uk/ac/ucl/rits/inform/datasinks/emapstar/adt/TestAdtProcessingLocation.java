@@ -4,14 +4,17 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.jdbc.Sql;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.MessageCancelledException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.HospitalVisitRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitAuditRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitCancellationRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.locations.LocationRepository;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisit;
 import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitAudit;
+import uk.ac.ucl.rits.inform.informdb.movement.LocationVisitCancellation;
 import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
 import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
 import uk.ac.ucl.rits.inform.interchange.adt.CancelAdmitPatient;
@@ -29,6 +32,7 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -44,6 +48,8 @@ class TestAdtProcessingLocation extends MessageProcessingBase {
     private LocationVisitRepository locationVisitRepository;
     @Autowired
     private LocationVisitAuditRepository locationVisitAuditRepository;
+    @Autowired
+    private LocationVisitCancellationRepository locationVisitCancellationRepository;
 
     private static final String ORIGINAL_LOCATION = "T42E^T42E BY03^BY03-17";
     private static final long DEFAULT_HOSPITAL_VISIT_ID = 4001;
@@ -190,6 +196,29 @@ class TestAdtProcessingLocation extends MessageProcessingBase {
         assertEquals(0L, getAllEntities(locationVisitRepository).size());
     }
 
+    /**
+     * No locations or location-visit in database.
+     * Cancel admit should record the cancelled admission, so a later admission at the cancelled time is ignored.
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testCancelAdmitBeforeAdmit() throws Exception {
+        CancelAdmitPatient cancel = messageFactory.getAdtMessage("generic/A11.yaml");
+        dbOps.processMessage(cancel);
+
+        List<LocationVisitCancellation> cancellations = getAllEntities(locationVisitCancellationRepository);
+        assertEquals(1, cancellations.size());
+        assertEquals(cancel.getCancelledDateTime(), cancellations.get(0).getCancelledDatetime());
+        assertTrue(cancellations.get(0).getAdmissionCancelled());
+        assertFalse(cancellations.get(0).getDischargeCancelled());
+
+        AdmitPatient admit = messageFactory.getAdtMessage("generic/A01.yaml");
+        admit.setFullLocationString(cancel.getFullLocationString());
+        admit.setEventOccurredDateTime(cancel.getCancelledDateTime());
+        assertThrows(MessageCancelledException.class, () -> dbOps.processMessage(admit));
+        assertEquals(0L, getAllEntities(locationVisitRepository).size());
+    }
+
     /**
      * Location visit exists in the database
      * Cancel admit should remove the existing location visit
@@ -0,0 +1,188 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.adt;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.controllers.LiveMrnCache;
+import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
+import uk.ac.ucl.rits.inform.interchange.adt.ChangePatientIdentifiers;
+import uk.ac.ucl.rits.inform.interchange.adt.MergePatient;
+import uk.ac.ucl.rits.inform.interchange.adt.MoveVisitInformation;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Caching of MRN identifiers to the live MRN.
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class TestLiveMrnCache extends MessageProcessingBase {
+    @Autowired
+    private LiveMrnCache liveMrnCache;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private static final String SOURCE_SYSTEM = "EPIC";
+    private static final String NEW_MRN = "60600000";
+
+    private Mrn getOrCreateMrn(String mrnString) throws Exception {
+        return personController.getOrCreateMrn(mrnString, null, SOURCE_SYSTEM, past, past);
+    }
+
+    private Long liveMrnIdFromDatabase(String mrnString) {
+        return mrnToLiveRepo.getByMrnIdEquals(mrnRepo.findByMrnEquals(mrnString).orElseThrow()).getLiveMrnId().getMrnId();
+    }
+
+    /**
+     * Given an existing MRN
+     * When it is looked up twice
+     * Then it is cached after the first lookup and both return the live MRN
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testLookupIsCached() throws Exception {
+        Mrn first = getOrCreateMrn(defaultMrn);
+        assertTrue(liveMrnCache.get(defaultMrn, null).isPresent());
+
+        Mrn second = getOrCreateMrn(defaultMrn);
+        assertEquals(first.getMrnId(), second.getMrnId());
+        assertEquals(liveMrnIdFromDatabase(defaultMrn), second.getMrnId());
+    }
+
+    /**
+     * Given a cached MRN
+     * When it is looked up again
+     * Then the database isn't queried
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testCachedLookupDoesNotQuery() throws Exception {
+        Long liveMrnId = getOrCreateMrn(defaultMrn).getMrnId();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertEquals(liveMrnId, getOrCreateMrn(defaultMrn).getMrnId());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    /**
+     * Given a new MRN is created within a transaction
+     * When the transaction is rolled back
+     * Then the MRN is visible in the cache during the transaction, but not after the rollback
+     */
+    @Test
+    void testRolledBackMrnIsNotCached() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                getOrCreateMrn(NEW_MRN);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            assertTrue(liveMrnCache.get(NEW_MRN, null).isPresent());
+            status.setRollbackOnly();
+        });
+
+        assertFalse(liveMrnCache.get(NEW_MRN, null).isPresent());
+        assertTrue(mrnRepo.findByMrnEquals(NEW_MRN).isEmpty());
+    }
+
+    /**
+     * Given a cached MRN
+     * When it is merged into a new MRN
+     * Then looking up the retired MRN gives the surviving MRN
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testMergeEvictsRetiredMrn() throws Exception {
+        getOrCreateMrn(defaultMrn);
+        MergePatient msg = messageFactory.getAdtMessage("generic/A40.yaml");
+        msg.setRecordedDateTime(msg.getRecordedDateTime().plus(1, ChronoUnit.HOURS));
+
+        dbOps.processMessage(msg);
+
+        assertEquals(msg.getMrn(), getOrCreateMrn(defaultMrn).getMrn());
+    }
+
+    /**
+     * Given a cached MRN
+     * When a merge is rolled back
+     * Then looking up the MRN gives the original live MRN
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testRolledBackMergeKeepsLiveMrn() throws Exception {
+        Long originalLiveMrnId = getOrCreateMrn(defaultMrn).getMrnId();
+        MergePatient msg = messageFactory.getAdtMessage("generic/A40.yaml");
+        msg.setRecordedDateTime(msg.getRecordedDateTime().plus(1, ChronoUnit.HOURS));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                dbOps.processMessage(msg);
+                assertEquals(msg.getMrn(), getOrCreateMrn(defaultMrn).getMrn());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+
+        assertEquals(originalLiveMrnId, getOrCreateMrn(defaultMrn).getMrnId());
+        assertEquals(originalLiveMrnId, liveMrnIdFromDatabase(defaultMrn));
+    }
+
+    /**
+     * Given a cached MRN and the surviving MRN doesn't exist
+     * When the patient identifiers are changed
+     * Then the previous MRN string no longer resolves to the changed MRN
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testChangePatientIdentifiersEvictsPreviousMrn() throws Exception {
+        ChangePatientIdentifiers msg = messageFactory.getAdtMessage("generic/A47.yaml");
+        msg.setMrn("nope");
+        msg.setNhsNumber("also no");
+        Mrn changedMrn = getOrCreateMrn(msg.getPreviousMrn());
+
+        dbOps.processMessage(msg);
+
+        Mrn previousMrn = getOrCreateMrn(msg.getPreviousMrn());
+        assertEquals(msg.getPreviousMrn(), previousMrn.getMrn());
+        assertNotEquals(changedMrn.getMrnId(), previousMrn.getMrnId());
+    }
+
+    /**
+     * Given a cached MRN
+     * When its visit is moved to another MRN
+     * Then both MRNs still resolve to themselves
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testMoveVisitInformationKeepsMrns() throws Exception {
+        MoveVisitInformation msg = messageFactory.getAdtMessage("generic/A45.yaml");
+        getOrCreateMrn(msg.getPreviousMrn());
+
+        dbOps.processMessage(msg);
+
+        assertEquals(liveMrnIdFromDatabase(msg.getPreviousMrn()), getOrCreateMrn(msg.getPreviousMrn()).getMrnId());
+        assertEquals(liveMrnIdFromDatabase(msg.getMrn()), getOrCreateMrn(msg.getMrn()).getMrnId());
+    }
+}
@@ -0,0 +1,136 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.adt;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.LocationVisitRepository;
+import uk.ac.ucl.rits.inform.informdb.movement.LocationVisit;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.TransferPatient;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Location visits for a hospital visit are found from a timeline that is cached between messages.
+ */
+class TestLocationVisitTimelineCache extends MessageProcessingBase {
+    @Autowired
+    private LocationVisitRepository locationVisitRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static final String LOCATION_A = "T42E^T42E BY02^BY02-17";
+    private static final String LOCATION_B = "T12S^T12S BY05^BY05-31";
+    private static final String LOCATION_C = "T12S^T12S BY05^BY05-33";
+    private Instant admissionTime;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AdmitPatient admit = messageFactory.getAdtMessage("generic/A01.yaml");
+        admit.setFullLocationString(InterchangeValue.buildFromHl7(LOCATION_A));
+        admissionTime = admit.bestGuessAtValidFrom();
+        dbOps.processMessage(admit);
+    }
+
+    private TransferPatient transfer(String previousLocation, String location, Instant eventTime) throws Exception {
+        TransferPatient msg = messageFactory.getAdtMessage("generic/A02.yaml");
+        msg.setPreviousLocationString(InterchangeValue.buildFromHl7(previousLocation));
+        msg.setFullLocationString(InterchangeValue.buildFromHl7(location));
+        msg.setEventOccurredDateTime(eventTime);
+        msg.setRecordedDateTime(eventTime);
+        return msg;
+    }
+
+    private List<LocationVisit> locationVisitsInAdmissionOrder() {
+        return getAllEntities(locationVisitRepository).stream()
+                .sorted(Comparator.comparing(LocationVisit::getAdmissionDatetime))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Given an admission, then a transfer from a location that star didn't know about
+     * When a transfer into that location with an earlier time is processed in a later transaction
+     * Then the cached timeline finds the inferred location and each location is discharged at the admission to the next
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testOutOfOrderTransferUsesCachedTimeline() throws Exception {
+        Instant firstTransferTime = admissionTime.plus(1, ChronoUnit.HOURS);
+        Instant secondTransferTime = admissionTime.plus(2, ChronoUnit.HOURS);
+
+        dbOps.processMessage(transfer(LOCATION_B, LOCATION_C, secondTransferTime));
+        dbOps.processMessage(transfer(LOCATION_A, LOCATION_B, firstTransferTime));
+
+        List<LocationVisit> locationVisits = locationVisitsInAdmissionOrder();
+        assertEquals(
+                List.of(LOCATION_A, LOCATION_B, LOCATION_C),
+                locationVisits.stream().map(visit -> visit.getLocationId().getLocationString()).collect(Collectors.toList()));
+        assertEquals(firstTransferTime, locationVisits.get(0).getDischargeDatetime());
+        assertEquals(firstTransferTime, locationVisits.get(1).getAdmissionDatetime());
+        assertFalse(locationVisits.get(1).getInferredAdmission());
+        assertEquals(secondTransferTime, locationVisits.get(1).getDischargeDatetime());
+        assertNull(locationVisits.get(2).getDischargeDatetime());
+    }
+
+    /**
+     * Given an admission
+     * When a transfer is rolled back and then another transfer is processed
+     * Then the rolled back location visit isn't in the timeline, so the admission location is discharged by the second transfer
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testRolledBackTransferIsNotCached() throws Exception {
+        TransferPatient rolledBack = transfer(LOCATION_A, LOCATION_B, admissionTime.plus(1, ChronoUnit.HOURS));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                dbOps.processMessage(rolledBack);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            assertEquals(2, locationVisitsInAdmissionOrder().size());
+            status.setRollbackOnly();
+        });
+
+        Instant transferTime = admissionTime.plus(2, ChronoUnit.HOURS);
+        dbOps.processMessage(transfer(LOCATION_A, LOCATION_C, transferTime));
+
+        List<LocationVisit> locationVisits = locationVisitsInAdmissionOrder();
+        assertEquals(
+                List.of(LOCATION_A, LOCATION_C),
+                locationVisits.stream().map(visit -> visit.getLocationId().getLocationString()).collect(Collectors.toList()));
+        assertEquals(transferTime, locationVisits.get(0).getDischargeDatetime());
+    }
+
+    /**
+     * Given an admission and a transfer, with the cached timeline for the hospital visit
+     * When the transfer's location visit is deleted outside of the location controller and another transfer is processed
+     * Then the timeline is reloaded and the second transfer creates the only other location visit
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testOutOfDateTimelineIsReloaded() throws Exception {
+        dbOps.processMessage(transfer(LOCATION_A, LOCATION_B, admissionTime.plus(1, ChronoUnit.HOURS)));
+        locationVisitRepository.delete(locationVisitsInAdmissionOrder().get(1));
+
+        Instant transferTime = admissionTime.plus(2, ChronoUnit.HOURS);
+        dbOps.processMessage(transfer(LOCATION_A, LOCATION_C, transferTime));
+
+        List<LocationVisit> locationVisits = locationVisitsInAdmissionOrder();
+        assertEquals(
+                List.of(LOCATION_A, LOCATION_C),
+                locationVisits.stream().map(visit -> visit.getLocationId().getLocationString()).collect(Collectors.toList()));
+        assertNull(locationVisits.get(1).getDischargeDatetime());
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.benchmarks;
+
+import org.apache.commons.lang3.SerializationUtils;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
+import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+import uk.ac.ucl.rits.inform.interchange.test.helpers.InterchangeMessageFactory;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a stream of messages for many patients by copying the interchange test messages and changing their
+ * identifiers and times, so that each patient and visit is distinct.
+ * <p>
+ * Each visit is an admission, followed by the flowsheets and then the lab orders for the visit.
+ * Visits are interleaved across patients, as they would be in a live stream.
+ */
+public class SyntheticMessageStream {
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+    private final int patients;
+    private final int visitsPerPatient;
+    private final int flowsheetsPerVisit;
+    private final int labOrdersPerVisit;
+    private final int resultsPerLabOrder;
+
+    private final AdmitPatient admitTemplate;
+    private final List<Flowsheet> flowsheetTemplates;
+    private final LabOrderMsg labOrderTemplate;
+
+    /**
+     * @param messageFactory     factory for the test messages that are copied
+     * @param patients           number of patients
+     * @param visitsPerPatient   number of hospital visits for each patient
+     * @param flowsheetsPerVisit number of flowsheet rows for each visit
+     * @param labOrdersPerVisit  number of lab orders for each visit
+     * @param resultsPerLabOrder number of results in each lab order
+     * @throws IOException if the test messages can't be read
+     */
+    public SyntheticMessageStream(
+            InterchangeMessageFactory messageFactory, int patients, int visitsPerPatient, int flowsheetsPerVisit,
+            int labOrdersPerVisit, int resultsPerLabOrder) throws IOException {
+        this.patients = patients;
+        this.visitsPerPatient = visitsPerPatient;
+        this.flowsheetsPerVisit = flowsheetsPerVisit;
+        this.labOrdersPerVisit = labOrdersPerVisit;
+        this.resultsPerLabOrder = resultsPerLabOrder;
+        admitTemplate = messageFactory.getAdtMessage("generic/A01.yaml");
+        flowsheetTemplates = messageFactory.getFlowsheets("hl7.yaml", "synthetic");
+        labOrderTemplate = messageFactory.getLabOrders("winpath/ORU_R01.yaml", "synthetic").get(0);
+    }
+
+    /**
+     * @return all messages, in the order they should be processed
+     */
+    public List<EmapOperationMessage> build() {
+        List<EmapOperationMessage> messages = new ArrayList<>();
+        for (int visit = 0; visit < visitsPerPatient; visit++) {
+            for (int patient = 0; patient < patients; patient++) {
+                String mrn = String.format("S%07d", patient);
+                String visitNumber = String.format("%07d%04d", patient, visit);
+                Instant visitStart = START.plus((long) visit * patients + patient, ChronoUnit.HOURS);
+                messages.add(buildAdmission(mrn, visitNumber, visitStart));
+                for (int i = 0; i < flowsheetsPerVisit; i++) {
+                    messages.add(buildFlowsheet(mrn, visitNumber, visitStart.plus(i, ChronoUnit.MINUTES), i));
+                }
+                for (int i = 0; i < labOrdersPerVisit; i++) {
+                    String orderNumber = String.format("%s%03d", visitNumber, i);
+                    messages.add(buildLabOrder(mrn, visitNumber, orderNumber, visitStart.plus(i, ChronoUnit.MINUTES)));
+                }
+            }
+        }
+        int sourceId = 0;
+        for (EmapOperationMessage message : messages) {
+            message.setSourceMessageId(String.format("synthetic_%010d", sourceId));
+            sourceId++;
+        }
+        return messages;
+    }
+
+    private AdmitPatient buildAdmission(String mrn, String visitNumber, Instant admissionTime) {
+        AdmitPatient admission = SerializationUtils.clone(admitTemplate);
+        admission.setMrn(mrn);
+        admission.setNhsNumber(null);
+        admission.setVisitNumber(visitNumber);
+        admission.setAdmissionDateTime(new InterchangeValue<>(admissionTime));
+        admission.setRecordedDateTime(admissionTime);
+        admission.setEventOccurredDateTime(admissionTime);
+        return admission;
+    }
+
+    private Flowsheet buildFlowsheet(String mrn, String visitNumber, Instant observationTime, int index) {
+        Flowsheet flowsheet = SerializationUtils.clone(flowsheetTemplates.get(index % flowsheetTemplates.size()));
+        flowsheet.setMrn(mrn);
+        flowsheet.setVisitNumber(visitNumber);
+        flowsheet.setObservationTime(observationTime);
+        flowsheet.setUpdatedTime(observationTime);
+        return flowsheet;
+    }
+
+    private LabOrderMsg buildLabOrder(String mrn, String visitNumber, String orderNumber, Instant orderTime) {
+        LabOrderMsg order = SerializationUtils.clone(labOrderTemplate);
+        order.setMrn(mrn);
+        order.setVisitNumber(visitNumber);
+        order.setLabSpecimenNumber(orderNumber);
+        order.setEpicCareOrderNumber(new InterchangeValue<>(orderNumber));
+        order.setCollectionDateTime(orderTime);
+        order.setStatusChangeTime(orderTime);
+
+        List<LabResultMsg> templateResults = labOrderTemplate.getLabResultMsgs();
+        List<LabResultMsg> results = new ArrayList<>(resultsPerLabOrder);
+        for (int i = 0; i < resultsPerLabOrder; i++) {
+            LabResultMsg result = SerializationUtils.clone(templateResults.get(i % templateResults.size()));
+            // repeat the template results under new test codes, so that each result is distinct
+            result.setTestItemLocalCode(String.format("%s%d", result.getTestItemLocalCode(), i / templateResults.size()));
+            result.setEpicCareOrderNumber(orderNumber);
+            result.setResultTime(orderTime);
+            results.add(result);
+        }
+        order.setLabResultMsgs(results);
+        return order;
+    }
+}
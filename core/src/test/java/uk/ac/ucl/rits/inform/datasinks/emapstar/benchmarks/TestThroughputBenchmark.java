@@ -0,0 +1,118 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.benchmarks;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.test.context.TestPropertySource;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput of processing a synthetic stream of messages, as the core does for each message from the queue.
+ * <p>
+ * Only run with the benchmarks profile: {@code mvn -P benchmarks test}.
+ * The size of the stream is set with the {@code benchmark.*} properties below, e.g. {@code -Dbenchmark.patients=1000},
+ * and it runs against the test database unless the {@code spring.datasource} properties are overridden.
+ * Reports messages per second, p50 and p99 latency and the number of SQL statements for each message type.
+ */
+@Tag("benchmark")
+@TestPropertySource(properties = {"spring.jpa.properties.hibernate.generate_statistics=true", "logging.level.uk.ac.ucl=WARN"})
+class TestThroughputBenchmark extends MessageProcessingBase {
+    private static final Logger logger = LoggerFactory.getLogger(TestThroughputBenchmark.class);
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${benchmark.patients:50}")
+    private int patients;
+    @Value("${benchmark.visits-per-patient:2}")
+    private int visitsPerPatient;
+    @Value("${benchmark.flowsheets-per-visit:20}")
+    private int flowsheetsPerVisit;
+    @Value("${benchmark.lab-orders-per-visit:2}")
+    private int labOrdersPerVisit;
+    @Value("${benchmark.results-per-lab-order:20}")
+    private int resultsPerLabOrder;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    /**
+     * Process every message in its own transaction and report the timings.
+     * @throws IOException                             shouldn't happen
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testThroughput() throws IOException, EmapOperationMessageProcessingException {
+        List<EmapOperationMessage> messages = new SyntheticMessageStream(
+                messageFactory, patients, visitsPerPatient, flowsheetsPerVisit, labOrdersPerVisit, resultsPerLabOrder).build();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        long streamStart = System.nanoTime();
+        for (EmapOperationMessage message : messages) {
+            long statementsBefore = statistics.getPrepareStatementCount();
+            long start = System.nanoTime();
+            message.processMessage(dbOps);
+            long duration = System.nanoTime() - start;
+            timer(message.getMessageType()).record(duration, TimeUnit.NANOSECONDS);
+            counter(message.getMessageType()).increment(statistics.getPrepareStatementCount() - statementsBefore);
+        }
+        Duration total = Duration.ofNanos(System.nanoTime() - streamStart);
+
+        report(messages.size(), total);
+        assertEquals(messages.size(), registry.find("benchmark.message").timers().stream().mapToLong(Timer::count).sum());
+    }
+
+    private Timer timer(String messageType) {
+        return Timer.builder("benchmark.message")
+                .tag("messageType", messageType)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    private Counter counter(String messageType) {
+        return Counter.builder("benchmark.statements").tag("messageType", messageType).register(registry);
+    }
+
+    private void report(int messageCount, Duration total) {
+        Map<String, String> rows = new TreeMap<>();
+        for (Timer timer : registry.find("benchmark.message").timers()) {
+            String messageType = timer.getId().getTag("messageType");
+            String shortType = messageType.substring(messageType.lastIndexOf('.') + 1);
+            ValueAtPercentile[] percentiles = timer.takeSnapshot().percentileValues();
+            rows.put(shortType, String.format(
+                    "%-20s %8d %12.1f %10.2f %10.2f %14.1f",
+                    shortType, timer.count(), timer.count() / timer.totalTime(TimeUnit.SECONDS),
+                    percentiles[0].value(TimeUnit.MILLISECONDS), percentiles[1].value(TimeUnit.MILLISECONDS),
+                    counter(messageType).count() / timer.count()));
+        }
+        StringBuilder table = new StringBuilder(String.format(
+                "%n%d patients, %d visits each, %d flowsheets and %d lab orders with %d results per visit%n",
+                patients, visitsPerPatient, flowsheetsPerVisit, labOrdersPerVisit, resultsPerLabOrder));
+        table.append(String.format("%-20s %8s %12s %10s %10s %14s%n", "messageType", "count", "msg/s", "p50 ms", "p99 ms", "statements/msg"));
+        rows.values().forEach(row -> table.append(row).append(System.lineSeparator()));
+        table.append(String.format("%d messages in %.1f s, %.1f msg/s overall",
+                messageCount, total.toMillis() / 1000.0, messageCount / (total.toNanos() / 1e9)));
+        logger.warn("{}", table);
+    }
+}
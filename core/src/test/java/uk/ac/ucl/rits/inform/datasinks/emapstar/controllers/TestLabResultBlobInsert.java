@@ -0,0 +1,74 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultBlobRepository;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResultBlob;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Storing a binary lab result value that another worker has stored since it was checked for.
+ */
+class TestLabResultBlobInsert extends MessageProcessingBase {
+    @Autowired
+    private LabResultBlobRepository labResultBlobRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static final byte[] CONTENT = "I am a pdf".getBytes();
+
+    /**
+     * Given a value that is stored after the check for it
+     * When the value is stored again in a transaction
+     * Then the existing row is kept and the transaction can still be used and committed
+     */
+    @Test
+    void testValueStoredByAnotherWorkerIsKept() {
+        BlobReference reference = BlobReference.of(CONTENT);
+        labResultBlobRepository.save(new LabResultBlob(reference.getSha256(), reference.getLength(), CONTENT));
+        LabResultBlobRepository notYetStored = (LabResultBlobRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{LabResultBlobRepository.class}, (proxy, method, args) -> {
+                    if ("existsById".equals(method.getName())) {
+                        return false;
+                    }
+                    try {
+                        return method.invoke(labResultBlobRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        LabResultBlobs labResultBlobs = new LabResultBlobs(notYetStored, jdbcTemplate, entityManagerFactory, "");
+        LabResultMsg resultMsg = new LabResultMsg();
+        resultMsg.setByteValue(new InterchangeValue<>(CONTENT));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                assertEquals(reference.getSha256(), labResultBlobs.storeValue(resultMsg).get().getSha256());
+            } catch (RequiredDataMissingException e) {
+                throw new IllegalStateException(e);
+            }
+            assertEquals(1, labResultBlobRepository.count());
+        });
+
+        assertEquals(1, labResultBlobRepository.count());
+        assertArrayEquals(CONTENT, labResultBlobRepository.findById(reference.getSha256()).orElseThrow().getContent());
+    }
+}
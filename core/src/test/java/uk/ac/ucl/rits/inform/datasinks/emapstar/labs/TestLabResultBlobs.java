@@ -0,0 +1,138 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.labs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.exceptions.RequiredDataMissingException;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultAuditRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultBlobRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultRepository;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResult;
+import uk.ac.ucl.rits.inform.informdb.labs.LabResultAudit;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.ValueType;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
+import uk.ac.ucl.rits.inform.interchange.blob.FileSystemBlobStore;
+import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Binary lab result values are stored once in the LabResultBlob table, and referenced by hash from results and their audit rows.
+ */
+class TestLabResultBlobs extends MessageProcessingBase {
+    @TempDir
+    static Path blobDir;
+
+    private LabOrderMsg order;
+    private LabResultMsg resultMsg;
+
+    @Autowired
+    private LabResultRepository labResultRepository;
+    @Autowired
+    private LabResultAuditRepository labResultAuditRepository;
+    @Autowired
+    private LabResultBlobRepository labResultBlobRepository;
+
+    @DynamicPropertySource
+    static void blobStoreProperties(DynamicPropertyRegistry registry) {
+        registry.add("core.blob-store.path", () -> blobDir.toString());
+    }
+
+    @BeforeEach
+    void setup() throws IOException {
+        order = messageFactory.getLabOrder("co_path/oru_r01_byte_value.yaml");
+        resultMsg = order.getLabResultMsgs().get(0);
+    }
+
+    private LabResult getPdfResult() {
+        return labResultRepository.findByLabTestDefinitionIdTestLabCode(ValueType.PDF.name()).orElseThrow();
+    }
+
+    /**
+     * Given a binary value that the hl7 reader has written to the blob store
+     * When a result referencing the value is processed
+     * Then the value is copied into the blob table and the result holds its hash and length
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testReferencedValueStored() throws Exception {
+        byte[] content = resultMsg.getByteValue().get();
+        BlobReference reference = new FileSystemBlobStore(blobDir).put(content);
+        resultMsg.setByteValue(InterchangeValue.unknown());
+        resultMsg.setByteValueReference(new InterchangeValue<>(reference));
+
+        processSingleMessage(order);
+
+        LabResult result = getPdfResult();
+        assertEquals(reference.getSha256(), result.getValueAsBytesHash());
+        assertEquals(content.length, result.getValueAsBytesLength());
+        assertArrayEquals(content, labResultBlobRepository.findById(reference.getSha256()).orElseThrow().getContent());
+    }
+
+    /**
+     * Given a result referencing a value that isn't in the blob store
+     * When it is processed
+     * Then an exception is thrown
+     */
+    @Test
+    void testMissingReferencedValueThrows() {
+        resultMsg.setByteValue(InterchangeValue.unknown());
+        resultMsg.setByteValueReference(new InterchangeValue<>(BlobReference.of("not in the store".getBytes())));
+
+        assertThrows(RequiredDataMissingException.class, () -> processSingleMessage(order));
+    }
+
+    /**
+     * Given an existing result with a binary value
+     * When a newer value is processed
+     * Then the audit row references the original value by hash, and both values are in the blob table once
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testAuditSharesOriginalBlob() throws EmapOperationMessageProcessingException {
+        String originalHash = BlobReference.of(resultMsg.getByteValue().get()).getSha256();
+        processSingleMessage(order);
+        resultMsg.setByteValue(InterchangeValue.buildFromHl7("I am a replacement".getBytes()));
+        resultMsg.setResultTime(resultMsg.getResultTime().plusSeconds(1));
+
+        processSingleMessage(order);
+
+        LabResultAudit audit = labResultAuditRepository.findAll().iterator().next();
+        assertEquals(originalHash, audit.getValueAsBytesHash());
+        assertEquals(BlobReference.of("I am a replacement".getBytes()).getSha256(), getPdfResult().getValueAsBytesHash());
+        assertEquals(2, labResultBlobRepository.count());
+    }
+
+    /**
+     * Given an existing result with a binary value stored inline, from before the blob table
+     * When the same value is processed again with a later time
+     * Then the result isn't changed
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testInlineValueComparedByHash() throws EmapOperationMessageProcessingException {
+        processSingleMessage(order);
+        LabResult result = getPdfResult();
+        result.setValueAsBytes(resultMsg.getByteValue().get());
+        result.setValueAsBytesHash(null);
+        result.setValueAsBytesLength(null);
+        labResultRepository.save(result);
+        resultMsg.setResultTime(resultMsg.getResultTime().plusSeconds(1));
+
+        processSingleMessage(order);
+
+        assertEquals(0, labResultAuditRepository.count());
+    }
+}
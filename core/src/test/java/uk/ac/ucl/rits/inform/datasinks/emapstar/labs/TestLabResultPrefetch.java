@@ -0,0 +1,90 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.labs;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultAuditRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultRepository;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Existing lab results for an order are queried once, rather than once for each result in the message.
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class TestLabResultPrefetch extends MessageProcessingBase {
+    private LabOrderMsg fourResults;
+    private Statistics statistics;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private LabResultRepository labResultRepository;
+    @Autowired
+    private LabResultAuditRepository labResultAuditRepository;
+
+    @BeforeEach
+    void setup() throws IOException {
+        fourResults = messageFactory.getLabOrders("winpath/ORU_R01.yaml", "0000040").get(0);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    /**
+     * @return number of queries executed that select lab results, excluding the audit table
+     */
+    private long labResultQueryCount() {
+        return Arrays.stream(statistics.getQueries())
+                .filter(query -> query.contains("from LabResult as"))
+                .mapToLong(query -> statistics.getQueryStatistics(query).getExecutionCount())
+                .sum();
+    }
+
+    /**
+     * Given no existing data
+     * When a lab order with four results is processed
+     * Then the results are created with a single query for existing lab results
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testNewResultsQueriedOnce() throws EmapOperationMessageProcessingException {
+        processSingleMessage(fourResults);
+
+        assertEquals(4, labResultRepository.count());
+        assertEquals(1, labResultQueryCount());
+    }
+
+    /**
+     * Given an existing lab order with four results
+     * When the order is processed again with a newer value for one of the results
+     * Then the existing results are found with a single query, and only the changed result is updated and audited
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testExistingResultsQueriedOnce() throws EmapOperationMessageProcessingException {
+        processSingleMessage(fourResults);
+        LabResultMsg updatedResult = fourResults.getLabResultMsgs().get(0);
+        updatedResult.setResultTime(updatedResult.getResultTime().plus(1, ChronoUnit.HOURS));
+        updatedResult.setNumericValue(InterchangeValue.buildFromHl7(updatedResult.getNumericValue().get() + 1));
+        statistics.clear();
+
+        processSingleMessage(fourResults);
+
+        assertEquals(4, labResultRepository.count());
+        assertEquals(1, labResultAuditRepository.count());
+        assertEquals(1, labResultQueryCount());
+    }
+}
@@ -11,6 +11,7 @@ import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabBatteryRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabIsolateRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabOrderRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultAuditRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultBlobRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabResultRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabSampleRepository;
 import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.labs.LabSensitivityRepository;
@@ -72,6 +73,8 @@ class TestLabResultProcessing extends MessageProcessingBase {
     LabIsolateRepository labIsolateRepository;
     @Autowired
     LabSensitivityRepository labSensitivityRepository;
+    @Autowired
+    LabResultBlobRepository labResultBlobRepository;
 
     private final Instant now = Instant.now();
     private final Instant past = Instant.parse("2001-01-01T00:00:00Z");
@@ -87,6 +90,10 @@ class TestLabResultProcessing extends MessageProcessingBase {
         return StreamSupport.stream(labResultRepository.findAll().spliterator(), false).collect(Collectors.toList());
     }
 
+    private byte[] getBinaryValue(LabResult result) {
+        return labResultBlobRepository.findById(result.getValueAsBytesHash()).orElseThrow().getContent();
+    }
+
     private void checkFirstMessageLabEntityCount() {
         assertEquals(4, labTestDefinitionRepository.count(), "labTestDefinitions should have been created");
         assertEquals(4, labBatteryElementRepository.count(), "lab battery elements type should have been created");
@@ -536,7 +543,8 @@ class TestLabResultProcessing extends MessageProcessingBase {
         LabOrderMsg order = messageFactory.getLabOrder("co_path/oru_r01_byte_value.yaml");
         processSingleMessage(order);
         LabResult result = labResultRepository.findByLabTestDefinitionIdTestLabCode(ValueType.PDF.name()).orElseThrow();
-        assertNotNull(result.getValueAsBytes());
+        assertNull(result.getValueAsBytes());
+        assertArrayEquals(order.getLabResultMsgs().get(0).getByteValue().get(), getBinaryValue(result));
         assertEquals(ValueType.PDF.toString(), result.getMimeType());
     }
 
@@ -553,7 +561,7 @@ class TestLabResultProcessing extends MessageProcessingBase {
         processSingleMessage(order);
 
         LabResult result = labResultRepository.findByLabTestDefinitionIdTestLabCode(ValueType.PDF.name()).orElseThrow();
-        assertArrayEquals(newValue, result.getValueAsBytes());
+        assertArrayEquals(newValue, getBinaryValue(result));
     }
 
     @Test
@@ -570,7 +578,7 @@ class TestLabResultProcessing extends MessageProcessingBase {
         processSingleMessage(order);
 
         LabResult result = labResultRepository.findByLabTestDefinitionIdTestLabCode(ValueType.PDF.name()).orElseThrow();
-        assertArrayEquals(originalValue, result.getValueAsBytes());
+        assertArrayEquals(originalValue, getBinaryValue(result));
     }
 
     @Test
@@ -0,0 +1,138 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.visit_observations;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.jdbc.Sql;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.HospitalVisitRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.visit_observations.VisitObservationAuditRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.visit_observations.VisitObservationRepository;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.visit_observations.VisitObservationTypeRepository;
+import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
+import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservation;
+import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservationAudit;
+import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservationType;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
+
+import java.io.IOException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Processing all flowsheets from a message as a single batch.
+ */
+class TestFlowsheetBatchProcessing extends MessageProcessingBase {
+    private List<Flowsheet> messages;
+    @Autowired
+    private HospitalVisitRepository hospitalVisitRepository;
+    @Autowired
+    private VisitObservationRepository visitObservationRepository;
+    @Autowired
+    private VisitObservationAuditRepository visitObservationAuditRepository;
+    @Autowired
+    private VisitObservationTypeRepository visitObservationTypeRepository;
+
+    private final String updateId = "8";
+    private final String newComment = "patient was running really fast (on a hamster wheel)";
+    private final String FLOWSHEET = "flowsheet";
+
+    @BeforeEach
+    void setup() throws IOException {
+        messages = messageFactory.getFlowsheets("hl7.yaml", "0000040");
+    }
+
+    private VisitObservation getObservation(String interfaceId) {
+        return visitObservationRepository
+                .findByHospitalVisitIdEncounterAndVisitObservationTypeIdInterfaceId(defaultEncounter, interfaceId)
+                .orElseThrow();
+    }
+
+    /**
+     * Given no existing patients
+     * When a batch of flowsheets is processed
+     * Then a single mrn and visit are created, with an observation for each flowsheet
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testCreateNewPatient() throws EmapOperationMessageProcessingException {
+        processSingleMessage(new FlowsheetBatch("0000040", messages));
+
+        assertEquals(1, getAllMrns().size());
+        assertEquals(1, getAllEntities(hospitalVisitRepository).size());
+        assertEquals(9, visitObservationRepository.findAllByHospitalVisitIdEncounter(defaultEncounter).size());
+    }
+
+    /**
+     * Given an existing observation with a different value
+     * When a newer batch of flowsheets is processed
+     * Then the observation is updated and the old value is audited, as when the flowsheets are processed individually
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testRowUpdates() throws EmapOperationMessageProcessingException {
+        HospitalVisit visit = hospitalVisitRepository.findByEncounter(defaultEncounter).orElseThrow();
+        VisitObservation preUpdateObservation = getObservation(updateId);
+
+        processSingleMessage(new FlowsheetBatch("0000040", messages));
+
+        VisitObservation updatedObservation = getObservation(updateId);
+        assertNotEquals(preUpdateObservation.getValueAsReal(), updatedObservation.getValueAsReal());
+        assertEquals(newComment, updatedObservation.getComment());
+
+        VisitObservationType obsType = visitObservationTypeRepository.find(null, updateId, FLOWSHEET).orElseThrow();
+        VisitObservationAudit audit = visitObservationAuditRepository
+                .findByHospitalVisitIdAndVisitObservationTypeId(visit.getHospitalVisitId(), obsType.getVisitObservationTypeId())
+                .orElseThrow();
+        assertEquals(preUpdateObservation.getValueAsReal(), audit.getValueAsReal());
+    }
+
+    /**
+     * Given an existing observation
+     * When an older batch of flowsheets is processed
+     * Then the observation is not changed
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    @Sql("/populate_db.sql")
+    void testOldBatchDoesNothing() throws EmapOperationMessageProcessingException {
+        VisitObservation preUpdateObservation = getObservation(updateId);
+        messages.forEach(msg -> msg.setUpdatedTime(past));
+
+        processSingleMessage(new FlowsheetBatch("0000040", messages));
+
+        assertEquals(preUpdateObservation.getValueAsReal(), getObservation(updateId).getValueAsReal());
+    }
+
+    /**
+     * Given no existing patients
+     * When a batch has a new observation followed by a newer update to the same observation
+     * Then a single observation is created with the newer value, and the first value is audited
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     * @throws IOException                             shouldn't happen
+     */
+    @Test
+    void testRepeatedObservationInBatch() throws EmapOperationMessageProcessingException, IOException {
+        Flowsheet original = messages.get(2);
+        Flowsheet update = messageFactory.getFlowsheets("hl7.yaml", "0000041").get(2);
+        update.setUpdatedTime(original.getUpdatedTime().plus(1, ChronoUnit.HOURS));
+        update.setNumericValue(InterchangeValue.buildFromHl7(original.getNumericValue().get() + 1));
+        List<Flowsheet> batch = new ArrayList<>(messages);
+        batch.add(update);
+
+        processSingleMessage(new FlowsheetBatch("0000040", batch));
+
+        assertEquals(9, visitObservationRepository.findAllByHospitalVisitIdEncounter(defaultEncounter).size());
+        assertEquals(update.getNumericValue().get(), getObservation(original.getInterfaceId()).getValueAsReal());
+        assertEquals(1, getAllEntities(visitObservationAuditRepository).size());
+        assertEquals(original.getNumericValue().get(), getAllEntities(visitObservationAuditRepository).get(0).getValueAsReal());
+    }
+}
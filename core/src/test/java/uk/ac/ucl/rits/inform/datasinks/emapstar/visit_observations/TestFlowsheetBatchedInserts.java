@@ -0,0 +1,45 @@
+package uk.ac.ucl.rits.inform.datasinks.emapstar.visit_observations;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.MessageProcessingBase;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.repos.visit_observations.VisitObservationRepository;
+import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservation;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Processing when ids are allocated from the sequence in blocks and inserts are sent to the database in JDBC batches.
+ */
+@TestPropertySource(properties = {"core.id.increment-size=50", "core.jdbc.batch-size=50"})
+class TestFlowsheetBatchedInserts extends MessageProcessingBase {
+    @Autowired
+    private VisitObservationRepository visitObservationRepository;
+
+    /**
+     * Given no existing patients
+     * When all flowsheets for a patient are processed in one transaction
+     * Then each observation is saved with its own id, allocated from a single block of the sequence
+     * @throws IOException                             shouldn't happen
+     * @throws EmapOperationMessageProcessingException shouldn't happen
+     */
+    @Test
+    void testObservationsSavedWithPooledIds() throws IOException, EmapOperationMessageProcessingException {
+        List<Flowsheet> messages = messageFactory.getFlowsheets("hl7.yaml", "0000040");
+        processMessages(messages);
+
+        List<Long> ids = visitObservationRepository.findAllByHospitalVisitIdEncounter(defaultEncounter).stream()
+                .map(VisitObservation::getVisitObservationId)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(9, ids.size());
+        assertEquals(ids.size() - 1, ids.get(ids.size() - 1) - ids.get(0));
+    }
+}
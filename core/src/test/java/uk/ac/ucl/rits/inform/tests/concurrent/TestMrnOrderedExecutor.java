@@ -0,0 +1,158 @@
+package uk.ac.ucl.rits.inform.tests.concurrent;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.MessageMrns;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.MrnOrderedExecutor;
+import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.MergePatient;
+import uk.ac.ucl.rits.inform.interchange.adt.SwapLocations;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for processing tasks in parallel while preserving order per MRN.
+ */
+public class TestMrnOrderedExecutor {
+
+    /**
+     * Tasks for the same MRN must complete in submission order, even when earlier tasks are slower.
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    public void testOrderPreservedPerMrn() throws InterruptedException {
+        Map<String, List<Integer>> completed = new ConcurrentHashMap<>();
+        try (MrnOrderedExecutor executor = new MrnOrderedExecutor(4)) {
+            for (int i = 0; i < 50; i++) {
+                String mrn = String.valueOf(i % 3);
+                int order = i;
+                executor.execute(List.of(mrn), () -> {
+                    sleep((50 - order) % 5);
+                    completed.computeIfAbsent(mrn, k -> Collections.synchronizedList(new ArrayList<>())).add(order);
+                });
+            }
+            executor.awaitIdle();
+        }
+        for (List<Integer> orders : completed.values()) {
+            List<Integer> sorted = new ArrayList<>(orders);
+            Collections.sort(sorted);
+            assertEquals(sorted, orders);
+        }
+        assertEquals(50, completed.values().stream().mapToInt(List::size).sum());
+    }
+
+    /**
+     * Tasks for different MRNs should be able to run at the same time.
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    public void testDifferentMrnsRunInParallel() throws InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        AtomicInteger bothSawEachOther = new AtomicInteger();
+        Runnable waitForOther = () -> {
+            bothStarted.countDown();
+            try {
+                if (bothStarted.await(5, TimeUnit.SECONDS)) {
+                    bothSawEachOther.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try (MrnOrderedExecutor executor = new MrnOrderedExecutor(2)) {
+            executor.execute(List.of("1"), waitForOther);
+            executor.execute(List.of("2"), waitForOther);
+            executor.awaitIdle();
+        }
+        assertEquals(2, bothSawEachOther.get());
+    }
+
+    /**
+     * A task for two MRNs must wait for earlier tasks on either MRN, and later tasks on either MRN must wait for it.
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    public void testMultipleMrnTaskOrderedWithBoth() throws InterruptedException {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        try (MrnOrderedExecutor executor = new MrnOrderedExecutor(4)) {
+            executor.execute(List.of("1"), () -> {
+                sleep(100);
+                events.add("1 before");
+            });
+            executor.execute(List.of("2"), () -> {
+                sleep(50);
+                events.add("2 before");
+            });
+            executor.execute(List.of("1", "2"), () -> events.add("merge"));
+            executor.execute(List.of("2"), () -> events.add("2 after"));
+            executor.awaitIdle();
+        }
+        assertEquals(4, events.size());
+        assertEquals("merge", events.get(2));
+        assertEquals("2 after", events.get(3));
+    }
+
+    /**
+     * Tasks without an MRN are run once all workers are idle, on the calling thread.
+     * @throws InterruptedException shouldn't happen
+     */
+    @Test
+    public void testTaskWithoutMrnRunsExclusively() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        List<Boolean> ranAlone = Collections.synchronizedList(new ArrayList<>());
+        Thread caller = Thread.currentThread();
+        try (MrnOrderedExecutor executor = new MrnOrderedExecutor(3)) {
+            for (int i = 0; i < 3; i++) {
+                executor.execute(List.of(String.valueOf(i)), () -> {
+                    running.incrementAndGet();
+                    sleep(50);
+                    running.decrementAndGet();
+                });
+            }
+            executor.execute(List.of(), () -> ranAlone.add(running.get() == 0 && Thread.currentThread() == caller));
+        }
+        assertEquals(List.of(true), ranAlone);
+    }
+
+    /**
+     * MRNs should be found for patient messages, including the second MRN for messages affecting two patients.
+     */
+    @Test
+    public void testMessageMrns() {
+        AdmitPatient admit = new AdmitPatient();
+        admit.setMrn("40800000");
+        assertEquals(List.of("40800000"), MessageMrns.of(admit));
+
+        MergePatient merge = new MergePatient();
+        merge.setMrn("40800000");
+        merge.setPreviousMrn("40800001");
+        assertEquals(List.of("40800000", "40800001"), MessageMrns.of(merge));
+
+        SwapLocations swap = new SwapLocations();
+        swap.setMrn("40800000");
+        swap.setOtherMrn("40800000");
+        assertEquals(List.of("40800000"), MessageMrns.of(swap));
+
+        assertTrue(MessageMrns.of(new FlowsheetMetadata()).isEmpty());
+        assertFalse(MessageMrns.of(admit).contains(null));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ucl.rits.inform.tests.concurrent;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import uk.ac.ucl.rits.inform.datasinks.emapstar.concurrent.ReferenceDataLock;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for creating reference data only once when messages are processed in parallel.
+ */
+public class TestReferenceDataLock {
+    private final ReferenceDataLock referenceDataLock = new ReferenceDataLock();
+
+    /**
+     * Workers that all find the reference data missing should only create it once.
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    public void testCreatedOnce() throws Exception {
+        Map<String, String> table = new ConcurrentHashMap<>();
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                workers.execute(() -> {
+                    awaitQuietly(start);
+                    referenceDataLock.findOrCreate(() -> Optional.ofNullable(table.get("location")), () -> {
+                        created.incrementAndGet();
+                        sleep(20);
+                        table.put("location", "created");
+                        return "created";
+                    });
+                });
+            }
+            start.countDown();
+        } finally {
+            workers.shutdown();
+            assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, created.get());
+    }
+
+    /**
+     * Reference data created in a transaction is only visible to other workers once it commits, so the lock must be held
+     * until the transaction completes.
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    public void testLockHeldUntilTransactionCompletes() throws Exception {
+        ExecutorService otherWorker = Executors.newSingleThreadExecutor();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            referenceDataLock.findOrCreate(Optional::empty, () -> "created");
+            Future<String> waiting = otherWorker.submit(() -> referenceDataLock.findOrCreate(Optional::empty, () -> "other"));
+            sleep(100);
+            assertFalse(waiting.isDone());
+
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                    TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+            assertEquals("other", waiting.get(10, TimeUnit.SECONDS));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            otherWorker.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
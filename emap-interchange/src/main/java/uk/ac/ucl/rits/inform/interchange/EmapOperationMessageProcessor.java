@@ -16,6 +16,7 @@ import uk.ac.ucl.rits.inform.interchange.form.FormMsg;
 import uk.ac.ucl.rits.inform.interchange.location.DepartmentMetadata;
 import uk.ac.ucl.rits.inform.interchange.location.LocationMetadata;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetMetadata;
 
 /**
@@ -91,6 +92,12 @@ public interface EmapOperationMessageProcessor {
      */
     void processMessage(Flowsheet msg) throws EmapOperationMessageProcessingException;
 
+    /**
+     * @param msg the flowsheet batch message to process
+     * @throws EmapOperationMessageProcessingException if message cannot be processed
+     */
+    void processMessage(FlowsheetBatch msg) throws EmapOperationMessageProcessingException;
+
     /**
      * @param msg the PatientInfection message to process
      * @throws EmapOperationMessageProcessingException if message cannot be processed
@@ -0,0 +1,43 @@
+package uk.ac.ucl.rits.inform.interchange.blob;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Reference to a binary value by the SHA-256 hash of its content, so identical values share a single stored copy.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlobReference implements Serializable {
+    /**
+     * Lowercase hex SHA-256 hash of the content.
+     */
+    private String sha256;
+    /**
+     * Length of the content in bytes.
+     */
+    private long length;
+
+    /**
+     * @param content binary value
+     * @return reference to the content
+     */
+    public static BlobReference of(byte[] content) {
+        return new BlobReference(sha256Hex(content), content.length);
+    }
+
+    private static String sha256Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+    }
+}
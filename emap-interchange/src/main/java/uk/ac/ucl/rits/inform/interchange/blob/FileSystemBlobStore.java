@@ -0,0 +1,73 @@
+package uk.ac.ucl.rits.inform.interchange.blob;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores binary values in a directory, each in a file named by the hash of its content.
+ * <p>
+ * A value is written to a temporary file and then moved into place, so a file is only ever seen with its full content.
+ * Storing a value that is already present does nothing, so the directory can be shared by the publisher and consumer
+ * of messages and by multiple publishers.
+ */
+public class FileSystemBlobStore {
+    private final Path root;
+
+    /**
+     * @param root directory to store values in, created if it doesn't exist
+     */
+    public FileSystemBlobStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Store a value if it isn't already stored.
+     * @param content binary value
+     * @return reference to the stored value
+     * @throws IOException if the value couldn't be written
+     */
+    public BlobReference put(byte[] content) throws IOException {
+        BlobReference reference = BlobReference.of(content);
+        Path path = pathFor(reference);
+        if (Files.exists(path)) {
+            return reference;
+        }
+        Files.createDirectories(path.getParent());
+        Path temporary = Files.createTempFile(path.getParent(), reference.getSha256(), ".tmp");
+        try {
+            Files.write(temporary, content);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // stored by another writer since we checked
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return reference;
+    }
+
+    /**
+     * @param reference reference to a stored value
+     * @return the stored value
+     * @throws IOException if the value isn't stored or doesn't match the reference
+     */
+    public byte[] get(BlobReference reference) throws IOException {
+        byte[] content = Files.readAllBytes(pathFor(reference));
+        if (!reference.equals(BlobReference.of(content))) {
+            throw new IOException(String.format("Stored content doesn't match blob reference %s", reference));
+        }
+        return content;
+    }
+
+    /**
+     * Values are split into subdirectories by the first two characters of the hash, to keep directories small.
+     * @param reference blob reference
+     * @return path of the file for the value
+     */
+    private Path pathFor(BlobReference reference) {
+        String hash = reference.getSha256();
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Content-addressed storage for large binary values, which are sent in messages as a reference instead of inline.
+ */
+package uk.ac.ucl.rits.inform.interchange.blob;
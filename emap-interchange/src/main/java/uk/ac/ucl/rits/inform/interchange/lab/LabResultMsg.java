@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import lombok.Data;
 import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
 import uk.ac.ucl.rits.inform.interchange.ValueType;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
 
 import java.io.Serializable;
 import java.time.Instant;
@@ -30,6 +31,10 @@ public class LabResultMsg implements Serializable {
     private InterchangeValue<Double> numericValue = InterchangeValue.unknown();
     private InterchangeValue<String> stringValue = InterchangeValue.unknown();
     private InterchangeValue<byte[]> byteValue = InterchangeValue.unknown();
+    /**
+     * Reference to a binary value held in the blob store, sent instead of a large byteValue.
+     */
+    private InterchangeValue<BlobReference> byteValueReference = InterchangeValue.unknown();
     private InterchangeValue<String> units = InterchangeValue.unknown();
     private InterchangeValue<Double> referenceLow = InterchangeValue.unknown();
     private InterchangeValue<Double> referenceHigh = InterchangeValue.unknown();
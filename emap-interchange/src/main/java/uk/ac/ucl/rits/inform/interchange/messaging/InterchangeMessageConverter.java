@@ -0,0 +1,150 @@
+package uk.ac.ucl.rits.inform.interchange.messaging;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.impl.StdTypeResolverBuilder;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts interchange messages to and from AMQP messages, in either JSON or the compact wire format.
+ * <p>
+ * Messages are read in the format given by their content type, so a consumer can read both formats while publishers
+ * are moved from one to the other. Messages are written in the format that the converter was created with.
+ * <p>
+ * The compact format is JSON with the class name type ids replaced by the ids registered in {@link InterchangeTypeIds},
+ * compressed with DEFLATE, most of the remaining size is field names which compress well.
+ */
+public class InterchangeMessageConverter extends AbstractMessageConverter {
+    /**
+     * AMQP content type of messages in the compact wire format.
+     */
+    public static final String COMPACT_CONTENT_TYPE = "application/x-emap-compact";
+    private static final String COMPACT_TYPE_PROPERTY = "@t";
+
+    private final Jackson2JsonMessageConverter jsonConverter;
+    private final ObjectMapper compactMapper;
+    private final WireFormat writeFormat;
+
+    /**
+     * Wire formats for interchange messages.
+     */
+    public enum WireFormat {
+        /**
+         * JSON with class names as type ids.
+         */
+        JSON,
+        /**
+         * Compressed JSON with registered type ids.
+         */
+        COMPACT
+    }
+
+    /**
+     * @param writeFormat format to write messages in, messages in either format can be read
+     */
+    public InterchangeMessageConverter(WireFormat writeFormat) {
+        this.writeFormat = writeFormat;
+        jsonConverter = new Jackson2JsonMessageConverter(new ObjectMapper().findAndRegisterModules());
+        compactMapper = compactObjectMapper();
+    }
+
+    /**
+     * @return object mapper that writes registered type ids instead of class names
+     */
+    public static ObjectMapper compactObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        mapper.setAnnotationIntrospector(new RegisteredTypeIdIntrospector());
+        return mapper;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (writeFormat == WireFormat.JSON) {
+            return jsonConverter.toMessage(object, messageProperties);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            compactMapper.writeValue(out, object);
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to convert message to compact format", e);
+        }
+        messageProperties.setContentType(COMPACT_CONTENT_TYPE);
+        messageProperties.setContentLength(bytes.size());
+        return new Message(bytes.toByteArray(), messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        if (!COMPACT_CONTENT_TYPE.equals(message.getMessageProperties().getContentType())) {
+            return jsonConverter.fromMessage(message);
+        }
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(message.getBody()))) {
+            return compactMapper.readValue(in, EmapOperationMessage.class);
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to convert message from compact format", e);
+        }
+    }
+
+    /**
+     * Replaces class name type ids with ids from {@link InterchangeTypeIds}, keeping all other type info settings.
+     */
+    private static final class RegisteredTypeIdIntrospector extends JacksonAnnotationIntrospector {
+        @Override
+        public TypeResolverBuilder<?> findTypeResolver(MapperConfig<?> config, AnnotatedClass ac, JavaType baseType) {
+            JsonTypeInfo info = _findAnnotation(ac, JsonTypeInfo.class);
+            if (info == null || info.use() != JsonTypeInfo.Id.CLASS) {
+                return super.findTypeResolver(config, ac, baseType);
+            }
+            return new StdTypeResolverBuilder()
+                    .init(JsonTypeInfo.Id.CUSTOM, new RegisteredTypeIdResolver(baseType, config))
+                    .inclusion(info.include())
+                    .typeProperty(COMPACT_TYPE_PROPERTY)
+                    .typeIdVisibility(info.visible());
+        }
+    }
+
+    /**
+     * Uses registered type ids where there is one, and the class name otherwise.
+     */
+    private static final class RegisteredTypeIdResolver extends ClassNameIdResolver {
+        RegisteredTypeIdResolver(JavaType baseType, MapperConfig<?> config) {
+            super(baseType, config.getTypeFactory(), LaissezFaireSubTypeValidator.instance);
+        }
+
+        @Override
+        protected String _idFrom(Object value, Class<?> cls, TypeFactory typeFactory) {
+            return InterchangeTypeIds.idForClass(cls).orElseGet(() -> super._idFrom(value, cls, typeFactory));
+        }
+
+        @Override
+        public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            var registeredClass = InterchangeTypeIds.classForId(id);
+            if (registeredClass.isPresent()) {
+                return context.getTypeFactory().constructSpecializedType(_baseType, registeredClass.get());
+            }
+            return super.typeFromId(context, id);
+        }
+    }
+}
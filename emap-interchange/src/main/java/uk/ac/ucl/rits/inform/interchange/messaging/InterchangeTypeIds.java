@@ -0,0 +1,127 @@
+package uk.ac.ucl.rits.inform.interchange.messaging;
+
+import uk.ac.ucl.rits.inform.interchange.AdvanceDecisionMessage;
+import uk.ac.ucl.rits.inform.interchange.ConsultMetadata;
+import uk.ac.ucl.rits.inform.interchange.ConsultRequest;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.PatientAllergy;
+import uk.ac.ucl.rits.inform.interchange.PatientInfection;
+import uk.ac.ucl.rits.inform.interchange.PatientProblem;
+import uk.ac.ucl.rits.inform.interchange.ResearchOptOut;
+import uk.ac.ucl.rits.inform.interchange.adt.AdmitPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.CancelAdmitPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.CancelDischargePatient;
+import uk.ac.ucl.rits.inform.interchange.adt.CancelPendingTransfer;
+import uk.ac.ucl.rits.inform.interchange.adt.CancelTransferPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.ChangePatientIdentifiers;
+import uk.ac.ucl.rits.inform.interchange.adt.DeletePersonInformation;
+import uk.ac.ucl.rits.inform.interchange.adt.DischargePatient;
+import uk.ac.ucl.rits.inform.interchange.adt.ImpliedAdtMessage;
+import uk.ac.ucl.rits.inform.interchange.adt.MergePatient;
+import uk.ac.ucl.rits.inform.interchange.adt.MoveVisitInformation;
+import uk.ac.ucl.rits.inform.interchange.adt.PendingTransfer;
+import uk.ac.ucl.rits.inform.interchange.adt.RegisterPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.SwapLocations;
+import uk.ac.ucl.rits.inform.interchange.adt.TransferPatient;
+import uk.ac.ucl.rits.inform.interchange.adt.UpdatePatientInfo;
+import uk.ac.ucl.rits.inform.interchange.form.FormAnswerMsg;
+import uk.ac.ucl.rits.inform.interchange.form.FormMetadataMsg;
+import uk.ac.ucl.rits.inform.interchange.form.FormMsg;
+import uk.ac.ucl.rits.inform.interchange.form.FormQuestionMetadataMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabIsolateMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabMetadataMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+import uk.ac.ucl.rits.inform.interchange.location.BedMetadata;
+import uk.ac.ucl.rits.inform.interchange.location.DepartmentMetadata;
+import uk.ac.ucl.rits.inform.interchange.location.LocationMetadata;
+import uk.ac.ucl.rits.inform.interchange.location.RoomMetadata;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetMetadata;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Registered numeric type ids for interchange classes, used by the compact wire format in place of class names.
+ * <p>
+ * Ids are the position in {@link #REGISTERED_CLASSES} so classes must only ever be appended to the end of the list,
+ * messages already on a queue would otherwise be read as the wrong type. Classes that aren't registered are written
+ * with their class name, so a new class can be sent before it's added here.
+ */
+public final class InterchangeTypeIds {
+    private static final List<Class<?>> REGISTERED_CLASSES = List.of(
+            InterchangeValue.class,
+            AdmitPatient.class,
+            CancelAdmitPatient.class,
+            CancelDischargePatient.class,
+            CancelPendingTransfer.class,
+            CancelTransferPatient.class,
+            ChangePatientIdentifiers.class,
+            DeletePersonInformation.class,
+            DischargePatient.class,
+            ImpliedAdtMessage.class,
+            MergePatient.class,
+            MoveVisitInformation.class,
+            PendingTransfer.class,
+            RegisterPatient.class,
+            SwapLocations.class,
+            TransferPatient.class,
+            UpdatePatientInfo.class,
+            AdvanceDecisionMessage.class,
+            ConsultMetadata.class,
+            ConsultRequest.class,
+            PatientAllergy.class,
+            PatientInfection.class,
+            PatientProblem.class,
+            ResearchOptOut.class,
+            FormAnswerMsg.class,
+            FormMetadataMsg.class,
+            FormMsg.class,
+            FormQuestionMetadataMsg.class,
+            LabIsolateMsg.class,
+            LabMetadataMsg.class,
+            LabOrderMsg.class,
+            LabResultMsg.class,
+            BedMetadata.class,
+            DepartmentMetadata.class,
+            LocationMetadata.class,
+            RoomMetadata.class,
+            Flowsheet.class,
+            FlowsheetMetadata.class,
+            FlowsheetBatch.class
+    );
+
+    private static final Map<Class<?>, String> ID_BY_CLASS = new HashMap<>();
+    private static final Map<String, Class<?>> CLASS_BY_ID = new HashMap<>();
+
+    static {
+        for (int i = 0; i < REGISTERED_CLASSES.size(); i++) {
+            String id = Integer.toString(i);
+            ID_BY_CLASS.put(REGISTERED_CLASSES.get(i), id);
+            CLASS_BY_ID.put(id, REGISTERED_CLASSES.get(i));
+        }
+    }
+
+    private InterchangeTypeIds() {
+    }
+
+    /**
+     * @param cls class to be serialised
+     * @return registered type id for the class, if it has one
+     */
+    public static Optional<String> idForClass(Class<?> cls) {
+        return Optional.ofNullable(ID_BY_CLASS.get(cls));
+    }
+
+    /**
+     * @param id type id read from a message
+     * @return the registered class, if the id is a registered type id rather than a class name
+     */
+    public static Optional<Class<?>> classForId(String id) {
+        return Optional.ofNullable(CLASS_BY_ID.get(id));
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.ucl.rits.inform.interchange.visit_observations;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessingException;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessageProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All flowsheets from a single source message, for one patient and visit.
+ * <p>
+ * Processed in one pass, so that the patient and visit are only looked up once for all of the observations.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+@JsonTypeInfo(use = JsonTypeInfo.Id.CLASS, property = "@class")
+public class FlowsheetBatch extends EmapOperationMessage {
+    private String mrn = "";
+    private String visitNumber = "";
+
+    /**
+     * Flowsheets in the order that they should be processed, all for the mrn and visit number of the batch.
+     */
+    private List<Flowsheet> flowsheets = new ArrayList<>();
+
+    /**
+     * @param sourceMessageId id of the message that the flowsheets were built from
+     * @param flowsheets      flowsheets for a single patient and visit, must not be empty
+     * @throws IllegalArgumentException if there are no flowsheets or they are for different patients or visits
+     */
+    public FlowsheetBatch(String sourceMessageId, List<Flowsheet> flowsheets) {
+        if (flowsheets.isEmpty()) {
+            throw new IllegalArgumentException("Flowsheet batch must have at least one flowsheet");
+        }
+        Flowsheet first = flowsheets.get(0);
+        for (Flowsheet flowsheet : flowsheets) {
+            if (!first.getMrn().equals(flowsheet.getMrn()) || !first.getVisitNumber().equals(flowsheet.getVisitNumber())) {
+                throw new IllegalArgumentException(String.format(
+                        "Flowsheet batch %s has flowsheets for more than one patient or visit", sourceMessageId));
+            }
+        }
+        setSourceMessageId(sourceMessageId);
+        setSourceSystem(first.getSourceSystem());
+        mrn = first.getMrn();
+        visitNumber = first.getVisitNumber();
+        this.flowsheets = new ArrayList<>(flowsheets);
+    }
+
+    /**
+     * Call back to the processor so it knows what type this object is (ie. double dispatch).
+     * @param processor the processor to call back to
+     * @throws EmapOperationMessageProcessingException if message cannot be processed
+     */
+    @Override
+    public void processMessage(EmapOperationMessageProcessor processor) throws EmapOperationMessageProcessingException {
+        processor.processMessage(this);
+    }
+}
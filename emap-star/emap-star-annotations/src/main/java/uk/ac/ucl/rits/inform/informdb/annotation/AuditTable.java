@@ -17,4 +17,11 @@ public @interface AuditTable {
      * @return Array of indexes to pass.
      */
     Index[] indexes() default {};
+
+    /**
+     * Optional field to mark the generated audit table as {@link TimePartitioned} by.
+     *
+     * @return Field name, eg storedUntil, or empty if the audit table is not partitioned.
+     */
+    String partitionAuditBy() default "";
 }
@@ -53,6 +53,8 @@ import java.util.stream.Collectors;
  * All others are preserved as is.
  * <li>All hibernate annotations must come from the <tt>javax.persistence</tt>
  * package.
+ * <li>The audit table is only marked as @TimePartitioned if partitionAuditBy is set,
+ * the main table's own @TimePartitioned is not copied.
  * </ul>
  * @author Roma Klapaukh
  */
@@ -126,7 +128,8 @@ public class AuditTableProcessor extends AbstractProcessor {
             this.generateImports(out, baseImport);
 
             // The getAnnotation cannot return null because the annotation must be there for processin to happen
-            this.generateClassDeclaration(out, baseClassName, auditClassName, parent.getAnnotation(AuditTable.class).indexes());
+            AuditTable auditTable = parent.getAnnotation(AuditTable.class);
+            this.generateClassDeclaration(out, baseClassName, auditClassName, auditTable.indexes(), auditTable.partitionAuditBy());
 
             List<VariableElement> fields =
                     parent.getEnclosedElements().stream().filter(element -> element instanceof VariableElement)
@@ -201,6 +204,8 @@ public class AuditTableProcessor extends AbstractProcessor {
         out.println("import lombok.EqualsAndHashCode;");
         out.println("import lombok.ToString;");
         out.println("import uk.ac.ucl.rits.inform.informdb.AuditCore;");
+        out.println("import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;");
+        out.println("import uk.ac.ucl.rits.inform.informdb.annotation.TimePartitioned;");
         out.println("import static javax.persistence.FetchType.*;");
         out.println("import static javax.persistence.ConstraintMode.*;");
         out.println("import static javax.persistence.CascadeType.*;");
@@ -216,9 +221,10 @@ public class AuditTableProcessor extends AbstractProcessor {
      * @param baseClassName  Name of the data class
      * @param auditClassName Name of the audit class
      * @param indicies       Array of indexes to create on the audit table
+     * @param partitionBy    Field to partition the audit table by, or empty if it isn't partitioned
      */
     private void generateClassDeclaration(PrintWriter out, String baseClassName, String auditClassName,
-                                          Index[] indicies) {
+                                          Index[] indicies, String partitionBy) {
         out.println("/**");
         out.print(" * Audit table of {@link ");
         out.print(baseClassName);
@@ -243,6 +249,12 @@ public class AuditTableProcessor extends AbstractProcessor {
 
         }
 
+        if (!partitionBy.isBlank()) {
+            out.print("@TimePartitioned(\"");
+            out.print(partitionBy);
+            out.println("\")");
+        }
+
         out.println("@Data");
         out.println("@EqualsAndHashCode(callSuper = true)");
         out.println("@ToString(callSuper = true)");
@@ -270,7 +282,8 @@ public class AuditTableProcessor extends AbstractProcessor {
         List<FieldStore> fieldShorts = new ArrayList<>();
 
         // Primary key
-        this.generateSingleField(out, "\t@Id\n\t@GeneratedValue(strategy = GenerationType.AUTO)", "Long", primaryKey);
+        this.generateSingleField(out,
+                "\t@Id\n\t@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)", "Long", primaryKey);
 
         // All other fields
         for (VariableElement field : fields) {
@@ -0,0 +1,24 @@
+package uk.ac.ucl.rits.inform.informdb.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a table that may be range partitioned by month on one of its timestamp columns.
+ * <p>
+ * Partitioning is optional and is carried out by the application that writes to the table,
+ * hibernate still creates the table as a normal table.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TimePartitioned {
+
+    /**
+     * Name of the field whose column the table is partitioned by.
+     *
+     * @return Field name, eg validFrom.
+     */
+    String value();
+}
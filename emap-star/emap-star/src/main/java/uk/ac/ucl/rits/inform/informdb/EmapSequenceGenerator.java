@@ -0,0 +1,43 @@
+package uk.ac.ucl.rits.inform.informdb;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Primary key generator shared by all Emap-Star tables, using the single hibernate_sequence.
+ * <p>
+ * By default one id is taken from the sequence for each row. If {@value #INCREMENT_SIZE_SETTING} is set above 1,
+ * ids are allocated in blocks of that size (pooled) so that inserts don't need a round trip to the sequence each time,
+ * and so can be batched.
+ * <b>The increment of the sequence in the database must match this setting</b>, e.g.
+ * {@code ALTER SEQUENCE hibernate_sequence INCREMENT BY 50} before restarting with an increment size of 50.
+ */
+public class EmapSequenceGenerator extends SequenceStyleGenerator {
+    /**
+     * Name of the generator, to be used in {@link javax.persistence.GeneratedValue#generator()}.
+     */
+    public static final String NAME = "emap_sequence";
+    /**
+     * Hibernate setting for the number of ids to allocate from the sequence at a time.
+     */
+    public static final String INCREMENT_SIZE_SETTING = "emap.star.sequence.increment_size";
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        int incrementSize = ConfigurationHelper.getInt(
+                INCREMENT_SIZE_SETTING, serviceRegistry.getService(ConfigurationService.class).getSettings(), 1);
+        if (incrementSize < 1) {
+            throw new MappingException(String.format("%s must be at least 1, was %d", INCREMENT_SIZE_SETTING, incrementSize));
+        }
+        // keep using the sequence that ids were generated from before this generator existed
+        params.setProperty(SEQUENCE_PARAM, DEF_SEQUENCE_NAME);
+        params.setProperty(INCREMENT_PARAM, Integer.toString(incrementSize));
+        super.configure(type, params, serviceRegistry);
+    }
+}
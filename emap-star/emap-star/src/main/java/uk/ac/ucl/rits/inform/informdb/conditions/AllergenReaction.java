@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.conditions;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 
@@ -35,7 +36,7 @@ public class AllergenReaction extends TemporalCore<AllergenReaction, AllergenRea
      * This is the primary key for the allergenReaction table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long allergenReactionId;
 
     /**
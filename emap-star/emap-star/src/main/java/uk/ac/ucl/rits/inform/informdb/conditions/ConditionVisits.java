@@ -1,4 +1,5 @@
 package uk.ac.ucl.rits.inform.informdb.conditions;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 
 import lombok.Data;
@@ -37,7 +38,7 @@ public class ConditionVisits {
      * This is the primary key for the ConditionVisits table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private Long conditionVisitsId;
 
     /**
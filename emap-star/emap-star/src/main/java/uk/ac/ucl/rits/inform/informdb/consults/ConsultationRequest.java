@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.consults;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
@@ -32,7 +33,7 @@ public class ConsultationRequest extends TemporalCore<ConsultationRequest, Consu
      * This is the primary key for the consultationRequest table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long consultationRequestId;
 
     /**
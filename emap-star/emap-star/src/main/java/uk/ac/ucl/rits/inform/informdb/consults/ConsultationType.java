@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.consults;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 
@@ -33,7 +34,7 @@ public class ConsultationType extends TemporalCore<ConsultationType, Consultatio
      * This is the primary key for the consultationType table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long consultationTypeId;
     @Column(nullable = false, unique = true)
 
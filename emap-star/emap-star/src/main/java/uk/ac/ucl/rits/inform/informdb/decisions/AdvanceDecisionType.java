@@ -2,6 +2,7 @@ package uk.ac.ucl.rits.inform.informdb.decisions;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -26,7 +27,7 @@ public class AdvanceDecisionType {
      * This is the primary key for the advanceDecisionType table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long advanceDecisionTypeId;
 
     /**
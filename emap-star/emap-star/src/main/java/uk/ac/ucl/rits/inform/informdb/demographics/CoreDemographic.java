@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.demographics;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 import uk.ac.ucl.rits.inform.informdb.identity.Mrn;
@@ -44,7 +45,7 @@ public class CoreDemographic extends TemporalCore<CoreDemographic, CoreDemograph
      * This is the primary key for the coreDemographics table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long coreDemographicId;
 
     /**
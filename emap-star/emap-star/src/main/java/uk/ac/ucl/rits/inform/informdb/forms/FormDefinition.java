@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.forms;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.TemporalFrom;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
@@ -28,7 +29,7 @@ public class FormDefinition extends TemporalCore<FormDefinition, FormDefinitionA
      * \brief Unique identifier in EMAP for this Form description record.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private Long formDefinitionId;
 
     /**
@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.identity;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 import uk.ac.ucl.rits.inform.informdb.visit_recordings.VisitObservation;
@@ -46,7 +47,7 @@ public class HospitalVisit extends TemporalCore<HospitalVisit, HospitalVisitAudi
      * This is the primary key for the HospitalVisit table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private Long hospitalVisitId;
 
     /**
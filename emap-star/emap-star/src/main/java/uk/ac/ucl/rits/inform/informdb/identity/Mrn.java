@@ -19,6 +19,7 @@ import org.hibernate.annotations.Check;
 
 import lombok.Data;
 import org.hibernate.annotations.ColumnDefault;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 
 /**
  * \brief This represents the association of Medical Resource Number (MRN) to
@@ -46,7 +47,7 @@ public class Mrn implements Serializable {
      * This is the primary key for the mrn table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private Long mrnId;
 
     //TODO Exclude from doxygen
@@ -2,6 +2,7 @@ package uk.ac.ucl.rits.inform.informdb.identity;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 
@@ -41,7 +42,7 @@ public class MrnToLive extends TemporalCore<MrnToLive, MrnToLiveAudit> {
      * This is the primary key for the MrnToLive table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private Long mrnToLiveId;
 
     /**
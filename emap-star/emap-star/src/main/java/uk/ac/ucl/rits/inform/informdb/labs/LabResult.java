@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.labs;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 
@@ -31,7 +32,7 @@ import java.time.Instant;
         @Index(name = "lr_result_last_modified_datetime", columnList = "resultLastModifiedDatetime")})
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
-@AuditTable
+@AuditTable(partitionAuditBy = "storedUntil")
 public class LabResult extends TemporalCore<LabResult, LabResultAudit> {
 
     /**
@@ -40,7 +41,7 @@ public class LabResult extends TemporalCore<LabResult, LabResultAudit> {
      * This is the primary key for the labResult table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long labResultId;
 
     /**
@@ -92,10 +93,25 @@ public class LabResult extends TemporalCore<LabResult, LabResultAudit> {
 
     /**
      * \brief Value as bytes.
+     *
+     * Only set for results stored before binary values were moved to the LabResultBlob table, see valueAsBytesHash.
      */
     @Column(columnDefinition = "bytea") //TODO should this be bytes not bytea
     private byte[] valueAsBytes;
 
+    /**
+     * \brief SHA-256 hash of the binary value.
+     *
+     * This joins the labResult table to the LabResultBlob table, which holds the binary value.
+     */
+    @Column(length = 64)
+    private String valueAsBytesHash;
+
+    /**
+     * \brief Length of the binary value in bytes.
+     */
+    private Long valueAsBytesLength;
+
     /**
      * \brief For numeric results, defines the operator used to define the value.
      *
@@ -156,6 +172,8 @@ public class LabResult extends TemporalCore<LabResult, LabResultAudit> {
         this.valueAsText = other.valueAsText;
         this.valueAsReal = other.valueAsReal;
         this.valueAsBytes = other.valueAsBytes;
+        this.valueAsBytesHash = other.valueAsBytesHash;
+        this.valueAsBytesLength = other.valueAsBytesLength;
         this.resultOperator = other.resultOperator;
         this.rangeHigh = other.rangeHigh;
         this.rangeLow = other.rangeLow;
@@ -0,0 +1,57 @@
+package uk.ac.ucl.rits.inform.informdb.labs;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * \brief Binary value of a LabResult, such as a pathology report.
+ *
+ * Values are stored once for each distinct content, and are referenced by the hash of their content from LabResult
+ * and its audit table. Rows are never changed once they are created.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table
+@Data
+@NoArgsConstructor
+public class LabResultBlob implements Serializable {
+
+    /**
+     * \brief Lowercase hex SHA-256 hash of the content.
+     *
+     * This is the primary key for the labResultBlob table, and is referenced by LabResult.valueAsBytesHash.
+     */
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    /**
+     * \brief Length of the content in bytes.
+     */
+    @Column(nullable = false)
+    private long contentLength;
+
+    /**
+     * \brief Binary content.
+     */
+    @Column(columnDefinition = "bytea", nullable = false)
+    private byte[] content;
+
+    /**
+     * Create a lab result blob.
+     * @param contentHash   SHA-256 hash of the content
+     * @param contentLength length of the content
+     * @param content       binary content
+     */
+    public LabResultBlob(String contentHash, long contentLength, byte[] content) {
+        this.contentHash = contentHash;
+        this.contentLength = contentLength;
+        this.content = content;
+    }
+}
@@ -12,6 +12,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
 import lombok.Data;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 
 /**
  * \breif Known locations within the hospital.
@@ -29,7 +30,7 @@ public class Location implements  Serializable {
      * This is the primary key for the location table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long locationId;
 
     /**
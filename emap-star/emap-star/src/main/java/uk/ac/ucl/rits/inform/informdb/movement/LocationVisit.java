@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.movement;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
@@ -41,7 +42,8 @@ import java.time.Instant;
 @ToString(callSuper = true)
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
 @AuditTable(indexes = {@Index(name = "lva_hospital_visit_id", columnList = "hospitalVisitId"),
-        @Index(name = "lva_location_id", columnList = "locationId")})
+        @Index(name = "lva_location_id", columnList = "locationId"),
+        @Index(name = "lva_location_visit_id", columnList = "locationVisitId")}, partitionAuditBy = "storedUntil")
 public class LocationVisit extends TemporalCore<LocationVisit, LocationVisitAudit> {
 
     /**
@@ -50,7 +52,7 @@ public class LocationVisit extends TemporalCore<LocationVisit, LocationVisitAudi
      * This is the primary key for the locationVisit table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long locationVisitId;
 
     /**
@@ -0,0 +1,85 @@
+package uk.ac.ucl.rits.inform.informdb.movement;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * \brief Admission or discharge at a location that has been cancelled.
+ *
+ * A cancellation can arrive before the message that it cancels, so cancelled admissions and discharges are kept
+ * to ignore the cancelled message when it does arrive. Each cancellation is also recorded in the LocationVisitAudit table.
+ */
+@SuppressWarnings("serial")
+@Entity
+@Table(indexes = {@Index(name = "lvc_visit_location_datetime", columnList = "hospitalVisitId, locationId, cancelledDatetime", unique = true)})
+@Data
+@NoArgsConstructor
+public class LocationVisitCancellation implements Serializable {
+
+    /**
+     * \brief Unique identifier in EMAP for this locationVisitCancellation record.
+     *
+     * This is the primary key for the locationVisitCancellation table.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
+    private Long locationVisitCancellationId;
+
+    /**
+     * \brief Identifier for the HospitalVisit associated with this record.
+     *
+     * Not a foreign key, so that cancellations are kept like audit rows if the hospital visit is deleted.
+     */
+    @Column(nullable = false)
+    private Long hospitalVisitId;
+
+    /**
+     * \brief Identifier of the Location associated with this record.
+     */
+    @ManyToOne
+    @JoinColumn(name = "locationId", nullable = false)
+    private Location locationId;
+
+    /**
+     * \brief Date and time of the admission or discharge that was cancelled.
+     */
+    @Column(columnDefinition = "timestamp with time zone", nullable = false)
+    private Instant cancelledDatetime;
+
+    /**
+     * \brief Predicate determining whether an admission at this time has been cancelled.
+     */
+    @Column(nullable = false)
+    private Boolean admissionCancelled = false;
+
+    /**
+     * \brief Predicate determining whether a discharge at this time has been cancelled.
+     */
+    @Column(nullable = false)
+    private Boolean dischargeCancelled = false;
+
+    /**
+     * Create a location visit cancellation.
+     * @param hospitalVisitId   id of the hospital visit
+     * @param locationId        location
+     * @param cancelledDatetime time of the cancelled admission or discharge
+     */
+    public LocationVisitCancellation(Long hospitalVisitId, Location locationId, Instant cancelledDatetime) {
+        this.hospitalVisitId = hospitalVisitId;
+        this.locationId = locationId;
+        this.cancelledDatetime = cancelledDatetime;
+    }
+}
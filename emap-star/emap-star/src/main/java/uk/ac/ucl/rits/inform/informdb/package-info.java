@@ -1,5 +1,7 @@
 /**
 * This package stores classes that are common to all parts of the EMAP-Star schema.
 */
-
+@GenericGenerator(name = EmapSequenceGenerator.NAME, strategy = "uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator")
 package uk.ac.ucl.rits.inform.informdb;
+
+import org.hibernate.annotations.GenericGenerator;
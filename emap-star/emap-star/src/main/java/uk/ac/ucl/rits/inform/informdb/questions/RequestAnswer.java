@@ -3,6 +3,7 @@ package uk.ac.ucl.rits.inform.informdb.questions;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
 
@@ -40,7 +41,7 @@ public class RequestAnswer extends TemporalCore<RequestAnswer, RequestAnswerAudi
      * This is the primary key for the requestAnswer table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long requestAnswerId;
 
     /**
@@ -3,8 +3,10 @@ package uk.ac.ucl.rits.inform.informdb.visit_recordings;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import uk.ac.ucl.rits.inform.informdb.EmapSequenceGenerator;
 import uk.ac.ucl.rits.inform.informdb.TemporalCore;
 import uk.ac.ucl.rits.inform.informdb.annotation.AuditTable;
+import uk.ac.ucl.rits.inform.informdb.annotation.TimePartitioned;
 import uk.ac.ucl.rits.inform.informdb.identity.HospitalVisit;
 
 import javax.persistence.Column;
@@ -38,7 +40,8 @@ import java.time.LocalDate;
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
-@AuditTable
+@AuditTable(partitionAuditBy = "storedUntil")
+@TimePartitioned("validFrom")
 public class VisitObservation extends TemporalCore<VisitObservation, VisitObservationAudit> {
 
     /**
@@ -47,7 +50,7 @@ public class VisitObservation extends TemporalCore<VisitObservation, VisitObserv
      * This is the primary key for the visitObservation table.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = EmapSequenceGenerator.NAME)
     private long visitObservationId;
 
     /**
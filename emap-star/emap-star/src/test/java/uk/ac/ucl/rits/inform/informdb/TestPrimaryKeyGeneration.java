@@ -0,0 +1,29 @@
+package uk.ac.ucl.rits.inform.informdb;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Ensure that all generated primary keys, including those of audit tables, use the shared Emap sequence generator
+ * so that ids can be allocated in blocks.
+ */
+class TestPrimaryKeyGeneration {
+
+    @ParameterizedTest
+    @MethodSource("uk.ac.ucl.rits.inform.informdb.DBTestUtils#findAllEntities")
+    void testGeneratedValuesUseEmapSequence(Class<?> entityClass) {
+        Arrays.stream(entityClass.getDeclaredFields())
+                .map(field -> field.getAnnotation(GeneratedValue.class))
+                .filter(generatedValue -> generatedValue != null)
+                .forEach(generatedValue -> {
+                    assertEquals(GenerationType.SEQUENCE, generatedValue.strategy());
+                    assertEquals(EmapSequenceGenerator.NAME, generatedValue.generator());
+                });
+    }
+}
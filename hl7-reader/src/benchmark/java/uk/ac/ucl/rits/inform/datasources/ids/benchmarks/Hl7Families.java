@@ -0,0 +1,64 @@
+package uk.ac.ucl.rits.inform.datasources.ids.benchmarks;
+
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.util.Hl7InputStreamMessageIterator;
+import uk.ac.ucl.rits.inform.datasources.ids.HL7Utils;
+import uk.ac.ucl.rits.inform.datasources.ids.IdsOperations;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Families of HL7 messages from the test resources, shared by the benchmarks.
+ */
+final class Hl7Families {
+    private Hl7Families() {
+    }
+
+    /**
+     * Messages that can't be parsed or built are left out, so only the normal path is measured.
+     * @param family        directory of the test resources holding the family, only files directly within it are used
+     * @param parser        HL7 parser
+     * @param idsOperations builds interchange messages from HL7
+     * @return HL7 messages in the family that can be built into interchange messages
+     * @throws Exception if the messages can't be read
+     */
+    static List<String> readUsableMessages(String family, PipeParser parser, IdsOperations idsOperations) throws Exception {
+        List<String> usableMessages = new ArrayList<>();
+        for (String hl7Message : readFamily(family)) {
+            try {
+                Message message = parser.parse(hl7Message);
+                idsOperations.messageFromHl7Message(message, 0);
+                usableMessages.add(hl7Message);
+            } catch (Exception e) {
+                // deliberately invalid test messages aren't part of the benchmark
+            }
+        }
+        if (usableMessages.isEmpty()) {
+            throw new IllegalStateException(String.format("No usable messages in %s", family));
+        }
+        return usableMessages;
+    }
+
+    private static List<String> readFamily(String family) throws Exception {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(Path.of(HL7Utils.getPathFromResource(family)))) {
+            files = paths.filter(Files::isRegularFile).filter(p -> p.toString().endsWith(".txt")).sorted().collect(Collectors.toList());
+        }
+        List<String> messages = new ArrayList<>();
+        for (Path file : files) {
+            // files can hold more than one message, so split them up and store each message as HL7
+            Hl7InputStreamMessageIterator iterator = HL7Utils.hl7Iterator(new File(file.toString()));
+            while (iterator.hasNext()) {
+                messages.add(iterator.next().encode());
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,128 @@
+package uk.ac.ucl.rits.inform.datasources.ids.benchmarks;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import uk.ac.ucl.rits.inform.datasources.ids.AppHl7;
+import uk.ac.ucl.rits.inform.datasources.ids.HL7Utils;
+import uk.ac.ucl.rits.inform.datasources.ids.IdsOperations;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of turning HL7 messages from the test resources into interchange messages, for each family of messages.
+ * <p>
+ * Each operation handles a single message, cycling through all messages in the family, so the scores are messages per
+ * second. Run with the gc profiler to get the allocation rate per message ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class Hl7ParsingBenchmark {
+    /**
+     * Directory of the test resources holding the family of messages, only files directly within it are used.
+     */
+    @Param({
+            "Adt/generic",
+            "LabOrders/winpath",
+            "LabOrders/co_path",
+            "LabOrders/bio_connect",
+            "LabOrders/abl90_flex",
+            "PatientInfection",
+            "PatientAllergies",
+            "ProblemList",
+            "VitalSigns",
+            "NotesParser",
+    })
+    private String family;
+
+    private ConfigurableApplicationContext context;
+    private IdsOperations idsOperations;
+    private PipeParser parser;
+    private String[] hl7Messages;
+    private Message[] parsedMessages;
+    private int next;
+
+    /**
+     * Start the reader's spring context with the test profile, so that the builders are configured as they are in
+     * the tests, and load all messages in the family.
+     * @throws Exception if the messages can't be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new SpringApplicationBuilder(AppHl7.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                .run();
+        idsOperations = context.getBean(IdsOperations.class);
+        parser = HL7Utils.initializeHapiContext().getPipeParser();
+
+        hl7Messages = Hl7Families.readUsableMessages(family, parser, idsOperations).toArray(String[]::new);
+        parsedMessages = new Message[hl7Messages.length];
+        for (int i = 0; i < hl7Messages.length; i++) {
+            parsedMessages[i] = parser.parse(hl7Messages[i]);
+        }
+    }
+
+    /**
+     * Close the spring context.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % hl7Messages.length;
+        return index;
+    }
+
+    /**
+     * @return HAPI message parsed from HL7
+     * @throws HL7Exception shouldn't happen
+     */
+    @Benchmark
+    public Message parse() throws HL7Exception {
+        return parser.parse(hl7Messages[nextIndex()]);
+    }
+
+    /**
+     * @return interchange messages built from an already parsed HAPI message
+     * @throws Exception shouldn't happen
+     */
+    @Benchmark
+    public List<? extends EmapOperationMessage> build() throws Exception {
+        return idsOperations.messageFromHl7Message(parsedMessages[nextIndex()], 0);
+    }
+
+    /**
+     * @return interchange messages built from HL7, as the reader does for each IDS row
+     * @throws Exception shouldn't happen
+     */
+    @Benchmark
+    public List<? extends EmapOperationMessage> parseAndBuild() throws Exception {
+        return idsOperations.messageFromHl7Message(parser.parse(hl7Messages[nextIndex()]), 0);
+    }
+}
@@ -0,0 +1,127 @@
+package uk.ac.ucl.rits.inform.datasources.ids.benchmarks;
+
+import ca.uhn.hl7v2.parser.PipeParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import uk.ac.ucl.rits.inform.datasources.ids.AppHl7;
+import uk.ac.ucl.rits.inform.datasources.ids.HL7Utils;
+import uk.ac.ucl.rits.inform.datasources.ids.IdsOperations;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.messaging.InterchangeMessageConverter;
+import uk.ac.ucl.rits.inform.interchange.messaging.InterchangeMessageConverter.WireFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of writing and reading interchange messages in each wire format, for each family of messages.
+ * <p>
+ * Each operation handles a single interchange message, cycling through all messages built from the family, so the scores
+ * are messages per second. The mean size of a message in the wire format is logged when the family is loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(WireFormatBenchmark.class);
+
+    /**
+     * Directory of the test resources holding the family of messages, only files directly within it are used.
+     */
+    @Param({
+            "Adt/generic",
+            "LabOrders/winpath",
+            "LabOrders/co_path",
+            "LabOrders/bio_connect",
+            "LabOrders/abl90_flex",
+            "PatientInfection",
+            "PatientAllergies",
+            "ProblemList",
+            "VitalSigns",
+            "NotesParser",
+    })
+    private String family;
+
+    @Param({"JSON", "COMPACT"})
+    private WireFormat wireFormat;
+
+    private InterchangeMessageConverter converter;
+    private EmapOperationMessage[] messages;
+    private Message[] amqpMessages;
+    private int next;
+
+    /**
+     * Build the interchange messages for the family using the reader's spring context, and write them once in the
+     * wire format so that they can be read back.
+     * @throws Exception if the messages can't be read, or no interchange messages are built from them
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        converter = new InterchangeMessageConverter(wireFormat);
+        List<EmapOperationMessage> built = new ArrayList<>();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AppHl7.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                .run()) {
+            IdsOperations idsOperations = context.getBean(IdsOperations.class);
+            PipeParser parser = HL7Utils.initializeHapiContext().getPipeParser();
+            for (String hl7Message : Hl7Families.readUsableMessages(family, parser, idsOperations)) {
+                built.addAll(idsOperations.messageFromHl7Message(parser.parse(hl7Message), 0));
+            }
+        }
+        if (built.isEmpty()) {
+            throw new IllegalStateException(String.format("No interchange messages built from %s", family));
+        }
+        messages = built.toArray(EmapOperationMessage[]::new);
+        amqpMessages = new Message[messages.length];
+        long totalBytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            amqpMessages[i] = converter.toMessage(messages[i], new MessageProperties());
+            totalBytes += amqpMessages[i].getBody().length;
+        }
+        logger.info("{} {}: {} messages, mean size {} bytes", family, wireFormat, messages.length, totalBytes / messages.length);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % messages.length;
+        return index;
+    }
+
+    /**
+     * @return AMQP message written in the wire format, as the publisher does
+     */
+    @Benchmark
+    public Message write() {
+        return converter.toMessage(messages[nextIndex()], new MessageProperties());
+    }
+
+    /**
+     * @return interchange message read from the wire format, as core does
+     */
+    @Benchmark
+    public Object read() {
+        return converter.fromMessage(amqpMessages[nextIndex()]);
+    }
+}
@@ -32,13 +32,16 @@ public class AppHl7 {
 
     /**
      * The entry point for processing HL7 messages and writing interchange messages to the queue.
-     * @param publisher the local AMQP handling class
-     * @param idsOps    Emap star operations object
+     * @param publisher       the local AMQP handling class
+     * @param idsOps          Emap star operations object
+     * @param pipelinedReader reader that parses and publishes without waiting for each message, if enabled
+     * @param publishDelayMetrics records the delay of messages that have been published
      * @return The CommandLineRunner
      */
     @Bean
     @Profile("default")
-    public CommandLineRunner mainLoop(Publisher publisher, IdsOperations idsOps) {
+    public CommandLineRunner mainLoop(Publisher publisher, IdsOperations idsOps, PipelinedHl7Reader pipelinedReader,
+                                      IdsPublishDelayMetrics publishDelayMetrics) {
         return (args) -> {
             logger.info("Initialising HAPI...");
             long startTimeMillis = System.currentTimeMillis();
@@ -47,16 +50,27 @@ public class AppHl7 {
             logger.info("Done initialising HAPI");
 
             int exitCode = 1;
-            while (true) {
+            if (pipelinedReader.isEnabled()) {
                 try {
-                    idsOps.parseAndSendNextHl7(publisher, parser);
+                    pipelinedReader.run(publisher, parser);
                 } catch (ReachedEndException ree) {
-                    // last message has been processed, so stop
+                    // last message has been confirmed, so stop
                     exitCode = 0;
-                    break;
                 } catch (Exception e) {
                     logger.error("Exiting because encountered exception: ", e);
-                    break;
+                }
+            } else {
+                while (true) {
+                    try {
+                        idsOps.parseAndSendNextHl7(publisher, parser, publishDelayMetrics);
+                    } catch (ReachedEndException ree) {
+                        // last message has been processed, so stop
+                        exitCode = 0;
+                        break;
+                    } catch (Exception e) {
+                        logger.error("Exiting because encountered exception: ", e);
+                        break;
+                    }
                 }
             }
 
@@ -18,13 +18,16 @@ import ca.uhn.hl7v2.model.v26.segment.PID;
 import ca.uhn.hl7v2.model.v26.segment.PV1;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import uk.ac.ucl.rits.inform.datasources.ids.exceptions.Hl7InconsistencyException;
 import uk.ac.ucl.rits.inform.datasources.ids.hl7.parser.NotesParser;
 import uk.ac.ucl.rits.inform.datasources.ids.hl7.parser.PatientInfoHl7;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
 import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
 import uk.ac.ucl.rits.inform.interchange.ValueType;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
 
 import java.time.Instant;
 import java.time.LocalDate;
@@ -41,6 +44,29 @@ import java.util.Set;
 public class FlowsheetFactory {
     private static final Logger logger = LoggerFactory.getLogger(FlowsheetFactory.class);
     private static final Collection<String> ALLOWED_STATUSES = Set.of("C", "F", "D");
+    private final boolean batchEnabled;
+
+    /**
+     * @param batchEnabled send all flowsheets from an HL7 message as a single FlowsheetBatch, only enable this once
+     *                     core can process them
+     */
+    public FlowsheetFactory(@Value("${ids.cfg.flowsheet-batch.enabled:false}") boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
+    /**
+     * Builds the interchange messages to publish for an ORU R01 flowsheet message.
+     * @param idsUnid Unique id from UDS
+     * @param msg     ORU R01 HL7 flowsheet message from EPIC
+     * @return a single FlowsheetBatch if batches are enabled and there are flowsheets, otherwise individual Flowsheet messages
+     */
+    List<? extends EmapOperationMessage> buildMessages(String idsUnid, Message msg) {
+        List<Flowsheet> flowsheets = getMessages(idsUnid, msg);
+        if (!batchEnabled || flowsheets.isEmpty()) {
+            return flowsheets;
+        }
+        return List.of(new FlowsheetBatch(idsUnid, flowsheets));
+    }
 
     /**
      * Builds Flowsheet messages from an ORU R01 message.
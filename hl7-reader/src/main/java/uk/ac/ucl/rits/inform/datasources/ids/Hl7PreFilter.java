@@ -0,0 +1,194 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import uk.ac.ucl.rits.inform.datasources.ids.exceptions.Hl7MessageIgnoredException;
+import uk.ac.ucl.rits.inform.interchange.OrderCodingSystem;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds HL7 messages that would be skipped, by reading the few fields used for routing straight from the raw message.
+ * <p>
+ * Parsing with HAPI builds the whole object model of a message, which is wasted for messages that
+ * {@link IdsOperations#messageFromHl7Message} drops straight away: ADT from other senders, message types that aren't
+ * processed, and orders or results with an unknown coding system. The rules here must match the routing there.
+ * Anything that can't be read with certainty here is left for the full parse to decide.
+ */
+final class Hl7PreFilter {
+    private static final String ALLOWED_ADT_SENDER = "EPIC";
+    private static final Set<String> PROBLEM_LIST_TRIGGERS = Set.of("PC1", "PC2", "PC3");
+
+    private Hl7PreFilter() {
+    }
+
+    /**
+     * @param rawHl7 HL7 message as stored in the IDS, with either \r or \n between segments
+     * @return the reason that the message would be skipped, or empty if it should be parsed
+     */
+    static Optional<String> skipReason(String rawHl7) {
+        if (!rawHl7.startsWith("MSH") || rawHl7.length() < 8) {
+            return Optional.empty();
+        }
+        RawSegment msh = new RawSegment(rawHl7, 0, rawHl7.substring(3, 8));
+        // MSH-1 is the field separator itself, so MSH-n is at field position n - 1
+        String sendingApplication = msh.component(2, 1);
+        String sendingFacility = msh.component(3, 1);
+        String messageType = msh.component(8, 1);
+        String triggerEvent = msh.component(8, 2);
+        if (sendingApplication == null || sendingFacility == null || messageType == null || triggerEvent == null) {
+            return Optional.empty();
+        }
+
+        switch (messageType) {
+            case "ADT":
+                return ALLOWED_ADT_SENDER.equals(sendingApplication)
+                        ? Optional.empty() : Optional.of(String.format("ADT message from sendingApplication %s", sendingApplication));
+            case "ORM":
+                return "O01".equals(triggerEvent)
+                        ? codingSystemSkipReason(rawHl7, msh, sendingApplication, sendingFacility) : unknownType(messageType, triggerEvent);
+            case "ORR":
+                return "O02".equals(triggerEvent) ? codingSystemSkipReason(rawHl7, msh, "", "") : unknownType(messageType, triggerEvent);
+            case "ORU":
+                if ("R01".equals(triggerEvent)) {
+                    return codingSystemSkipReason(rawHl7, msh, sendingApplication, sendingFacility);
+                } else if ("R30".equals(triggerEvent)) {
+                    return codingSystemSkipReason(rawHl7, msh, sendingApplication, "");
+                }
+                return unknownType(messageType, triggerEvent);
+            case "PPR":
+                return PROBLEM_LIST_TRIGGERS.contains(triggerEvent) ? Optional.empty() : unknownType(messageType, triggerEvent);
+            default:
+                return unknownType(messageType, triggerEvent);
+        }
+    }
+
+    private static Optional<String> unknownType(String messageType, String triggerEvent) {
+        return Optional.of(String.format("unknown message type %s^%s", messageType, triggerEvent));
+    }
+
+    /**
+     * Uses the first OBR segment, as the order and result builders do.
+     * @param rawHl7             raw message
+     * @param msh                MSH segment, for the separators
+     * @param sendingApplication sending application as used for this message type
+     * @param sendingFacility    sending facility as used for this message type
+     * @return the reason that the coding system would be skipped, or empty if it should be parsed
+     */
+    private static Optional<String> codingSystemSkipReason(String rawHl7, RawSegment msh, String sendingApplication, String sendingFacility) {
+        int obrStart = findSegment(rawHl7, "OBR");
+        if (obrStart < 0) {
+            return Optional.empty();
+        }
+        RawSegment obr = new RawSegment(rawHl7, obrStart, msh.separators);
+        String fillerNamespace = obr.component(3, 2);
+        String codingSystemName = obr.component(4, 3);
+        String alternativeIdentifier = obr.component(4, 4);
+        if (fillerNamespace == null || codingSystemName == null || alternativeIdentifier == null) {
+            return Optional.empty();
+        }
+        try {
+            OrderCodingSystem codingSystem = OrderAndResultService.determineCodingSystem(
+                    fillerNamespace, codingSystemName, alternativeIdentifier, sendingApplication, sendingFacility);
+            if (codingSystem == OrderCodingSystem.BLOOD_PRODUCTS) {
+                return Optional.of("Bank Manager blood products not implemented for now");
+            }
+            return Optional.empty();
+        } catch (Hl7MessageIgnoredException e) {
+            return Optional.of(e.getMessage());
+        }
+    }
+
+    /**
+     * @param rawHl7      raw message
+     * @param segmentName three letter segment name
+     * @return start of the first segment with the name, or -1 if there isn't one
+     */
+    private static int findSegment(String rawHl7, String segmentName) {
+        int segmentStart = 0;
+        while (segmentStart >= 0 && segmentStart < rawHl7.length()) {
+            if (rawHl7.startsWith(segmentName, segmentStart)) {
+                return segmentStart;
+            }
+            segmentStart = RawSegment.segmentEnd(rawHl7, segmentStart) + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads fields from one segment of the raw message, without copying anything other than the values that are read.
+     */
+    private static final class RawSegment {
+        private final String rawHl7;
+        private final int start;
+        private final int end;
+        private final String separators;
+        private final char fieldSeparator;
+        private final char componentSeparator;
+        private final char repetitionSeparator;
+        private final char escapeCharacter;
+        private final char subcomponentSeparator;
+
+        /**
+         * @param rawHl7     raw message
+         * @param start      start of the segment
+         * @param separators MSH-1 followed by MSH-2, the field separator and encoding characters
+         */
+        RawSegment(String rawHl7, int start, String separators) {
+            this.rawHl7 = rawHl7;
+            this.start = start;
+            this.end = segmentEnd(rawHl7, start);
+            this.separators = separators;
+            fieldSeparator = separators.charAt(0);
+            componentSeparator = separators.charAt(1);
+            repetitionSeparator = separators.charAt(2);
+            escapeCharacter = separators.charAt(3);
+            subcomponentSeparator = separators.charAt(4);
+        }
+
+        static int segmentEnd(String rawHl7, int from) {
+            for (int i = from; i < rawHl7.length(); i++) {
+                char c = rawHl7.charAt(i);
+                if (c == '\r' || c == '\n') {
+                    return i;
+                }
+            }
+            return rawHl7.length();
+        }
+
+        /**
+         * @param field     position of the field in the segment, the segment name is at 0
+         * @param component one-based component number within the first repetition of the field
+         * @return the first subcomponent of the component, empty if it isn't present,
+         * or null if it has escape sequences which are left to the full parse
+         */
+        String component(int field, int component) {
+            int fieldStart = start;
+            for (int i = 0; i < field; i++) {
+                fieldStart = rawHl7.indexOf(fieldSeparator, fieldStart);
+                if (fieldStart < 0 || fieldStart >= end) {
+                    return "";
+                }
+                fieldStart++;
+            }
+            // only the first repetition, as HAPI returns for these fields
+            int fieldEnd = indexOfOrEnd(repetitionSeparator, fieldStart, indexOfOrEnd(fieldSeparator, fieldStart, end));
+            int componentStart = fieldStart;
+            for (int i = 1; i < component; i++) {
+                componentStart = indexOfOrEnd(componentSeparator, componentStart, fieldEnd);
+                if (componentStart >= fieldEnd) {
+                    return "";
+                }
+                componentStart++;
+            }
+            int componentEnd = indexOfOrEnd(componentSeparator, componentStart, fieldEnd);
+            // only the first subcomponent, as HAPI returns for a primitive component
+            String value = rawHl7.substring(componentStart, indexOfOrEnd(subcomponentSeparator, componentStart, componentEnd));
+            return value.indexOf(escapeCharacter) < 0 ? value : null;
+        }
+
+        private int indexOfOrEnd(char c, int from, int limit) {
+            int index = rawHl7.indexOf(c, from);
+            return index < 0 || index > limit ? limit : index;
+        }
+    }
+}
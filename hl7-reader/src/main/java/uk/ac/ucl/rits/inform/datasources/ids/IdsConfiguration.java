@@ -22,6 +22,15 @@ public class IdsConfiguration {
     private Instant serviceStartDatetime;
     private Instant endDatetime;
     private boolean startFromLastId;
+    private int batchSize;
+    private int fetchSize;
+    private boolean preFilterEnabled;
+    private int shardIndex;
+    private int shardCount = 1;
+    private long minPollMillis;
+    private long maxPollMillis;
+    private int checkpointMessages;
+    private long checkpointIntervalMillis;
     private IdsProgressRepository idsProgressRepository;
     private SessionFactory sessionFactory;
 
@@ -47,7 +56,7 @@ public class IdsConfiguration {
      * @throws IllegalStateException if the returned serviceStartDatetime will be null
      */
     Instant getStartDateTime() {
-        IdsProgress idsProgress = idsProgressRepository.findOnlyRow();
+        IdsProgress idsProgress = idsProgressRepository.findById(getShard().getProgressRowId()).orElse(null);
         if (startFromProgressAndProgressAfterStartDate(serviceStartDatetime, startFromLastId, idsProgress)) {
             logger.info("Using the datetime of the last-processed row in the IDS as the start datetime");
             return idsProgress.getLastProcessedMessageDatetime();
@@ -76,6 +85,125 @@ public class IdsConfiguration {
         this.startFromLastId = startFromLastId;
     }
 
+    /**
+     * @return maximum number of IDS rows to prefetch in a single query
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    @Value("${ids.cfg.batch-size:1000}")
+    void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("ids.cfg.batch-size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return number of rows the JDBC driver should fetch from the server-side cursor per round trip
+     */
+    int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Value("${ids.cfg.fetch-size:100}")
+    void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("ids.cfg.fetch-size must be at least 1");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return whether messages that would be skipped are found from the raw HL7, before parsing
+     */
+    boolean isPreFilterEnabled() {
+        return preFilterEnabled;
+    }
+
+    @Value("${ids.cfg.pre-filter.enabled:true}")
+    void setPreFilterEnabled(boolean preFilterEnabled) {
+        this.preFilterEnabled = preFilterEnabled;
+    }
+
+    /**
+     * @return partition of the IDS that this reader processes
+     * @throws IllegalArgumentException if the shard index isn't in the range of shards
+     */
+    IdsShard getShard() {
+        return new IdsShard(shardIndex, shardCount);
+    }
+
+    @Value("${ids.cfg.shard.index:0}")
+    void setShardIndex(int shardIndex) {
+        this.shardIndex = shardIndex;
+    }
+
+    @Value("${ids.cfg.shard.count:1}")
+    void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * @return time to wait before first checking for new IDS rows once the IDS has been drained
+     */
+    long getMinPollMillis() {
+        return minPollMillis;
+    }
+
+    @Value("${ids.cfg.poll.min-interval-millis:5}")
+    void setMinPollMillis(long minPollMillis) {
+        if (minPollMillis < 1) {
+            throw new IllegalArgumentException("ids.cfg.poll.min-interval-millis must be at least 1");
+        }
+        this.minPollMillis = minPollMillis;
+    }
+
+    /**
+     * @return longest time to wait between checks for new IDS rows
+     */
+    long getMaxPollMillis() {
+        return maxPollMillis;
+    }
+
+    @Value("${ids.cfg.poll.max-interval-millis:1000}")
+    void setMaxPollMillis(long maxPollMillis) {
+        if (maxPollMillis < 1) {
+            throw new IllegalArgumentException("ids.cfg.poll.max-interval-millis must be at least 1");
+        }
+        this.maxPollMillis = maxPollMillis;
+    }
+
+    /**
+     * @return number of confirmed messages after which progress is written to the star database
+     */
+    int getCheckpointMessages() {
+        return checkpointMessages;
+    }
+
+    @Value("${ids.cfg.checkpoint.messages:1000}")
+    void setCheckpointMessages(int checkpointMessages) {
+        if (checkpointMessages < 1) {
+            throw new IllegalArgumentException("ids.cfg.checkpoint.messages must be at least 1");
+        }
+        this.checkpointMessages = checkpointMessages;
+    }
+
+    /**
+     * @return longest time that confirmed progress is held before being written to the star database
+     */
+    long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    @Value("${ids.cfg.checkpoint.interval-millis:5000}")
+    void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        if (checkpointIntervalMillis < 1) {
+            throw new IllegalArgumentException("ids.cfg.checkpoint.interval-millis must be at least 1");
+        }
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
 
     SessionFactory getSessionFactory() {
         return sessionFactory;
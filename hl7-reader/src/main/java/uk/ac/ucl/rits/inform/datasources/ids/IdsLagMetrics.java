@@ -0,0 +1,58 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Gauges for how far behind the IDS the reader is, exposed through the actuator metrics endpoint.
+ * <p>
+ * Values are read from the IDS and the confirmed progress each time the gauges are sampled, so the lag includes
+ * progress that hasn't been saved to the progress table yet.
+ */
+@Component
+public class IdsLagMetrics {
+    private final IdsOperations idsOperations;
+
+    /**
+     * @param idsOperations IDS operations
+     * @param meterRegistry registry to add the gauges to
+     */
+    public IdsLagMetrics(IdsOperations idsOperations, MeterRegistry meterRegistry) {
+        this.idsOperations = idsOperations;
+        Gauge.builder("emap.ids.lag.unid", this, IdsLagMetrics::getUnidLag)
+                .description("Number of unids between the latest IDS message and the last processed message")
+                .register(meterRegistry);
+        Gauge.builder("emap.ids.lag.message.datetime", this, IdsLagMetrics::getMessageDatetimeLagSeconds)
+                .description("Time between now and the message datetime of the last processed message")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return latest unid in the IDS minus the last processed unid, NaN if the IDS is empty
+     */
+    double getUnidLag() {
+        Integer latestUnid = idsOperations.getLatestIdsUnid();
+        if (latestUnid == null) {
+            return Double.NaN;
+        }
+        IdsProgress progress = idsOperations.findConfirmedProgress();
+        int lastProcessedUnid = progress == null ? 0 : progress.getLastProcessedIdsUnid();
+        return latestUnid - lastProcessedUnid;
+    }
+
+    /**
+     * @return seconds since the message datetime of the last processed message, NaN if this isn't known
+     */
+    double getMessageDatetimeLagSeconds() {
+        IdsProgress progress = idsOperations.findConfirmedProgress();
+        if (progress == null || progress.getLastProcessedMessageDatetime() == null) {
+            return Double.NaN;
+        }
+        return Duration.between(progress.getLastProcessedMessageDatetime(), Instant.now()).toMillis() / 1000.0;
+    }
+}
@@ -44,8 +44,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Semaphore;
 
 
@@ -71,6 +76,27 @@ public class IdsOperations implements AutoCloseable {
     private final boolean idsEmptyOnInit;
     private final Integer defaultStartUnid;
     private final Integer endUnid;
+    private final int batchSize;
+    private final int fetchSize;
+    private final boolean preFilterEnabled;
+    private final IdsShard shard;
+    private final long minPollMillis;
+    private final long maxPollMillis;
+    private final IdsProgressCheckpoint progressCheckpoint;
+    private final IdsShardProgress shardProgress;
+    /**
+     * IDS rows that have been read ahead of processing, in unid order.
+     */
+    private final Deque<IdsMaster> prefetchedRecords = new ArrayDeque<>();
+    /**
+     * The lastProcessedId that the head of the prefetched records follows on from, so that the buffer is only used
+     * when the caller resumes from exactly where the previous record left off.
+     */
+    private Integer prefetchedAfterUnid;
+    /**
+     * The barrier unid that progress up to the row before was saved for, in the transaction of the previous call.
+     */
+    private Integer progressSavedBeforeBarrierUnid;
 
     /**
      * @param idsConfiguration      configuration of interaction with IDS
@@ -96,6 +122,16 @@ public class IdsOperations implements AutoCloseable {
         this.patientProblemFactory = patientProblemFactory;
         this.idsProgressRepository = idsProgressRepository;
         idsFactory = idsConfiguration.getSessionFactory();
+        batchSize = idsConfiguration.getBatchSize();
+        fetchSize = idsConfiguration.getFetchSize();
+        preFilterEnabled = idsConfiguration.isPreFilterEnabled();
+        shard = idsConfiguration.getShard();
+        minPollMillis = idsConfiguration.getMinPollMillis();
+        maxPollMillis = Math.max(minPollMillis, idsConfiguration.getMaxPollMillis());
+        progressCheckpoint = new IdsProgressCheckpoint(
+                idsProgressRepository, shard.getProgressRowId(),
+                idsConfiguration.getCheckpointMessages(), idsConfiguration.getCheckpointIntervalMillis());
+        shardProgress = new IdsShardProgress(idsProgressRepository, shard, minPollMillis, maxPollMillis);
         idsEmptyOnInit = getIdsIsEmpty();
         logger.info("IdsOperations() idsEmptyOnInit = {}", idsEmptyOnInit);
         defaultStartUnid = getFirstMessageUnidFromDate(idsConfiguration.getStartDateTime(), 1);
@@ -106,6 +142,13 @@ public class IdsOperations implements AutoCloseable {
                 "IDS message processing boundaries: Start date = {}, start unid = {} -->  End date = {}, end unid = {}",
                 idsConfiguration.getStartDateTime(), defaultStartUnid, idsConfiguration.getEndDatetime(), endUnid
         );
+        logger.info("Reading IDS in batches of {} rows, fetching {} rows per round trip", batchSize, fetchSize);
+        logger.info("Saving progress every {} messages or {} ms",
+                idsConfiguration.getCheckpointMessages(), idsConfiguration.getCheckpointIntervalMillis());
+        if (!shard.isWholeIds()) {
+            logger.info("Only processing IDS rows for {}, by hospital number, coordinating with other shards at messages for two MRNs",
+                    shard);
+        }
     }
 
 
@@ -120,10 +163,12 @@ public class IdsOperations implements AutoCloseable {
     }
 
     /**
-     * Call to close when you're finished with the object.
+     * Call to close when you're finished with the object. Also called by spring on shutdown.
+     * Writes any confirmed progress that hasn't been saved yet.
      */
     @Override
     public void close() {
+        progressCheckpoint.write();
         if (idsFactory != null) {
             idsFactory.close();
         }
@@ -189,10 +234,11 @@ public class IdsOperations implements AutoCloseable {
      */
     @Transactional
     IdsProgress getLatestProcessedId() {
-        IdsProgress onlyRow = idsProgressRepository.findOnlyRow();
+        IdsProgress onlyRow = findLatestProcessedId();
 
         if (onlyRow == null) {
-            onlyRow = new IdsProgress();
+            onlyRow = new IdsProgress(shard.getProgressRowId());
+            onlyRow.setShardCount(shard.getCount());
             // use default start time, if specified
             logger.info("No progress found, initialising to unid = {}", this.defaultStartUnid);
             if (this.defaultStartUnid != null) {
@@ -205,6 +251,79 @@ public class IdsOperations implements AutoCloseable {
     }
 
 
+    /**
+     * @return the highest unid currently in the IDS, or null if it is empty
+     */
+    Integer getLatestIdsUnid() {
+        try (Session idsSession = idsFactory.openSession()) {
+            idsSession.setDefaultReadOnly(true);
+            return idsSession.createQuery("select max(i.unid) from IdsMaster i", Integer.class).uniqueResult();
+        }
+    }
+
+    /**
+     * Read the current progress without creating it if it doesn't exist.
+     * @return the progress for the last IDS message we have successfully processed, or null if nothing has been processed
+     */
+    IdsProgress findLatestProcessedId() {
+        return idsProgressRepository.findById(shard.getProgressRowId()).orElse(null);
+    }
+
+    /**
+     * Record that all IDS messages up to and including a unid have been processed, saving the progress immediately.
+     * @param lastProcessedUnid        the unique ID for the latest IDS message processed
+     * @param lastProcessedMessageTime the timestamp of this message
+     */
+    @Transactional
+    public void saveProgress(int lastProcessedUnid, Instant lastProcessedMessageTime) {
+        IdsProgress progress = getLatestProcessedId();
+        progress.updateAndSave(lastProcessedUnid, lastProcessedMessageTime, Instant.now(), idsProgressRepository);
+        progressCheckpoint.reset(progress);
+    }
+
+    /**
+     * Record that all IDS messages up to and including a unid have been processed.
+     * Progress is only saved once enough messages have been confirmed or enough time has passed since it was last saved.
+     * @param lastProcessedUnid        the unique ID for the latest IDS message processed
+     * @param lastProcessedMessageTime the timestamp of this message
+     */
+    void confirmProgress(int lastProcessedUnid, Instant lastProcessedMessageTime) {
+        progressCheckpoint.confirm(lastProcessedUnid, lastProcessedMessageTime);
+    }
+
+    /**
+     * Save any confirmed progress that hasn't been saved yet.
+     */
+    void writeConfirmedProgress() {
+        progressCheckpoint.write();
+    }
+
+    /**
+     * @return the last IDS message we have successfully processed, which may not have been saved yet
+     * @throws IllegalStateException if interrupted while waiting for the progress to be saved with the current number of shards
+     */
+    int getLastConfirmedUnid() {
+        if (!progressCheckpoint.isKnown()) {
+            try {
+                shardProgress.matchShardCount();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for IDS progress to be moved to the current number of shards", e);
+            }
+            progressCheckpoint.reset(getLatestProcessedId());
+        }
+        return progressCheckpoint.getConfirmedUnid();
+    }
+
+    /**
+     * Read the current progress, including progress that hasn't been saved yet, without creating it if it doesn't exist.
+     * @return the progress for the last IDS message we have successfully processed, or null if nothing has been processed
+     */
+    IdsProgress findConfirmedProgress() {
+        IdsProgress confirmed = progressCheckpoint.getConfirmedProgress();
+        return confirmed == null ? findLatestProcessedId() : confirmed;
+    }
+
     /**
      * Write a message into the IDS. For test IDS instances only!
      *
@@ -282,29 +401,114 @@ public class IdsOperations implements AutoCloseable {
 
     /**
      * Get next entry in the IDS, if it exists.
-     *
+     * <p>
+     * Rows are read ahead in batches and served from memory while the caller continues from the unid of the
+     * previously returned record. If the caller asks for anything else (e.g. progress was reset), the prefetched
+     * rows are discarded and a new batch is read from lastProcessedId.
      * @param lastProcessedId the last one we have successfully processed
      * @return the first message that comes after lastProcessedId, or null if there isn't one
-     * @throws InternalError if something has gone wrong with batching of HL7 messages
      */
     public IdsMaster getNextHL7IdsRecord(int lastProcessedId) {
-        // consider changing to "get next N messages" for more efficient database
-        // performance
-        // when doing large "catch-up" operations
-        // (handle the batching in the caller)
+        if (prefetchedAfterUnid == null || prefetchedAfterUnid != lastProcessedId || prefetchedRecords.isEmpty()) {
+            prefetchedRecords.clear();
+            prefetchedRecords.addAll(getNextHL7IdsRecords(lastProcessedId, batchSize));
+            logger.debug("Prefetched {} IDS rows after unid {}", prefetchedRecords.size(), lastProcessedId);
+        }
+        IdsMaster nextRecord = prefetchedRecords.pollFirst();
+        prefetchedAfterUnid = nextRecord == null ? null : nextRecord.getUnid();
+        return nextRecord;
+    }
+
+    /**
+     * Put a record back, so that it is returned again by the next call to {@link #getNextHL7IdsRecord}.
+     * @param idsMsg          record that was returned by the last call
+     * @param lastProcessedId the lastProcessedId that it was returned for
+     */
+    private void unreadHL7IdsRecord(IdsMaster idsMsg, int lastProcessedId) {
+        prefetchedRecords.addFirst(idsMsg);
+        prefetchedAfterUnid = lastProcessedId;
+    }
+
+    /**
+     * Get the next batch of entries in the IDS, using a server-side cursor so that large batches are streamed
+     * from the database in windows of the configured fetch size.
+     * <p>
+     * If the IDS is sharded, rows for other shards are returned without their HL7 message, so that progress can still
+     * advance through every unid but only this shard's messages are read from the database.
+     * @param lastProcessedId the last one we have successfully processed
+     * @param maxResults      maximum number of rows to return
+     * @return up to maxResults messages that come after lastProcessedId, in unid order
+     */
+    List<IdsMaster> getNextHL7IdsRecords(int lastProcessedId, int maxResults) {
+        if (!shard.isWholeIds()) {
+            return getNextShardRecords(lastProcessedId, maxResults);
+        }
         try (Session idsSession = idsFactory.openSession()) {
             idsSession.setDefaultReadOnly(true);
-            Query<IdsMaster> qnext =
-                    idsSession.createQuery("SELECT i FROM IdsMaster i where i.unid > :lastProcessedId order by i.unid", IdsMaster.class);
-            qnext.setParameter("lastProcessedId", lastProcessedId);
-            qnext.setMaxResults(1);
-            List<IdsMaster> nextMsgOrEmpty = qnext.list();
-            if (nextMsgOrEmpty.isEmpty()) {
-                return null;
-            } else if (nextMsgOrEmpty.size() == 1) {
-                return nextMsgOrEmpty.get(0);
-            } else {
-                throw new InternalError();
+            // postgres will only use a cursor for the fetch size if we're within a transaction
+            Transaction tx = idsSession.beginTransaction();
+            try {
+                Query<IdsMaster> qnext =
+                        idsSession.createQuery("SELECT i FROM IdsMaster i where i.unid > :lastProcessedId order by i.unid", IdsMaster.class);
+                qnext.setParameter("lastProcessedId", lastProcessedId);
+                qnext.setMaxResults(maxResults);
+                qnext.setFetchSize(fetchSize);
+                qnext.setReadOnly(true);
+                return qnext.list();
+            } finally {
+                tx.rollback();
+            }
+        }
+    }
+
+    /**
+     * Get the next batch of entries, reading the full row only for those owned by this shard.
+     * @param lastProcessedId the last one we have successfully processed
+     * @param maxResults      maximum number of rows to return
+     * @return up to maxResults messages that come after lastProcessedId, in unid order
+     */
+    private List<IdsMaster> getNextShardRecords(int lastProcessedId, int maxResults) {
+        try (Session idsSession = idsFactory.openSession()) {
+            idsSession.setDefaultReadOnly(true);
+            Transaction tx = idsSession.beginTransaction();
+            try {
+                List<Object[]> keys = idsSession.createQuery(
+                                "SELECT i.unid, i.hospitalnumber, i.messagedatetime, i.messagetype FROM IdsMaster i "
+                                        + "where i.unid > :lastProcessedId order by i.unid",
+                                Object[].class)
+                        .setParameter("lastProcessedId", lastProcessedId)
+                        .setMaxResults(maxResults)
+                        .setFetchSize(fetchSize)
+                        .list();
+                List<Integer> ownedUnids = new ArrayList<>();
+                for (Object[] key : keys) {
+                    if (shard.owns((String) key[1], (String) key[3])) {
+                        ownedUnids.add((Integer) key[0]);
+                    }
+                }
+                Map<Integer, IdsMaster> ownedRecords = new HashMap<>();
+                if (!ownedUnids.isEmpty()) {
+                    idsSession.createQuery("SELECT i FROM IdsMaster i where i.unid in :unids", IdsMaster.class)
+                            .setParameterList("unids", ownedUnids)
+                            .setFetchSize(fetchSize)
+                            .list()
+                            .forEach(record -> ownedRecords.put(record.getUnid(), record));
+                }
+                List<IdsMaster> records = new ArrayList<>(keys.size());
+                for (Object[] key : keys) {
+                    IdsMaster record = ownedRecords.get((Integer) key[0]);
+                    if (record == null) {
+                        record = new IdsMaster();
+                        record.setUnid((Integer) key[0]);
+                        record.setHospitalnumber((String) key[1]);
+                        record.setMessagedatetime((Instant) key[2]);
+                        record.setMessagetype((String) key[3]);
+                    }
+                    records.add(record);
+                }
+                return records;
+            } finally {
+                tx.rollback();
             }
         }
     }
@@ -312,22 +516,27 @@ public class IdsOperations implements AutoCloseable {
     /**
      * Return the next HL7 message in the IDS. If there are no more, block until
      * there are.
-     *
+     * <p>
+     * The IDS is polled again after the minimum poll interval, which doubles after each empty poll up to the maximum,
+     * so new messages are picked up quickly at the live tail without querying the IDS constantly when it's quiet.
      * @param lastProcessedId the latest unique ID that has already been processed
      * @return the next HL7 message record
      */
     public IdsMaster getNextHL7IdsRecordBlocking(int lastProcessedId) {
-        long secondsSleep = 10;
+        long sleepMillis = minPollMillis;
         IdsMaster idsMsg = null;
         while (true) {
             idsMsg = getNextHL7IdsRecord(lastProcessedId);
             if (idsMsg == null) {
-                logger.debug("No more messages in IDS, retrying in {} seconds", secondsSleep);
+                // don't hold confirmed progress back for long while waiting at the end of the IDS
+                progressCheckpoint.writeIfDue();
+                logger.trace("No more messages in IDS, retrying in {} ms", sleepMillis);
                 try {
-                    Thread.sleep(secondsSleep * 1000);
+                    Thread.sleep(sleepMillis);
                 } catch (InterruptedException ie) {
                     logger.trace("Sleep was interrupted");
                 }
+                sleepMillis = Math.min(sleepMillis * 2, maxPollMillis);
             } else {
                 break;
             }
@@ -335,69 +544,179 @@ public class IdsOperations implements AutoCloseable {
         return idsMsg;
     }
 
+    /**
+     * @param idsMsg IDS row
+     * @return true if every shard must wait at the row for the others, see {@link IdsShard}
+     */
+    boolean isBarrier(IdsMaster idsMsg) {
+        return shard.isBarrier(idsMsg.getMessagetype());
+    }
+
+    /**
+     * Save the progress up to the row before a barrier, then wait until the other shards allow this shard to process it.
+     * Every row before the barrier must have been confirmed, and the saved progress must not be left in an uncommitted transaction.
+     * @param barrier      IDS row that is a barrier
+     * @param previousUnid unid of the row before the barrier
+     * @throws InterruptedException if interrupted while waiting for other shards
+     */
+    void awaitBarrier(IdsMaster barrier, int previousUnid) throws InterruptedException {
+        progressCheckpoint.write();
+        shardProgress.awaitBarrier(barrier.getUnid(), previousUnid);
+    }
+
+    /**
+     * @param lastProcessedId the latest unique ID that has already been processed
+     * @return true if a pre-configured last message has been set and lastProcessedId has reached it
+     */
+    boolean hasReachedEnd(int lastProcessedId) {
+        return this.endUnid != null && lastProcessedId >= this.endUnid;
+    }
+
     /**
      * Wrapper for the entire transaction that performs: - read latest processed ID
-     * from EMAP star (ETL metadata) - process the message and write to EMAP star -
-     * write the latest processed ID to reflect the above message. Blocks until
+     * from EMAP star (ETL metadata), or memory once it has been read - process the message and write to EMAP star -
+     * confirm the latest processed ID to reflect the above message, which is saved every so often. Blocks until
      * there are new messages.
+     * <p>
+     * When the IDS is sharded, the progress before a barrier row is saved and committed by one call,
+     * and the next call waits for the other shards before processing the row.
      *
      * @param publisher the local AMQP handling class
      * @param parser    the HAPI parser to be used
+     * @param publishDelayMetrics records the delay of messages that have been published
      * @throws AmqpException       if rabbitmq write fails
      * @throws ReachedEndException if we have reached the pre-configured last message
+     * @throws IllegalStateException if interrupted while waiting for the IDS progress of other shards
      */
     @Transactional
-    public void parseAndSendNextHl7(Publisher publisher, PipeParser parser) throws AmqpException, ReachedEndException {
-        IdsProgress progress = getLatestProcessedId();
-        int lastProcessedId = progress.getLastProcessedIdsUnid();
+    public void parseAndSendNextHl7(Publisher publisher, PipeParser parser, IdsPublishDelayMetrics publishDelayMetrics)
+            throws AmqpException, ReachedEndException {
+        int lastProcessedId = getLastConfirmedUnid();
         logger.debug("parseAndSendNextHl7, lastProcessedId = " + lastProcessedId);
-        if (this.endUnid != null && lastProcessedId >= this.endUnid) {
+        if (hasReachedEnd(lastProcessedId)) {
             logger.info("lastProcessedId = {} >= endUnid = {}, exiting", lastProcessedId, this.endUnid);
             throw new ReachedEndException();
         }
         IdsMaster idsMsg = getNextHL7IdsRecordBlocking(lastProcessedId);
+        boolean barrier = isBarrier(idsMsg);
+        if (barrier && (progressSavedBeforeBarrierUnid == null || progressSavedBeforeBarrierUnid != idsMsg.getUnid())) {
+            // other shards only see the saved progress once this transaction has committed
+            progressCheckpoint.write();
+            progressSavedBeforeBarrierUnid = idsMsg.getUnid();
+            unreadHL7IdsRecord(idsMsg, lastProcessedId);
+            return;
+        }
+        if (barrier) {
+            try {
+                shardProgress.awaitBarrier(idsMsg.getUnid(), lastProcessedId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(String.format("Interrupted while waiting for other shards at unid %d", idsMsg.getUnid()), e);
+            }
+        }
 
         Instant messageDatetime = idsMsg.getMessagedatetime();
         try {
-            String hl7msg = idsMsg.getHl7message();
-            // HL7 is supposed to use \r for line endings, but
-            // the IDS uses \n
-            hl7msg = hl7msg.replace("\n", "\r");
-            Message msgFromIds;
-            try {
-                msgFromIds = parser.parse(hl7msg);
-            } catch (HL7Exception hl7e) {
-                logger.error("[{}] HL7 parsing error", idsMsg.getUnid(), hl7e);
-                return;
+            List<? extends EmapOperationMessage> messagesFromHl7Message = buildInterchangeMessages(idsMsg, parser);
+            int subMessageCount = 0;
+            for (EmapOperationMessage msg : messagesFromHl7Message) {
+                subMessageCount++;
+                logger.trace("[{}] sending message ({}/{}) to RabbitMQ",
+                        idsMsg.getUnid(), subMessageCount, messagesFromHl7Message.size());
+                Semaphore semaphore = new Semaphore(0);
+                publisher.submit(msg, msg.getSourceMessageId(), String.format("%s_1", msg.getSourceMessageId()), () -> {
+                    logger.trace("callback for {}", msg.getSourceMessageId());
+                    semaphore.release();
+                });
+                semaphore.acquire();
             }
-
-            // One HL7 message can give rise to multiple interchange messages (lab orders),
-            // but failure is only expressed on a per-HL7 message basis.
-            try {
-                List<? extends EmapOperationMessage> messagesFromHl7Message = messageFromHl7Message(msgFromIds, idsMsg.getUnid());
-                int subMessageCount = 0;
-                for (EmapOperationMessage msg : messagesFromHl7Message) {
-                    subMessageCount++;
-                    logger.trace("[{}] sending message ({}/{}) to RabbitMQ",
-                            idsMsg.getUnid(), subMessageCount, messagesFromHl7Message.size());
-                    Semaphore semaphore = new Semaphore(0);
-                    publisher.submit(msg, msg.getSourceMessageId(), String.format("%s_1", msg.getSourceMessageId()), () -> {
-                        logger.trace("callback for {}", msg.getSourceMessageId());
-                        semaphore.release();
-                    });
-                    semaphore.acquire();
-                }
-            } catch (Hl7MessageIgnoredException ignoredException) {
-                logger.warn("Skipping unid {} (class {}) {}", idsMsg.getUnid(), msgFromIds.getClass(), ignoredException.getMessage());
-            } catch (HL7Exception | Hl7InconsistencyException | InterruptedException e) {
-                logger.error("Skipping unid {} (class {})", idsMsg.getUnid(), msgFromIds.getClass(), e);
+            if (!messagesFromHl7Message.isEmpty()) {
+                publishDelayMetrics.recordPublished(idsMsg);
             }
+        } catch (InterruptedException e) {
+            logger.error("Skipping unid {}", idsMsg.getUnid(), e);
         } finally {
-            Instant processingEnd = Instant.now();
-            progress.updateAndSave(idsMsg.getUnid(), messageDatetime, processingEnd, idsProgressRepository);
+            confirmProgress(idsMsg.getUnid(), messageDatetime);
+            if (barrier) {
+                // the other shards are waiting for the coordinator's progress to reach the barrier
+                progressCheckpoint.write();
+            }
+        }
+    }
+
+    /**
+     * Parse the HL7 from an IDS row and build all interchange messages from it.
+     * <p>
+     * One HL7 message can give rise to multiple interchange messages (lab orders),
+     * but failure is only expressed on a per-HL7 message basis, so any parsing or building error is logged
+     * and no messages are returned.
+     * @param idsMsg the IDS row
+     * @param parser the HAPI parser to be used, must not be shared with other threads at the same time
+     * @return interchange messages built from the HL7 message, empty if it was skipped
+     */
+    List<? extends EmapOperationMessage> buildInterchangeMessages(IdsMaster idsMsg, PipeParser parser) {
+        Message msgFromIds = parseHl7(idsMsg, parser);
+        return msgFromIds == null ? List.of() : buildInterchangeMessagesFromParsed(idsMsg, msgFromIds);
+    }
+
+    /**
+     * Parse the HL7 from an IDS row, unless it can be skipped without parsing.
+     * @param idsMsg the IDS row
+     * @param parser the HAPI parser to be used, must not be shared with other threads at the same time
+     * @return the parsed HL7 message, or null if it was skipped or couldn't be parsed
+     */
+    Message parseHl7(IdsMaster idsMsg, PipeParser parser) {
+        if (!shard.owns(idsMsg.getHospitalnumber(), idsMsg.getMessagetype())) {
+            logger.trace("Skipping unid {} as it belongs to another shard", idsMsg.getUnid());
+            return null;
+        }
+        String rawHl7 = idsMsg.getHl7message();
+        // the pre-filter reads the message as stored, so skipped messages are never copied
+        if (preFilterEnabled) {
+            Optional<String> skipReason = Hl7PreFilter.skipReason(rawHl7);
+            if (skipReason.isPresent()) {
+                logger.warn("Skipping unid {} before parsing: {}", idsMsg.getUnid(), skipReason.get());
+                return null;
+            }
+        }
+        // HL7 is supposed to use \r for line endings, but the IDS uses \n, and HAPI only splits segments on \r.
+        // Replacing a char returns the same string when there's nothing to replace
+        String hl7msg = rawHl7.replace('\n', '\r');
+        try {
+            return parser.parse(hl7msg);
+        } catch (HL7Exception hl7e) {
+            logger.error("[{}] HL7 parsing error", idsMsg.getUnid(), hl7e);
+            return null;
         }
     }
 
+    /**
+     * Build all interchange messages from a parsed HL7 message, logging any error.
+     * @param idsMsg     the IDS row
+     * @param msgFromIds the parsed HL7 message
+     * @return interchange messages built from the HL7 message, empty if it was skipped
+     */
+    List<? extends EmapOperationMessage> buildInterchangeMessagesFromParsed(IdsMaster idsMsg, Message msgFromIds) {
+        try {
+            return messageFromHl7Message(msgFromIds, idsMsg.getUnid());
+        } catch (Hl7MessageIgnoredException ignoredException) {
+            logger.warn("Skipping unid {} (class {}) {}", idsMsg.getUnid(), msgFromIds.getClass(), ignoredException.getMessage());
+        } catch (HL7Exception | Hl7InconsistencyException e) {
+            logger.error("Skipping unid {} (class {})", idsMsg.getUnid(), msgFromIds.getClass(), e);
+        }
+        return List.of();
+    }
+
+    /**
+     * Patient infections are only built if they are newer than those from earlier messages,
+     * so these messages must be built in unid order. All other messages can be built in any order.
+     * @param msgFromIds the parsed HL7 message
+     * @return true if the message must be built in unid order
+     */
+    static boolean mustBuildInOrder(Message msgFromIds) {
+        return msgFromIds instanceof ADT_A05;
+    }
+
     /**
      * Using the type+trigger event of the HL7 message, create the correct type of
      * interchange message. One HL7 message can give rise to multiple interchange messages.
@@ -14,19 +14,35 @@ import java.time.Instant;
 @Entity
 @Table(name = "etl_ids_progress")
 public class IdsProgress {
+    /**
+     * Boxed, so that saving a row that was read outside of the current transaction updates it rather than inserting it again,
+     * as Spring Data treats an entity with a primitive id of 0 as new.
+     */
     @Id
-    private int id;
+    private Integer id;
     private int lastProcessedIdsUnid;
     @Column(columnDefinition = "timestamp with time zone")
     private Instant lastProcessedMessageDatetime;
     @Column(columnDefinition = "timestamp with time zone")
     private Instant lastProcessingDatetime;
+    /**
+     * Number of shards the IDS was read by when the row was saved, null for rows saved before the IDS could be sharded.
+     */
+    private Integer shardCount;
 
     /**
-     * Initialise. There is only ever one row, so it's always the same.
+     * Initialise. There is only one row unless the IDS is read by multiple shards, so it's always the same.
      */
     public IdsProgress() {
-        id = 0;
+        this(0);
+    }
+
+    /**
+     * Initialise the progress for a shard of the IDS.
+     * @param id row id, the index of the shard
+     */
+    public IdsProgress(int id) {
+        this.id = id;
         setLastProcessedIdsUnid(-1);
     }
 
@@ -79,6 +95,20 @@ public class IdsProgress {
         this.lastProcessingDatetime = lastProcessingDatetime;
     }
 
+    /**
+     * @return number of shards the IDS was read by, null if it was saved before the IDS could be sharded
+     */
+    public Integer getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param shardCount number of shards the IDS is read by
+     */
+    public void setShardCount(Integer shardCount) {
+        this.shardCount = shardCount;
+    }
+
     /**
      * Record that we have processed all messages up to the specified message.
      * @param currentId             the unique ID for the latest IDS message processed
@@ -0,0 +1,126 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the progress of the reader in memory, only writing it to the progress table every so often,
+ * so that the star database isn't updated for every IDS message.
+ * <p>
+ * Progress is written once a number of messages have been confirmed since it was last written, once an interval has passed
+ * since it was last written, and when the reader shuts down.
+ * Only confirmed progress is held, so after a crash at most the messages confirmed since the last write are processed again.
+ */
+class IdsProgressCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(IdsProgressCheckpoint.class);
+
+    private final IdsProgressRepository idsProgressRepository;
+    private final int progressRowId;
+    private final int maxMessages;
+    private final long intervalNanos;
+
+    private boolean known;
+    private int confirmedUnid;
+    private Instant confirmedMessageDatetime;
+    private Instant confirmedProcessingDatetime;
+    private int unwrittenMessages;
+    private long lastWriteNanos = System.nanoTime();
+
+    /**
+     * @param idsProgressRepository repository to write progress to
+     * @param progressRowId         id of the progress row for this reader
+     * @param maxMessages           number of confirmed messages after which progress is written
+     * @param intervalMillis        time after which confirmed progress is written
+     */
+    IdsProgressCheckpoint(IdsProgressRepository idsProgressRepository, int progressRowId, int maxMessages, long intervalMillis) {
+        this.idsProgressRepository = idsProgressRepository;
+        this.progressRowId = progressRowId;
+        this.maxMessages = maxMessages;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Replace the progress held in memory with progress that is already in the progress table.
+     * @param progress progress read from or written to the progress table
+     */
+    synchronized void reset(IdsProgress progress) {
+        known = true;
+        confirmedUnid = progress.getLastProcessedIdsUnid();
+        confirmedMessageDatetime = progress.getLastProcessedMessageDatetime();
+        confirmedProcessingDatetime = progress.getLastProcessingDatetime();
+        unwrittenMessages = 0;
+        lastWriteNanos = System.nanoTime();
+    }
+
+    /**
+     * @return true if progress has been read or confirmed since the reader started
+     */
+    synchronized boolean isKnown() {
+        return known;
+    }
+
+    /**
+     * @return the last confirmed unid, which may not have been written yet
+     */
+    synchronized int getConfirmedUnid() {
+        return confirmedUnid;
+    }
+
+    /**
+     * @return copy of the confirmed progress, which may not have been written yet, or null if it isn't known
+     */
+    synchronized IdsProgress getConfirmedProgress() {
+        if (!known) {
+            return null;
+        }
+        IdsProgress progress = new IdsProgress(progressRowId);
+        progress.setLastProcessedIdsUnid(confirmedUnid);
+        progress.setLastProcessedMessageDatetime(confirmedMessageDatetime);
+        progress.setLastProcessingDatetime(confirmedProcessingDatetime);
+        return progress;
+    }
+
+    /**
+     * Record that all IDS messages up to and including a unid have been processed, writing progress if it is due.
+     * @param unid            the unique ID for the latest IDS message processed
+     * @param messageDatetime the timestamp of this message
+     */
+    synchronized void confirm(int unid, Instant messageDatetime) {
+        known = true;
+        confirmedUnid = unid;
+        confirmedMessageDatetime = messageDatetime;
+        confirmedProcessingDatetime = Instant.now();
+        unwrittenMessages++;
+        if (unwrittenMessages >= maxMessages) {
+            write();
+        } else {
+            writeIfDue();
+        }
+    }
+
+    /**
+     * Write the confirmed progress if the interval has passed since it was last written.
+     */
+    synchronized void writeIfDue() {
+        if (unwrittenMessages > 0 && System.nanoTime() - lastWriteNanos >= intervalNanos) {
+            write();
+        }
+    }
+
+    /**
+     * Write the confirmed progress if any messages have been confirmed since it was last written.
+     */
+    synchronized void write() {
+        if (unwrittenMessages == 0) {
+            return;
+        }
+        IdsProgress progress = idsProgressRepository.findById(progressRowId).orElseGet(() -> new IdsProgress(progressRowId));
+        progress.updateAndSave(confirmedUnid, confirmedMessageDatetime, confirmedProcessingDatetime, idsProgressRepository);
+        logger.debug("Wrote progress for {} messages, up to unid {}", unwrittenMessages, confirmedUnid);
+        unwrittenMessages = 0;
+        lastWriteNanos = System.nanoTime();
+    }
+}
@@ -1,7 +1,13 @@
 package uk.ac.ucl.rits.inform.datasources.ids;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Track the progress of parsing of messages from the IDS.
@@ -13,4 +19,42 @@ public interface IdsProgressRepository extends CrudRepository<IdsProgress, Integ
      */
     @Query("select p from IdsProgress p where p.id=0")
     IdsProgress findOnlyRow();
+
+    /**
+     * Read the progress of other shards from the database, rather than any row already loaded by this reader.
+     * @param ids ids of the progress rows
+     * @return last processed unid of each row that exists
+     */
+    @Query("select p.lastProcessedIdsUnid from IdsProgress p where p.id in :ids")
+    List<Integer> findLastProcessedUnids(Collection<Integer> ids);
+
+    /**
+     * Rows saved before the IDS could be sharded were saved by a single reader.
+     * @param shardCount number of shards the IDS is read by
+     * @return number of rows that were saved with a different number of shards
+     */
+    @Query("select count(p) from IdsProgress p where coalesce(p.shardCount, 1) <> :shardCount")
+    long countSavedWithOtherShardCount(int shardCount);
+
+    /**
+     * Move the progress of every shard to the same unid.
+     * @param shardCount      number of shards the IDS is read by, rows for shards outside this are left as they are
+     * @param unid            the last processed unid for every shard
+     * @param messageDatetime the timestamp of the message with that unid
+     * @return number of rows updated
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update IdsProgress p set p.lastProcessedIdsUnid = :unid, p.lastProcessedMessageDatetime = :messageDatetime, "
+            + "p.shardCount = :shardCount where p.id < :shardCount")
+    int restartShardsFrom(int shardCount, int unid, Instant messageDatetime);
+
+    /**
+     * @param shardCount number of shards the IDS is read by
+     * @return number of rows deleted
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("delete from IdsProgress p where p.id >= :shardCount")
+    int deleteOutsideShardCount(int shardCount);
 }
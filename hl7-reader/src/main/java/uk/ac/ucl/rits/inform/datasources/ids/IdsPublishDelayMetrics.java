@@ -0,0 +1,38 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Timer for the delay between a message being persisted in the IDS and its interchange messages being published,
+ * exposed through the actuator metrics endpoint.
+ */
+@Component
+public class IdsPublishDelayMetrics {
+    private final Timer publishDelayTimer;
+
+    /**
+     * @param meterRegistry registry to add the timer to
+     */
+    public IdsPublishDelayMetrics(MeterRegistry meterRegistry) {
+        publishDelayTimer = Timer.builder("emap.ids.publish.delay")
+                .description("Time from a message being persisted in the IDS to its interchange messages being published")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record the time from an IDS row being persisted to its interchange messages being published.
+     * @param idsMsg IDS row whose messages have all been published
+     */
+    void recordPublished(IdsMaster idsMsg) {
+        if (idsMsg.getPersistdatetime() != null) {
+            publishDelayTimer.record(Duration.between(idsMsg.getPersistdatetime(), Instant.now()));
+        }
+    }
+}
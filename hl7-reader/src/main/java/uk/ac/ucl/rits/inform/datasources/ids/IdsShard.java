@@ -0,0 +1,127 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The partition of the IDS that this reader is responsible for, when multiple readers process the IDS in parallel.
+ * <p>
+ * IDS rows are partitioned by a hash of their hospital number, so every message for an MRN is read by the same reader
+ * and is published in unid order. Messages for different MRNs are published by different readers in any order.
+ * Messages that change data for a second MRN (merges, identifier changes, moving visits and swapping locations) would then
+ * be processed out of order with the other MRN's messages, so they are all published by the first shard, the coordinator,
+ * and act as a barrier: the coordinator only publishes one once every other shard has saved progress up to the row before it,
+ * and the other shards only continue past it once the coordinator has saved progress for it.
+ * Each reader keeps its own progress row, with the shard index as its id, so a single reader uses the same row as before.
+ */
+final class IdsShard {
+    /**
+     * Shard that publishes every message affecting more than one MRN.
+     */
+    static final int COORDINATOR_INDEX = 0;
+    /**
+     * Trigger events of ADT messages that can change data for an MRN other than the one in the IDS row.
+     */
+    private static final Set<String> MULTI_MRN_TRIGGER_EVENTS = Set.of("A17", "A40", "A45", "A47");
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param index index of this shard, from 0
+     * @param count total number of shards
+     * @throws IllegalArgumentException if the index isn't in the range of shards
+     */
+    IdsShard(int index, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("ids.cfg.shard.count must be at least 1");
+        }
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException(String.format("ids.cfg.shard.index must be from 0 to %d", count - 1));
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @return true if this reader processes the whole IDS
+     */
+    boolean isWholeIds() {
+        return count == 1;
+    }
+
+    /**
+     * @return true if this shard publishes the messages that affect more than one MRN
+     */
+    boolean isCoordinator() {
+        return index == COORDINATOR_INDEX;
+    }
+
+    /**
+     * @return total number of shards
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return id of the progress row for this shard
+     */
+    int getProgressRowId() {
+        return index;
+    }
+
+    /**
+     * @return ids of the progress rows for every other shard
+     */
+    List<Integer> getOtherProgressRowIds() {
+        return IntStream.range(0, count).filter(i -> i != index).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Rows without a hospital number and rows that affect more than one MRN are all processed by the coordinator.
+     * <p>
+     * String.hashCode is defined by the language specification, so every reader assigns the same shard to an MRN.
+     * @param hospitalNumber hospital number from the IDS row
+     * @param messageType    message type from the IDS row
+     * @return true if the row is processed by this shard
+     */
+    boolean owns(String hospitalNumber, String messageType) {
+        if (isWholeIds()) {
+            return true;
+        }
+        int shardForRow = hospitalNumber == null || isMultiMrn(messageType)
+                ? COORDINATOR_INDEX
+                : Math.floorMod(hospitalNumber.strip().hashCode(), count);
+        return shardForRow == index;
+    }
+
+    /**
+     * Every shard must wait at a barrier row, so that it is published after all earlier rows for both of its MRNs
+     * and before all later ones.
+     * @param messageType message type from the IDS row
+     * @return true if the row is a barrier between the shards
+     */
+    boolean isBarrier(String messageType) {
+        return !isWholeIds() && isMultiMrn(messageType);
+    }
+
+    /**
+     * @param messageType message type from the IDS row, the trigger event with or without the message code (e.g. ADT^A40)
+     * @return true if a message of this type can change data for an MRN other than the one in the IDS row
+     */
+    static boolean isMultiMrn(String messageType) {
+        if (messageType == null) {
+            return false;
+        }
+        String triggerEvent = messageType.substring(messageType.lastIndexOf('^') + 1).strip();
+        return MULTI_MRN_TRIGGER_EVENTS.contains(triggerEvent);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("shard %d of %d", index, count);
+    }
+}
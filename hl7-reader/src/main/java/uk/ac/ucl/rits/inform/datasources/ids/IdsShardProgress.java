@@ -0,0 +1,119 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Coordinates the progress rows of readers that process shards of the IDS in parallel, see {@link IdsShard}.
+ * <p>
+ * The shard of an MRN depends on the number of shards, so progress saved with a different number of shards can't be
+ * continued from. The coordinator moves every shard back to the lowest saved progress, so no message is skipped and at most
+ * the messages published since then are published again, and the other shards wait until it has done so.
+ * The progress of other shards is polled from the database, backing off in the same way as polling the IDS.
+ */
+class IdsShardProgress {
+    private static final Logger logger = LoggerFactory.getLogger(IdsShardProgress.class);
+
+    private final IdsProgressRepository idsProgressRepository;
+    private final IdsShard shard;
+    private final long minPollMillis;
+    private final long maxPollMillis;
+
+    /**
+     * @param idsProgressRepository repository holding the progress of every shard
+     * @param shard                 shard of this reader
+     * @param minPollMillis         initial interval between polls of the progress of other shards
+     * @param maxPollMillis         maximum interval between polls of the progress of other shards
+     */
+    IdsShardProgress(IdsProgressRepository idsProgressRepository, IdsShard shard, long minPollMillis, long maxPollMillis) {
+        this.idsProgressRepository = idsProgressRepository;
+        this.shard = shard;
+        this.minPollMillis = minPollMillis;
+        this.maxPollMillis = maxPollMillis;
+    }
+
+    /**
+     * Make sure that every progress row was saved with the current number of shards, before this reader continues from its own.
+     * Readers for the previous number of shards must all have been stopped.
+     * @throws InterruptedException if interrupted while waiting for the coordinator
+     */
+    void matchShardCount() throws InterruptedException {
+        if (isSavedWithShardCount()) {
+            return;
+        }
+        if (!shard.isCoordinator()) {
+            logger.info("IDS progress was saved with a different number of shards, waiting for shard {} to restart all {} shards",
+                    IdsShard.COORDINATOR_INDEX, shard.getCount());
+            awaitUntil(this::isSavedWithShardCount);
+            return;
+        }
+        List<IdsProgress> saved = StreamSupport.stream(idsProgressRepository.findAll().spliterator(), false)
+                .collect(Collectors.toList());
+        IdsProgress restartFrom = saved.stream().min(Comparator.comparingInt(IdsProgress::getLastProcessedIdsUnid)).orElseThrow();
+        Set<Integer> savedRowIds = saved.stream().map(IdsProgress::getId).collect(Collectors.toSet());
+        logger.warn("IDS progress was saved with a different number of shards, restarting all {} shards after unid {}",
+                shard.getCount(), restartFrom.getLastProcessedIdsUnid());
+        // each step can be repeated with the same result, so a restart part way through finishes the job
+        IntStream.range(0, shard.getCount()).filter(rowId -> !savedRowIds.contains(rowId)).forEach(rowId -> {
+            IdsProgress progress = new IdsProgress(rowId);
+            progress.setLastProcessedIdsUnid(restartFrom.getLastProcessedIdsUnid());
+            progress.setLastProcessedMessageDatetime(restartFrom.getLastProcessedMessageDatetime());
+            progress.setLastProcessingDatetime(Instant.now());
+            idsProgressRepository.save(progress);
+        });
+        idsProgressRepository.restartShardsFrom(
+                shard.getCount(), restartFrom.getLastProcessedIdsUnid(), restartFrom.getLastProcessedMessageDatetime());
+        idsProgressRepository.deleteOutsideShardCount(shard.getCount());
+    }
+
+    private boolean isSavedWithShardCount() {
+        return idsProgressRepository.countSavedWithOtherShardCount(shard.getCount()) == 0;
+    }
+
+    /**
+     * Wait until a barrier row can be processed by this shard. This shard's progress up to the row before it must have been saved.
+     * <p>
+     * The coordinator waits for every other shard to have saved progress up to the row before the barrier,
+     * the other shards wait for the coordinator to have saved progress for the barrier.
+     * @param barrierUnid  unid of the barrier row
+     * @param previousUnid unid of the row before the barrier
+     * @throws InterruptedException if interrupted while waiting for other shards
+     */
+    void awaitBarrier(int barrierUnid, int previousUnid) throws InterruptedException {
+        List<Integer> awaitedRowIds = shard.isCoordinator() ? shard.getOtherProgressRowIds() : List.of(IdsShard.COORDINATOR_INDEX);
+        int awaitedUnid = shard.isCoordinator() ? previousUnid : barrierUnid;
+        if (hasReached(awaitedRowIds, awaitedUnid)) {
+            return;
+        }
+        logger.debug("Waiting at unid {} for progress of shards {} to reach unid {}", barrierUnid, awaitedRowIds, awaitedUnid);
+        awaitUntil(() -> hasReached(awaitedRowIds, awaitedUnid));
+    }
+
+    /**
+     * Shards without a progress row haven't reached any unid.
+     * @param rowIds progress rows to check
+     * @param unid   unid that every row must have reached
+     * @return true if every row has processed the unid
+     */
+    private boolean hasReached(List<Integer> rowIds, int unid) {
+        List<Integer> lastProcessedUnids = idsProgressRepository.findLastProcessedUnids(rowIds);
+        return lastProcessedUnids.size() == rowIds.size() && lastProcessedUnids.stream().allMatch(lastProcessed -> lastProcessed >= unid);
+    }
+
+    private void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long sleepMillis = minPollMillis;
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(sleepMillis);
+            sleepMillis = Math.min(sleepMillis * 2, maxPollMillis);
+        }
+    }
+}
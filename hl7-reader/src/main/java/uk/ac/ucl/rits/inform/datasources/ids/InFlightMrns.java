@@ -0,0 +1,59 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * MRNs with an interchange message that has been published to RabbitMQ but not yet confirmed.
+ * <p>
+ * The {@link uk.ac.ucl.rits.inform.interchange.messaging.Publisher} resends a nacked message after a delay, by which time
+ * messages published after it may have been confirmed. So a message is only published once the previous message for its MRN
+ * has been confirmed, while messages for other MRNs can still be in flight.
+ * Messages that can affect a second MRN, or whose MRN isn't known, are exclusive: they wait for every message in flight
+ * to be confirmed, and no other message is published until they have been confirmed.
+ */
+class InFlightMrns {
+    private final Set<String> mrns = new HashSet<>();
+    private int inFlightCount;
+    private boolean exclusiveInFlight;
+
+    /**
+     * Block until a message can be published, then mark it as in flight.
+     * @param mrn       MRN of the message, ignored if exclusive
+     * @param exclusive true if the message must not be in flight with any other message
+     * @throws InterruptedException if interrupted while waiting for earlier messages to be confirmed
+     */
+    synchronized void acquire(String mrn, boolean exclusive) throws InterruptedException {
+        while (exclusiveInFlight || (exclusive ? inFlightCount > 0 : mrns.contains(mrn))) {
+            wait();
+        }
+        inFlightCount++;
+        if (exclusive) {
+            exclusiveInFlight = true;
+        } else {
+            mrns.add(mrn);
+        }
+    }
+
+    /**
+     * Mark a message as confirmed, allowing later messages for its MRN to be published.
+     * @param mrn       MRN of the message, ignored if exclusive
+     * @param exclusive true if the message was acquired as exclusive
+     */
+    synchronized void release(String mrn, boolean exclusive) {
+        inFlightCount--;
+        if (exclusive) {
+            exclusiveInFlight = false;
+        } else {
+            mrns.remove(mrn);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return number of messages that are in flight
+     */
+    synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+}
@@ -0,0 +1,67 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
+import uk.ac.ucl.rits.inform.interchange.blob.FileSystemBlobStore;
+import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
+import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Moves large binary lab result values, such as pathology reports, out of messages and into the blob store shared with core.
+ * <p>
+ * The messages then carry a reference to the value, so the size of the message doesn't grow with the size of the report.
+ * Disabled unless a blob store path is set, in which case core must be able to read the same directory.
+ */
+@Component
+public class LabResultBlobWriter {
+    private static final Logger logger = LoggerFactory.getLogger(LabResultBlobWriter.class);
+    private final FileSystemBlobStore blobStore;
+    private final int minBytes;
+
+    /**
+     * @param blobStorePath directory to write values to, empty to keep all values in the message
+     * @param minBytes      values smaller than this are kept in the message
+     */
+    public LabResultBlobWriter(
+            @Value("${ids.cfg.blob-store.path:}") String blobStorePath, @Value("${ids.cfg.blob-store.min-bytes:16384}") int minBytes) {
+        this.blobStore = blobStorePath.isEmpty() ? null : new FileSystemBlobStore(Path.of(blobStorePath));
+        this.minBytes = minBytes;
+    }
+
+    /**
+     * Write large binary values from lab results to the blob store, replacing them with a reference.
+     * @param labOrders lab orders built from an HL7 message
+     * @return the same lab orders
+     * @throws UncheckedIOException if a value can't be written, so the HL7 message isn't marked as processed
+     */
+    public Collection<LabOrderMsg> writeLargeValues(Collection<LabOrderMsg> labOrders) {
+        if (blobStore != null) {
+            labOrders.forEach(order -> order.getLabResultMsgs().forEach(this::writeIfLarge));
+        }
+        return labOrders;
+    }
+
+    private void writeIfLarge(LabResultMsg result) {
+        InterchangeValue<byte[]> byteValue = result.getByteValue();
+        if (!byteValue.isSave() || byteValue.get().length < minBytes) {
+            return;
+        }
+        try {
+            BlobReference reference = blobStore.put(byteValue.get());
+            logger.debug("Wrote lab result value to blob store as {}", reference);
+            result.setByteValueReference(new InterchangeValue<>(reference));
+            result.setByteValue(InterchangeValue.unknown());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write lab result value to the blob store", e);
+        }
+    }
+}
@@ -30,6 +30,7 @@ public class OrderAndResultService {
     private final FlowsheetFactory flowsheetFactory;
     private final ConsultFactory consultFactory;
     private final AdvanceDecisionFactory advanceDecisionFactory;
+    private final LabResultBlobWriter labResultBlobWriter;
     private static final Set<String> IMG_RESULT_APPS = Set.of("IMG_RESULT", "ELR_RESULT", "IMG_ADDENDUM", "IMG_PROC_CHANGE_RESULT");
 
     /**
@@ -37,12 +38,14 @@ public class OrderAndResultService {
      * @param flowsheetFactory       Flowsheet factory for respective messages.
      * @param consultFactory         Consult request factory for respective messages.
      * @param advanceDecisionFactory Advanced decision factory for handling respective messages.
+     * @param labResultBlobWriter    Moves large lab result values to the blob store.
      */
     public OrderAndResultService(FlowsheetFactory flowsheetFactory, ConsultFactory consultFactory,
-                                 AdvanceDecisionFactory advanceDecisionFactory) {
+                                 AdvanceDecisionFactory advanceDecisionFactory, LabResultBlobWriter labResultBlobWriter) {
         this.flowsheetFactory = flowsheetFactory;
         this.consultFactory = consultFactory;
         this.advanceDecisionFactory = advanceDecisionFactory;
+        this.labResultBlobWriter = labResultBlobWriter;
     }
 
     /**
@@ -101,9 +104,9 @@ public class OrderAndResultService {
     /**
      * Build messages from hl7 message.
      * <p>
-     * Vitals ORU R01 -> Flowsheets
+     * Vitals ORU R01 -> Flowsheets, or a single FlowsheetBatch
      * blood product ORU R01 -> BloodProducts
-     * all other ORU R01 -> LabOrder with Results
+     * all other ORU R01 -> LabOrder with Results, large binary values are moved to the blob store if it's enabled
      * @param sourceId unique Id from the IDS
      * @param msg      hl7 message
      * @return LabOrder interchange messages
@@ -123,10 +126,10 @@ public class OrderAndResultService {
             case BLOOD_PRODUCTS:
                 throw new Hl7MessageIgnoredException("Bank Manager blood products not implemented for now");
             case FLOWSHEET:
-                return flowsheetFactory.getMessages(sourceId, msg);
+                return flowsheetFactory.buildMessages(sourceId, msg);
             default:
                 // Lab Funnel will throw message ignored exception if not a parsed type
-                return LabFunnel.buildMessages(sourceId, msg, codingSystem);
+                return labResultBlobWriter.writeLargeValues(LabFunnel.buildMessages(sourceId, msg, codingSystem));
         }
     }
 
@@ -172,7 +175,22 @@ public class OrderAndResultService {
         String fillerNamespace = obr.getObr3_FillerOrderNumber().getEi2_NamespaceID().getValueOrEmpty();
         String codingSystem = obr.getObr4_UniversalServiceIdentifier().getCwe3_NameOfCodingSystem().getValueOrEmpty();
         String alternativeIdentifier = obr.getObr4_UniversalServiceIdentifier().getCwe4_AlternateIdentifier().getValueOrEmpty();
+        return determineCodingSystem(fillerNamespace, codingSystem, alternativeIdentifier, sendingApplication, sendingFacility);
+    }
 
+    /**
+     * Determine the coding system from the values read from the HL7 message, also used by {@link Hl7PreFilter} on the raw message.
+     * @param fillerNamespace       OBR-3.2 filler order number namespace
+     * @param codingSystem          OBR-4.3 universal service identifier coding system
+     * @param alternativeIdentifier OBR-4.4 universal service identifier alternate identifier
+     * @param sendingApplication    sender application
+     * @param sendingFacility       sending facility
+     * @return order coding system
+     * @throws Hl7MessageIgnoredException if coding system cannot be parsed
+     */
+    static OrderCodingSystem determineCodingSystem(
+            String fillerNamespace, String codingSystem, String alternativeIdentifier, String sendingApplication, String sendingFacility)
+            throws Hl7MessageIgnoredException {
         if ("WinPath".equals(codingSystem)) {
             return OrderCodingSystem.WIN_PATH;
         } else if ("CoPathPlus".equals(fillerNamespace) || "CPEAP".equals(codingSystem)) {
@@ -0,0 +1,302 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.rits.inform.datasources.ids.exceptions.ReachedEndException;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.adt.PreviousIdentifiers;
+import uk.ac.ucl.rits.inform.interchange.adt.SwapLocations;
+import uk.ac.ucl.rits.inform.interchange.messaging.Publisher;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads HL7 messages from the IDS and publishes interchange messages without waiting for each message to be confirmed
+ * by RabbitMQ before starting on the next one.
+ * <p>
+ * HL7 parsing and building of interchange messages runs ahead of publishing on a pool of worker threads, each with
+ * its own HAPI parser. Building of messages that depend on earlier messages is left until they are published.
+ * Parsed messages are submitted to the {@link Publisher} in unid order, so many messages can be in flight at once
+ * (up to the configured rabbitmq.max.intransit). As the publisher resends a nacked message after later messages,
+ * a message is only submitted once the previous message for its MRN has been confirmed, see {@link InFlightMrns}.
+ * IDS progress is only advanced to the highest unid where it and all earlier unids have been confirmed,
+ * so a restart never skips an unconfirmed message. Progress is saved every so often and once the pipeline has been drained.
+ * When the IDS is sharded, the pipeline is drained and progress saved before each barrier row, which is then processed
+ * on its own once the other shards allow it, see {@link IdsShard}.
+ */
+@Component
+public class PipelinedHl7Reader {
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedHl7Reader.class);
+
+    private final IdsOperations idsOperations;
+    private final IdsPublishDelayMetrics publishDelayMetrics;
+    private final boolean enabled;
+    private final int parseAhead;
+    private final int parserThreads;
+
+    /**
+     * @param idsOperations IDS operations
+     * @param publishDelayMetrics records the delay of messages that have been published
+     * @param enabled       whether the pipelined reader should be used instead of processing one message at a time
+     * @param parseAhead    maximum number of IDS rows being parsed or waiting to be published
+     * @param parserThreads number of threads parsing and building messages, 0 for one per available processor
+     * @throws IllegalArgumentException if parseAhead is less than 1 or parserThreads is negative
+     */
+    public PipelinedHl7Reader(
+            IdsOperations idsOperations,
+            IdsPublishDelayMetrics publishDelayMetrics,
+            @Value("${ids.cfg.pipeline.enabled:false}") boolean enabled,
+            @Value("${ids.cfg.pipeline.parse-ahead:100}") int parseAhead,
+            @Value("${ids.cfg.pipeline.parser-threads:0}") int parserThreads) {
+        if (parseAhead < 1) {
+            throw new IllegalArgumentException("ids.cfg.pipeline.parse-ahead must be at least 1");
+        }
+        if (parserThreads < 0) {
+            throw new IllegalArgumentException("ids.cfg.pipeline.parser-threads must not be negative");
+        }
+        this.idsOperations = idsOperations;
+        this.publishDelayMetrics = publishDelayMetrics;
+        this.enabled = enabled;
+        this.parseAhead = parseAhead;
+        this.parserThreads = parserThreads == 0 ? Runtime.getRuntime().availableProcessors() : parserThreads;
+    }
+
+    /**
+     * @return true if the pipelined reader has been enabled in the configuration
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Process IDS messages until the pre-configured last message has been confirmed. Blocks until there are new
+     * messages if the end of the IDS has been reached.
+     * @param publisher the local AMQP handling class
+     * @param parser    the HAPI parser to be used by the first parsing thread, other threads create their own
+     * @throws ReachedEndException  if we have reached the pre-configured last message and all messages were confirmed
+     * @throws InterruptedException if interrupted while waiting for parsing, publishing or new IDS messages
+     */
+    public void run(Publisher publisher, PipeParser parser) throws ReachedEndException, InterruptedException {
+        process(publisher, parser, false);
+        throw new ReachedEndException();
+    }
+
+    /**
+     * Process all messages that are currently in the IDS and wait for them to be confirmed.
+     * @param publisher the local AMQP handling class
+     * @param parser    the HAPI parser to be used by the first parsing thread, other threads create their own
+     * @throws InterruptedException if interrupted while waiting for parsing or publishing
+     */
+    void processUntilDrained(Publisher publisher, PipeParser parser) throws InterruptedException {
+        process(publisher, parser, true);
+    }
+
+    private void process(Publisher publisher, PipeParser parser, boolean stopWhenDrained) throws InterruptedException {
+        int lastReadUnid = idsOperations.getLastConfirmedUnid();
+        UnidWatermark watermark = new UnidWatermark(lastReadUnid);
+        InFlightMrns inFlightMrns = new InFlightMrns();
+        logger.info("Starting pipelined processing after unid {}, parsing up to {} messages ahead on {} threads",
+                lastReadUnid, parseAhead, parserThreads);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService parseExecutor = Executors.newFixedThreadPool(
+                parserThreads, runnable -> new Thread(runnable, String.format("hl7-parser-%d", threadCount.getAndIncrement())));
+        // HAPI parsers aren't thread-safe, so each thread has its own
+        List<HapiContext> threadContexts = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean givenParserUsed = new AtomicBoolean();
+        ThreadLocal<PipeParser> threadParser = ThreadLocal.withInitial(() -> {
+            if (givenParserUsed.compareAndSet(false, true)) {
+                return parser;
+            }
+            HapiContext context = HL7Utils.initializeHapiContext();
+            threadContexts.add(context);
+            return context.getPipeParser();
+        });
+        Deque<Future<ParsedIdsMessage>> pipeline = new ArrayDeque<>(parseAhead);
+        try {
+            while (true) {
+                IdsMaster idsMsg = null;
+                boolean reachedEnd = idsOperations.hasReachedEnd(lastReadUnid);
+                if (!reachedEnd && pipeline.size() < parseAhead) {
+                    // only block on the IDS if there is nothing left to publish
+                    idsMsg = pipeline.isEmpty() && !stopWhenDrained
+                            ? idsOperations.getNextHL7IdsRecordBlocking(lastReadUnid)
+                            : idsOperations.getNextHL7IdsRecord(lastReadUnid);
+                }
+
+                boolean barrier = idsMsg != null && idsOperations.isBarrier(idsMsg);
+                if (barrier) {
+                    // every earlier row must be confirmed and saved before waiting for the other shards
+                    while (!pipeline.isEmpty()) {
+                        publish(getParsed(pipeline.removeFirst()), publisher, watermark, inFlightMrns);
+                    }
+                    watermark.awaitAllConfirmed();
+                    idsOperations.awaitBarrier(idsMsg, lastReadUnid);
+                }
+                if (idsMsg != null) {
+                    lastReadUnid = idsMsg.getUnid();
+                    watermark.register(idsMsg.getUnid(), idsMsg.getMessagedatetime());
+                    IdsMaster toParse = idsMsg;
+                    pipeline.addLast(parseExecutor.submit(() -> parse(toParse, threadParser.get())));
+                    if (barrier) {
+                        publish(getParsed(pipeline.removeFirst()), publisher, watermark, inFlightMrns);
+                        watermark.awaitAllConfirmed();
+                        // the other shards are waiting for the coordinator's progress to reach the barrier
+                        idsOperations.writeConfirmedProgress();
+                    }
+                } else if (!pipeline.isEmpty()) {
+                    publish(getParsed(pipeline.removeFirst()), publisher, watermark, inFlightMrns);
+                } else {
+                    if (reachedEnd) {
+                        logger.info("lastReadUnid = {} has reached the configured end unid", lastReadUnid);
+                    }
+                    break;
+                }
+            }
+            watermark.awaitAllConfirmed();
+        } finally {
+            idsOperations.writeConfirmedProgress();
+            parseExecutor.shutdownNow();
+            closeContexts(parseExecutor, threadContexts);
+        }
+    }
+
+    /**
+     * Parse and build the interchange messages from an IDS row, unless they must be built in unid order.
+     * @param idsMsg IDS row
+     * @param parser HAPI parser for the current thread
+     * @return parsed IDS message
+     */
+    private ParsedIdsMessage parse(IdsMaster idsMsg, PipeParser parser) {
+        Message msgFromIds = idsOperations.parseHl7(idsMsg, parser);
+        if (msgFromIds == null) {
+            return new ParsedIdsMessage(idsMsg, List.of());
+        }
+        if (IdsOperations.mustBuildInOrder(msgFromIds)) {
+            return new ParsedIdsMessage(idsMsg, msgFromIds);
+        }
+        return new ParsedIdsMessage(idsMsg, idsOperations.buildInterchangeMessagesFromParsed(idsMsg, msgFromIds));
+    }
+
+    private void closeContexts(ExecutorService parseExecutor, List<HapiContext> threadContexts) throws InterruptedException {
+        parseExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        for (HapiContext context : threadContexts) {
+            try {
+                context.close();
+            } catch (IOException e) {
+                logger.warn("Could not close HAPI context", e);
+            }
+        }
+    }
+
+    private ParsedIdsMessage getParsed(Future<ParsedIdsMessage> parsedFuture) throws InterruptedException {
+        try {
+            return parsedFuture.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected error building interchange messages", e.getCause());
+        }
+    }
+
+    /**
+     * Submit each interchange message from a single IDS row once the previous message for its MRN has been confirmed,
+     * confirming the unid once they have all been published. IDS rows that gave no interchange messages are confirmed immediately.
+     * @param parsed       parsed IDS message
+     * @param publisher    the local AMQP handling class
+     * @param watermark    watermark of confirmed unids, progress is confirmed when this advances
+     * @param inFlightMrns MRNs of messages that have been submitted but not confirmed
+     * @throws InterruptedException if interrupted while waiting for earlier messages or space in the publisher
+     */
+    private void publish(ParsedIdsMessage parsed, Publisher publisher, UnidWatermark watermark, InFlightMrns inFlightMrns)
+            throws InterruptedException {
+        List<? extends EmapOperationMessage> messages = parsed.messages;
+        if (messages == null) {
+            // publishing is in unid order, so messages that depend on earlier ones can be built now
+            messages = idsOperations.buildInterchangeMessagesFromParsed(parsed.idsMsg, parsed.unbuiltMessage);
+        }
+        int unid = parsed.idsMsg.getUnid();
+        if (messages.isEmpty()) {
+            confirm(unid, watermark);
+            return;
+        }
+        String hospitalNumber = parsed.idsMsg.getHospitalnumber();
+        String mrn = hospitalNumber == null || hospitalNumber.isBlank() ? null : hospitalNumber.strip();
+        AtomicInteger unconfirmed = new AtomicInteger(messages.size());
+        logger.trace("[{}] submitting {} messages to RabbitMQ", unid, messages.size());
+        int subMessageCount = 0;
+        for (EmapOperationMessage msg : messages) {
+            subMessageCount++;
+            boolean exclusive = mrn == null || affectsOtherMrn(msg);
+            inFlightMrns.acquire(mrn, exclusive);
+            // each message is its own batch, so IDs must be unique across all messages in flight
+            String correlationId = String.format("%010d_%d", unid, subMessageCount);
+            try {
+                publisher.submit(msg, correlationId, correlationId, () -> {
+                    inFlightMrns.release(mrn, exclusive);
+                    if (unconfirmed.decrementAndGet() == 0) {
+                        publishDelayMetrics.recordPublished(parsed.idsMsg);
+                        confirm(unid, watermark);
+                    }
+                });
+            } catch (InterruptedException | RuntimeException e) {
+                inFlightMrns.release(mrn, exclusive);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param msg interchange message
+     * @return true if processing the message can change data for an MRN other than the one it was sent for
+     */
+    static boolean affectsOtherMrn(EmapOperationMessage msg) {
+        return msg instanceof PreviousIdentifiers || msg instanceof SwapLocations;
+    }
+
+    private void confirm(int unid, UnidWatermark watermark) {
+        // progress must be confirmed in the same order as the watermark advances
+        synchronized (watermark) {
+            if (watermark.confirm(unid)) {
+                idsOperations.confirmProgress(watermark.getWatermarkUnid(), watermark.getWatermarkMessageDatetime());
+            }
+        }
+    }
+
+    /**
+     * Interchange messages built from a single IDS row, or the parsed HL7 message if they must be built in unid order.
+     */
+    private static final class ParsedIdsMessage {
+        private final IdsMaster idsMsg;
+        private final List<? extends EmapOperationMessage> messages;
+        private final Message unbuiltMessage;
+
+        private ParsedIdsMessage(IdsMaster idsMsg, List<? extends EmapOperationMessage> messages) {
+            this.idsMsg = idsMsg;
+            this.messages = messages;
+            this.unbuiltMessage = null;
+        }
+
+        private ParsedIdsMessage(IdsMaster idsMsg, Message unbuiltMessage) {
+            this.idsMsg = idsMsg;
+            this.messages = null;
+            this.unbuiltMessage = unbuiltMessage;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks IDS unids that are in flight, so that progress is only ever advanced to a unid where
+ * it and every unid before it have been confirmed.
+ * <p>
+ * Unids must be registered in ascending order, but can be confirmed in any order.
+ */
+class UnidWatermark {
+    private final TreeMap<Integer, InFlight> inFlight = new TreeMap<>();
+    private int watermarkUnid;
+    private Instant watermarkMessageDatetime;
+
+    /**
+     * @param startUnid the unid that has already been processed
+     */
+    UnidWatermark(int startUnid) {
+        watermarkUnid = startUnid;
+    }
+
+    /**
+     * Register a unid that is about to be processed.
+     * @param unid            IDS unid
+     * @param messageDatetime message datetime from the IDS row
+     * @throws IllegalArgumentException if the unid is not after all previously registered unids
+     */
+    synchronized void register(int unid, Instant messageDatetime) {
+        int lastRegistered = inFlight.isEmpty() ? watermarkUnid : inFlight.lastKey();
+        if (unid <= lastRegistered) {
+            throw new IllegalArgumentException(String.format("unid %d registered after %d", unid, lastRegistered));
+        }
+        inFlight.put(unid, new InFlight(messageDatetime));
+    }
+
+    /**
+     * Confirm that a registered unid has been fully processed.
+     * @param unid IDS unid
+     * @return true if the watermark advanced as a result
+     * @throws IllegalArgumentException if the unid was not registered
+     */
+    synchronized boolean confirm(int unid) {
+        InFlight confirmed = inFlight.get(unid);
+        if (confirmed == null) {
+            throw new IllegalArgumentException(String.format("unid %d was not in flight", unid));
+        }
+        confirmed.confirmed = true;
+
+        boolean advanced = false;
+        while (!inFlight.isEmpty() && inFlight.firstEntry().getValue().confirmed) {
+            Map.Entry<Integer, InFlight> contiguous = inFlight.pollFirstEntry();
+            watermarkUnid = contiguous.getKey();
+            watermarkMessageDatetime = contiguous.getValue().messageDatetime;
+            advanced = true;
+        }
+        if (inFlight.isEmpty()) {
+            notifyAll();
+        }
+        return advanced;
+    }
+
+    /**
+     * Block until every registered unid has been confirmed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void awaitAllConfirmed() throws InterruptedException {
+        while (!inFlight.isEmpty()) {
+            wait();
+        }
+    }
+
+    /**
+     * @return the highest unid for which it and all earlier registered unids have been confirmed
+     */
+    synchronized int getWatermarkUnid() {
+        return watermarkUnid;
+    }
+
+    /**
+     * @return message datetime of the watermark unid, null if no unid has been confirmed
+     */
+    synchronized Instant getWatermarkMessageDatetime() {
+        return watermarkMessageDatetime;
+    }
+
+    /**
+     * @return number of registered unids that are waiting for confirmation or an earlier unid to be confirmed
+     */
+    synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static final class InFlight {
+        private final Instant messageDatetime;
+        private boolean confirmed;
+
+        private InFlight(Instant messageDatetime) {
+            this.messageDatetime = messageDatetime;
+        }
+    }
+}
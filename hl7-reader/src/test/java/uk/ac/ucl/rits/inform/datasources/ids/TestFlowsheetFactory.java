@@ -18,8 +18,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import uk.ac.ucl.rits.inform.datasources.ids.exceptions.Hl7InconsistencyException;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
 import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
 import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.FlowsheetBatch;
 
 import java.time.Instant;
 import java.time.LocalDate;
@@ -175,6 +177,25 @@ class TestFlowsheetFactory {
         assertEquals(4, flowsheets.size());
     }
 
+    /**
+     * Given batches are enabled
+     * When a message with multiple OBRs is built
+     * Then a single batch is built, holding all flowsheets from the message in order.
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testBatchedFlowsheets() throws Exception {
+        Message hl7Msg = HL7Utils.parseHl7String(HL7Utils.readHl7FromResource("VitalSigns/MultiOBR.txt"));
+        List<? extends EmapOperationMessage> messages = new FlowsheetFactory(true).buildMessages("42", hl7Msg);
+
+        assertEquals(1, messages.size());
+        FlowsheetBatch batch = (FlowsheetBatch) messages.get(0);
+        assertEquals("42", batch.getSourceMessageId());
+        assertEquals(flowsheetFactory.getMessages("42", hl7Msg), batch.getFlowsheets());
+        assertEquals(batch.getFlowsheets().get(0).getMrn(), batch.getMrn());
+        assertEquals(batch.getFlowsheets().get(0).getVisitNumber(), batch.getVisitNumber());
+    }
+
     /**
      * Date of 20200601 should be parsed to local date.
      * @throws Exception shouldn't happen
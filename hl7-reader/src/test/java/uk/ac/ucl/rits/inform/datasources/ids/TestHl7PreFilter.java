@@ -0,0 +1,145 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.util.Hl7InputStreamMessageIterator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.ids.exceptions.Hl7MessageIgnoredException;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Skipping HL7 messages from the raw message, before they are parsed.
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+class TestHl7PreFilter {
+    private static final String WINPATH_OBR = "OBR|1|12121212|13U444444^WinPath|FBCY^FULL BLOOD COUNT^WinPath";
+
+    @Autowired
+    private IdsOperations idsOperations;
+
+    private static String message(String msh9, String sendingApplication, String sendingFacility, String... segments) {
+        String msh = String.format("MSH|^~\\&|%s|%s|||20200101000000||%s|1|P|2.6", sendingApplication, sendingFacility, msh9);
+        return Stream.concat(Stream.of(msh), Stream.of(segments)).collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Given ADT messages from EPIC and another sender
+     * When they are pre-filtered
+     * Then only the one from EPIC is parsed
+     */
+    @Test
+    void testAdtSender() {
+        assertTrue(Hl7PreFilter.skipReason(message("ADT^A01", "EPIC", "")).isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ADT^A01", "CARECAST", "")).isPresent());
+    }
+
+    /**
+     * Given messages with types that aren't processed
+     * When they are pre-filtered
+     * Then they are skipped
+     */
+    @Test
+    void testUnknownMessageTypes() {
+        for (String msh9 : List.of("MDM^T02", "ORU^R32", "ORM^O02", "PPR^PC4", "SIU^S12")) {
+            assertTrue(Hl7PreFilter.skipReason(message(msh9, "EPIC", "", WINPATH_OBR)).isPresent(), msh9);
+        }
+        assertTrue(Hl7PreFilter.skipReason(message("PPR^PC1", "EPIC", "")).isEmpty());
+    }
+
+    /**
+     * Given results with known and unknown coding systems in the first OBR, with \n between segments
+     * When they are pre-filtered
+     * Then only those with an unknown coding system or for blood products are skipped
+     */
+    @Test
+    void testResultCodingSystem() {
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "WinPath", "", "PID|1", WINPATH_OBR)).isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "Vitals", "PID|1", "OBR|1")).isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "", "PID|1", "OBR|1||1^CoPathPlus|X^Y^Z")).isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "", "PID|1", "OBR|1||1|X^Y^Unknown")).isPresent());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "", "PID|1", "OBR|1||1|X^Y^Z^Products")).isPresent());
+        // the first repetition and first subcomponent are used, as HAPI does
+        assertTrue(Hl7PreFilter.skipReason(message("ORM^O01", "EPIC", "DNACPR & CPR", "OBR|1")).isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "", "OBR|1||1|X^Y^Unknown~X^Y^WinPath")).isPresent());
+    }
+
+    /**
+     * Given messages that can't be read with certainty from the raw message
+     * When they are pre-filtered
+     * Then they are left to be parsed
+     */
+    @Test
+    void testUnreadableMessagesParsed() {
+        assertTrue(Hl7PreFilter.skipReason("").isEmpty());
+        assertTrue(Hl7PreFilter.skipReason("PID|1").isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "", "PID|1")).isEmpty());
+        assertTrue(Hl7PreFilter.skipReason(message("ORU^R01", "", "", "OBR|1||1|X^Y^Win\\T\\Path")).isEmpty());
+    }
+
+    /**
+     * Given every HL7 message in the test resources
+     * When they are pre-filtered
+     * Then any that are skipped would not have built any interchange messages, and some are skipped.
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testSkippedMessagesBuildNothing() throws Exception {
+        PipeParser parser = HL7Utils.initializeHapiContext().getPipeParser();
+        int skipped = 0;
+        for (String hl7Message : readAllTestMessages()) {
+            if (Hl7PreFilter.skipReason(hl7Message).isEmpty()) {
+                continue;
+            }
+            skipped++;
+            Message message;
+            try {
+                message = parser.parse(hl7Message);
+            } catch (HL7Exception e) {
+                continue;
+            }
+            try {
+                assertEquals(List.of(), idsOperations.messageFromHl7Message(message, 0), hl7Message);
+            } catch (Hl7MessageIgnoredException e) {
+                // skipped by the full parse as well
+            } catch (Exception e) {
+                fail(String.format("Skipped message would have thrown %s rather than being ignored: %s", e, hl7Message));
+            }
+        }
+        assertTrue(skipped > 0);
+    }
+
+    private List<String> readAllTestMessages() throws Exception {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(Path.of(HL7Utils.getPathFromResource("")))) {
+            files = paths.filter(Files::isRegularFile).filter(p -> p.toString().endsWith(".txt")).sorted().collect(Collectors.toList());
+        }
+        List<String> messages = new ArrayList<>();
+        for (Path file : files) {
+            Hl7InputStreamMessageIterator iterator = HL7Utils.hl7Iterator(new File(file.toString()));
+            while (iterator.hasNext()) {
+                try {
+                    messages.add(iterator.next().encode());
+                } catch (RuntimeException | HL7Exception e) {
+                    // not every text file is a valid HL7 message
+                }
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,100 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Reading of the IDS in prefetched batches should give the same rows as reading a row at a time.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ids.cfg.batch-size=2", "ids.cfg.fetch-size=1"})
+class TestIdsBatchedReading {
+    @Autowired
+    private IdsConfiguration idsConfiguration;
+    @Autowired
+    private IdsOperations idsOperations;
+
+    private static final int[] UNIDS = {3, 5, 6, 10, 11};
+
+    @BeforeEach
+    void setUp() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            for (int unid : UNIDS) {
+                IdsMaster idsMaster = new IdsMaster();
+                idsMaster.setUnid(unid);
+                idsMaster.setHl7message(String.format("MSH|^~\\&|%d", unid));
+                session.save(idsMaster);
+            }
+            tx.commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("delete from IdsMaster").executeUpdate();
+            tx.commit();
+        }
+    }
+
+    /**
+     * Given IDS rows spanning multiple batches
+     * When each row is requested following on from the previous one
+     * Then all rows are returned in unid order, then null once the IDS is drained
+     */
+    @Test
+    void testAllRowsReturnedInOrderAcrossBatches() {
+        int lastProcessedId = 0;
+        for (int expectedUnid : UNIDS) {
+            IdsMaster next = idsOperations.getNextHL7IdsRecord(lastProcessedId);
+            assertEquals(expectedUnid, next.getUnid());
+            assertEquals(String.format("MSH|^~\\&|%d", expectedUnid), next.getHl7message());
+            lastProcessedId = next.getUnid();
+        }
+        assertNull(idsOperations.getNextHL7IdsRecord(lastProcessedId));
+    }
+
+    /**
+     * Given rows have been prefetched
+     * When the caller resumes from a different unid
+     * Then the prefetched rows are discarded and reading resumes after that unid
+     */
+    @Test
+    void testResumeFromDifferentUnidIgnoresPrefetchedRows() {
+        assertEquals(3, idsOperations.getNextHL7IdsRecord(0).getUnid());
+
+        assertEquals(10, idsOperations.getNextHL7IdsRecord(6).getUnid());
+        assertEquals(11, idsOperations.getNextHL7IdsRecord(10).getUnid());
+
+        // going backwards should also re-read from the IDS
+        assertEquals(5, idsOperations.getNextHL7IdsRecord(3).getUnid());
+    }
+
+    /**
+     * Given IDS rows after a unid
+     * When a batch is requested
+     * Then only up to the maximum number of rows are returned, in unid order
+     */
+    @Test
+    void testBatchLimitedToMaxResults() {
+        List<Integer> unids = idsOperations.getNextHL7IdsRecords(4, 3).stream()
+                .map(IdsMaster::getUnid)
+                .collect(Collectors.toList());
+        assertEquals(List.of(5, 6, 10), unids);
+    }
+}
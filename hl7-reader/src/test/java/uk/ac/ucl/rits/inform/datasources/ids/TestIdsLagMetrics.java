@@ -0,0 +1,69 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Gauges for how far the reader is behind the IDS.
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+class TestIdsLagMetrics {
+    @Autowired
+    private IdsConfiguration idsConfiguration;
+    @Autowired
+    private IdsOperations idsOperations;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            for (int unid : new int[]{3, 7, 12}) {
+                IdsMaster idsMaster = new IdsMaster();
+                idsMaster.setUnid(unid);
+                idsMaster.setHl7message("MSH|^~\\&|");
+                session.save(idsMaster);
+            }
+            tx.commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("delete from IdsMaster").executeUpdate();
+            tx.commit();
+        }
+    }
+
+    /**
+     * Given IDS rows up to unid 12 and progress saved at unid 7 with a message datetime an hour ago
+     * When the lag gauges are read
+     * Then the unid lag is 5 and the message datetime lag is about an hour
+     */
+    @Test
+    void testLagGauges() {
+        idsOperations.saveProgress(7, Instant.now().minus(1, ChronoUnit.HOURS));
+
+        assertEquals(5, meterRegistry.get("emap.ids.lag.unid").gauge().value());
+        double datetimeLag = meterRegistry.get("emap.ids.lag.message.datetime").gauge().value();
+        assertTrue(datetimeLag >= 3600 && datetimeLag < 3700);
+    }
+}
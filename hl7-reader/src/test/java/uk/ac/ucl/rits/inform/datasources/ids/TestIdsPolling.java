@@ -0,0 +1,93 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Polling for new IDS rows once the IDS has been drained, and timing how long rows take to be published.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ids.cfg.poll.min-interval-millis=1", "ids.cfg.poll.max-interval-millis=50"})
+class TestIdsPolling {
+    @Autowired
+    private IdsConfiguration idsConfiguration;
+    @Autowired
+    private IdsOperations idsOperations;
+    @Autowired
+    private IdsPublishDelayMetrics publishDelayMetrics;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private void writeToIds(int unid, Instant persistDatetime) {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            IdsMaster idsMaster = new IdsMaster();
+            idsMaster.setUnid(unid);
+            idsMaster.setPersistdatetime(persistDatetime);
+            idsMaster.setHl7message("MSH|^~\\&|");
+            session.save(idsMaster);
+            tx.commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("delete from IdsMaster").executeUpdate();
+            tx.commit();
+        }
+    }
+
+    /**
+     * Given the IDS has been drained
+     * When a new row is added while the reader is waiting
+     * Then the row is returned in well under the previous fixed sleep of 10 seconds
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testNewRowPickedUpQuickly() throws Exception {
+        CompletableFuture<IdsMaster> next = CompletableFuture.supplyAsync(() -> idsOperations.getNextHL7IdsRecordBlocking(0));
+        Thread.sleep(200);
+        Instant written = Instant.now();
+        writeToIds(1, written);
+
+        assertEquals(1, next.get(5, TimeUnit.SECONDS).getUnid());
+        assertTrue(Duration.between(written, Instant.now()).toMillis() < 1000);
+    }
+
+    /**
+     * Given an IDS row persisted a minute ago
+     * When its messages are published
+     * Then the publish delay is recorded
+     */
+    @Test
+    void testPublishDelayRecorded() {
+        Timer timer = meterRegistry.get("emap.ids.publish.delay").timer();
+        long countBefore = timer.count();
+        IdsMaster idsMaster = new IdsMaster();
+        idsMaster.setPersistdatetime(Instant.now().minus(1, ChronoUnit.MINUTES));
+
+        publishDelayMetrics.recordPublished(idsMaster);
+
+        assertEquals(countBefore + 1, timer.count());
+        assertTrue(timer.max(TimeUnit.SECONDS) >= 60);
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Progress is held in memory and only saved every so often.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ids.cfg.checkpoint.messages=3", "ids.cfg.checkpoint.interval-millis=600000"})
+class TestIdsProgressCheckpoint {
+    @Autowired
+    private IdsOperations idsOperations;
+    @Autowired
+    private IdsProgressRepository idsProgressRepository;
+
+    private static final Instant MESSAGE_DATETIME = Instant.parse("2020-01-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        idsOperations.saveProgress(0, null);
+    }
+
+    private int savedUnid() {
+        return idsProgressRepository.findOnlyRow().getLastProcessedIdsUnid();
+    }
+
+    /**
+     * Given progress is saved every 3 messages
+     * When messages are confirmed one at a time
+     * Then progress is only saved on the third message, but the confirmed progress is always current
+     */
+    @Test
+    void testSavedAfterNumberOfMessages() {
+        idsOperations.confirmProgress(1, MESSAGE_DATETIME);
+        idsOperations.confirmProgress(2, MESSAGE_DATETIME.plusSeconds(2));
+        assertEquals(0, savedUnid());
+        assertEquals(2, idsOperations.getLastConfirmedUnid());
+        assertEquals(MESSAGE_DATETIME.plusSeconds(2), idsOperations.findConfirmedProgress().getLastProcessedMessageDatetime());
+
+        idsOperations.confirmProgress(3, MESSAGE_DATETIME.plusSeconds(3));
+        assertEquals(3, savedUnid());
+        assertEquals(MESSAGE_DATETIME.plusSeconds(3), idsProgressRepository.findOnlyRow().getLastProcessedMessageDatetime());
+    }
+
+    /**
+     * Given a confirmed message that hasn't been saved
+     * When the reader is shut down
+     * Then the progress is saved
+     */
+    @Test
+    void testSavedOnShutdown() {
+        idsOperations.confirmProgress(1, MESSAGE_DATETIME);
+        assertEquals(0, savedUnid());
+
+        idsOperations.writeConfirmedProgress();
+        assertEquals(1, savedUnid());
+    }
+
+    /**
+     * Given progress is saved at least every millisecond
+     * When a message is confirmed after the interval has passed
+     * Then the progress is saved
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testSavedAfterInterval() throws Exception {
+        IdsProgressCheckpoint checkpoint = new IdsProgressCheckpoint(idsProgressRepository, 0, 1000, 1);
+        checkpoint.reset(idsProgressRepository.findOnlyRow());
+        Thread.sleep(5);
+
+        checkpoint.confirm(1, MESSAGE_DATETIME);
+        assertEquals(1, savedUnid());
+    }
+}
@@ -0,0 +1,258 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reading a shard of the IDS, partitioned by hospital number.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ids.cfg.shard.index=1", "ids.cfg.shard.count=2", "ids.cfg.batch-size=3"})
+class TestIdsSharding {
+    @Autowired
+    private IdsConfiguration idsConfiguration;
+    @Autowired
+    private IdsOperations idsOperations;
+    @Autowired
+    private IdsProgressRepository idsProgressRepository;
+
+    private static final List<String> MRNS = List.of("40800000", "40800001", "40800002", "40800003", "40800004", "40800005");
+    private static final List<String> MESSAGE_TYPES = List.of("A01", "A08", "A01", "A40", "A08", "A03");
+    private static final Instant MESSAGE_DATETIME = Instant.parse("2020-01-01T00:00:00Z");
+    private final IdsShard shard = new IdsShard(1, 2);
+
+    @BeforeEach
+    void setUp() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            for (int i = 0; i < MRNS.size(); i++) {
+                IdsMaster idsMaster = new IdsMaster();
+                idsMaster.setUnid(i + 1);
+                idsMaster.setHospitalnumber(MRNS.get(i));
+                idsMaster.setMessagetype(MESSAGE_TYPES.get(i));
+                idsMaster.setMessagedatetime(MESSAGE_DATETIME.plusSeconds(i));
+                idsMaster.setHl7message(String.format("MSH|^~\\&|%d", i + 1));
+                session.save(idsMaster);
+            }
+            tx.commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("delete from IdsMaster").executeUpdate();
+            tx.commit();
+        }
+        idsProgressRepository.deleteAll();
+    }
+
+    /**
+     * Given hospital numbers
+     * When they are assigned to shards
+     * Then each is owned by exactly one shard, with rows missing a hospital number owned by the first shard
+     */
+    @Test
+    void testEachMrnOwnedByOneShard() {
+        List<IdsShard> shards = IntStream.range(0, 3).mapToObj(index -> new IdsShard(index, 3)).collect(Collectors.toList());
+        for (String mrn : MRNS) {
+            assertEquals(1, shards.stream().filter(s -> s.owns(mrn, "A01")).count(), mrn);
+        }
+        assertTrue(shards.get(0).owns(null, "A01"));
+        assertTrue(new IdsShard(0, 1).owns("anything", "A40"));
+    }
+
+    /**
+     * Given messages that can change data for a second MRN
+     * When they are assigned to shards
+     * Then they are all owned by the coordinator and are barriers, unless the IDS isn't sharded
+     */
+    @Test
+    void testMultiMrnMessagesOwnedByCoordinator() {
+        List<IdsShard> shards = IntStream.range(0, 3).mapToObj(index -> new IdsShard(index, 3)).collect(Collectors.toList());
+        for (String messageType : List.of("A17", "A40", "A45", "A47", "ADT^A40")) {
+            for (String mrn : MRNS) {
+                assertTrue(shards.get(0).owns(mrn, messageType), messageType);
+                assertFalse(shards.get(1).owns(mrn, messageType), messageType);
+                assertFalse(shards.get(2).owns(mrn, messageType), messageType);
+            }
+            assertTrue(shards.get(1).isBarrier(messageType), messageType);
+            assertFalse(new IdsShard(0, 1).isBarrier(messageType), messageType);
+        }
+        assertFalse(shards.get(0).isBarrier("A01"));
+        assertFalse(shards.get(0).isBarrier(null));
+    }
+
+    /**
+     * Given a shard outside the number of shards
+     * When it is created
+     * Then an exception is thrown
+     */
+    @Test
+    void testInvalidShard() {
+        assertThrows(IllegalArgumentException.class, () -> new IdsShard(2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new IdsShard(0, 0));
+    }
+
+    /**
+     * Given IDS rows for MRNs in both shards
+     * When each row is read following on from the previous one
+     * Then every unid is returned in order with its message datetime, but only rows for this shard have their HL7 message
+     */
+    @Test
+    void testOnlyOwnedRowsReadInFull() {
+        int lastProcessedId = 0;
+        for (int i = 0; i < MRNS.size(); i++) {
+            IdsMaster next = idsOperations.getNextHL7IdsRecord(lastProcessedId);
+            assertEquals(i + 1, next.getUnid());
+            assertEquals(MESSAGE_DATETIME.plusSeconds(i), next.getMessagedatetime());
+            assertEquals("A40".equals(MESSAGE_TYPES.get(i)), idsOperations.isBarrier(next));
+            if (shard.owns(MRNS.get(i), MESSAGE_TYPES.get(i))) {
+                assertEquals(String.format("MSH|^~\\&|%d", i + 1), next.getHl7message());
+            } else {
+                assertNull(next.getHl7message());
+                assertEquals(List.of(), idsOperations.buildInterchangeMessages(next, null));
+            }
+            lastProcessedId = next.getUnid();
+        }
+        assertNull(idsOperations.getNextHL7IdsRecord(lastProcessedId));
+    }
+
+    /**
+     * Given a shard other than the first
+     * When progress is saved
+     * Then it uses the row for its own shard
+     */
+    @Test
+    void testProgressRowForShard() {
+        idsOperations.saveProgress(3, MESSAGE_DATETIME);
+        IdsProgress progress = idsOperations.findLatestProcessedId();
+        assertEquals(1, progress.getId());
+        assertEquals(3, progress.getLastProcessedIdsUnid());
+    }
+
+    /**
+     * Given progress saved by three shards
+     * When the coordinator starts with two shards
+     * Then both shards restart from the lowest saved progress, and the other shard no longer waits for the coordinator
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testShardCountChangeRestartsFromLowestProgress() throws Exception {
+        saveProgress(0, 5, 3);
+        saveProgress(1, 3, 3);
+        saveProgress(2, 4, 3);
+
+        new IdsShardProgress(idsProgressRepository, new IdsShard(0, 2), 1, 10).matchShardCount();
+
+        assertEquals(2, idsProgressRepository.count());
+        for (int rowId = 0; rowId < 2; rowId++) {
+            IdsProgress progress = idsProgressRepository.findById(rowId).orElseThrow();
+            assertEquals(3, progress.getLastProcessedIdsUnid());
+            assertEquals(MESSAGE_DATETIME.plusSeconds(3), progress.getLastProcessedMessageDatetime());
+            assertEquals(2, progress.getShardCount());
+        }
+        new IdsShardProgress(idsProgressRepository, new IdsShard(1, 2), 1, 10).matchShardCount();
+    }
+
+    /**
+     * Given progress saved by a single reader before the IDS could be sharded
+     * When the coordinator starts with two shards
+     * Then a progress row is created for the new shard from the single reader's progress
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testShardAddedToSingleReader() throws Exception {
+        saveProgress(0, 4, null);
+
+        new IdsShardProgress(idsProgressRepository, new IdsShard(0, 2), 1, 10).matchShardCount();
+
+        IdsProgress added = idsProgressRepository.findById(1).orElseThrow();
+        assertEquals(4, added.getLastProcessedIdsUnid());
+        assertEquals(2, added.getShardCount());
+    }
+
+    /**
+     * Given a barrier row at unid 4
+     * When the coordinator waits at it
+     * Then it only continues once the other shard has saved progress up to unid 3
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testCoordinatorWaitsForOtherShards() throws Exception {
+        saveProgress(0, 3, 2);
+        saveProgress(1, 2, 2);
+        IdsShardProgress coordinator = new IdsShardProgress(idsProgressRepository, new IdsShard(0, 2), 1, 10);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> waiting = executor.submit(() -> {
+                coordinator.awaitBarrier(4, 3);
+                return null;
+            });
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+
+            saveProgress(1, 3, 2);
+            waiting.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Given a barrier row at unid 4
+     * When a shard other than the coordinator waits at it
+     * Then it only continues once the coordinator has saved progress for unid 4
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testOtherShardWaitsForCoordinator() throws Exception {
+        saveProgress(0, 3, 2);
+        IdsShardProgress otherShard = new IdsShardProgress(idsProgressRepository, new IdsShard(1, 2), 1, 10);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> waiting = executor.submit(() -> {
+                otherShard.awaitBarrier(4, 3);
+                return null;
+            });
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+
+            saveProgress(0, 4, 2);
+            waiting.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void saveProgress(int rowId, int unid, Integer shardCount) {
+        IdsProgress progress = new IdsProgress(rowId);
+        progress.setLastProcessedIdsUnid(unid);
+        progress.setLastProcessedMessageDatetime(MESSAGE_DATETIME.plusSeconds(unid));
+        progress.setShardCount(shardCount);
+        idsProgressRepository.save(progress);
+    }
+}
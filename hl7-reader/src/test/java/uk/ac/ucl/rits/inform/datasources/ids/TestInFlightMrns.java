@@ -0,0 +1,83 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Only one message per MRN should be in flight, so that a resent message can't be overtaken by a later one.
+ */
+class TestInFlightMrns {
+    private final InFlightMrns inFlightMrns = new InFlightMrns();
+    private final ExecutorService publisherThread = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        publisherThread.shutdownNow();
+    }
+
+    private Future<?> acquireInBackground(String mrn, boolean exclusive) {
+        return publisherThread.submit(() -> {
+            inFlightMrns.acquire(mrn, exclusive);
+            return null;
+        });
+    }
+
+    /**
+     * Given a message in flight
+     * When a message for a different MRN is published
+     * Then it doesn't wait for the first message to be confirmed
+     */
+    @Test
+    void testDifferentMrnsInFlightTogether() throws Exception {
+        inFlightMrns.acquire("40800000", false);
+        acquireInBackground("40800001", false).get(5, TimeUnit.SECONDS);
+        assertEquals(2, inFlightMrns.getInFlightCount());
+    }
+
+    /**
+     * Given a message in flight
+     * When another message for the same MRN is published
+     * Then it waits until the first message has been confirmed
+     */
+    @Test
+    void testSameMrnWaitsForConfirmation() throws Exception {
+        inFlightMrns.acquire("40800000", false);
+        Future<?> second = acquireInBackground("40800000", false);
+        Thread.sleep(100);
+        assertFalse(second.isDone());
+
+        inFlightMrns.release("40800000", false);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(1, inFlightMrns.getInFlightCount());
+    }
+
+    /**
+     * Given a message in flight
+     * When a message that affects another MRN is published
+     * Then it waits for all messages in flight, and later messages wait for it
+     */
+    @Test
+    void testExclusiveMessageWaitsForAll() throws Exception {
+        inFlightMrns.acquire("40800000", false);
+        Future<?> merge = acquireInBackground("40800001", true);
+        Thread.sleep(100);
+        assertFalse(merge.isDone());
+
+        inFlightMrns.release("40800000", false);
+        merge.get(5, TimeUnit.SECONDS);
+
+        Future<?> later = acquireInBackground("40800002", false);
+        Thread.sleep(100);
+        assertFalse(later.isDone());
+        inFlightMrns.release("40800001", true);
+        later.get(5, TimeUnit.SECONDS);
+    }
+}
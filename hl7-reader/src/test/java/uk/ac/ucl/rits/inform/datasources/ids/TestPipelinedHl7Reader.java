@@ -0,0 +1,157 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import ca.uhn.hl7v2.HapiContext;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.adt.AdtMessage;
+import uk.ac.ucl.rits.inform.interchange.messaging.Publisher;
+import uk.ac.ucl.rits.inform.interchange.visit_observations.Flowsheet;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pipelined reading of the IDS should publish in unid order and only advance progress once messages are confirmed.
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+class TestPipelinedHl7Reader {
+    @Autowired
+    private IdsConfiguration idsConfiguration;
+    @Autowired
+    private IdsProgressRepository idsProgressRepository;
+    @Autowired
+    private IdsOperations idsOperations;
+    @Autowired
+    private PipelinedHl7Reader pipelinedReader;
+
+    private RecordingPublisher publisher;
+    private HapiContext hapiContext;
+    private static final Instant MESSAGE_DATETIME = Instant.parse("2020-01-22T14:06:18Z");
+
+    /**
+     * Publisher which records the batches it is given and confirms them from other threads, in any order.
+     */
+    static class RecordingPublisher extends Publisher {
+        private final List<String> batchIds = Collections.synchronizedList(new ArrayList<>());
+        private final List<EmapOperationMessage> messages = Collections.synchronizedList(new ArrayList<>());
+        private final ExecutorService confirmer = Executors.newFixedThreadPool(4);
+
+        RecordingPublisher() {
+            super(new RabbitTemplate(), 1, 1, 1);
+        }
+
+        /**
+         * @return unids of the IDS rows that messages were published for, in the order they were first published
+         */
+        List<String> getPublishedUnids() {
+            return batchIds.stream().map(batchId -> batchId.split("_")[0]).distinct().collect(Collectors.toList());
+        }
+
+        List<EmapOperationMessage> getMessages() {
+            return messages;
+        }
+
+        @Override
+        public <T extends EmapOperationMessage> void submit(List<ImmutablePair<T, String>> batch, String batchId, Runnable callback) {
+            batchIds.add(batchId);
+            batch.forEach(pair -> messages.add(pair.getLeft()));
+            confirmer.execute(callback);
+        }
+
+        @Override
+        public void shutdown() {
+            confirmer.shutdownNow();
+            super.shutdown();
+        }
+    }
+
+    private void writeToIds(int unid, String hl7Message) {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            IdsMaster idsMaster = new IdsMaster();
+            idsMaster.setUnid(unid);
+            idsMaster.setMessagedatetime(MESSAGE_DATETIME.plusSeconds(unid));
+            // IDS uses \n for line endings
+            idsMaster.setHl7message(hl7Message.replace("\r", "\n"));
+            session.save(idsMaster);
+            tx.commit();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        idsOperations.saveProgress(0, null);
+
+        writeToIds(1, HL7Utils.readHl7FromResource("Adt/generic/A01.txt"));
+        writeToIds(2, "not an HL7 message");
+        writeToIds(4, HL7Utils.readHl7FromResource("VitalSigns/MixedHL7Message.txt"));
+        writeToIds(5, HL7Utils.readHl7FromResource("Adt/generic/A02.txt"));
+
+        publisher = new RecordingPublisher();
+        hapiContext = HL7Utils.initializeHapiContext();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        publisher.shutdown();
+        hapiContext.close();
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("delete from IdsMaster").executeUpdate();
+            tx.commit();
+        }
+    }
+
+    /**
+     * Given IDS rows, one of which can't be parsed
+     * When the pipelined reader processes all rows
+     * Then the messages from each successfully parsed row are published in unid order, and progress reaches the last row
+     */
+    @Test
+    void testBatchesPublishedInOrderAndProgressAdvanced() throws Exception {
+        pipelinedReader.processUntilDrained(publisher, hapiContext.getPipeParser());
+
+        assertEquals(List.of("0000000001", "0000000004", "0000000005"), publisher.getPublishedUnids());
+        assertEquals(publisher.messages.size(), publisher.batchIds.size());
+        assertTrue(publisher.messages.get(0) instanceof AdtMessage);
+        assertTrue(publisher.messages.stream().anyMatch(Flowsheet.class::isInstance));
+
+        IdsProgress progress = idsProgressRepository.findOnlyRow();
+        assertEquals(5, progress.getLastProcessedIdsUnid());
+        assertEquals(MESSAGE_DATETIME.plusSeconds(5), progress.getLastProcessedMessageDatetime());
+    }
+
+    /**
+     * Given progress has already been made past some IDS rows
+     * When the pipelined reader processes all rows
+     * Then only rows after the progress are published
+     */
+    @Test
+    void testResumesFromProgress() throws Exception {
+        idsOperations.saveProgress(2, null);
+
+        pipelinedReader.processUntilDrained(publisher, hapiContext.getPipeParser());
+
+        assertEquals(List.of("0000000004", "0000000005"), publisher.getPublishedUnids());
+        assertEquals(5, idsProgressRepository.findOnlyRow().getLastProcessedIdsUnid());
+    }
+}
@@ -0,0 +1,114 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import ca.uhn.hl7v2.HapiContext;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import uk.ac.ucl.rits.inform.datasources.ids.TestPipelinedHl7Reader.RecordingPublisher;
+import uk.ac.ucl.rits.inform.datasources.ids.conditons.PatientInfectionFactory;
+import uk.ac.ucl.rits.inform.datasources.idstables.IdsMaster;
+import uk.ac.ucl.rits.inform.interchange.EmapOperationMessage;
+import uk.ac.ucl.rits.inform.interchange.PatientInfection;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parsing on multiple threads should publish the same batches, in unid order, as parsing on a single thread.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ids.cfg.pipeline.parser-threads=4", "ids.cfg.pipeline.parse-ahead=10", "ids.cfg.batch-size=5"})
+class TestPipelinedParallelParsing {
+    @Autowired
+    private IdsConfiguration idsConfiguration;
+    @Autowired
+    private IdsProgressRepository idsProgressRepository;
+    @Autowired
+    private IdsOperations idsOperations;
+    @Autowired
+    private PipelinedHl7Reader pipelinedReader;
+    @Autowired
+    private PatientInfectionFactory patientInfectionFactory;
+
+    private RecordingPublisher publisher;
+    private HapiContext hapiContext;
+    private final List<String> expectedBatchIds = new ArrayList<>();
+    private final List<String> laterInfectionBatchIds = new ArrayList<>();
+    private static final String LATER_INFECTION_FILE = "PatientInfection/2019_06_infection.txt";
+    private static final List<String> MESSAGE_FILES = List.of(
+            "Adt/generic/A01.txt", LATER_INFECTION_FILE, "VitalSigns/MixedHL7Message.txt",
+            "PatientInfection/2019_05_infection.txt", "Adt/generic/A02.txt");
+
+    private void writeToIds(int unid, String hl7Message) {
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            IdsMaster idsMaster = new IdsMaster();
+            idsMaster.setUnid(unid);
+            idsMaster.setMessagedatetime(Instant.parse("2020-01-22T14:06:18Z").plusSeconds(unid));
+            idsMaster.setHl7message(hl7Message.replace("\r", "\n"));
+            session.save(idsMaster);
+            tx.commit();
+        }
+    }
+
+    @BeforeEach
+    void setUp(@Value("${ids.cfg.default-start-datetime}") Instant serviceStart) throws Exception {
+        patientInfectionFactory.setInfectionProgress(serviceStart);
+        idsOperations.saveProgress(0, null);
+        int unid = 0;
+        // repeat the messages so that there are more rows than parsing threads
+        for (int repeat = 0; repeat < 5; repeat++) {
+            for (String file : MESSAGE_FILES) {
+                unid++;
+                writeToIds(unid, HL7Utils.readHl7FromResource(file));
+                expectedBatchIds.add(String.format("%010d", unid));
+                if (LATER_INFECTION_FILE.equals(file)) {
+                    laterInfectionBatchIds.add(String.format("%010d", unid));
+                }
+            }
+        }
+        publisher = new RecordingPublisher();
+        hapiContext = HL7Utils.initializeHapiContext();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        publisher.shutdown();
+        hapiContext.close();
+        try (Session session = idsConfiguration.getSessionFactory().openSession()) {
+            Transaction tx = session.beginTransaction();
+            session.createQuery("delete from IdsMaster").executeUpdate();
+            tx.commit();
+        }
+    }
+
+    /**
+     * Given IDS rows that are parsed on multiple threads, with each later infection followed by an earlier infection
+     * When the pipelined reader processes all rows
+     * Then the messages from each row are published in unid order, only the later infections are published, and progress reaches the last row
+     */
+    @Test
+    void testBatchesPublishedInUnidOrder() throws Exception {
+        pipelinedReader.processUntilDrained(publisher, hapiContext.getPipeParser());
+
+        List<String> infectionBatchIds = publisher.getMessages().stream()
+                .filter(PatientInfection.class::isInstance)
+                .map(EmapOperationMessage::getSourceMessageId)
+                .distinct()
+                .collect(Collectors.toList());
+        // earlier infections are only skipped if they are built after the later infection
+        assertEquals(laterInfectionBatchIds, infectionBatchIds);
+        assertEquals(expectedBatchIds, publisher.getPublishedUnids());
+        assertEquals(expectedBatchIds.size(), idsProgressRepository.findOnlyRow().getLastProcessedIdsUnid());
+    }
+}
@@ -0,0 +1,83 @@
+package uk.ac.ucl.rits.inform.datasources.ids;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestUnidWatermark {
+    private static final Instant MESSAGE_TIME = Instant.parse("2020-01-22T14:06:18Z");
+    private UnidWatermark watermark;
+
+    @BeforeEach
+    void setUp() {
+        watermark = new UnidWatermark(10);
+        watermark.register(11, MESSAGE_TIME);
+        watermark.register(13, MESSAGE_TIME.plusSeconds(1));
+        watermark.register(14, MESSAGE_TIME.plusSeconds(2));
+    }
+
+    @Test
+    void testWatermarkStartsAtStartUnid() {
+        assertEquals(10, watermark.getWatermarkUnid());
+        assertNull(watermark.getWatermarkMessageDatetime());
+        assertEquals(3, watermark.getInFlightCount());
+    }
+
+    @Test
+    void testInOrderConfirmationAdvancesWatermark() {
+        assertTrue(watermark.confirm(11));
+        assertEquals(11, watermark.getWatermarkUnid());
+        assertEquals(MESSAGE_TIME, watermark.getWatermarkMessageDatetime());
+
+        assertTrue(watermark.confirm(13));
+        assertEquals(13, watermark.getWatermarkUnid());
+    }
+
+    /**
+     * Given three unids in flight
+     * When the later unids are confirmed before the first
+     * Then the watermark only advances once the first has been confirmed, and then to the last contiguous unid
+     */
+    @Test
+    void testOutOfOrderConfirmationWaitsForEarliest() {
+        assertFalse(watermark.confirm(14));
+        assertFalse(watermark.confirm(13));
+        assertEquals(10, watermark.getWatermarkUnid());
+
+        assertTrue(watermark.confirm(11));
+        assertEquals(14, watermark.getWatermarkUnid());
+        assertEquals(MESSAGE_TIME.plusSeconds(2), watermark.getWatermarkMessageDatetime());
+        assertEquals(0, watermark.getInFlightCount());
+    }
+
+    @Test
+    void testRegisteringOutOfOrderThrows() {
+        assertThrows(IllegalArgumentException.class, () -> watermark.register(12, MESSAGE_TIME));
+        assertThrows(IllegalArgumentException.class, () -> new UnidWatermark(10).register(10, MESSAGE_TIME));
+    }
+
+    @Test
+    void testConfirmingUnknownUnidThrows() {
+        assertThrows(IllegalArgumentException.class, () -> watermark.confirm(12));
+    }
+
+    @Test
+    void testAwaitAllConfirmed() throws InterruptedException {
+        Thread confirmer = new Thread(() -> {
+            watermark.confirm(14);
+            watermark.confirm(11);
+            watermark.confirm(13);
+        });
+        confirmer.start();
+        watermark.awaitAllConfirmed();
+        assertEquals(14, watermark.getWatermarkUnid());
+        confirmer.join();
+    }
+}
@@ -3,19 +3,24 @@ package uk.ac.ucl.rits.inform.datasources.ids.labs;
 import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import uk.ac.ucl.rits.inform.datasources.ids.HL7Utils;
+import uk.ac.ucl.rits.inform.datasources.ids.LabResultBlobWriter;
 import uk.ac.ucl.rits.inform.interchange.InterchangeValue;
 import uk.ac.ucl.rits.inform.interchange.OrderCodingSystem;
 import uk.ac.ucl.rits.inform.interchange.ValueType;
+import uk.ac.ucl.rits.inform.interchange.blob.BlobReference;
+import uk.ac.ucl.rits.inform.interchange.blob.FileSystemBlobStore;
 import uk.ac.ucl.rits.inform.interchange.lab.LabOrderMsg;
 import uk.ac.ucl.rits.inform.interchange.lab.LabResultMsg;
 import uk.ac.ucl.rits.inform.interchange.lab.LabResultStatus;
 
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.List;
@@ -56,6 +61,46 @@ class TestCoPathResults {
         assertEquals(ValueType.PDF.name(), result.getTestItemLocalCode());
     }
 
+    /**
+     * Given a blob store with a minimum size smaller than the pdf report
+     * When large values are written to the blob store
+     * Then the report is replaced by a reference to the stored report.
+     * @param blobDir blob store directory
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testValueAsBytesWrittenToBlobStore(@TempDir Path blobDir) throws Exception {
+        LabOrderMsg order = labReader.getFirstOrder(FILE_TEMPLATE, "oru_r01_copath");
+        LabResultMsg result = order.getLabResultMsgs().stream()
+                .filter(r -> r.getByteValue().isSave())
+                .findFirst().orElseThrow();
+        byte[] expectedBytes = result.getByteValue().get();
+
+        new LabResultBlobWriter(blobDir.toString(), 1).writeLargeValues(List.of(order));
+
+        assertTrue(result.getByteValue().isUnknown());
+        BlobReference reference = result.getByteValueReference().get();
+        assertEquals(expectedBytes.length, reference.getLength());
+        assertArrayEquals(expectedBytes, new FileSystemBlobStore(blobDir).get(reference));
+    }
+
+    /**
+     * Given a blob store with a minimum size larger than the pdf report
+     * When large values are written to the blob store
+     * Then the report is kept in the message.
+     * @param blobDir blob store directory
+     * @throws Exception shouldn't happen
+     */
+    @Test
+    void testSmallValueAsBytesKeptInMessage(@TempDir Path blobDir) throws Exception {
+        LabOrderMsg order = labReader.getFirstOrder(FILE_TEMPLATE, "oru_r01_copath");
+
+        new LabResultBlobWriter(blobDir.toString(), Integer.MAX_VALUE).writeLargeValues(List.of(order));
+
+        assertTrue(order.getLabResultMsgs().stream().anyMatch(r -> r.getByteValue().isSave()));
+        assertTrue(order.getLabResultMsgs().stream().allMatch(r -> r.getByteValueReference().isUnknown()));
+    }
+
     /**
      * Multiline text report should be joined by newlines, mime and item local code should be set to text.
      * @throws Exception shouldn't happen